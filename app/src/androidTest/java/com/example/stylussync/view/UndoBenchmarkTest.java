@@ -0,0 +1,90 @@
+package com.example.stylussync.view;
+
+import android.app.Instrumentation;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分块渲染下撤销的耗时随笔画数的变化。撤销时每个分块只重绘被撤销笔画覆盖的区域，
+ * 或者从检查点恢复整块再重放其后的笔画，按需要重放的笔画数选较少的一种：
+ * 检查点预算为 0 时只有区域重绘，默认预算时两种都可用。
+ * 笔画分散在整个画面上时区域里的笔画很少，检查点几乎用不上；集中在一小块时区域重绘要重放大量笔画，检查点才有用。
+ * 结果输出到 logcat（tag: UndoBenchmark）。
+ */
+@RunWith(AndroidJUnit4.class)
+public class UndoBenchmarkTest {
+
+    private static final String TAG = "UndoBenchmark";
+    private static final int[] STROKE_COUNTS = {100, 500, 2000};
+    private static final int UNDO_COUNT = 20;
+    // 笔画起点的分布范围：整个画面，或集中在约一个分块大小的区域里
+    private static final float[][] LAYOUTS = {{1920, 1200}, {300, 300}};
+
+    @Test
+    public void undoLatencyVsStrokeCount() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(() -> {
+            DrawingSurfaceView view = new DrawingSurfaceView(instrumentation.getTargetContext(), null);
+            view.surfaceChanged(view.getHolder(), 0, 1920, 1200);
+
+            for (float[] layout : LAYOUTS) {
+                for (int strokeCount : STROKE_COUNTS) {
+                    view.setCheckpointMemoryBudget(0);
+                    long[] regionOnly = measureUndo(view, strokeCount, layout[0], layout[1]);
+
+                    view.setCheckpointMemoryBudget(DrawingSurfaceView.DEFAULT_CHECKPOINT_MEMORY_BYTES);
+                    long[] withCheckpoints = measureUndo(view, strokeCount, layout[0], layout[1]);
+
+                    Log.i(TAG, "area=" + (int) layout[0] + "x" + (int) layout[1] + " strokes=" + strokeCount
+                            + " regionOnly=" + String.format("%.2f", regionOnly[0] / 1e6 / UNDO_COUNT) + "ms"
+                            + " (" + regionOnly[1] + " strokes replayed)"
+                            + " withCheckpoints=" + String.format("%.2f", withCheckpoints[0] / 1e6 / UNDO_COUNT) + "ms"
+                            + " (" + withCheckpoints[1] + " strokes replayed)");
+                    // 每个分块选需要重放的笔画较少的一种，有检查点时重放的笔画不会更多；耗时只记录不断言
+                    assertTrue(withCheckpoints[1] <= regionOnly[1]);
+                }
+            }
+        });
+    }
+
+    /** @return {UNDO_COUNT 次撤销的总耗时（纳秒）, 重放的笔画总数} */
+    private static long[] measureUndo(DrawingSurfaceView view, int strokeCount, float width, float height) {
+        view.setStrokes(Collections.emptyList());
+        Random random = new Random(strokeCount);
+        for (int i = 0; i < strokeCount; i++) {
+            view.addStroke(randomStroke(random, width, height));
+        }
+        long replayed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < UNDO_COUNT; i++) {
+            view.undo();
+            replayed += view.getRenderStats().lastUndoReplayedStrokes;
+        }
+        return new long[] {System.nanoTime() - start, replayed};
+    }
+
+    private static Stroke randomStroke(Random random, float width, float height) {
+        Stroke stroke = new Stroke(Color.BLACK, 6f, false);
+        float x = random.nextFloat() * width;
+        float y = random.nextFloat() * height;
+        for (int i = 0; i < 100; i++) {
+            x += random.nextFloat() * 8 - 4;
+            y += random.nextFloat() * 8 - 4;
+            stroke.addPoint(x, y, 0.3f + random.nextFloat() * 0.5f);
+        }
+        return stroke;
+    }
+}
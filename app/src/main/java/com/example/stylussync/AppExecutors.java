@@ -2,38 +2,75 @@ package com.example.stylussync;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
+
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
+/**
+ * 全局线程池，分三级：
+ * diskIO  文件读写，按文档 key 串行、不同文档并行；
+ * cpu     序列化、光栅化等计算；
+ * network 建立连接等网络操作。
+ * 各池线程数固定，任务带优先级，可取消，并统计排队深度与耗时。
+ */
 public class AppExecutors {
+    private static final String TAG = "AppExecutors";
+    private static final int DISK_IO_THREADS = 3;
+    private static final int NETWORK_THREADS = 2;
+
     private static final Object LOCK = new Object();
-    private static AppExecutors sInstance;
-    private final Executor diskIO;
+    private static volatile AppExecutors sInstance;
+    private final TaskPool diskIO;
+    private final TaskPool cpu;
+    private final TaskPool network;
     private final Executor mainThread;
 
-    private AppExecutors(Executor diskIO, Executor mainThread) {
+    private AppExecutors(TaskPool diskIO, TaskPool cpu, TaskPool network, Executor mainThread) {
         this.diskIO = diskIO;
+        this.cpu = cpu;
+        this.network = network;
         this.mainThread = mainThread;
     }
 
     public static AppExecutors getInstance() {
         if (sInstance == null) {
             synchronized (LOCK) {
-                sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
-                        new MainThreadExecutor());
+                if (sInstance == null) {
+                    int cpuThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+                    sInstance = new AppExecutors(
+                            new TaskPool("diskIO", DISK_IO_THREADS, Thread.NORM_PRIORITY - 1),
+                            new TaskPool("cpu", cpuThreads, Thread.MIN_PRIORITY + 1),
+                            new TaskPool("network", NETWORK_THREADS, Thread.NORM_PRIORITY),
+                            new MainThreadExecutor());
+                }
             }
         }
         return sInstance;
     }
 
-    public Executor diskIO() {
+    public TaskPool diskIO() {
         return diskIO;
     }
 
+    public TaskPool cpu() {
+        return cpu;
+    }
+
+    public TaskPool network() {
+        return network;
+    }
+
     public Executor mainThread() {
         return mainThread;
     }
 
+    /** 把各池的排队深度与耗时统计输出到日志 */
+    public void logStats() {
+        Log.i(TAG, diskIO.getStats().toString());
+        Log.i(TAG, cpu.getStats().toString());
+        Log.i(TAG, network.getStats().toString());
+    }
+
     private static class MainThreadExecutor implements Executor {
         private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
         @Override
@@ -41,4 +78,4 @@ public class AppExecutors {
             mainThreadHandler.post(command);
         }
     }
-}
\ No newline at end of file
+}
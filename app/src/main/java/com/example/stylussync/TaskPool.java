@@ -0,0 +1,276 @@
+package com.example.stylussync;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 固定线程数的任务池，任务按优先级出队，同优先级先进先出。
+ * 带 key 的任务进入该 key 的串行队列：同一 key（例如同一个文档）的任务严格按提交顺序一个接一个执行，
+ * 不同 key 之间并行。提交返回 Future，可以取消尚未开始的任务。
+ * 统计排队深度、排队等待时间与执行时间。
+ */
+public class TaskPool implements Executor {
+
+    public enum Priority {
+        HIGH,    // 用户正在等待的操作：打开、保存
+        NORMAL,
+        LOW      // 后台维护：压缩、迁移、核对索引
+    }
+
+    /** 某一时刻的统计快照 */
+    public static final class Stats {
+        public String name;
+        public int threads;
+        public int queueDepth;      // 线程池队列中等待的任务数（不含串行队列中排在后面的任务）
+        public int serialBacklog;   // 各串行队列中尚未轮到的任务数
+        public int activeTasks;
+        public long submitted;
+        public long completed;
+        public long cancelled;
+        public long totalWaitNanos; // 从提交到开始执行
+        public long maxWaitNanos;
+        public long totalRunNanos;
+        public long maxRunNanos;
+
+        public double averageWaitMs() {
+            return completed == 0 ? 0 : totalWaitNanos / 1e6 / completed;
+        }
+
+        public double averageRunMs() {
+            return completed == 0 ? 0 : totalRunNanos / 1e6 / completed;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{threads=" + threads + ", queued=" + queueDepth + ", serialBacklog=" + serialBacklog
+                    + ", active=" + activeTasks + ", submitted=" + submitted + ", completed=" + completed
+                    + ", cancelled=" + cancelled
+                    + ", wait(avg/max)=" + String.format("%.2f/%.2f", averageWaitMs(), maxWaitNanos / 1e6) + "ms"
+                    + ", run(avg/max)=" + String.format("%.2f/%.2f", averageRunMs(), maxRunNanos / 1e6) + "ms}";
+        }
+    }
+
+    private final String name;
+    private final int threadCount;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    // key -> 该 key 的串行队列；队列为空且没有任务在执行时移除
+    private final Map<String, SerialQueue> serialQueues = new HashMap<>();
+
+    private final Object statsLock = new Object();
+    private final Stats stats = new Stats();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+
+    /**
+     * @param threadPriority java.lang.Thread 的优先级，后台池应低于 {@link Thread#NORM_PRIORITY}
+     */
+    public TaskPool(String name, int threads, int threadPriority) {
+        this.name = name;
+        this.threadCount = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setPriority(threadPriority);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        stats.name = name;
+        stats.threads = threadCount;
+    }
+
+    /** 以 NORMAL 优先级执行，兼容 Executor 的用法 */
+    @Override
+    public void execute(Runnable command) {
+        submit(command, Priority.NORMAL);
+    }
+
+    public Future<?> submit(Runnable command, Priority priority) {
+        Task task = new Task(command, priority);
+        countSubmitted();
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * 提交到 key 对应的串行队列。同一 key 的任务按提交顺序依次执行；
+     * 队首任务的优先级决定它在线程池中的排队位置。
+     */
+    public Future<?> submit(String key, Runnable command, Priority priority) {
+        Task task = new Task(command, priority);
+        countSubmitted();
+        synchronized (serialQueues) {
+            SerialQueue queue = serialQueues.get(key);
+            if (queue == null) {
+                queue = new SerialQueue(key);
+                serialQueues.put(key, queue);
+            }
+            queue.pending.add(task);
+            if (!queue.running) {
+                queue.scheduleNextLocked();
+            }
+        }
+        return task;
+    }
+
+    /** 绑定优先级的 Executor 视图 */
+    public Executor withPriority(Priority priority) {
+        return command -> submit(command, priority);
+    }
+
+    /** 绑定 key 和优先级的串行 Executor 视图 */
+    public Executor serial(String key, Priority priority) {
+        return command -> submit(key, command, priority);
+    }
+
+    public Stats getStats() {
+        Stats snapshot = new Stats();
+        synchronized (statsLock) {
+            snapshot.name = stats.name;
+            snapshot.threads = stats.threads;
+            snapshot.submitted = stats.submitted;
+            snapshot.completed = stats.completed;
+            snapshot.cancelled = stats.cancelled;
+            snapshot.totalWaitNanos = stats.totalWaitNanos;
+            snapshot.maxWaitNanos = stats.maxWaitNanos;
+            snapshot.totalRunNanos = stats.totalRunNanos;
+            snapshot.maxRunNanos = stats.maxRunNanos;
+        }
+        snapshot.queueDepth = executor.getQueue().size();
+        snapshot.activeTasks = activeTasks.get();
+        synchronized (serialQueues) {
+            for (SerialQueue queue : serialQueues.values()) {
+                snapshot.serialBacklog += queue.pending.size();
+            }
+        }
+        return snapshot;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void countSubmitted() {
+        synchronized (statsLock) {
+            stats.submitted++;
+        }
+    }
+
+    /**
+     * 带优先级和入队时间的任务；取消后 run() 什么都不做。
+     * 与普通 Executor 一样，任务抛出的异常交给线程的 UncaughtExceptionHandler，不会被 Future 吞掉。
+     */
+    private final class Task extends FutureTask<Void> implements Comparable<Task> {
+        final Priority priority;
+        final long order = sequence.getAndIncrement();
+        final long enqueuedNanos = System.nanoTime();
+        // 串行队列的外层调度任务不计入统计，统计记在它执行的内层任务上
+        final boolean recordStats;
+
+        Task(Runnable command, Priority priority) {
+            this(command, priority, true);
+        }
+
+        Task(Runnable command, Priority priority, boolean recordStats) {
+            super(command, null);
+            this.priority = priority;
+            this.recordStats = recordStats;
+        }
+
+        @Override
+        public void run() {
+            if (!recordStats) {
+                super.run();
+                return;
+            }
+            if (isCancelled()) {
+                synchronized (statsLock) {
+                    stats.cancelled++;
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            activeTasks.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                activeTasks.decrementAndGet();
+                long end = System.nanoTime();
+                synchronized (statsLock) {
+                    stats.completed++;
+                    long wait = start - enqueuedNanos;
+                    long run = end - start;
+                    stats.totalWaitNanos += wait;
+                    stats.maxWaitNanos = Math.max(stats.maxWaitNanos, wait);
+                    stats.totalRunNanos += run;
+                    stats.maxRunNanos = Math.max(stats.maxRunNanos, run);
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    /** 一个 key 的串行队列：同一时刻最多只有一个任务在线程池中 */
+    private final class SerialQueue {
+        final String key;
+        final ArrayDeque<Task> pending = new ArrayDeque<>();
+        boolean running;
+
+        SerialQueue(String key) {
+            this.key = key;
+        }
+
+        /** 持有 serialQueues 锁时调用 */
+        void scheduleNextLocked() {
+            Task next = pending.poll();
+            if (next == null) {
+                running = false;
+                serialQueues.remove(key);
+                return;
+            }
+            running = true;
+            // 外层任务沿用队首任务的优先级与入队时间，执行完后再调度下一个
+            Task runner = new Task(() -> {
+                try {
+                    next.run();
+                } finally {
+                    synchronized (serialQueues) {
+                        scheduleNextLocked();
+                    }
+                }
+            }, next.priority, false);
+            executor.execute(runner);
+        }
+    }
+}
@@ -2,11 +2,13 @@ package com.example.stylussync.activity;
 
 import android.content.Intent;
 import android.graphics.Color;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.text.InputType;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ScrollView;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -14,36 +16,83 @@ import android.widget.Toast;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.stylussync.AppExecutors;
 import com.example.stylussync.R;
+import com.example.stylussync.TaskPool;
+import com.example.stylussync.data.EraserCompactor;
 import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeSimplifier;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Gauge;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
+import com.example.stylussync.network.RemoteStrokeReceiver;
+import com.example.stylussync.network.SnapshotSync;
+import com.example.stylussync.network.StrokeStreamer;
 import com.example.stylussync.network.WebSocketClient;
+import com.example.stylussync.network.WireMessage;
 import com.example.stylussync.storage.FileRepository;
+import com.example.stylussync.storage.PageCache;
+import com.example.stylussync.storage.PageManifest;
 import com.example.stylussync.view.DrawingSurfaceView;
-import com.google.gson.Gson;
+import com.example.stylussync.view.KalmanMotionPredictor;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class DrawingActivity extends AppCompatActivity
-        implements DrawingSurfaceView.DrawingCallback, WebSocketClient.StatusListener {
+        implements DrawingSurfaceView.DrawingCallback, WebSocketClient.StatusListener, RemoteStrokeReceiver.Listener {
 
     private static final String TAG = "DrawingActivity";
+    // 未确认的发送消息持久化在这里，下次打开时继续发送
+    private static final String OUTBOUND_QUEUE_FILE = "outbound_queue.bin";
+    // 调试界面导出的指标文件，位于应用的外部文件目录，可以用 adb pull 取出
+    private static final String METRICS_FILE = "metrics.json";
+    // 实时流式发送：绘制过程中就把点分批推送给服务器，而不是等抬笔后整笔发送
+    private static final boolean LIVE_STREAMING_ENABLED = true;
+    // 撤销窗口以下积累了这么多橡皮擦时在后台压缩一次；保存时只要有就压缩
+    private static final int COMPACTION_ERASER_THRESHOLD = 16;
+
+    private static final Histogram COMPACTION_US = MetricsRegistry.getInstance().histogram("history.compaction_us");
+    private static final Counter COMPACTION_POINTS_REMOVED = MetricsRegistry.getInstance().counter("history.compaction_points_removed");
+    private static final Counter COMPACTION_ERASERS_REMOVED = MetricsRegistry.getInstance().counter("history.compaction_erasers_removed");
+    private static final Gauge PAGE_CACHE_BYTES = MetricsRegistry.getInstance().gauge("storage.page_cache_bytes");
 
     // UI & View
     private DrawingSurfaceView drawingSurfaceView;
     private Button btnEraser, btnUndo, btnRedo, btnSave;
-    private TextView textViewStatus;
+    private Button btnPrevPage, btnNextPage;
+    private TextView textViewStatus, textViewPage;
 
     // State
     private boolean isEraserActive = false;
     private String mCurrentFileName = null; // 用于跟踪当前文件名
+    private FileRepository.LoadHandle mLoadHandle; // 非空表示正在渐进加载
+    private boolean mCanUndo, mCanRedo;
+    // 上次写快照之后撤销栈被压缩过：日志回放出的笔画与内存中的不再逐笔相同，保存时要重写快照
+    private boolean mCompactedSinceSnapshot;
+    // 整体另存为进行中：期间禁止编辑和翻页，否则写出的页面与内存中的不一致
+    private boolean mSavingDocument;
+
+    // 多页文档：当前页的笔画在视图中，其余常驻页面在 mPageCache 中，其它页面只在磁盘上
+    private PageManifest mPages = PageManifest.single();
+    private int mPageIndex; // 当前页在页序中的位置
+    private PageCache mPageCache;
+    // 未保存的文档被换出内存的页面写到这个暂存文档，第一次需要时才分配
+    private String mScratchDocument;
 
     // Modules
     private FileRepository fileRepository;
     private WebSocketClient webSocketClient;
-    private Gson gson;
+    private StrokeStreamer strokeStreamer;
+    private RemoteStrokeReceiver remoteReceiver;
+    private SnapshotSync snapshotSync;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,12 +101,47 @@ public class DrawingActivity extends AppCompatActivity
 
         // --- 初始化模块 ---
         fileRepository = new FileRepository(this);
-        webSocketClient = new WebSocketClient();
+        webSocketClient = new WebSocketClient(new File(getFilesDir(), OUTBOUND_QUEUE_FILE));
         webSocketClient.setStatusListener(this);
-        gson = new Gson();
+        strokeStreamer = new StrokeStreamer(webSocketClient);
+        strokeStreamer.setBatchBudget(StrokeStreamer.DEFAULT_MAX_BATCH_DELAY_MS, StrokeStreamer.DEFAULT_MAX_BATCH_POINTS);
+        strokeStreamer.setSimplification(StrokeSimplifier.Config.NETWORK);
+        remoteReceiver = new RemoteStrokeReceiver(this);
+        webSocketClient.setInboundListener(remoteReceiver);
+        snapshotSync = new SnapshotSync(webSocketClient, new SnapshotSync.DocumentSource() {
+            @Override
+            public boolean isDocumentReady() {
+                return mLoadHandle == null;
+            }
+
+            @Override
+            public String documentKey() {
+                // 未保存的文档按各自的暂存文档区分，不同的新建绘图不会在服务器上合成一份
+                return FileRepository.pageFileName(pageDocument(), mPages.pageId(mPageIndex));
+            }
+
+            @Override
+            public List<Stroke> snapshotStrokes() {
+                return drawingSurfaceView.getStrokes();
+            }
+        }, this::onSyncProgress);
+        webSocketClient.setSyncHandler(snapshotSync);
+        mPageCache = new PageCache(new PageCache.Backend() {
+            @Override
+            public void loadPage(int pageId, PageCache.LoadCallback callback) {
+                fileRepository.loadPage(pageDocument(), pageId, TaskPool.Priority.LOW, callback::onPageLoaded);
+            }
+
+            @Override
+            public void spillPage(int pageId, List<Stroke> strokes) {
+                fileRepository.savePage(pageDocument(), pageId, strokes, null);
+            }
+        }, PageCache.DEFAULT_MAX_BYTES);
 
         // --- 初始化视图控件 ---
         drawingSurfaceView = findViewById(R.id.drawing_surface_view);
+        drawingSurfaceView.setCommitSimplification(StrokeSimplifier.Config.SAVE);
+        drawingSurfaceView.setMotionPredictor(new KalmanMotionPredictor(), DrawingSurfaceView.DEFAULT_PREDICTION_HORIZON_MS);
         textViewStatus = findViewById(R.id.text_view_status);
         Button btnConnect = findViewById(R.id.btn_connect);
         Button btnColorBlack = findViewById(R.id.btn_color_black);
@@ -70,17 +154,31 @@ public class DrawingActivity extends AppCompatActivity
         Button btnSaveAs = findViewById(R.id.btn_save_as);
         btnUndo = findViewById(R.id.btn_undo);
         btnRedo = findViewById(R.id.btn_redo);
+        btnPrevPage = findViewById(R.id.btn_prev_page);
+        btnNextPage = findViewById(R.id.btn_next_page);
+        Button btnAddPage = findViewById(R.id.btn_add_page);
+        textViewPage = findViewById(R.id.text_view_page);
 
         // 设置绘图视图的回调
         drawingSurfaceView.setCallback(this);
 
+        // 长按状态栏打开指标调试界面
+        textViewStatus.setOnLongClickListener(v -> {
+            showMetricsDialog();
+            return true;
+        });
+
         // --- 设置监听器 ---
         btnConnect.setOnClickListener(v -> showConnectDialog());
         btnColorBlack.setOnClickListener(v -> drawingSurfaceView.setPenColor(Color.BLACK));
         btnColorRed.setOnClickListener(v -> drawingSurfaceView.setPenColor(Color.RED));
         btnColorBlue.setOnClickListener(v -> drawingSurfaceView.setPenColor(Color.BLUE));
         btnClear.setOnClickListener(v -> {
+            if (isBusy()) {
+                return;
+            }
             drawingSurfaceView.clearCanvas();
+            journalClear();
             sendControlMessage("clear_canvas");
         });
         btnEraser.setOnClickListener(v -> {
@@ -93,9 +191,30 @@ public class DrawingActivity extends AppCompatActivity
         btnSave.setOnClickListener(v -> saveCurrentFile(false));
         btnSaveAs.setOnClickListener(v -> saveCurrentFile(true));
 
-        // 撤销与重做
-        btnUndo.setOnClickListener(v -> drawingSurfaceView.undo());
-        btnRedo.setOnClickListener(v -> drawingSurfaceView.redo());
+        // 翻页与插页
+        btnPrevPage.setOnClickListener(v -> showPage(mPageIndex - 1));
+        btnNextPage.setOnClickListener(v -> showPage(mPageIndex + 1));
+        btnAddPage.setOnClickListener(v -> addPage());
+
+        // 撤销与重做（只针对本地笔画，远端笔画不受影响）
+        btnUndo.setOnClickListener(v -> {
+            if (isBusy()) {
+                return;
+            }
+            DrawingSurfaceView.UndoResult undone = drawingSurfaceView.undo();
+            if (undone != null && mCurrentFileName != null) {
+                fileRepository.appendUndo(currentPageFile(), undone.remoteAbove);
+            }
+        });
+        btnRedo.setOnClickListener(v -> {
+            if (isBusy()) {
+                return;
+            }
+            Stroke redone = drawingSurfaceView.redo();
+            if (redone != null && mCurrentFileName != null) {
+                fileRepository.appendStroke(currentPageFile(), redone);
+            }
+        });
 
         seekBarStrokeWidth.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
@@ -112,32 +231,202 @@ public class DrawingActivity extends AppCompatActivity
         // 检查是否有文件需要加载
         Intent intent = getIntent();
         if (intent != null && intent.hasExtra(FileListActivity.EXTRA_FILENAME)) {
-            mCurrentFileName = intent.getStringExtra(FileListActivity.EXTRA_FILENAME);
+            // 打开期间迁移不会动这个文档；列表中的旧 .json 名若已迁移则换成新的 .ssd 名
+            mCurrentFileName = fileRepository.openDocument(intent.getStringExtra(FileListActivity.EXTRA_FILENAME));
             setTitle("加载中...");
-            fileRepository.loadDrawing(mCurrentFileName, strokes -> {
-                if (strokes != null) {
-                    setTitle(mCurrentFileName);
-                    drawingSurfaceView.setStrokes(strokes);
-                } else {
-                    mCurrentFileName = null;
-                    setTitle("加载失败");
-                    Toast.makeText(this, "加载文件失败", Toast.LENGTH_LONG).show();
-                }
-            });
+            fileRepository.markOpened(mCurrentFileName);
+            openDocument(mCurrentFileName);
         } else {
             setTitle("新建绘图");
         }
+        updatePageUI();
+    }
+
+    /** 先读页序，再渐进加载第一页；其它页面在翻到或作为相邻页预取时才读 */
+    private void openDocument(String fileName) {
+        drawingSurfaceView.setInputEnabled(false);
+        // 读页序期间先占住加载句柄，按钮保持禁用，退出时也能取消
+        final FileRepository.LoadHandle opening = new FileRepository.LoadHandle();
+        mLoadHandle = opening;
+        fileRepository.loadPageManifest(fileName, manifest -> {
+            if (opening.isCancelled()) {
+                return;
+            }
+            mLoadHandle = null;
+            mPages = manifest;
+            mPageIndex = 0;
+            enterPage(true);
+        });
+    }
+
+    /** 渐进加载一页：笔画分批到达时立即画出，加载完成前禁止编辑 */
+    private void loadPage(int pageId, boolean opening) {
+        drawingSurfaceView.setInputEnabled(false);
+        String pageName = FileRepository.pageFileName(pageDocument(), pageId);
+        mLoadHandle = fileRepository.loadDrawingProgressive(pageName, FileRepository.DEFAULT_LOAD_CHUNK_SIZE,
+                new FileRepository.ProgressiveLoadCallback() {
+                    @Override
+                    public void onStrokesLoaded(List<Stroke> strokes) {
+                        drawingSurfaceView.appendStrokes(strokes);
+                    }
+
+                    @Override
+                    public void onLoadFinished(FileRepository.LoadResult result) {
+                        mLoadHandle = null;
+                        drawingSurfaceView.setInputEnabled(true);
+                        onHistoryChanged(mCanUndo, mCanRedo);
+                        updatePageUI();
+                        if (result.success) {
+                            remoteReceiver.resetKnown(drawingSurfaceView.getStrokes());
+                            snapshotSync.documentChanged();
+                            updateTitle();
+                            Log.i(TAG, "Loaded " + result.strokeCount + " strokes, first stroke after "
+                                    + result.timeToFirstStrokeMs + "ms, total " + result.totalMs + "ms");
+                        } else if (opening) {
+                            fileRepository.closeDocument(mCurrentFileName);
+                            mCurrentFileName = null;
+                            mPages = PageManifest.single();
+                            mPageIndex = 0;
+                            mPageCache.clear();
+                            updatePageUI();
+                            setTitle("加载失败");
+                            Toast.makeText(DrawingActivity.this, "加载文件失败", Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(DrawingActivity.this, "加载页面失败", Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
+    }
+
+    /** 加载或整体另存为进行中，此时不接受编辑和翻页 */
+    private boolean isBusy() {
+        return mLoadHandle != null || mSavingDocument;
+    }
+
+    private void updateTitle() {
+        setTitle(mCurrentFileName != null ? mCurrentFileName : "新建绘图");
+    }
+
+    // --- 多页 ---
+
+    /** 页面所在的文档：已保存的文档本身，未保存时为暂存文档 */
+    private String pageDocument() {
+        if (mCurrentFileName != null) {
+            return mCurrentFileName;
+        }
+        if (mScratchDocument == null) {
+            mScratchDocument = fileRepository.createScratchDocument();
+        }
+        return mScratchDocument;
+    }
+
+    /** 当前页的文件，日志追加和刷盘都只针对这一页 */
+    private String currentPageFile() {
+        return FileRepository.pageFileName(mCurrentFileName, mPages.pageId(mPageIndex));
+    }
+
+    private void showPage(int index) {
+        if (isBusy() || index < 0 || index >= mPages.size() || index == mPageIndex) {
+            return;
+        }
+        leavePage();
+        mPageIndex = index;
+        enterPage(false);
+    }
+
+    /** 在当前页之后插入空白页并翻过去；已保存的文档只新建这一页的文件并重写页序清单 */
+    private void addPage() {
+        if (isBusy()) {
+            return;
+        }
+        int pageId = mPages.insertPage(mPageIndex + 1);
+        List<Stroke> empty = new ArrayList<>();
+        if (mCurrentFileName != null) {
+            fileRepository.savePage(mCurrentFileName, pageId, empty, null);
+            fileRepository.savePageManifest(mCurrentFileName, mPages, null);
+        }
+        mPageCache.put(pageId, empty, mCurrentFileName == null);
+        showPage(mPageIndex + 1);
+    }
+
+    /**
+     * 当前页交还给页面缓存。已保存的文档把这一页落盘：平时只需把日志刷盘，压缩过则只重写这一页的快照。
+     * 撤销历史不跨页保留。
+     */
+    private void leavePage() {
+        int pageId = mPages.pageId(mPageIndex);
+        List<Stroke> strokes = drawingSurfaceView.getStrokes();
+        if (mCurrentFileName != null) {
+            if (mCompactedSinceSnapshot) {
+                fileRepository.savePage(mCurrentFileName, pageId, strokes, null);
+            } else {
+                fileRepository.syncJournal(currentPageFile(), null);
+            }
+        }
+        mCompactedSinceSnapshot = false;
+        mPageCache.put(pageId, strokes, mCurrentFileName == null);
+    }
+
+    /** 显示 mPageIndex 处的页面：已在内存中的直接换上，否则从磁盘渐进加载；然后钉住并预取相邻页 */
+    private void enterPage(boolean opening) {
+        int pageId = mPages.pageId(mPageIndex);
+        List<Integer> neighbors = new ArrayList<>(2);
+        if (mPageIndex > 0) {
+            neighbors.add(mPages.pageId(mPageIndex - 1));
+        }
+        if (mPageIndex + 1 < mPages.size()) {
+            neighbors.add(mPages.pageId(mPageIndex + 1));
+        }
+        mPageCache.setPinned(neighbors);
+        List<Stroke> strokes = mPageCache.take(pageId);
+        if (strokes != null) {
+            drawingSurfaceView.setStrokes(strokes);
+            remoteReceiver.resetKnown(strokes);
+        } else {
+            drawingSurfaceView.setStrokes(null);
+            loadPage(pageId, opening);
+        }
+        // 已在内存中的页面立即同步；需要加载的页面先取消上一页的同步，加载完再开始
+        snapshotSync.documentChanged();
+        // 当前页的加载是 HIGH 优先级，预取排在它后面
+        for (int neighbor : neighbors) {
+            mPageCache.prefetch(neighbor);
+        }
+        updatePageUI();
+    }
+
+    private void updatePageUI() {
+        textViewPage.setText((mPageIndex + 1) + " / " + mPages.size());
+        btnPrevPage.setEnabled(mPageIndex > 0 && !isBusy());
+        btnNextPage.setEnabled(mPageIndex + 1 < mPages.size() && !isBusy());
+        PAGE_CACHE_BYTES.set(mPageCache.getStats().residentBytes);
+        // 加载或另存为期间远端笔画先排队，结束后再应用到当前页
+        remoteReceiver.setPaused(isBusy());
     }
 
     private void saveCurrentFile(boolean forceSaveAs) {
+        if (isBusy()) {
+            return;
+        }
         if (mCurrentFileName != null && !forceSaveAs) {
-            // 直接保存到当前文件
-            fileRepository.saveDrawing(drawingSurfaceView.getStrokes(), mCurrentFileName, success -> {
-                if (success) {
-                    Toast.makeText(this, "已保存: " + mCurrentFileName, Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
+            compactHistory(true, () -> {
+                if (mCurrentFileName == null) {
+                    return;
                 }
+                if (mCompactedSinceSnapshot) {
+                    // 压缩后的笔画只在内存中，只重写当前页的快照（同时丢弃这一页的日志）
+                    saveCurrentPage();
+                    return;
+                }
+                // 当前文件的每次修改都已追加到所在页面的日志，保存只需把当前页的日志刷到磁盘；
+                // 其它页面离开时已经刷过
+                fileRepository.syncJournal(currentPageFile(), success -> {
+                    if (success) {
+                        Toast.makeText(this, "已保存: " + mCurrentFileName, Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
+                    }
+                });
             });
         } else {
             // 另存为或首次保存
@@ -145,6 +434,90 @@ public class DrawingActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * 在 cpu 池上压缩撤销窗口以下的橡皮擦，完成后在主线程换回结果并执行 then（可为 null）。
+     * @param onSave 保存前调用：只要有未处理的橡皮擦就压缩，优先级也更高；否则只在积累足够多时才做
+     */
+    private void compactHistory(boolean onSave, Runnable then) {
+        DrawingSurfaceView.CompactionTask task = null;
+        if (onSave || drawingSurfaceView.getPendingEraserCount() >= COMPACTION_ERASER_THRESHOLD) {
+            task = drawingSurfaceView.beginCompaction();
+        }
+        if (task == null) {
+            if (then != null) {
+                then.run();
+            }
+            return;
+        }
+        final DrawingSurfaceView.CompactionTask compaction = task;
+        AppExecutors.getInstance().cpu().submit(() -> {
+            long start = System.nanoTime();
+            EraserCompactor.Result result = EraserCompactor.compact(compaction.strokes, compaction.firstEraser);
+            COMPACTION_US.recordSinceNanos(start);
+            AppExecutors.getInstance().mainThread().execute(() -> {
+                if (drawingSurfaceView.applyCompaction(compaction, result)) {
+                    mCompactedSinceSnapshot = true;
+                    COMPACTION_POINTS_REMOVED.add(result.pointsBefore - result.pointsAfter);
+                    COMPACTION_ERASERS_REMOVED.add(result.erasersRemoved);
+                }
+                if (then != null) {
+                    then.run();
+                }
+            });
+        }, onSave ? TaskPool.Priority.HIGH : TaskPool.Priority.LOW);
+    }
+
+    /** 只重写当前页的快照，文档的其它页面不动 */
+    private void saveCurrentPage() {
+        final int pageIndex = mPageIndex;
+        fileRepository.savePage(mCurrentFileName, mPages.pageId(mPageIndex), drawingSurfaceView.getStrokes(), success -> {
+            if (success) {
+                if (pageIndex == mPageIndex) {
+                    mCompactedSinceSnapshot = false;
+                }
+                Toast.makeText(this, "已保存: " + mCurrentFileName, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * 把整个文档（所有页面）另存为 fileName，成功后记为当前文件。
+     * 内存中的页面直接写出，其余页面由后台从原文档或暂存文档逐页复制。
+     */
+    private void saveDocumentAs(String fileName) {
+        Map<Integer, List<Stroke>> resident = mPageCache.residentPages();
+        resident.put(mPages.pageId(mPageIndex), drawingSurfaceView.getStrokes());
+        String source = mCurrentFileName != null ? mCurrentFileName : mScratchDocument;
+        mSavingDocument = true;
+        drawingSurfaceView.setInputEnabled(false);
+        onHistoryChanged(mCanUndo, mCanRedo);
+        updatePageUI();
+        fileRepository.saveDocumentAs(source, mPages, resident, fileName, success -> {
+            mSavingDocument = false;
+            drawingSurfaceView.setInputEnabled(true);
+            onHistoryChanged(mCanUndo, mCanRedo);
+            updatePageUI();
+            if (success) {
+                if (mCurrentFileName != null) {
+                    fileRepository.closeDocument(mCurrentFileName);
+                }
+                mCurrentFileName = fileRepository.openDocument(FileRepository.resolveFileName(fileName));
+                mCompactedSinceSnapshot = false;
+                mPageCache.markAllClean();
+                if (mScratchDocument != null) {
+                    fileRepository.deleteScratchDocument(mScratchDocument);
+                    mScratchDocument = null;
+                }
+                setTitle(mCurrentFileName);
+                Toast.makeText(this, "保存成功: " + mCurrentFileName, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     private void updateEraserButtonUI() {
         if (isEraserActive) {
             btnEraser.setText("画笔");
@@ -155,16 +528,90 @@ public class DrawingActivity extends AppCompatActivity
         }
     }
 
+    @Override
+    public void onStrokeStarted(Stroke stroke) {
+        // 服务器把这一笔转发回来时不再当作远端笔画
+        remoteReceiver.markKnown(stroke.id);
+        if (LIVE_STREAMING_ENABLED) {
+            strokeStreamer.beginStroke(stroke);
+        }
+    }
+
+    @Override
+    public void onStrokePointsAdded(Stroke stroke) {
+        if (LIVE_STREAMING_ENABLED) {
+            strokeStreamer.onPointsAdded();
+        }
+    }
+
+    /** 已有文件名的绘图，清空也追加到该文件的日志 */
+    private void journalClear() {
+        if (mCurrentFileName != null) {
+            fileRepository.appendClear(currentPageFile());
+        }
+    }
+
     @Override
     public void onNewStroke(Stroke stroke) {
-        Log.d(TAG, "New stroke finished. Points: " + stroke.points.size());
-        sendDrawMessage(stroke);
+        Log.d(TAG, "New stroke finished. Points: " + stroke.size());
+        // 本地保存服务器收到的那一份，快照同步时两边的内容哈希才一致
+        Stroke sent;
+        if (strokeStreamer.isStreaming()) {
+            sent = strokeStreamer.endStroke();
+        } else {
+            sent = sendDrawMessage(stroke);
+        }
+        if (sent != stroke) {
+            drawingSurfaceView.replaceNewestStroke(sent);
+        }
+        if (mCurrentFileName != null) {
+            fileRepository.appendStroke(currentPageFile(), sent);
+        }
+        compactHistory(false, null);
+    }
+
+    // --- 远端笔画：由 RemoteStrokeReceiver 在主线程分帧回调，应用到当前页，不再发回服务器 ---
+
+    @Override
+    public void onRemoteStrokeProgress(Stroke segment) {
+        drawingSurfaceView.updateRemoteStroke(segment);
+    }
+
+    @Override
+    public void onRemoteStroke(Stroke stroke) {
+        drawingSurfaceView.commitRemoteStroke(stroke);
+        if (mCurrentFileName != null) {
+            fileRepository.appendStroke(currentPageFile(), stroke);
+        }
+        compactHistory(false, null);
+    }
+
+    @Override
+    public void onRemoteStrokeAbandoned(long id) {
+        drawingSurfaceView.discardRemoteStroke(id);
+    }
+
+    @Override
+    public void onRemoteControl(String event) {
+        if ("clear_canvas".equals(event)) {
+            drawingSurfaceView.clearCanvas();
+            journalClear();
+        } else {
+            Log.i(TAG, "Ignoring remote control event: " + event);
+        }
+    }
+
+    @Override
+    public boolean isLocalStrokeActive() {
+        return drawingSurfaceView.isWriting();
     }
 
     @Override
     public void onHistoryChanged(boolean canUndo, boolean canRedo) {
-        btnUndo.setEnabled(canUndo);
-        btnRedo.setEnabled(canRedo);
+        mCanUndo = canUndo;
+        mCanRedo = canRedo;
+        btnUndo.setEnabled(canUndo && !isBusy());
+        btnRedo.setEnabled(canRedo && !isBusy());
     }
 
     @Override
@@ -172,6 +619,17 @@ public class DrawingActivity extends AppCompatActivity
         runOnUiThread(() -> textViewStatus.setText("状态: " + status));
     }
 
+    /** 连接后把服务器缺少的笔画补过去，进度显示在状态栏 */
+    private void onSyncProgress(int sentStrokes, int totalStrokes) {
+        if (totalStrokes == 0) {
+            textViewStatus.setText("状态: 已同步");
+        } else if (sentStrokes < totalStrokes) {
+            textViewStatus.setText("状态: 同步中 " + sentStrokes + " / " + totalStrokes + " 笔");
+        } else {
+            textViewStatus.setText("状态: 已同步 " + totalStrokes + " 笔");
+        }
+    }
+
     private void showConnectDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("连接到服务器");
@@ -189,6 +647,43 @@ public class DrawingActivity extends AppCompatActivity
         builder.show();
     }
 
+    /** 调试界面：显示当前指标的 JSON，可以导出到文件 */
+    private void showMetricsDialog() {
+        TextView content = new TextView(this);
+        content.setTypeface(Typeface.MONOSPACE);
+        content.setTextSize(11);
+        content.setTextIsSelectable(true);
+        content.setText(MetricsRegistry.getInstance().toJson());
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        content.setPadding(padding, padding, padding, padding);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(content);
+
+        new AlertDialog.Builder(this)
+                .setTitle("性能指标")
+                .setView(scrollView)
+                .setPositiveButton("导出到文件", (dialog, which) -> dumpMetrics())
+                .setNeutralButton("清零", (dialog, which) -> MetricsRegistry.getInstance().reset())
+                .setNegativeButton("关闭", null)
+                .show();
+    }
+
+    private void dumpMetrics() {
+        File file = new File(getExternalFilesDir(null), METRICS_FILE);
+        AppExecutors.getInstance().diskIO().submit(() -> {
+            boolean success = false;
+            try {
+                MetricsRegistry.getInstance().dumpToFile(file);
+                success = true;
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing metrics", e);
+            }
+            final boolean result = success;
+            AppExecutors.getInstance().mainThread().execute(() -> Toast.makeText(this,
+                    result ? "已导出: " + file.getAbsolutePath() : "导出失败", Toast.LENGTH_LONG).show());
+        }, TaskPool.Priority.LOW);
+    }
+
     private void showSaveAsDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("另存为");
@@ -204,46 +699,55 @@ public class DrawingActivity extends AppCompatActivity
                 Toast.makeText(this, "文件名不能为空", Toast.LENGTH_SHORT).show();
                 return;
             }
-            fileRepository.saveDrawing(drawingSurfaceView.getStrokes(), fileName, success -> {
-                if (success) {
-                    String finalFileName = fileName.toLowerCase().endsWith(".json") ? fileName : fileName + ".json";
-                    mCurrentFileName = finalFileName;
-                    setTitle(mCurrentFileName);
-                    Toast.makeText(this, "保存成功: " + mCurrentFileName, Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
-                }
-            });
+            compactHistory(true, () -> saveDocumentAs(fileName));
         });
         builder.setNegativeButton("取消", (dialog, which) -> dialog.cancel());
         builder.show();
     }
 
-    private void sendDrawMessage(Stroke stroke) {
-        class DrawMessage {
-            final String type = "draw";
-            final Stroke data;
-            DrawMessage(Stroke s) { this.data = s; }
-        }
-        String json = gson.toJson(new DrawMessage(stroke));
-        webSocketClient.send(json);
+    /** @return 实际发出的（精简后的）笔画 */
+    private Stroke sendDrawMessage(Stroke stroke) {
+        Stroke sent = StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.NETWORK);
+        webSocketClient.send(WireMessage.draw(sent));
+        return sent;
     }
 
     private void sendControlMessage(String event) {
-        class ControlMessage {
-            final String type = "control";
-            final String event_name;
-            ControlMessage(String e) { this.event_name = e; }
+        webSocketClient.send(WireMessage.control(event));
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mCurrentFileName != null) {
+            fileRepository.syncJournal(currentPageFile(), null);
         }
-        String json = gson.toJson(new ControlMessage(event));
-        webSocketClient.send(json);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mLoadHandle != null) {
+            mLoadHandle.cancel();
+            mLoadHandle = null;
+        }
+        if (mScratchDocument != null) {
+            fileRepository.deleteScratchDocument(mScratchDocument);
+            mScratchDocument = null;
+        }
+        if (mCurrentFileName != null) {
+            fileRepository.closeDocument(mCurrentFileName);
+        }
+        Log.i(TAG, mPages.size() + " pages, " + mPageCache.getStats());
+        remoteReceiver.detach();
+        snapshotSync.stop();
         if (webSocketClient != null) {
+            webSocketClient.setInboundListener(null);
+            webSocketClient.setSyncHandler(null);
             webSocketClient.disconnect();
+            Log.i(TAG, webSocketClient.getStats().toString() + ", coalescedFlushes="
+                    + strokeStreamer.getCoalescedFlushCount() + ", skippedPoints=" + strokeStreamer.getSkippedPointCount());
         }
+        AppExecutors.getInstance().logStats();
     }
 }
\ No newline at end of file
@@ -3,7 +3,11 @@ package com.example.stylussync.activity;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -13,17 +17,34 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.stylussync.R;
+import com.example.stylussync.storage.DrawingQuery;
 import com.example.stylussync.storage.FileRepository;
+import com.example.stylussync.storage.ThumbnailCache;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 public class FileListActivity extends AppCompatActivity {
 
     public static final String EXTRA_FILENAME = "EXTRA_FILENAME";
+    // 每次多加载一页；滚动到距末尾不足半页时加载下一页
+    private static final int PAGE_SIZE = 50;
+    private static final DrawingQuery.Sort[] SORT_ORDERS = {
+            DrawingQuery.Sort.LAST_MODIFIED, DrawingQuery.Sort.LAST_OPENED, DrawingQuery.Sort.NAME};
+    private static final String[] SORT_LABELS = {"按修改时间", "最近打开", "按名称"};
 
     private FileRepository fileRepository;
     private FileListAdapter adapter;
     private RecyclerView recyclerView;
     private TextView emptyView;
+    private Button sortButton;
+
+    // 列表查询状态
+    private int sortIndex = 0;
+    private String filter = "";
+    private int loadedLimit = PAGE_SIZE;
+    private boolean hasMore = false;
+    private boolean queryInFlight = false;
+    // 只接受最新一次查询的结果
+    private int queryGeneration = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,9 +55,38 @@ public class FileListActivity extends AppCompatActivity {
         recyclerView = findViewById(R.id.recycler_view_files);
         emptyView = findViewById(R.id.text_view_empty);
         FloatingActionButton fab = findViewById(R.id.fab_new_drawing);
+        EditText filterEditText = findViewById(R.id.edit_text_filter);
+        sortButton = findViewById(R.id.btn_sort);
 
         setupRecyclerView();
 
+        filterEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+            @Override
+            public void afterTextChanged(Editable s) {
+                filter = s.toString();
+                loadedLimit = PAGE_SIZE;
+                loadFiles();
+            }
+        });
+        sortButton.setText(SORT_LABELS[sortIndex]);
+        sortButton.setOnClickListener(v -> {
+            sortIndex = (sortIndex + 1) % SORT_ORDERS.length;
+            sortButton.setText(SORT_LABELS[sortIndex]);
+            loadedLimit = PAGE_SIZE;
+            loadFiles();
+        });
+
+        // 旧的 .json 绘图在后台迁移为二进制格式，完成后刷新列表
+        fileRepository.migrateToBinary(migrated -> {
+            if (migrated > 0) {
+                loadFiles();
+            }
+        });
+
         fab.setOnClickListener(v -> {
             Intent intent = new Intent(FileListActivity.this, DrawingActivity.class);
             startActivity(intent);
@@ -46,13 +96,30 @@ public class FileListActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        // 先用持久化的索引立即显示，再在后台与目录核对，有变化时刷新
         loadFiles();
+        fileRepository.reconcileIndex(changed -> {
+            if (changed) {
+                loadFiles();
+            }
+        });
     }
 
     private void setupRecyclerView() {
-        adapter = new FileListAdapter();
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new FileListAdapter(ThumbnailCache.getInstance(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                if (hasMore && !queryInFlight
+                        && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PAGE_SIZE / 2) {
+                    loadedLimit += PAGE_SIZE;
+                    loadFiles();
+                }
+            }
+        });
 
         adapter.setOnItemClickListener(new FileListAdapter.OnItemClickListener() {
             @Override
@@ -77,11 +144,7 @@ public class FileListActivity extends AppCompatActivity {
                     fileRepository.deleteDrawing(fileName, success -> {
                         if (success) {
                             Toast.makeText(this, "已删除 " + fileName, Toast.LENGTH_SHORT).show();
-                            adapter.removeItem(position);
-                            // 检查列表是否为空
-                            if (adapter.getItemCount() == 0) {
-                                emptyView.setVisibility(View.VISIBLE);
-                            }
+                            loadFiles();
                         } else {
                             Toast.makeText(this, "删除失败", Toast.LENGTH_SHORT).show();
                         }
@@ -91,10 +154,20 @@ public class FileListActivity extends AppCompatActivity {
                 .show();
     }
 
+    /** 查询前 loadedLimit 条，结果经 DiffUtil 更新列表 */
     private void loadFiles() {
-        fileRepository.listDrawingFiles(files -> {
-            adapter.setFiles(files);
-            if (files == null || files.length == 0) {
+        final int generation = ++queryGeneration;
+        queryInFlight = true;
+        DrawingQuery query = new DrawingQuery(SORT_ORDERS[sortIndex],
+                SORT_ORDERS[sortIndex] != DrawingQuery.Sort.NAME, filter, 0, loadedLimit);
+        fileRepository.queryDrawings(query, page -> {
+            if (generation != queryGeneration) {
+                return;
+            }
+            queryInFlight = false;
+            hasMore = page.hasMore(page.items.size());
+            adapter.submitList(page.items);
+            if (page.items.isEmpty() && filter.trim().isEmpty()) {
                 recyclerView.setVisibility(View.GONE);
                 emptyView.setVisibility(View.VISIBLE);
             } else {
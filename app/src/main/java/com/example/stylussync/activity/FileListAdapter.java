@@ -5,24 +5,36 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.stylussync.R;
+import com.example.stylussync.storage.DrawingMetadata;
+import com.example.stylussync.storage.ThumbnailCache;
+import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileViewHolder> {
 
-    private List<String> fileList = new ArrayList<>();
+    private final List<DrawingMetadata> items = new ArrayList<>();
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
     private OnItemClickListener listener;
+    private final ThumbnailCache thumbnailCache;
 
     public interface OnItemClickListener {
         void onItemClick(String fileName);
         void onDeleteClick(String fileName, int position);
     }
 
+    public FileListAdapter(ThumbnailCache thumbnailCache) {
+        this.thumbnailCache = thumbnailCache;
+    }
+
     public void setOnItemClickListener(OnItemClickListener listener) {
         this.listener = listener;
     }
@@ -36,8 +48,12 @@ public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileVi
 
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        String fileName = fileList.get(position);
+        DrawingMetadata metadata = items.get(position);
+        String fileName = metadata.name;
         holder.fileNameTextView.setText(fileName);
+        holder.detailsTextView.setText(String.format(Locale.getDefault(), "%d 笔 · %s · %s",
+                metadata.strokeCount, formatSize(metadata.size), dateFormat.format(new Date(metadata.lastModified))));
+        bindThumbnail(holder, fileName);
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
                 listener.onItemClick(fileName);
@@ -50,34 +66,89 @@ public class FileListAdapter extends RecyclerView.Adapter<FileListAdapter.FileVi
         });
     }
 
+    // 缩略图在后台生成，复用的 ViewHolder 先取消上一次绑定的请求，避免旧图覆盖新条目
+    private void bindThumbnail(FileViewHolder holder, String fileName) {
+        holder.cancelThumbnail();
+        holder.thumbnailView.setImageDrawable(null);
+        ViewGroup.LayoutParams params = holder.thumbnailView.getLayoutParams();
+        holder.thumbnailRequest = thumbnailCache.load(fileName, params.width, params.height,
+                bitmap -> holder.thumbnailView.setImageBitmap(bitmap));
+    }
+
     @Override
-    public int getItemCount() {
-        return fileList.size();
+    public void onViewRecycled(@NonNull FileViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.cancelThumbnail();
+        holder.thumbnailView.setImageDrawable(null);
     }
 
-    public void setFiles(String[] files) {
-        this.fileList.clear();
-        if (files != null) {
-            Collections.addAll(this.fileList, files);
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.getDefault(), "%.1f KB", bytes / 1024f);
         }
-        notifyDataSetChanged();
+        return String.format(Locale.getDefault(), "%.1f MB", bytes / (1024f * 1024f));
     }
 
-    public void removeItem(int position) {
-        if (position >= 0 && position < fileList.size()) {
-            fileList.remove(position);
-            notifyItemRemoved(position);
-        }
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * 用 DiffUtil 计算新旧列表的差异，只刷新变化的行。
+     * 列表是分页加载的，长度只有已加载的几页，在主线程计算足够快。
+     */
+    public void submitList(List<DrawingMetadata> newItems) {
+        List<DrawingMetadata> oldItems = new ArrayList<>(items);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).name.equals(newItems.get(newPosition).name);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).equals(newItems.get(newPosition));
+            }
+        });
+        items.clear();
+        items.addAll(newItems);
+        diff.dispatchUpdatesTo(this);
     }
 
     static class FileViewHolder extends RecyclerView.ViewHolder {
         TextView fileNameTextView;
+        TextView detailsTextView;
         ImageButton deleteButton;
+        ImageView thumbnailView;
+        ThumbnailCache.Request thumbnailRequest;
 
         FileViewHolder(@NonNull View itemView) {
             super(itemView);
             fileNameTextView = itemView.findViewById(R.id.text_view_filename);
             deleteButton = itemView.findViewById(R.id.btn_delete_file);
+            detailsTextView = itemView.findViewById(R.id.text_view_details);
+            thumbnailView = itemView.findViewById(R.id.image_view_thumbnail);
+        }
+
+        void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.example.stylussync.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** 单调递增的计数，多线程同时累加时几乎没有竞争 */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
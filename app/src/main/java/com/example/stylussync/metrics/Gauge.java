@@ -0,0 +1,24 @@
+package com.example.stylussync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 当前值，例如队列深度；只保留最后一次设置的值 */
+public final class Gauge {
+
+    private final AtomicLong value = new AtomicLong();
+
+    Gauge() {
+    }
+
+    public void set(long newValue) {
+        value.set(newValue);
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
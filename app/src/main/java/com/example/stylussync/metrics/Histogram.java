@@ -0,0 +1,136 @@
+package com.example.stylussync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 非负整数值的分布，用于耗时（微秒）和大小（字节）。
+ * 按 HDR Histogram 的思路分桶：小于 {@value #SUB_BUCKETS} 的值每个值一个桶，
+ * 之后每个 2 的幂区间再等分成 {@value #SUB_BUCKETS} 个桶，相对误差不超过 1/{@value #SUB_BUCKETS}（约 6%），
+ * 整个 long 范围共 {@value #BUCKET_COUNT} 个桶，固定内存、无需预设上限。
+ * 记录一个值只是几次原子加，可以在热路径上常开；分位数在快照时计算。
+ */
+public final class Histogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram() {
+    }
+
+    /** 统计快照 */
+    public static final class Snapshot {
+        public long count;
+        public long min;
+        public long max;
+        public double mean;
+        public long p50;
+        public long p90;
+        public long p99;
+        public long p999;
+    }
+
+    /** 记录一个值，负数按 0 记 */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // 重试
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 重试
+        }
+    }
+
+    /** 记录从 startNanos（{@link System#nanoTime()}）到现在的耗时，单位微秒 */
+    public void recordSinceNanos(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 快照。与并发的 record 之间不加锁，各字段可能相差正在记录的几个值。
+     * 分位数取所在桶的中点，并限制在 [min, max] 内。
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+            total += copy[i];
+        }
+        snapshot.count = total;
+        if (total == 0) {
+            return snapshot;
+        }
+        snapshot.min = min.get();
+        snapshot.max = max.get();
+        snapshot.mean = (double) sum.get() / count.get();
+        snapshot.p50 = percentile(copy, total, 0.50, snapshot.min, snapshot.max);
+        snapshot.p90 = percentile(copy, total, 0.90, snapshot.min, snapshot.max);
+        snapshot.p99 = percentile(copy, total, 0.99, snapshot.min, snapshot.max);
+        snapshot.p999 = percentile(copy, total, 0.999, snapshot.min, snapshot.max);
+        return snapshot;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    private static long percentile(long[] buckets, long total, double quantile, long min, long max) {
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                long lower = bucketLowerBound(i);
+                long width = bucketLowerBound(i + 1) - lower;
+                return Math.max(min, Math.min(max, lower + width / 2));
+            }
+        }
+        return max;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        if (index >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.stylussync.metrics;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的指标注册表：计数（{@link Counter}）、当前值（{@link Gauge}）和分布（{@link Histogram}）。
+ * 按名字取得的指标对象在进程内唯一，热路径上应该把它存在字段里，之后的记录不再查表。
+ * 名字用点分隔模块，带单位后缀，例如 storage.save_us、net.message_bytes。
+ * 可以随时导出为 JSON（调试界面或写文件），导出不影响正在进行的记录。纯 Java，线程安全。
+ */
+public class MetricsRegistry {
+
+    private static final Object LOCK = new Object();
+    private static volatile MetricsRegistry sInstance;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final long createdAtNanos = System.nanoTime();
+
+    public static MetricsRegistry getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new MetricsRegistry();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, key -> new Gauge());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /** 计数和分布清零，当前值保留；已取得的指标对象继续有效 */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 导出为 JSON，各类指标按名字排序：
+     * {"uptime_ms":…, "counters":{名字: 值}, "gauges":{名字: 值},
+     *  "histograms":{名字: {"count","min","mean","p50","p90","p99","p999","max"}}}
+     */
+    public void writeJson(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("uptime_ms").value((System.nanoTime() - createdAtNanos) / 1_000_000);
+
+        writer.name("counters").beginObject();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().get());
+        }
+        writer.endObject();
+
+        writer.name("gauges").beginObject();
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().get());
+        }
+        writer.endObject();
+
+        writer.name("histograms").beginObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue().snapshot();
+            writer.name(entry.getKey()).beginObject();
+            writer.name("count").value(snapshot.count);
+            if (snapshot.count > 0) {
+                writer.name("min").value(snapshot.min);
+                writer.name("mean").value(Math.round(snapshot.mean * 10) / 10.0);
+                writer.name("p50").value(snapshot.p50);
+                writer.name("p90").value(snapshot.p90);
+                writer.name("p99").value(snapshot.p99);
+                writer.name("p999").value(snapshot.p999);
+                writer.name("max").value(snapshot.max);
+            }
+            writer.endObject();
+        }
+        writer.endObject();
+
+        writer.endObject();
+        writer.flush();
+    }
+
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            // StringWriter 不会抛出
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /** 写入文件（先写临时文件再改名），在后台线程调用 */
+    public void dumpToFile(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writeJson(out);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.stylussync.network;
+
+/**
+ * 发送端的流量控制：根据 OkHttp 发送缓冲区（{@code WebSocket.queueSize()}）的字节数、
+ * 缓冲区的排空速度和最旧一条未确认消息的等待时间，估计新消息到达服务器还要多久，
+ * 据此给出拥塞等级。等级升降带滞回，避免在阈值附近来回切换。
+ * 只做计算，线程安全；由 {@link WebSocketClient} 周期性地喂样本。
+ */
+public class FlowController {
+
+    public enum Level {
+        NORMAL,     // 按正常预算分批发送，完整精度
+        CONGESTED,  // 合并批次：攒够更多点或抬笔时才发
+        SEVERE      // 合并批次并对点降采样
+    }
+
+    // OkHttp 缓冲区达到这么多字节就不再往里塞，剩下的留在 OutboundQueue 中
+    public static final long MAX_SOCKET_BUFFER_BYTES = 64 * 1024;
+
+    // 估计延迟超过 ENTER 阈值升级，低于 EXIT 阈值降级
+    private static final long CONGESTED_ENTER_MS = 150;
+    private static final long CONGESTED_EXIT_MS = 60;
+    private static final long SEVERE_ENTER_MS = 500;
+    private static final long SEVERE_EXIT_MS = 200;
+    // 排空速度的指数平均系数
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private Level level = Level.NORMAL;
+    private long bytesSent;             // 交给 OkHttp 的总字节数
+    private long lastDrained = -1;      // 上次采样时已经写到网络上的字节数
+    private long lastSampleNanos;
+    private long lastProgressNanos;     // 上次观察到缓冲区有排空的时间
+    private double drainBytesPerSecond; // 0 表示还没有测出来
+    private long estimatedDelayMs;
+    private long levelChanges;
+
+    /** 一条消息交给了 OkHttp */
+    public synchronized void onSent(int bytes) {
+        bytesSent += bytes;
+    }
+
+    /** 新连接：缓冲区从零开始，排空速度需要重新测量 */
+    public synchronized void reset() {
+        bytesSent = 0;
+        lastDrained = -1;
+        drainBytesPerSecond = 0;
+        estimatedDelayMs = 0;
+        setLevel(Level.NORMAL);
+    }
+
+    /**
+     * 采样一次并更新拥塞等级。
+     * @param queuedBytes OkHttp 中还没写出去的字节数
+     * @param oldestInFlightMs 最旧一条已发出、未确认消息的等待时间；服务器不确认时传 0
+     */
+    public synchronized Level update(long nowNanos, long queuedBytes, long oldestInFlightMs) {
+        long drained = bytesSent - queuedBytes;
+        if (lastDrained < 0) {
+            lastDrained = drained;
+            lastSampleNanos = nowNanos;
+            lastProgressNanos = nowNanos;
+        } else if (nowNanos > lastSampleNanos) {
+            long delta = drained - lastDrained;
+            if (delta > 0) {
+                double rate = delta * 1e9 / (nowNanos - lastSampleNanos);
+                drainBytesPerSecond = drainBytesPerSecond == 0
+                        ? rate : drainBytesPerSecond + RATE_SMOOTHING * (rate - drainBytesPerSecond);
+                lastProgressNanos = nowNanos;
+            }
+            lastDrained = drained;
+            lastSampleNanos = nowNanos;
+        }
+
+        long bufferDelayMs = 0;
+        if (queuedBytes > 0) {
+            // 一直没有排空时，至少已经卡了这么久
+            long stalledMs = (nowNanos - lastProgressNanos) / 1_000_000;
+            long drainMs = drainBytesPerSecond > 0 ? (long) (queuedBytes * 1000 / drainBytesPerSecond) : 0;
+            bufferDelayMs = Math.max(stalledMs, drainMs);
+        }
+        estimatedDelayMs = Math.max(bufferDelayMs, oldestInFlightMs);
+
+        switch (level) {
+            case NORMAL:
+                if (estimatedDelayMs > SEVERE_ENTER_MS) {
+                    setLevel(Level.SEVERE);
+                } else if (estimatedDelayMs > CONGESTED_ENTER_MS) {
+                    setLevel(Level.CONGESTED);
+                }
+                break;
+            case CONGESTED:
+                if (estimatedDelayMs > SEVERE_ENTER_MS) {
+                    setLevel(Level.SEVERE);
+                } else if (estimatedDelayMs < CONGESTED_EXIT_MS) {
+                    setLevel(Level.NORMAL);
+                }
+                break;
+            case SEVERE:
+                if (estimatedDelayMs < CONGESTED_EXIT_MS) {
+                    setLevel(Level.NORMAL);
+                } else if (estimatedDelayMs < SEVERE_EXIT_MS) {
+                    setLevel(Level.CONGESTED);
+                }
+                break;
+        }
+        return level;
+    }
+
+    public synchronized Level getLevel() {
+        return level;
+    }
+
+    public synchronized long getEstimatedDelayMs() {
+        return estimatedDelayMs;
+    }
+
+    public synchronized double getDrainBytesPerSecond() {
+        return drainBytesPerSecond;
+    }
+
+    public synchronized long getLevelChanges() {
+        return levelChanges;
+    }
+
+    private void setLevel(Level next) {
+        if (next != level) {
+            level = next;
+            levelChanges++;
+        }
+    }
+}
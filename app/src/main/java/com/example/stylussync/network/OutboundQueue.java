@@ -0,0 +1,445 @@
+package com.example.stylussync.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有界的发送队列。每条消息入队时分配一个递增的消息序号，发出后仍留在队列里，
+ * 直到服务器确认（累计确认：ack N 表示序号 <= N 的消息都已收到）才出队；
+ * 断线期间消息留在队列中，重连后按序号顺序重放。队列满时丢弃最旧的消息并计数。
+ * 出队总是发生在队首（确认、丢弃最旧的、不支持确认的服务器发出即出队），所以只需要记录一个"已出队到哪个序号"。
+ *
+ * 可选持久化：入队时在调用线程上把消息编码成 binary-v1 帧（此时笔画的点还不会被改动），
+ * 在串行的磁盘线程上追加到日志文件；出队也追加一条记录。进程被杀后重新创建队列时恢复未确认的消息。
+ * 日志只 flush 不 fsync，能挺过进程被杀，不保证挺过断电。
+ * <pre>
+ * 文件头  "SSQ1" | u64 会话 id
+ * 记录    u8 RECORD_MESSAGE | u64 序号 | u32 长度 | binary-v1 帧
+ *         u8 RECORD_TRIM    | u64 序号（该序号及之前的消息都已出队）
+ * </pre>
+ */
+public class OutboundQueue {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int MAGIC = 0x53535131; // "SSQ1"
+    private static final int RECORD_MESSAGE = 1;
+    private static final int RECORD_TRIM = 2;
+    // 队列清空且日志超过这个大小时截断日志；日志超过 COMPACT_FORCE_BYTES 时即使队列非空也重写
+    private static final long COMPACT_BYTES = 256 * 1024;
+    private static final long COMPACT_FORCE_BYTES = 4 * 1024 * 1024;
+
+    /** 某一时刻的统计快照 */
+    public static final class Stats {
+        public int depth;          // 队列中尚未确认的消息数
+        public int inFlight;       // 其中本次连接已发出、等待确认的
+        public long enqueued;
+        public long acknowledged;
+        public long dropped;       // 队列满时被丢弃的
+        public long retransmitted; // 重连后重放的
+        public long restored;      // 从磁盘恢复的
+        // 端到端延迟：从入队到服务器确认（服务器不确认时为到交给 OkHttp）
+        public long lastAckLagMs;
+        public long maxAckLagMs;
+        public long totalAckLagMs;
+
+        @Override
+        public String toString() {
+            return "OutboundQueue{depth=" + depth + ", inFlight=" + inFlight + ", enqueued=" + enqueued
+                    + ", acked=" + acknowledged + ", dropped=" + dropped + ", retransmitted=" + retransmitted
+                    + ", restored=" + restored + ", ackLag(last/avg/max)=" + lastAckLagMs + "/"
+                    + (acknowledged == 0 ? 0 : totalAckLagMs / acknowledged) + "/" + maxAckLagMs + "ms}";
+        }
+    }
+
+    /** 队列中的一条消息 */
+    static final class Entry {
+        final long seq;
+        final WireMessage message;
+        final byte[] frame;    // 持久化时的 binary-v1 帧，不持久化时为 null
+        final long enqueuedNanos = System.nanoTime();
+        boolean transmitted;   // 本次连接中已发出
+        long transmittedNanos;
+        int attempts;
+
+        Entry(long seq, WireMessage message, byte[] frame) {
+            this.seq = seq;
+            this.message = message;
+            this.frame = frame;
+        }
+    }
+
+    private final int capacity;
+    private final File file;
+    private final Executor diskExecutor;
+    private final BinaryWireCodec persistCodec = new BinaryWireCodec();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // 用时间做序号的起点，进程重启后序号依然递增，不需要先读盘
+    private long nextSeq = System.currentTimeMillis() * 1000;
+    private long trimmedSeq = -1;
+    private String session = Long.toHexString(new Random().nextLong());
+    private final Stats stats = new Stats();
+
+    // 仅在磁盘线程上访问
+    private DataOutputStream log;
+
+    /** 只在内存中排队 */
+    public OutboundQueue(int capacity) {
+        this(capacity, null, null);
+    }
+
+    /**
+     * @param file 持久化日志，为 null 时不持久化
+     * @param diskExecutor 串行执行的磁盘线程，file 非空时必须提供
+     */
+    public OutboundQueue(int capacity, File file, Executor diskExecutor) {
+        this.capacity = Math.max(1, capacity);
+        this.file = file;
+        this.diskExecutor = diskExecutor;
+        if (file == null) {
+            loaded.countDown();
+        } else {
+            diskExecutor.execute(this::restore);
+        }
+    }
+
+    /** 等待磁盘中的消息恢复完成；连接建立后、发送 hello 之前在网络线程上调用 */
+    public boolean awaitLoaded(long timeoutMs) {
+        try {
+            return loaded.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    /** 会话 id，持久化时跨进程保持不变，服务器据此对重放的消息去重 */
+    public synchronized String getSession() {
+        return session;
+    }
+
+    /** 已出队（确认或丢弃）的最大序号，没有时为 -1 */
+    public synchronized long getTrimmedSeq() {
+        return trimmedSeq;
+    }
+
+    /** 入队并返回分配的消息序号；队列已满时丢弃最旧的一条 */
+    public synchronized long enqueue(WireMessage message) {
+        long seq = nextSeq++;
+        byte[] frame = file != null ? persistCodec.encode(message) : null;
+        entries.addLast(new Entry(seq, message, frame));
+        stats.enqueued++;
+        if (file != null) {
+            diskExecutor.execute(() -> appendMessage(seq, frame));
+        }
+        if (entries.size() > capacity) {
+            Entry oldest = entries.peekFirst();
+            stats.dropped++;
+            trimLocked(oldest.seq);
+        }
+        return seq;
+    }
+
+    /**
+     * 取出本次连接中还没发出的消息（按序号顺序）并标记为已发出。
+     * 恢复完成之前返回空列表，避免新消息抢在旧消息前面发出。
+     */
+    synchronized List<Entry> takeUntransmitted() {
+        List<Entry> result = new ArrayList<>();
+        if (!isLoaded()) {
+            return result;
+        }
+        for (Entry entry : entries) {
+            if (entry.transmitted) {
+                continue;
+            }
+            entry.transmitted = true;
+            entry.transmittedNanos = System.nanoTime();
+            if (entry.attempts++ > 0) {
+                stats.retransmitted++;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /** takeUntransmitted 取出的消息中，这条及之后的实际没有发出（缓冲区满或连接正在关闭），撤销标记 */
+    synchronized void markUntransmitted(long fromSeq) {
+        for (Entry entry : entries) {
+            if (entry.seq >= fromSeq && entry.transmitted) {
+                entry.transmitted = false;
+                if (--entry.attempts > 0) {
+                    stats.retransmitted--;
+                }
+            }
+        }
+    }
+
+    /** 连接断开：所有未确认的消息都需要在下次连接时重发 */
+    public synchronized void resetTransmitted() {
+        for (Entry entry : entries) {
+            entry.transmitted = false;
+        }
+    }
+
+    /**
+     * 本次连接中已发出的消息都按已送达出队，用于不会确认的服务器：
+     * 等 hello_ack 期间先发出的消息，在确认对方是旧服务器（迟到窗口结束或连接断开）时出队，
+     * 它们不带序号，服务器无法去重，重发会被当成新消息。
+     */
+    public synchronized void acknowledgeTransmitted() {
+        long last = -1;
+        for (Entry entry : entries) {
+            // 已发出的总是队首的一段
+            if (!entry.transmitted) {
+                break;
+            }
+            last = entry.seq;
+        }
+        if (last >= 0) {
+            acknowledge(last);
+        }
+    }
+
+    /** 服务器累计确认到 seq；对不支持确认的服务器，消息发出后也通过它出队 */
+    public synchronized void acknowledge(long seq) {
+        long now = System.nanoTime();
+        for (Entry entry : entries) {
+            if (entry.seq > seq) {
+                break;
+            }
+            long lagMs = (now - entry.enqueuedNanos) / 1_000_000;
+            stats.acknowledged++;
+            stats.lastAckLagMs = lagMs;
+            stats.totalAckLagMs += lagMs;
+            stats.maxAckLagMs = Math.max(stats.maxAckLagMs, lagMs);
+        }
+        trimLocked(seq);
+    }
+
+    /** 最旧一条已发出、未确认的消息等了多久；没有时为 0 */
+    public synchronized long oldestInFlightMs(long nowNanos) {
+        Entry first = entries.peekFirst();
+        return first != null && first.transmitted ? (nowNanos - first.transmittedNanos) / 1_000_000 : 0;
+    }
+
+    /** 本次连接中还没发出的消息数 */
+    public synchronized int untransmittedCount() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (!entry.transmitted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Stats getStats() {
+        Stats snapshot = new Stats();
+        snapshot.depth = entries.size();
+        for (Entry entry : entries) {
+            if (entry.transmitted) {
+                snapshot.inFlight++;
+            }
+        }
+        snapshot.enqueued = stats.enqueued;
+        snapshot.acknowledged = stats.acknowledged;
+        snapshot.dropped = stats.dropped;
+        snapshot.retransmitted = stats.retransmitted;
+        snapshot.restored = stats.restored;
+        snapshot.lastAckLagMs = stats.lastAckLagMs;
+        snapshot.maxAckLagMs = stats.maxAckLagMs;
+        snapshot.totalAckLagMs = stats.totalAckLagMs;
+        return snapshot;
+    }
+
+    private void trimLocked(long seq) {
+        if (seq <= trimmedSeq) {
+            return;
+        }
+        trimmedSeq = seq;
+        while (!entries.isEmpty() && entries.peekFirst().seq <= seq) {
+            entries.removeFirst();
+        }
+        if (file != null) {
+            diskExecutor.execute(() -> appendTrim(seq));
+        }
+    }
+
+    // --- 持久化，以下方法只在磁盘线程上执行 ---
+
+    private void restore() {
+        List<Entry> restored = new ArrayList<>();
+        String restoredSession = null;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == MAGIC) {
+                    restoredSession = Long.toHexString(in.readLong());
+                    readRecords(in, restored);
+                }
+            } catch (IOException | RuntimeException e) {
+                // 文件头损坏：当作没有可恢复的消息
+            }
+        }
+        String currentSession;
+        synchronized (this) {
+            if (restoredSession != null) {
+                session = restoredSession;
+            }
+            currentSession = session;
+        }
+        // 重写日志，丢掉已出队的记录；本进程已入队的消息的追加任务排在后面
+        rewriteLog(restored, currentSession);
+        synchronized (this) {
+            // 恢复的消息比本进程入队的都旧，排在前面
+            for (int i = restored.size() - 1; i >= 0; i--) {
+                entries.addFirst(restored.get(i));
+            }
+            stats.restored = restored.size();
+            if (!restored.isEmpty()) {
+                nextSeq = Math.max(nextSeq, restored.get(restored.size() - 1).seq + 1);
+            }
+            while (entries.size() > capacity) {
+                stats.dropped++;
+                trimLocked(entries.peekFirst().seq);
+            }
+        }
+        loaded.countDown();
+    }
+
+    private void readRecords(DataInputStream in, List<Entry> restored) throws IOException {
+        long lastSeq = Long.MIN_VALUE;
+        while (true) {
+            int type;
+            long seq;
+            try {
+                type = in.readByte();
+                seq = in.readLong();
+                if (type == RECORD_MESSAGE) {
+                    int length = in.readInt();
+                    if (length < 0 || length > 64 * 1024 * 1024) {
+                        return;
+                    }
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    // 日志重写后紧接着的追加记录可能与快照重复，序号不大于上一条的跳过
+                    if (seq > lastSeq) {
+                        restored.add(new Entry(seq, persistCodec.decode(frame), frame));
+                        lastSeq = seq;
+                    }
+                } else if (type == RECORD_TRIM) {
+                    lastSeq = Math.max(lastSeq, seq);
+                    while (!restored.isEmpty() && restored.get(0).seq <= seq) {
+                        restored.remove(0);
+                    }
+                } else {
+                    return;
+                }
+            } catch (EOFException e) {
+                // 进程被杀时最后一条记录可能只写了一半
+                return;
+            }
+        }
+    }
+
+    private void appendMessage(long seq, byte[] frame) {
+        try {
+            DataOutputStream out = openLog();
+            out.writeByte(RECORD_MESSAGE);
+            out.writeLong(seq);
+            out.writeInt(frame.length);
+            out.write(frame);
+            out.flush();
+        } catch (IOException e) {
+            closeLog();
+        }
+    }
+
+    private void appendTrim(long seq) {
+        long length = file.length();
+        if (length > COMPACT_BYTES) {
+            List<Entry> remaining;
+            String currentSession;
+            synchronized (this) {
+                remaining = entries.size() == 0 || length > COMPACT_FORCE_BYTES ? new ArrayList<>(entries) : null;
+                currentSession = session;
+            }
+            if (remaining != null) {
+                // 快照里可能包含追加任务还排在后面的消息，恢复时按序号去重
+                rewriteLog(remaining, currentSession);
+                return;
+            }
+        }
+        try {
+            DataOutputStream out = openLog();
+            out.writeByte(RECORD_TRIM);
+            out.writeLong(seq);
+            out.flush();
+        } catch (IOException e) {
+            closeLog();
+        }
+    }
+
+    /** 写临时文件后重命名替换日志 */
+    private void rewriteLog(List<Entry> remaining, String currentSession) {
+        closeLog();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(Long.parseUnsignedLong(currentSession, 16));
+            for (Entry entry : remaining) {
+                out.writeByte(RECORD_MESSAGE);
+                out.writeLong(entry.seq);
+                out.writeInt(entry.frame.length);
+                out.write(entry.frame);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        if (log == null) {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        return log;
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ignored) {
+            }
+            log = null;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.stylussync.network;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.stylussync.AppExecutors;
+import com.example.stylussync.TaskPool;
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Gauge;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 把其他设备经服务器转发来的笔画应用到本地，不拖慢界面和本地书写。
+ * - WebSocket 读线程只把帧放进收件箱；解码和按笔画合并（{@link RemoteStrokeAssembler}）在 cpu 池的一个串行队列上，
+ *   每次取走收件箱中的全部帧，消息爆发时自然合并成大批次；
+ * - 合并出的操作在主线程按 vsync 分片应用，每帧最多花 {@link #APPLY_BUDGET_NANOS}，
+ *   本地正在书写时只花 {@link #WRITING_APPLY_BUDGET_NANOS}，剩下的留到下一帧；
+ *   排队中已完成的笔画，它之前的进度直接跳过。
+ * - 有未完成的笔画时每 {@link #STALE_CHECK_INTERVAL_MS} 检查一次过期，发送方中途断开也能擦掉它的预览。
+ * 除收件箱外都只在主线程调用，并且必须在主线程创建。
+ */
+public class RemoteStrokeReceiver implements WebSocketClient.InboundListener {
+
+    private static final String TAG = "RemoteStrokeReceiver";
+    private static final String SERIAL_KEY = "remote-strokes";
+
+    static final long APPLY_BUDGET_NANOS = 6_000_000L;
+    static final long WRITING_APPLY_BUDGET_NANOS = 2_000_000L;
+    // 有未完成的远端笔画时多久检查一次过期；发送方中途断开后不会再有消息来触发检查
+    static final long STALE_CHECK_INTERVAL_MS = 1_000L;
+
+    private static final Counter MESSAGES = MetricsRegistry.getInstance().counter("net.remote_messages");
+    private static final Counter DUPLICATES = MetricsRegistry.getInstance().counter("net.remote_duplicates");
+    private static final Counter MALFORMED = MetricsRegistry.getInstance().counter("net.remote_malformed");
+    private static final Histogram DECODE_US = MetricsRegistry.getInstance().histogram("net.remote_decode_us");
+    private static final Histogram APPLY_US = MetricsRegistry.getInstance().histogram("net.remote_apply_us");
+    private static final Gauge BACKLOG = MetricsRegistry.getInstance().gauge("net.remote_backlog");
+
+    /** 在主线程回调 */
+    public interface Listener {
+        /** 未完成远端笔画的新点，segment 带笔画的 id 与样式 */
+        void onRemoteStrokeProgress(Stroke segment);
+
+        void onRemoteStroke(Stroke stroke);
+
+        void onRemoteStrokeAbandoned(long id);
+
+        void onRemoteControl(String event);
+
+        /** 本地是否正在书写，书写时每帧少做一些 */
+        boolean isLocalStrokeActive();
+    }
+
+    // 读线程写入，串行队列取出；元素是 String 或 byte[]
+    private final ConcurrentLinkedQueue<Object> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicBoolean staleCheckScheduled = new AtomicBoolean();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Executor serial = AppExecutors.getInstance().cpu().serial(SERIAL_KEY, TaskPool.Priority.NORMAL);
+    private final Executor mainThread = AppExecutors.getInstance().mainThread();
+
+    // 以下只在串行队列上访问
+    private final RemoteStrokeAssembler assembler = new RemoteStrokeAssembler();
+    private final JsonWireCodec jsonCodec = new JsonWireCodec();
+    private final BinaryWireCodec binaryCodec = new BinaryWireCodec();
+    private long reportedDuplicates;
+
+    // 以下只在主线程访问
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final ArrayDeque<RemoteStrokeAssembler.Op> applyQueue = new ArrayDeque<>();
+    // 排队中的完成操作：id → 个数，应用进度时据此跳过
+    private final Map<Long, Integer> queuedCompletions = new HashMap<>();
+    private Listener listener;
+    private boolean paused;
+    private boolean frameScheduled;
+
+    private final Choreographer.FrameCallback applyFrame = frameTimeNanos -> {
+        frameScheduled = false;
+        applyPending();
+    };
+
+    private final Runnable staleCheck = () -> {
+        staleCheckScheduled.set(false);
+        if (listener != null) {
+            serial.execute(this::expireStale);
+        }
+    };
+
+    public RemoteStrokeReceiver(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onTextMessage(String text) {
+        receive(text);
+    }
+
+    @Override
+    public void onBinaryMessage(byte[] frame) {
+        receive(frame);
+    }
+
+    /** 本地开始画的笔画：服务器回显它时丢弃 */
+    public void markKnown(long id) {
+        serial.execute(() -> assembler.markKnown(id));
+    }
+
+    /** 换页后以这一页的笔画作为已知笔画 */
+    public void resetKnown(Collection<Stroke> strokes) {
+        List<Long> ids = new ArrayList<>(strokes.size());
+        for (Stroke stroke : strokes) {
+            ids.add(stroke.id);
+        }
+        serial.execute(() -> assembler.resetKnown(ids));
+    }
+
+    /** 暂停时操作只排队不应用，例如页面还在渐进加载，远端笔画不能夹在尚未送达的笔画之间 */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        scheduleApply();
+    }
+
+    /** 不再应用任何操作，之后收到的消息也丢弃 */
+    public void detach() {
+        listener = null;
+        choreographer.removeFrameCallback(applyFrame);
+        handler.removeCallbacks(staleCheck);
+        frameScheduled = false;
+        applyQueue.clear();
+        queuedCompletions.clear();
+        BACKLOG.set(0);
+    }
+
+    private void receive(Object frame) {
+        MESSAGES.increment();
+        inbox.add(frame);
+        if (drainScheduled.compareAndSet(false, true)) {
+            serial.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        // 先清标记再取：取完之后到达的帧会重新调度一次
+        drainScheduled.set(false);
+        long start = System.nanoTime();
+        List<WireMessage> messages = new ArrayList<>();
+        Object frame;
+        while ((frame = inbox.poll()) != null) {
+            try {
+                WireMessage message = frame instanceof byte[]
+                        ? binaryCodec.decode((byte[]) frame)
+                        : jsonCodec.decode((String) frame);
+                if (message != null) {
+                    messages.add(message);
+                }
+            } catch (RuntimeException e) {
+                MALFORMED.increment();
+                Log.w(TAG, "Ignoring malformed message", e);
+            }
+        }
+        List<RemoteStrokeAssembler.Op> ops = assembler.process(messages, System.nanoTime());
+        long duplicates = assembler.getDuplicateCount();
+        DUPLICATES.add(duplicates - reportedDuplicates);
+        reportedDuplicates = duplicates;
+        DECODE_US.recordSinceNanos(start);
+        publish(ops);
+    }
+
+    /** 串行队列上：没有新消息时放弃过期的未完成笔画，否则它的预览会一直留在画布上 */
+    private void expireStale() {
+        publish(assembler.expire(System.nanoTime()));
+    }
+
+    private void publish(List<RemoteStrokeAssembler.Op> ops) {
+        if (!ops.isEmpty()) {
+            mainThread.execute(() -> enqueue(ops));
+        }
+        if (assembler.getPendingCount() > 0 && staleCheckScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(staleCheck, STALE_CHECK_INTERVAL_MS);
+        }
+    }
+
+    private void enqueue(List<RemoteStrokeAssembler.Op> ops) {
+        if (listener == null) {
+            return;
+        }
+        for (RemoteStrokeAssembler.Op op : ops) {
+            if (op.kind == RemoteStrokeAssembler.Op.Kind.COMPLETE) {
+                queuedCompletions.merge(op.id, 1, Integer::sum);
+            }
+            applyQueue.add(op);
+        }
+        BACKLOG.set(applyQueue.size());
+        scheduleApply();
+    }
+
+    private void scheduleApply() {
+        if (frameScheduled || paused || listener == null || applyQueue.isEmpty()) {
+            return;
+        }
+        frameScheduled = true;
+        choreographer.postFrameCallback(applyFrame);
+    }
+
+    private void applyPending() {
+        if (paused || listener == null) {
+            return;
+        }
+        long budget = listener.isLocalStrokeActive() ? WRITING_APPLY_BUDGET_NANOS : APPLY_BUDGET_NANOS;
+        long start = System.nanoTime();
+        // 每帧至少应用一个操作，保证积压一定会被消化
+        do {
+            apply(applyQueue.poll());
+        } while (!applyQueue.isEmpty() && listener != null && System.nanoTime() - start < budget);
+        APPLY_US.recordSinceNanos(start);
+        BACKLOG.set(applyQueue.size());
+        scheduleApply();
+    }
+
+    private void apply(RemoteStrokeAssembler.Op op) {
+        switch (op.kind) {
+            case PROGRESS:
+                if (!queuedCompletions.containsKey(op.id)) {
+                    listener.onRemoteStrokeProgress(op.stroke);
+                }
+                break;
+            case COMPLETE:
+                queuedCompletions.computeIfPresent(op.id, (id, count) -> count > 1 ? count - 1 : null);
+                listener.onRemoteStroke(op.stroke);
+                break;
+            case ABANDON:
+                listener.onRemoteStrokeAbandoned(op.id);
+                break;
+            case CONTROL:
+                listener.onRemoteControl(op.event);
+                break;
+        }
+    }
+}
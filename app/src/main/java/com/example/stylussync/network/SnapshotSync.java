@@ -0,0 +1,271 @@
+package com.example.stylussync.network;
+
+import android.util.Log;
+
+import com.example.stylussync.AppExecutors;
+import com.example.stylussync.TaskPool;
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 连接（包括每次重连）握手完成后，把当前文档中服务器还没有的笔画补给它。
+ * <ol>
+ *   <li>发出文档清单 sync_manifest：全部笔画的 id 与内容哈希（{@link SyncManifest}）；</li>
+ *   <li>服务器比对后回复 sync_need：缺少或内容不同的笔画 id；</li>
+ *   <li>按文档顺序把这些笔画分块发出 sync_chunk（{@link SyncChunkCodec}，deflate 压缩），每块报告一次进度。</li>
+ * </ol>
+ * 断线重连后重新走一遍：服务器每收到一块就已经保存了其中的笔画，这次只会索要剩下的，
+ * 所以传到 95% 断开的文档重连后只传剩下的 5%。
+ * 清单和数据块在 cpu 池的低优先级串行队列上生成，都通过 {@link WebSocketClient#sendBulk} 发送，
+ * 实时笔画的消息总是先发，清单和数据块只在发送队列清空、缓冲区空闲时才放进去，一次只准备一块。
+ * 同步期间画的新笔画走实时通道，不在这次的清单里。状态只在主线程上修改。
+ */
+public class SnapshotSync implements WebSocketClient.SyncHandler {
+
+    private static final String TAG = "SnapshotSync";
+    private static final String SERIAL_KEY = "snapshot-sync";
+
+    private static final Histogram MANIFEST_US = MetricsRegistry.getInstance().histogram("sync.manifest_us");
+    private static final Histogram PACK_US = MetricsRegistry.getInstance().histogram("sync.pack_us");
+    private static final Counter STROKES_SENT = MetricsRegistry.getInstance().counter("sync.strokes_sent");
+    private static final Counter CHUNKS_SENT = MetricsRegistry.getInstance().counter("sync.chunks_sent");
+    private static final Counter BYTES_SENT = MetricsRegistry.getInstance().counter("sync.bytes_sent");
+
+    /** 要同步的文档，在主线程调用 */
+    public interface DocumentSource {
+        /** 文档是否完整在内存中；正在加载时返回 false，加载完后调用 {@link #documentChanged} */
+        boolean isDocumentReady();
+
+        /** 服务器用来区分文档（页面）的名字 */
+        String documentKey();
+
+        /** 当前全部笔画的副本，按绘制顺序 */
+        List<Stroke> snapshotStrokes();
+    }
+
+    /** 在主线程回调 */
+    public interface ProgressListener {
+        /** totalStrokes 为 0 表示服务器已是最新；sentStrokes == totalStrokes 时本次同步完成 */
+        void onSyncProgress(int sentStrokes, int totalStrokes);
+    }
+
+    private final WebSocketClient client;
+    private final DocumentSource source;
+    private final ProgressListener listener;
+    private final Executor serial = AppExecutors.getInstance().cpu().serial(SERIAL_KEY, TaskPool.Priority.LOW);
+    private final Executor mainThread = AppExecutors.getInstance().mainThread();
+    private final JsonWireCodec jsonCodec = new JsonWireCodec();   // 只在串行队列上使用
+    private final SyncChunkCodec chunkCodec = new SyncChunkCodec(); // 只在串行队列上使用
+
+    // 以下只在主线程访问
+    private long syncId;             // 当前这次同步，0 表示没有；过期的异步结果凭它丢弃
+    private List<Stroke> strokes;    // 发出清单时的文档快照
+    private List<Stroke> toSend;     // 服务器索要的笔画，按文档顺序
+    private int sent;                // toSend 中已发出的笔画数
+    private int chunkIndex;
+    private boolean packing;
+    private String readyManifest;    // 已编码、等缓冲区空闲的清单
+    private String readyChunk;       // 已打包、等缓冲区空闲的一块
+    private int readyEnd;
+    // 有数据块在等缓冲区空闲；onBulkWritable 在其它线程上频繁调用，只在需要时才切到主线程
+    private volatile boolean waitingForWritable;
+    private boolean stopped;
+
+    public SnapshotSync(WebSocketClient client, DocumentSource source, ProgressListener listener) {
+        this.client = client;
+        this.source = source;
+        this.listener = listener;
+    }
+
+    /** 文档换了（打开、翻页、加载完成）：已连接时按新文档重新同步 */
+    public void documentChanged() {
+        if (client.isReady()) {
+            start();
+        } else {
+            cancel();
+        }
+    }
+
+    /** 不再同步，之后的回调都忽略 */
+    public void stop() {
+        stopped = true;
+        cancel();
+    }
+
+    @Override
+    public void onHandshakeDone() {
+        mainThread.execute(this::start);
+    }
+
+    @Override
+    public void onSyncMessage(JsonObject message) {
+        serial.execute(() -> parseMessage(message));
+    }
+
+    @Override
+    public void onBulkWritable() {
+        if (waitingForWritable) {
+            mainThread.execute(this::pump);
+        }
+    }
+
+    private void cancel() {
+        syncId = 0;
+        strokes = null;
+        toSend = null;
+        readyManifest = null;
+        readyChunk = null;
+        waitingForWritable = false;
+    }
+
+    private void start() {
+        cancel();
+        if (stopped || !source.isDocumentReady()) {
+            return;
+        }
+        long id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        syncId = id;
+        strokes = source.snapshotStrokes();
+        List<Stroke> snapshot = strokes;
+        String document = source.documentKey();
+        serial.execute(() -> {
+            long startNanos = System.nanoTime();
+            String text = jsonCodec.encodeSyncManifest(id, document, SyncManifest.of(snapshot));
+            MANIFEST_US.recordSinceNanos(startNanos);
+            mainThread.execute(() -> {
+                if (id != syncId) {
+                    return;
+                }
+                Log.i(TAG, "Manifest of " + snapshot.size() + " strokes for " + document
+                        + " (" + text.length() + " bytes) ready");
+                readyManifest = text;
+                pump();
+            });
+        });
+    }
+
+    /** 串行队列上：解析服务器的同步消息，解压缺少的 id */
+    private void parseMessage(JsonObject message) {
+        try {
+            JsonElement type = message.get("type");
+            JsonElement sync = message.get("sync");
+            if (type == null || sync == null || !"sync_need".equals(type.getAsString())) {
+                Log.i(TAG, "Ignoring sync message: " + message);
+                return;
+            }
+            long id = sync.getAsLong();
+            JsonElement all = message.get("all");
+            Set<Long> missing = null;
+            if (all == null || !all.getAsBoolean()) {
+                JsonElement packed = message.get("missing");
+                missing = packed == null ? Collections.emptySet()
+                        : SyncManifest.unpackIds(Base64.getDecoder().decode(packed.getAsString()));
+            }
+            Set<Long> need = missing;
+            mainThread.execute(() -> onNeed(id, need));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Ignoring malformed sync message", e);
+        }
+    }
+
+    /** @param missing 服务器缺少的 id，null 表示全部 */
+    private void onNeed(long id, Set<Long> missing) {
+        if (id != syncId || toSend != null) {
+            return;
+        }
+        if (missing == null) {
+            toSend = strokes;
+        } else {
+            toSend = new ArrayList<>(missing.size());
+            for (Stroke stroke : strokes) {
+                if (missing.contains(stroke.id)) {
+                    toSend.add(stroke);
+                }
+            }
+        }
+        sent = 0;
+        chunkIndex = 0;
+        Log.i(TAG, "Server needs " + toSend.size() + " of " + strokes.size() + " strokes");
+        listener.onSyncProgress(0, toSend.size());
+        if (toSend.isEmpty()) {
+            cancel();
+            return;
+        }
+        pump();
+    }
+
+    /** 主线程：发出清单或已打包的一块，或者在后台打包下一块 */
+    private void pump() {
+        if (readyManifest != null) {
+            if (!client.sendBulk(readyManifest)) {
+                waitingForWritable = true;
+                return;
+            }
+            waitingForWritable = false;
+            BYTES_SENT.add(readyManifest.length());
+            readyManifest = null;
+            return;
+        }
+        if (toSend == null) {
+            waitingForWritable = false;
+            return;
+        }
+        if (readyChunk != null) {
+            if (!client.sendBulk(readyChunk)) {
+                waitingForWritable = true;
+                return;
+            }
+            waitingForWritable = false;
+            CHUNKS_SENT.increment();
+            STROKES_SENT.add(readyEnd - sent);
+            BYTES_SENT.add(readyChunk.length());
+            readyChunk = null;
+            sent = readyEnd;
+            chunkIndex++;
+            listener.onSyncProgress(sent, toSend.size());
+            if (sent == toSend.size()) {
+                Log.i(TAG, "Sync finished: " + sent + " strokes in " + chunkIndex + " chunks");
+                cancel();
+                return;
+            }
+        }
+        if (packing || sent >= toSend.size()) {
+            return;
+        }
+        packing = true;
+        long id = syncId;
+        List<Stroke> pending = toSend;
+        int from = sent;
+        int index = chunkIndex;
+        serial.execute(() -> {
+            long startNanos = System.nanoTime();
+            int[] end = new int[1];
+            byte[] chunk = chunkCodec.pack(pending, from, SyncChunkCodec.DEFAULT_CHUNK_BYTES, end);
+            String text = jsonCodec.encodeSyncChunk(id, index, end[0] - from, end[0], pending.size(), chunk);
+            PACK_US.recordSinceNanos(startNanos);
+            mainThread.execute(() -> {
+                packing = false;
+                if (id != syncId || toSend == null) {
+                    // 这次同步已经作废；新的一次可能正等着打包
+                    pump();
+                    return;
+                }
+                readyChunk = text;
+                readyEnd = end[0];
+                pump();
+            });
+        });
+    }
+}
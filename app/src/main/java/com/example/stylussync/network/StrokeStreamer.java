@@ -0,0 +1,199 @@
+package com.example.stylussync.network;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeSimplifier;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 把正在绘制的笔画实时推送给服务器：
+ * 落笔时发送 stroke_begin，绘制过程中按时间/点数预算分批发送 stroke_points，抬笔时补发剩余点并发送 stroke_end。
+ * 笔停住不动、不再产生新点时，由定时器在时间预算到期时发出已攒下的点，不会一直等到下一个点或抬笔。
+ * 每条消息都带笔画 id，stroke_points 还带 seq 和 offset，接收端据此把分批的点拼回一笔。
+ * 每批发出前可以用 {@link StrokeSimplifier} 精简（以上一批最后发出的点为起点逐批精简）；
+ * 链路拥塞时（见 {@link FlowController}）不再按预算刷新，点留在笔画里合并成大批次，
+ * 严重拥塞时改用更粗的精简参数。offset 与 stroke_end 的点数都按接收端实际收到的点计算。
+ * 精简只影响发给服务器的副本，不改动本地笔画；实际发出的点另外攒成一笔，由 {@link #endStroke} 返回，
+ * 调用方提交这一份，本地与服务器存下的内容（以及快照同步清单里的哈希）才一致。
+ * 所有方法都应在 UI 线程（产生触摸事件的线程）上调用。
+ */
+public class StrokeStreamer {
+
+    // 默认每帧（约 16ms）或每攒够 16 个点刷新一次
+    public static final long DEFAULT_MAX_BATCH_DELAY_MS = 16;
+    public static final int DEFAULT_MAX_BATCH_POINTS = 16;
+    // 拥塞时合并的批次最多攒这么多点
+    static final int COALESCED_MAX_BATCH_POINTS = 256;
+
+    private final WebSocketClient client;
+    // 纳秒时钟，仿真（见测试目录下的 StreamingLagBenchmark）中换成虚拟时钟
+    private final LongSupplier clock;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable budgetFlush = this::onBudgetElapsed;
+    private boolean budgetFlushScheduled;
+
+    // 两个预算任意一个达到就刷新；设为 0 表示每次有新点都立即发送
+    private long maxBatchDelayNanos = DEFAULT_MAX_BATCH_DELAY_MS * 1_000_000L;
+    private int maxBatchPoints = DEFAULT_MAX_BATCH_POINTS;
+    private StrokeSimplifier.Config simplification = StrokeSimplifier.Config.NONE;
+
+    // --- 当前笔画的发送进度 ---
+    private Stroke activeStroke;
+    private Stroke wireStroke;   // 接收端实际收到的点
+    private int sentCount;   // 本地笔画中已处理的点数
+    private int wireCount;   // 接收端已收到的点数，降采样后小于 sentCount
+    private int batchSeq;
+    private long lastFlushNanos;
+    private int lastSentIndex;   // 最后发出的点在本地笔画中的下标，下一批精简的起点
+
+    private long coalescedFlushes; // 拥塞时合并发出的批次数
+    private long skippedPoints;    // 精简掉的点数
+
+    public StrokeStreamer(WebSocketClient client) {
+        this(client, System::nanoTime);
+    }
+
+    StrokeStreamer(WebSocketClient client, LongSupplier clock) {
+        this.client = client;
+        this.clock = clock;
+    }
+
+    /**
+     * 设置批量发送的预算。
+     * @param maxDelayMs  距上一次发送的最长等待时间，0 表示不按时间攒批
+     * @param maxPoints   一批最多攒多少个点，0 表示不按点数攒批
+     */
+    public void setBatchBudget(long maxDelayMs, int maxPoints) {
+        this.maxBatchDelayNanos = Math.max(0, maxDelayMs) * 1_000_000L;
+        this.maxBatchPoints = Math.max(0, maxPoints);
+    }
+
+    /** 正常发送时的精简参数；严重拥塞时固定使用 {@link StrokeSimplifier.Config#NETWORK_SEVERE} */
+    public void setSimplification(StrokeSimplifier.Config config) {
+        this.simplification = config;
+    }
+
+    public boolean isStreaming() {
+        return activeStroke != null;
+    }
+
+    public void beginStroke(Stroke stroke) {
+        activeStroke = stroke;
+        wireStroke = new Stroke(stroke.color, stroke.baseStrokeWidth, stroke.isEraser, Math.max(64, stroke.size()));
+        wireStroke.id = stroke.id;
+        sentCount = 0;
+        wireCount = 0;
+        lastSentIndex = -1;
+        batchSeq = 0;
+        lastFlushNanos = clock.getAsLong();
+        client.send(WireMessage.strokeBegin(stroke));
+        // 落笔点立即发出，接收端可以马上显示起笔位置
+        flush(FlowController.Level.NORMAL);
+    }
+
+    /** 笔画有新点追加后调用，达到预算时发送一批 */
+    public void onPointsAdded() {
+        if (activeStroke == null) {
+            return;
+        }
+        int pending = activeStroke.size() - sentCount;
+        if (pending <= 0) {
+            return;
+        }
+        FlowController.Level level = client.getCongestionLevel();
+        if (level != FlowController.Level.NORMAL) {
+            // 拥塞时不按预算刷新，点留在笔画里，攒够或抬笔时合并成一批发出
+            if (pending >= COALESCED_MAX_BATCH_POINTS) {
+                coalescedFlushes++;
+                flush(level);
+            }
+            return;
+        }
+        boolean sizeReached = maxBatchPoints > 0 && pending >= maxBatchPoints;
+        long waitedNanos = clock.getAsLong() - lastFlushNanos;
+        if (sizeReached || waitedNanos >= maxBatchDelayNanos) {
+            flush(level);
+        } else if (!budgetFlushScheduled) {
+            // 之后可能再也没有新点（笔停住了），到期时由定时器发出
+            budgetFlushScheduled = true;
+            long delayMs = (maxBatchDelayNanos - waitedNanos + 999_999L) / 1_000_000L;
+            handler.postDelayed(budgetFlush, delayMs);
+        }
+    }
+
+    private void onBudgetElapsed() {
+        budgetFlushScheduled = false;
+        if (activeStroke == null || activeStroke.size() <= sentCount) {
+            return;
+        }
+        FlowController.Level level = client.getCongestionLevel();
+        if (level == FlowController.Level.NORMAL) {
+            flush(level);
+        }
+    }
+
+    /**
+     * 补发剩余点并结束这一笔。
+     * @return 接收端收到的笔画（id 与样式同本地笔画，点为精简后实际发出的点）；没有正在发送的笔画时返回 null
+     */
+    public Stroke endStroke() {
+        if (activeStroke == null) {
+            return null;
+        }
+        FlowController.Level level = client.getCongestionLevel();
+        if (level != FlowController.Level.NORMAL && activeStroke.size() > sentCount) {
+            coalescedFlushes++;
+        }
+        flush(level);
+        client.send(WireMessage.strokeEnd(activeStroke, wireCount));
+        Stroke sent = wireStroke;
+        sent.trimToSize();
+        activeStroke = null;
+        wireStroke = null;
+        return sent;
+    }
+
+    public long getCoalescedFlushCount() {
+        return coalescedFlushes;
+    }
+
+    public long getSkippedPointCount() {
+        return skippedPoints;
+    }
+
+    private void flush(FlowController.Level level) {
+        int end = activeStroke.size();
+        if (end > sentCount) {
+            StrokeSimplifier.Config config = level == FlowController.Level.SEVERE
+                    ? StrokeSimplifier.Config.NETWORK_SEVERE : simplification;
+            if (config.isEnabled()) {
+                Stroke batch = StrokeSimplifier.simplifyBatch(activeStroke, lastSentIndex, sentCount, end, config);
+                skippedPoints += end - sentCount - batch.size();
+                client.send(WireMessage.strokePoints(batch, batchSeq++, 0, batch.size(), wireCount));
+                wireStroke.addPoints(batch.xArray(), batch.yArray(), batch.pressureArray(), batch.timestampArray(), batch.size());
+                wireCount += batch.size();
+            } else {
+                client.send(WireMessage.strokePoints(activeStroke, batchSeq++, sentCount, end, wireCount));
+                for (int i = sentCount; i < end; i++) {
+                    if (activeStroke.hasTimestamps()) {
+                        wireStroke.addPoint(activeStroke.getX(i), activeStroke.getY(i), activeStroke.getPressure(i),
+                                activeStroke.getTimestamp(i));
+                    } else {
+                        wireStroke.addPoint(activeStroke.getX(i), activeStroke.getY(i), activeStroke.getPressure(i));
+                    }
+                }
+                wireCount += end - sentCount;
+            }
+            lastSentIndex = end - 1;
+            sentCount = end;
+        }
+        lastFlushNanos = clock.getAsLong();
+        if (budgetFlushScheduled) {
+            handler.removeCallbacks(budgetFlush);
+            budgetFlushScheduled = false;
+        }
+    }
+}
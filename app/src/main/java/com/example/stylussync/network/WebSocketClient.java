@@ -1,10 +1,27 @@
 package com.example.stylussync.network;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.example.stylussync.AppExecutors;
+import com.example.stylussync.TaskPool;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Gauge;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
@@ -12,12 +29,102 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 
+/**
+ * 所有 {@link WireMessage} 都先进入 {@link OutboundQueue} 再发出，断线时不再丢消息。
+ * 连接意外断开后按指数退避加随机抖动自动重连，握手完成后按序号重放未确认的消息；
+ * 只有调用 {@link #disconnect()} 才会停止重连。
+ */
 public class WebSocketClient {
 
     private static final String TAG = "WebSocketClient";
+    private static final String QUEUE_SERIAL_KEY = "outbound-queue";
+
+    // 重连退避：第 n 次等待 min(MAX, BASE * 2^n) 的一半到全部之间的随机时长
+    private static final long RECONNECT_BASE_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30_000;
+    // 旧服务器不回复 hello，等这么久没有 hello_ack 就先按 JSON、无确认的方式开始发送
+    private static final long HELLO_TIMEOUT_MS = 1000;
+    // 超时后仍接受迟到的 hello_ack 的时长；在此之前先发出的消息留在队列里，升级为带确认的会话时重发
+    private static final long HELLO_LATE_ACK_WINDOW_MS = 15_000;
+    // onOpen 中等待磁盘队列恢复的上限
+    private static final long QUEUE_LOAD_TIMEOUT_MS = 2000;
+    // 连接期间采样 OkHttp 缓冲区、更新拥塞等级的间隔
+    private static final long FLOW_SAMPLE_INTERVAL_MS = 100;
+    // 批量数据（快照同步）只在 OkHttp 缓冲区低于这个值时才发，新的实时消息最多排在这么多字节之后
+    static final long BULK_SOCKET_BUFFER_BYTES = 16 * 1024;
+
     private WebSocket webSocket;
     private OkHttpClient client;
+    private String url;
+    private boolean userDisconnected = true;
+
+    // --- 协议协商 ---
+    // 连接建立后先发送 hello 列出支持的协议和会话 id；只有收到服务器的 hello_ack 选中 binary-v1 才切换为二进制，
+    // hello_ack 的 features 含 "ack" 时消息带序号发送、等服务器确认后出队。
+    // 不认识 hello 的旧服务器永远不会回复，超时后使用 JSON；往返超过超时的服务器的 hello_ack 迟到时再升级会话。
+    // 在迟到窗口结束或连接断开、确认对方是旧服务器之前，发出的消息不出队
+    private final JsonWireCodec jsonCodec = new JsonWireCodec();
+    private final BinaryWireCodec binaryCodec = new BinaryWireCodec();
+    private volatile boolean binaryNegotiated = false;
+    private boolean ackNegotiated = false;
+    private boolean handshakeDone = false;
+    // 本次连接还在等 hello_ack（包括超时后的迟到窗口），期间按无确认方式发出的消息留在队列里
+    private boolean helloPending = false;
+
+    // --- 发送队列与重连 ---
+    private final OutboundQueue queue;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private int reconnectAttempt;
+    private long disconnectedAtMs; // 本次意外断开的时间，0 表示没有在等待重连
+    private final Stats stats = new Stats();
+
+    // --- 流量控制 ---
+    // OkHttp 会把发送的消息无限制地缓冲（直到 16 MiB 后断开连接），链路慢时延迟会一直增长。
+    // 缓冲区超过上限后消息留在 OutboundQueue 中，由周期采样在缓冲区排空后补发；
+    // 拥塞等级交给 StrokeStreamer，由它合并批次、降采样，从源头减少要发的数据
+    private final FlowController flow = new FlowController();
+    private long holdbacks;
+
+    // --- 常开的指标，汇总到 MetricsRegistry ---
+    // 入队到交给 OkHttp 的耗时（微秒），断线期间在队列里等待的消息也算在内
+    private final Histogram sendLatencyUs = MetricsRegistry.getInstance().histogram("net.send_latency_us");
+    private final Histogram messageBytes = MetricsRegistry.getInstance().histogram("net.message_bytes");
+    private final Counter messagesSent = MetricsRegistry.getInstance().counter("net.messages_sent");
+    private final Counter bytesSent = MetricsRegistry.getInstance().counter("net.bytes_sent");
+    private final Counter holdbackCount = MetricsRegistry.getInstance().counter("net.holdbacks");
+    private final Counter reconnectCount = MetricsRegistry.getInstance().counter("net.reconnects");
+    private final Gauge queueDepth = MetricsRegistry.getInstance().gauge("net.queue_depth");
+    private final Gauge socketQueueBytes = MetricsRegistry.getInstance().gauge("net.socket_queue_bytes");
+    private final Gauge estimatedDelayMs = MetricsRegistry.getInstance().gauge("net.estimated_delay_ms");
+
+    /** 发送队列与重连的统计快照 */
+    public static final class Stats {
+        public OutboundQueue.Stats queue;
+        public long reconnectAttempts;
+        public long reconnects;              // 重连成功的次数
+        public long lastReconnectLatencyMs;  // 从断开到重新建立连接
+        public long maxReconnectLatencyMs;
+        public long totalReconnectLatencyMs;
+        public FlowController.Level level;
+        public long estimatedDelayMs;        // 新消息大约要等多久才能送达
+        public long socketQueueBytes;        // OkHttp 缓冲区中还没写出的字节数
+        public long drainBytesPerSecond;
+        public long holdbacks;               // 缓冲区满、消息留在队列中的次数
+        public long levelChanges;
+
+        @Override
+        public String toString() {
+            return "WebSocketClient{" + queue + ", reconnectAttempts=" + reconnectAttempts
+                    + ", reconnects=" + reconnects + ", reconnectLatency(last/avg/max)=" + lastReconnectLatencyMs
+                    + "/" + (reconnects == 0 ? 0 : totalReconnectLatencyMs / reconnects)
+                    + "/" + maxReconnectLatencyMs + "ms, level=" + level + ", estimatedDelay=" + estimatedDelayMs
+                    + "ms, socketQueue=" + socketQueueBytes + "B, drain=" + drainBytesPerSecond + "B/s"
+                    + ", holdbacks=" + holdbacks + ", levelChanges=" + levelChanges + "}";
+        }
+    }
 
     // 定义一个回调接口，用于通知 Activity 连接状态的变化
     public interface StatusListener {
@@ -25,10 +132,50 @@ public class WebSocketClient {
     }
     private StatusListener statusListener;
 
+    /** 握手与确认之外的入站消息（其他设备的笔画、控制事件），在 OkHttp 的读线程上回调，实现方不得阻塞 */
+    public interface InboundListener {
+        void onTextMessage(String text);
+
+        void onBinaryMessage(byte[] frame);
+    }
+    private volatile InboundListener inboundListener;
+
+    /** 快照同步的钩子，见 {@link SnapshotSync}。回调可能在任意线程上、持有本对象锁时发生，实现方只做转发 */
+    public interface SyncHandler {
+        /** 握手完成（每次重连后都会再来一次），可以开始同步 */
+        void onHandshakeDone();
+
+        /** 服务器发来的同步消息（type 以 sync_ 开头） */
+        void onSyncMessage(JsonObject message);
+
+        /** 实时消息已发完且缓冲区有空闲，可以继续 {@link #sendBulk} */
+        void onBulkWritable();
+    }
+    private volatile SyncHandler syncHandler;
+
+    /** 发送队列只在内存中 */
+    public WebSocketClient() {
+        this.queue = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY);
+    }
+
+    /** 发送队列持久化到 queueFile，进程重启后继续发送上次未确认的消息 */
+    public WebSocketClient(File queueFile) {
+        this.queue = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY, queueFile,
+                AppExecutors.getInstance().diskIO().serial(QUEUE_SERIAL_KEY, TaskPool.Priority.NORMAL));
+    }
+
     public void setStatusListener(StatusListener listener) {
         this.statusListener = listener;
     }
 
+    public void setInboundListener(InboundListener listener) {
+        this.inboundListener = listener;
+    }
+
+    public void setSyncHandler(SyncHandler handler) {
+        this.syncHandler = handler;
+    }
+
     public void connect(String url) {
         if (webSocket != null) {
             disconnect();
@@ -39,15 +186,31 @@ public class WebSocketClient {
             url = "ws://" + url;
         }
 
+        synchronized (this) {
+            this.url = url;
+            handler.removeCallbacksAndMessages(null);
+            userDisconnected = false;
+            reconnectAttempt = 0;
+            disconnectedAtMs = 0;
+            openSocketLocked();
+        }
+    }
+
+    private void openSocketLocked() {
+        binaryNegotiated = false;
+        ackNegotiated = false;
+        handshakeDone = false;
         Log.d(TAG, "Connecting to: " + url);
         if (statusListener != null) {
             statusListener.onStatusUpdate("正在连接...");
         }
 
-        // 创建 OkHttpClient 实例
-        client = new OkHttpClient.Builder()
-                .readTimeout(0, TimeUnit.MILLISECONDS) // 无读取超时
-                .build();
+        // 创建 OkHttpClient 实例，重连时复用
+        if (client == null) {
+            client = new OkHttpClient.Builder()
+                    .readTimeout(0, TimeUnit.MILLISECONDS) // 无读取超时
+                    .build();
+        }
 
         // 创建 WebSocket 请求
         Request request = new Request.Builder()
@@ -58,7 +221,9 @@ public class WebSocketClient {
         webSocket = client.newWebSocket(request, new StylusWebSocketListener());
     }
 
-    public void disconnect() {
+    public synchronized void disconnect() {
+        userDisconnected = true;
+        handler.removeCallbacksAndMessages(null);
         if (webSocket != null) {
             webSocket.close(1000, "Client disconnected");
             webSocket = null;
@@ -67,15 +232,22 @@ public class WebSocketClient {
             client.dispatcher().executorService().shutdown();
             client = null;
         }
+        settleUnackedLocked();
+        binaryNegotiated = false;
+        ackNegotiated = false;
+        handshakeDone = false;
+        disconnectedAtMs = 0;
+        // 未确认的消息留在队列里，下次连接时重发
+        queue.resetTransmitted();
         Log.d(TAG, "Disconnected.");
         if (statusListener != null) {
             statusListener.onStatusUpdate("已断开");
         }
     }
 
-    public boolean send(String message) {
+    public synchronized boolean send(String message) {
         if (webSocket != null) {
-            Log.d(TAG, "Sending: " + message);
+            Log.d(TAG, "Sending " + message.length() + " chars");
             return webSocket.send(message);
         } else {
             Log.w(TAG, "Cannot send, WebSocket is not connected.");
@@ -83,6 +255,302 @@ public class WebSocketClient {
         }
     }
 
+    /** 握手已完成，消息会立即发出 */
+    public synchronized boolean isReady() {
+        return handshakeDone;
+    }
+
+    /**
+     * 发送一条不进发送队列的批量消息（快照同步的数据块），不和实时笔画抢带宽：
+     * 队列中还有没发出的消息、OkHttp 缓冲区超过 {@link #BULK_SOCKET_BUFFER_BYTES} 或网络拥塞时不发。
+     * @return 是否已交给 OkHttp；false 时稍后在 {@link SyncHandler#onBulkWritable} 之后重试
+     */
+    public synchronized boolean sendBulk(String text) {
+        if (!bulkWritableLocked()) {
+            return false;
+        }
+        if (!webSocket.send(text)) {
+            return false;
+        }
+        flow.onSent(text.length());
+        return true;
+    }
+
+    private boolean bulkWritableLocked() {
+        return handshakeDone && webSocket != null && queue.untransmittedCount() == 0
+                && webSocket.queueSize() < BULK_SOCKET_BUFFER_BYTES && flow.getLevel() == FlowController.Level.NORMAL;
+    }
+
+    /** 当前协商出的协议名 */
+    public String getProtocol() {
+        return binaryNegotiated ? BinaryWireCodec.PROTOCOL_NAME : JsonWireCodec.PROTOCOL_NAME;
+    }
+
+    /**
+     * 入队并在握手完成时立即发送。未连接或正在重连时消息留在队列中，连上后按顺序补发。
+     * @return 消息已入队（始终为 true，队列满时丢弃的是最旧的消息）
+     */
+    public synchronized boolean send(WireMessage message) {
+        queue.enqueue(message);
+        if (handshakeDone) {
+            flushLocked();
+        }
+        queueDepth.set(queue.size());
+        return true;
+    }
+
+    public synchronized Stats getStats() {
+        Stats snapshot = new Stats();
+        snapshot.queue = queue.getStats();
+        snapshot.reconnectAttempts = stats.reconnectAttempts;
+        snapshot.reconnects = stats.reconnects;
+        snapshot.lastReconnectLatencyMs = stats.lastReconnectLatencyMs;
+        snapshot.maxReconnectLatencyMs = stats.maxReconnectLatencyMs;
+        snapshot.totalReconnectLatencyMs = stats.totalReconnectLatencyMs;
+        snapshot.level = getCongestionLevel();
+        snapshot.estimatedDelayMs = flow.getEstimatedDelayMs();
+        snapshot.socketQueueBytes = webSocket != null ? webSocket.queueSize() : 0;
+        snapshot.drainBytesPerSecond = (long) flow.getDrainBytesPerSecond();
+        snapshot.holdbacks = holdbacks;
+        snapshot.levelChanges = flow.getLevelChanges();
+        return snapshot;
+    }
+
+    /**
+     * 当前的拥塞等级，UI 线程上每批点调用一次。
+     * 没有连接或握手未完成时消息只能在队列里等，按 CONGESTED 处理（合并批次，不降精度）
+     */
+    public synchronized FlowController.Level getCongestionLevel() {
+        return handshakeDone ? flow.getLevel() : FlowController.Level.CONGESTED;
+    }
+
+    /** 按当前协商出的协议发出队列中本次连接还没发过的消息 */
+    private void flushLocked() {
+        if (webSocket == null) {
+            return;
+        }
+        List<OutboundQueue.Entry> pending = queue.takeUntransmitted();
+        for (OutboundQueue.Entry entry : pending) {
+            if (webSocket.queueSize() >= FlowController.MAX_SOCKET_BUFFER_BYTES) {
+                // 缓冲区已满，剩下的留在队列里，等采样发现排空后再发
+                queue.markUntransmitted(entry.seq);
+                holdbacks++;
+                holdbackCount.increment();
+                return;
+            }
+            long seq = ackNegotiated ? entry.seq : -1;
+            boolean sent;
+            int length;
+            if (binaryNegotiated) {
+                byte[] frame = binaryCodec.encode(entry.message, seq);
+                sent = webSocket.send(ByteString.of(frame));
+                length = frame.length;
+            } else {
+                String text = jsonCodec.encode(entry.message, seq);
+                sent = webSocket.send(text);
+                length = text.length(); // JSON 只含 ASCII，字符数即字节数
+            }
+            flow.onSent(length);
+            if (!sent) {
+                // 连接正在关闭，剩下的等重连后再发
+                queue.markUntransmitted(entry.seq);
+                return;
+            }
+            sendLatencyUs.recordSinceNanos(entry.enqueuedNanos);
+            messageBytes.record(length);
+            messagesSent.increment();
+            bytesSent.add(length);
+            if (ackNegotiated) {
+                continue;
+            }
+            if (!helloPending) {
+                // 服务器不会确认，交给 OkHttp 即视为送达
+                queue.acknowledge(entry.seq);
+            }
+        }
+    }
+
+    /** hello 超时：先按 JSON、无确认开始发送，hello_ack 仍可能迟到 */
+    private synchronized void onHelloTimeout(WebSocket socket) {
+        if (socket != webSocket || handshakeDone) {
+            return;
+        }
+        Log.w(TAG, "No hello_ack after " + HELLO_TIMEOUT_MS + "ms, sending JSON until it arrives");
+        onHandshakeDone(socket, false, false);
+    }
+
+    /** 迟到窗口结束仍没有 hello_ack：对方是旧服务器，先发出的消息按已送达出队 */
+    private synchronized void onHelloAbandoned(WebSocket socket) {
+        if (socket != webSocket || !helloPending) {
+            return;
+        }
+        helloPending = false;
+        Log.i(TAG, "No hello_ack within " + HELLO_LATE_ACK_WINDOW_MS + "ms, assuming a legacy server");
+        queue.acknowledgeTransmitted();
+        queueDepth.set(queue.size());
+    }
+
+    private synchronized void onHelloAck(WebSocket socket, boolean binary, boolean ack) {
+        if (socket != webSocket) {
+            return;
+        }
+        helloPending = false;
+        if (!handshakeDone) {
+            onHandshakeDone(socket, binary, ack);
+            return;
+        }
+        // 超时后迟到的 hello_ack：升级会话。带确认时，之前按 JSON 发出、还留在队列里的消息用新协议带序号重发，
+        // 服务器按会话 id 和笔画 id 去重
+        binaryNegotiated = binary;
+        ackNegotiated = ack;
+        if (ack) {
+            queue.resetTransmitted();
+        } else {
+            queue.acknowledgeTransmitted();
+        }
+        Log.i(TAG, "Late hello_ack, upgraded to " + getProtocol() + (ack ? " with acks" : "")
+                + ", resending " + queue.untransmittedCount() + " messages");
+        if (statusListener != null) {
+            statusListener.onStatusUpdate("已连接 (" + getProtocol() + ")");
+        }
+        flushLocked();
+        queueDepth.set(queue.size());
+    }
+
+    private synchronized void onHandshakeDone(WebSocket socket, boolean binary, boolean ack) {
+        if (socket != webSocket || handshakeDone) {
+            return;
+        }
+        binaryNegotiated = binary;
+        ackNegotiated = ack;
+        handshakeDone = true;
+        Log.i(TAG, "Protocol negotiated: " + getProtocol() + (ack ? " with acks" : "")
+                + ", replaying " + queue.size() + " queued messages");
+        if (statusListener != null) {
+            statusListener.onStatusUpdate("已连接 (" + getProtocol() + ")");
+        }
+        flow.reset();
+        flushLocked();
+        handler.postDelayed(() -> sampleFlow(socket), FLOW_SAMPLE_INTERVAL_MS);
+        SyncHandler sync = syncHandler;
+        if (sync != null) {
+            sync.onHandshakeDone();
+        }
+    }
+
+    /** 周期采样：更新拥塞等级，缓冲区排空后补发留在队列里的消息 */
+    private synchronized void sampleFlow(WebSocket socket) {
+        if (socket != webSocket || !handshakeDone) {
+            return;
+        }
+        long now = System.nanoTime();
+        FlowController.Level before = flow.getLevel();
+        FlowController.Level level = flow.update(now, socket.queueSize(),
+                ackNegotiated ? queue.oldestInFlightMs(now) : 0);
+        if (level != before) {
+            Log.i(TAG, "Congestion level " + before + " -> " + level + ", estimated delay "
+                    + flow.getEstimatedDelayMs() + "ms");
+        }
+        socketQueueBytes.set(socket.queueSize());
+        estimatedDelayMs.set(flow.getEstimatedDelayMs());
+        queueDepth.set(queue.size());
+        if (socket.queueSize() < FlowController.MAX_SOCKET_BUFFER_BYTES) {
+            flushLocked();
+        }
+        SyncHandler sync = syncHandler;
+        if (sync != null && bulkWritableLocked()) {
+            sync.onBulkWritable();
+        }
+        handler.postDelayed(() -> sampleFlow(socket), FLOW_SAMPLE_INTERVAL_MS);
+    }
+
+    /**
+     * 连接断开时还没等到 hello_ack：对方多半是不会回复的旧服务器，超时后按 JSON 发出的消息不带序号，
+     * 下次连接重发会被画两遍，按已送达出队；其余未发出的消息照常留在队列里
+     */
+    private void settleUnackedLocked() {
+        if (helloPending && handshakeDone && !ackNegotiated) {
+            queue.acknowledgeTransmitted();
+        }
+        helloPending = false;
+    }
+
+    /** 连接意外断开：记下断开时间，按退避时间安排重连 */
+    private synchronized void onConnectionLost(WebSocket socket, String reason) {
+        if (socket != webSocket || userDisconnected) {
+            return;
+        }
+        webSocket = null;
+        settleUnackedLocked();
+        handshakeDone = false;
+        queue.resetTransmitted();
+        if (disconnectedAtMs == 0) {
+            disconnectedAtMs = SystemClock.elapsedRealtime();
+        }
+        long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempt, 16));
+        long delay = ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+        reconnectAttempt++;
+        stats.reconnectAttempts++;
+        Log.w(TAG, "Connection lost (" + reason + "), reconnect #" + reconnectAttempt + " in " + delay + "ms, "
+                + queue.size() + " messages queued");
+        if (statusListener != null) {
+            statusListener.onStatusUpdate(reason + "，" + (delay + 999) / 1000 + " 秒后重连 (第 " + reconnectAttempt + " 次)");
+        }
+        handler.postDelayed(this::reconnect, delay);
+    }
+
+    private synchronized void reconnect() {
+        if (userDisconnected || webSocket != null) {
+            return;
+        }
+        openSocketLocked();
+    }
+
+    private synchronized void onSocketOpened(WebSocket socket) {
+        if (socket != webSocket) {
+            return;
+        }
+        if (disconnectedAtMs != 0) {
+            long latency = SystemClock.elapsedRealtime() - disconnectedAtMs;
+            disconnectedAtMs = 0;
+            stats.reconnects++;
+            reconnectCount.increment();
+            stats.lastReconnectLatencyMs = latency;
+            stats.totalReconnectLatencyMs += latency;
+            stats.maxReconnectLatencyMs = Math.max(stats.maxReconnectLatencyMs, latency);
+            Log.i(TAG, "Reconnected after " + latency + "ms and " + reconnectAttempt + " attempts");
+        }
+        reconnectAttempt = 0;
+        helloPending = true;
+        handler.postDelayed(() -> onHelloTimeout(socket), HELLO_TIMEOUT_MS);
+        handler.postDelayed(() -> onHelloAbandoned(socket), HELLO_LATE_ACK_WINDOW_MS);
+    }
+
+    private void handleHelloAck(WebSocket socket, JsonObject message) {
+        JsonElement protocol = message.get("protocol");
+        boolean binary = protocol != null && BinaryWireCodec.PROTOCOL_NAME.equals(protocol.getAsString());
+        boolean ack = false;
+        JsonElement features = message.get("features");
+        if (features != null && features.isJsonArray()) {
+            for (JsonElement feature : (JsonArray) features) {
+                ack |= "ack".equals(feature.getAsString());
+            }
+        }
+        // 服务器已经收到的消息（例如上次断开前发出、确认还没到的）不必重放
+        JsonElement lastAcked = message.get("last_acked");
+        if (ack && lastAcked != null && !lastAcked.isJsonNull()) {
+            queue.acknowledge(lastAcked.getAsLong());
+        }
+        onHelloAck(socket, binary, ack);
+    }
+
+    private void handleAck(JsonObject message) {
+        JsonElement seq = message.get("seq");
+        if (seq != null) {
+            queue.acknowledge(seq.getAsLong());
+        }
+    }
+
     private final class StylusWebSocketListener extends WebSocketListener {
         @Override
         public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response) {
@@ -91,13 +559,61 @@ public class WebSocketClient {
             if (statusListener != null) {
                 statusListener.onStatusUpdate("已连接");
             }
+            // hello 中带上持久化的会话 id，必须等磁盘中的队列恢复完
+            queue.awaitLoaded(QUEUE_LOAD_TIMEOUT_MS);
+            webSocket.send(jsonCodec.encodeHello(queue.getSession(), queue.getTrimmedSeq(),
+                    BinaryWireCodec.PROTOCOL_NAME, JsonWireCodec.PROTOCOL_NAME));
+            onSocketOpened(webSocket);
         }
 
         @Override
         public void onMessage(@NonNull WebSocket webSocket, @NonNull String text) {
             super.onMessage(webSocket, text);
-            // MVP 阶段，客户端只发送数据，不处理接收到的消息
-            Log.i(TAG, "Received message: " + text);
+            // 协议协商、消息确认与快照同步在这里处理，其余消息交给入站监听者
+            if (!text.contains("\"ack\"") && !text.contains("hello_ack") && !text.contains("\"sync_")) {
+                deliverInbound(text);
+                return;
+            }
+            try {
+                JsonObject message = JsonParser.parseString(text).getAsJsonObject();
+                JsonElement type = message.get("type");
+                if (type == null) {
+                    return;
+                }
+                if ("ack".equals(type.getAsString())) {
+                    handleAck(message);
+                } else if ("hello_ack".equals(type.getAsString())) {
+                    Log.i(TAG, "Received message: " + text);
+                    handleHelloAck(webSocket, message);
+                } else if (type.getAsString().startsWith("sync_")) {
+                    SyncHandler sync = syncHandler;
+                    if (sync != null) {
+                        sync.onSyncMessage(message);
+                    }
+                } else {
+                    deliverInbound(text);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Ignoring malformed message", e);
+            }
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket webSocket, @NonNull ByteString bytes) {
+            super.onMessage(webSocket, bytes);
+            InboundListener listener = inboundListener;
+            if (listener != null) {
+                listener.onBinaryMessage(bytes.toByteArray());
+            }
+        }
+
+        private void deliverInbound(String text) {
+            InboundListener listener = inboundListener;
+            if (listener != null) {
+                listener.onTextMessage(text);
+            } else {
+                Log.i(TAG, "Received message: " + text);
+            }
         }
 
         @Override
@@ -107,6 +623,7 @@ public class WebSocketClient {
             if (statusListener != null) {
                 statusListener.onStatusUpdate("正在断开...");
             }
+            webSocket.close(1000, null);
         }
 
 
@@ -118,6 +635,8 @@ public class WebSocketClient {
             if (statusListener != null) {
                 statusListener.onStatusUpdate("已断开");
             }
+            // 服务器主动关闭也按意外断开处理；用户主动断开时 onConnectionLost 直接返回
+            onConnectionLost(webSocket, "连接已关闭");
         }
 
         @Override
@@ -127,6 +646,7 @@ public class WebSocketClient {
             if (statusListener != null) {
                 statusListener.onStatusUpdate("连接失败: " + t.getMessage());
             }
+            onConnectionLost(webSocket, "连接失败: " + t.getMessage());
         }
     }
-}
\ No newline at end of file
+}
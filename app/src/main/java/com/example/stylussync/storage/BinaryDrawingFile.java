@@ -0,0 +1,271 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 二进制索引绘图格式（.ssd），小端序：
+ * <pre>
+ * 文件头   "SSD1" | u16 版本 | u16 保留 | u32 笔画数 | u64 偏移表位置 | 填充到 32 字节
+ * 笔画记录 u64 id | i32 color | f32 baseStrokeWidth | u8 flags | 3 字节填充 | u32 点数
+ *          | f32 xs[n] | f32 ys[n] | f32 pressures[n] | i64 timestamps[n]（仅当 flags 含时间戳）
+ * 偏移表   每笔 32 字节：u64 记录位置 | u32 点数 | u32 保留 | f32 left, top, right, bottom（含半个线宽）
+ * </pre>
+ * 点按列存放，原样保存 float，不做量化。偏移表放在文件末尾，写入时可以逐笔流式写出。
+ * 读取时整个文件映射到内存，只解码需要的笔画；按区域读取时只扫描偏移表中的包围盒。
+ * 与 JSON 格式的大小和读取耗时对比见单元测试目录下的 DrawingFormatBenchmark。
+ */
+class BinaryDrawingFile {
+
+    static final String EXTENSION = ".ssd";
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'S', 'S', 'D', '1'};
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 24;
+    private static final int TABLE_ENTRY_SIZE = 32;
+    private static final int FLAG_ERASER = 1;
+    private static final int FLAG_TIMESTAMPS = 2;
+
+    private final ByteBuffer buffer;
+    private final int strokeCount;
+    private final int tableOffset;
+
+    private BinaryDrawingFile(ByteBuffer buffer, int strokeCount, int tableOffset) {
+        this.buffer = buffer;
+        this.strokeCount = strokeCount;
+        this.tableOffset = tableOffset;
+    }
+
+    /** 按文件开头的魔数判断是否为二进制格式，与扩展名无关 */
+    static boolean isBinary(File file) {
+        byte[] head = new byte[MAGIC.length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < head.length) {
+                int n = in.read(head, read, head.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 只读映射整个文件并校验文件头和偏移表 */
+    static BinaryDrawingFile open(File file) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Bad drawing file size: " + length);
+            }
+            // 映射在 channel 关闭后依然有效
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Not a binary drawing file: " + file);
+            }
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported drawing file version " + version);
+        }
+        int strokeCount = buffer.getInt(8);
+        long tableOffset = buffer.getLong(12);
+        if (strokeCount < 0 || tableOffset < HEADER_SIZE
+                || tableOffset + (long) strokeCount * TABLE_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Corrupt drawing file header: " + file);
+        }
+        return new BinaryDrawingFile(buffer, strokeCount, (int) tableOffset);
+    }
+
+    int getStrokeCount() {
+        return strokeCount;
+    }
+
+    int getPointCount(int index) {
+        return buffer.getInt(tableEntry(index) + 8);
+    }
+
+    /** 偏移表中记录的包围盒是否与矩形相交，不需要解码笔画 */
+    boolean intersects(int index, float left, float top, float right, float bottom) {
+        int entry = tableEntry(index);
+        return buffer.getFloat(entry + 16) < right && buffer.getFloat(entry + 24) > left
+                && buffer.getFloat(entry + 20) < bottom && buffer.getFloat(entry + 28) > top;
+    }
+
+    /** 所有笔画包围盒的并集 {left, top, right, bottom}，只扫描偏移表；没有笔画时 left > right */
+    float[] unionBounds() {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < strokeCount; i++) {
+            if (getPointCount(i) == 0) {
+                continue;
+            }
+            int entry = tableEntry(i);
+            bounds[0] = Math.min(bounds[0], buffer.getFloat(entry + 16));
+            bounds[1] = Math.min(bounds[1], buffer.getFloat(entry + 20));
+            bounds[2] = Math.max(bounds[2], buffer.getFloat(entry + 24));
+            bounds[3] = Math.max(bounds[3], buffer.getFloat(entry + 28));
+        }
+        return bounds;
+    }
+
+    Stroke readStroke(int index) throws IOException {
+        int entry = tableEntry(index);
+        long offset = buffer.getLong(entry);
+        int pointCount = buffer.getInt(entry + 8);
+        int flags = offset >= HEADER_SIZE && offset + RECORD_HEADER_SIZE <= tableOffset
+                ? buffer.get((int) offset + 16) : 0;
+        long end = offset + RECORD_HEADER_SIZE + 12L * pointCount
+                + ((flags & FLAG_TIMESTAMPS) != 0 ? 8L * pointCount : 0);
+        if (offset < HEADER_SIZE || pointCount < 0 || end > tableOffset
+                || buffer.getInt((int) offset + 20) != pointCount) {
+            throw new IOException("Corrupt stroke record " + index);
+        }
+        int pos = (int) offset;
+        Stroke stroke = new Stroke(buffer.getInt(pos + 8), buffer.getFloat(pos + 12),
+                (flags & FLAG_ERASER) != 0, Math.max(1, pointCount));
+        stroke.id = buffer.getLong(pos);
+
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        float[] xs = new float[pointCount];
+        float[] ys = new float[pointCount];
+        float[] pressures = new float[pointCount];
+        long[] timestamps = null;
+        pos += RECORD_HEADER_SIZE;
+        view.position(pos);
+        view.asFloatBuffer().get(xs);
+        pos += 4 * pointCount;
+        view.position(pos);
+        view.asFloatBuffer().get(ys);
+        pos += 4 * pointCount;
+        view.position(pos);
+        view.asFloatBuffer().get(pressures);
+        pos += 4 * pointCount;
+        if ((flags & FLAG_TIMESTAMPS) != 0) {
+            timestamps = new long[pointCount];
+            view.position(pos);
+            view.asLongBuffer().get(timestamps);
+        }
+        stroke.addPoints(xs, ys, pressures, timestamps, pointCount);
+        return stroke;
+    }
+
+    /** 读取 [from, to) 范围内的笔画 */
+    List<Stroke> readStrokes(int from, int to) throws IOException {
+        List<Stroke> strokes = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            strokes.add(readStroke(i));
+        }
+        return strokes;
+    }
+
+    /** 只解码包围盒与矩形相交的笔画，按绘制顺序返回 */
+    List<Stroke> readStrokesIn(float left, float top, float right, float bottom) throws IOException {
+        List<Stroke> strokes = new ArrayList<>();
+        for (int i = 0; i < strokeCount; i++) {
+            if (intersects(i, left, top, right, bottom)) {
+                strokes.add(readStroke(i));
+            }
+        }
+        return strokes;
+    }
+
+    private int tableEntry(int index) {
+        if (index < 0 || index >= strokeCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + strokeCount);
+        }
+        return tableOffset + index * TABLE_ENTRY_SIZE;
+    }
+
+    // --- 写入 ---
+
+    /** 逐笔写出整个文件并 fsync；调用方负责临时文件与原子重命名 */
+    static void write(File file, List<Stroke> strokes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file); FileChannel channel = out.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.write(header, 0); // 占位，最后再写真正的文件头
+            channel.position(HEADER_SIZE);
+
+            int count = strokes.size();
+            ByteBuffer table = ByteBuffer.allocate(count * TABLE_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer record = ByteBuffer.allocate(0);
+            long offset = HEADER_SIZE;
+            for (Stroke stroke : strokes) {
+                int n = stroke.size();
+                boolean timestamps = stroke.hasTimestamps();
+                int recordSize = RECORD_HEADER_SIZE + 12 * n + (timestamps ? 8 * n : 0);
+                if (record.capacity() < recordSize) {
+                    record = ByteBuffer.allocate(Math.max(recordSize, record.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                record.clear();
+                record.putLong(stroke.id);
+                record.putInt(stroke.color);
+                record.putFloat(stroke.baseStrokeWidth);
+                record.put((byte) ((stroke.isEraser ? FLAG_ERASER : 0) | (timestamps ? FLAG_TIMESTAMPS : 0)));
+                record.put((byte) 0).put((byte) 0).put((byte) 0);
+                record.putInt(n);
+                record.asFloatBuffer().put(stroke.xArray(), 0, n);
+                record.position(record.position() + 4 * n);
+                record.asFloatBuffer().put(stroke.yArray(), 0, n);
+                record.position(record.position() + 4 * n);
+                record.asFloatBuffer().put(stroke.pressureArray(), 0, n);
+                record.position(record.position() + 4 * n);
+                if (timestamps) {
+                    record.asLongBuffer().put(stroke.timestampArray(), 0, n);
+                    record.position(record.position() + 8 * n);
+                }
+                record.flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+
+                table.putLong(offset);
+                table.putInt(n);
+                table.putInt(0);
+                table.putFloat(stroke.getLeft());
+                table.putFloat(stroke.getTop());
+                table.putFloat(stroke.getRight());
+                table.putFloat(stroke.getBottom());
+                offset += recordSize;
+            }
+            table.flip();
+            while (table.hasRemaining()) {
+                channel.write(table);
+            }
+
+            header.clear();
+            header.put(MAGIC);
+            header.putShort((short) VERSION);
+            header.putShort((short) 0);
+            header.putInt(count);
+            header.putLong(offset);
+            header.position(HEADER_SIZE);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+}
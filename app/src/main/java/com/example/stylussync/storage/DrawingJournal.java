@@ -0,0 +1,290 @@
+package com.example.stylussync.storage;
+
+import android.util.Log;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 单个绘图文件的追加式操作日志，与快照文件放在一起：Drawing.json + Drawing.json.journal。
+ *
+ * 每行一条 JSON 记录。第一行是 base 记录，写明日志所依附快照的长度和修改时间；
+ * 快照被重写（保存、压缩）后两者不再匹配，旧日志在回放时会被忽略，因此“先换快照、再删日志”之间崩溃也不会重复回放。
+ * 之后每行是一次历史操作：add（附带整笔笔画）、undo、redo、clear。
+ * 末尾不完整的一行视为写入时崩溃，回放时丢弃，续写前截掉。
+ *
+ * 只在 FileRepository 中该文件的串行队列上使用，同一时刻只有一个线程访问。
+ */
+class DrawingJournal {
+
+    private static final String TAG = "DrawingJournal";
+    static final String SUFFIX = ".journal";
+
+    enum Op {
+        ADD("add"), UNDO("undo"), REDO("redo"), CLEAR("clear");
+
+        final String wireName;
+
+        Op(String wireName) {
+            this.wireName = wireName;
+        }
+
+        static Op fromWireName(String name) {
+            for (Op op : values()) {
+                if (op.wireName.equals(name)) {
+                    return op;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Gson gson;
+    private FileOutputStream output;
+    private int entryCount;
+    private long byteCount;
+
+    DrawingJournal(File snapshotFile, Gson gson) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFileFor(snapshotFile);
+        this.gson = gson;
+    }
+
+    static File journalFileFor(File snapshotFile) {
+        return new File(snapshotFile.getParentFile(), snapshotFile.getName() + SUFFIX);
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    long getByteCount() {
+        return byteCount;
+    }
+
+    /** 追加一条记录；stroke 只在 ADD 时使用。数据写入内核缓冲区后返回，需要持久化时调用 {@link #sync()} */
+    void append(Op op, Stroke stroke) throws IOException {
+        ensureOpen();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(op == Op.ADD ? 64 + stroke.size() * 48 : 16);
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(line, StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name("op").value(op.wireName);
+            if (op == Op.ADD) {
+                writer.name("stroke");
+                gson.toJson(stroke, Stroke.class, writer);
+            }
+            writer.endObject();
+        }
+        line.write('\n');
+        // 整行一次写出，尽量缩小撕裂写入的窗口
+        output.write(line.toByteArray());
+        entryCount++;
+        byteCount += line.size();
+    }
+
+    void sync() throws IOException {
+        if (output != null) {
+            output.getFD().sync();
+        }
+    }
+
+    void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing journal", e);
+            }
+            output = null;
+        }
+    }
+
+    /** 快照已重写，日志内容全部并入快照 */
+    void discard() {
+        close();
+        if (journalFile.exists() && !journalFile.delete()) {
+            Log.w(TAG, "Failed to delete journal " + journalFile);
+        }
+        entryCount = 0;
+        byteCount = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (output != null) {
+            return;
+        }
+        Replay existing = readReplay(snapshotFile, gson);
+        if (existing == null || !existing.valid) {
+            // 没有日志，或日志属于旧快照：重新开始，写入 base 记录
+            if (journalFile.exists() && !journalFile.delete()) {
+                throw new IOException("Cannot reset stale journal " + journalFile);
+            }
+            output = new FileOutputStream(journalFile, true);
+            entryCount = 0;
+            byteCount = 0;
+            String base = "{\"op\":\"base\",\"length\":" + snapshotFile.length()
+                    + ",\"mtime\":" + snapshotFile.lastModified() + "}\n";
+            byte[] bytes = base.getBytes(StandardCharsets.UTF_8);
+            output.write(bytes);
+            byteCount += bytes.length;
+        } else {
+            // 回放在第一条不完整的记录处停下，续写前先截掉它，否则之后追加的记录永远读不到
+            truncateTornTail();
+            output = new FileOutputStream(journalFile, true);
+            entryCount = existing.entryCount;
+            byteCount = journalFile.length();
+        }
+    }
+
+    /** 把日志截到最后一个完整行（换行符）之后 */
+    private void truncateTornTail() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long end = file.length();
+            byte[] buffer = new byte[4096];
+            while (end > 0) {
+                int n = (int) Math.min(buffer.length, end);
+                file.seek(end - n);
+                file.readFully(buffer, 0, n);
+                int i = n - 1;
+                while (i >= 0 && buffer[i] != '\n') {
+                    i--;
+                }
+                if (i >= 0) {
+                    end = end - n + i + 1;
+                    break;
+                }
+                end -= n;
+            }
+            if (end < file.length()) {
+                Log.w(TAG, "Truncating torn journal tail of " + (file.length() - end) + " bytes");
+                file.setLength(end);
+            }
+        }
+    }
+
+    // --- 回放 ---
+
+    /**
+     * 日志回放结果。历史操作只作用在栈顶，所以回放后的状态总是“快照的前若干笔 + 日志中新增的若干笔”，
+     * 因此不需要先读出快照就能算出结果，快照可以边读边用。
+     */
+    static final class Replay {
+        // base 记录与当前快照匹配；不匹配时日志应当被忽略
+        boolean valid;
+        int entryCount;
+        // 出现过 clear：快照中的笔画全部不保留
+        boolean cleared;
+        // 从快照顶部撤销掉的笔画数
+        int removedFromSnapshot;
+        // 快照之上保留的新笔画，按绘制顺序
+        final List<Stroke> tail = new ArrayList<>();
+
+        /** 快照共有 snapshotSize 笔时，保留前多少笔 */
+        int snapshotPrefix(int snapshotSize) {
+            return cleared ? 0 : Math.max(0, snapshotSize - removedFromSnapshot);
+        }
+
+        boolean isEmpty() {
+            return !cleared && removedFromSnapshot == 0 && tail.isEmpty();
+        }
+    }
+
+    // 重做栈中代表“快照中的一笔”的占位符
+    private static final Stroke SNAPSHOT_ENTRY = new Stroke(0, 0f, false, 1);
+
+    /** 读取并回放日志；没有日志文件时返回 null */
+    static Replay readReplay(File snapshotFile, Gson gson) {
+        File journalFile = journalFileFor(snapshotFile);
+        if (!journalFile.exists()) {
+            return null;
+        }
+        Replay replay = new Replay();
+        Deque<Stroke> redo = new ArrayDeque<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null || !matchesSnapshot(line, snapshotFile)) {
+                return replay;
+            }
+            replay.valid = true;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record;
+                try {
+                    record = JsonParser.parseString(line).getAsJsonObject();
+                } catch (RuntimeException e) {
+                    // 崩溃时写了一半的最后一行
+                    Log.w(TAG, "Dropping torn journal record");
+                    break;
+                }
+                Op op = Op.fromWireName(record.get("op").getAsString());
+                if (op == null) {
+                    continue;
+                }
+                replay.entryCount++;
+                switch (op) {
+                    case ADD:
+                        replay.tail.add(gson.fromJson(record.get("stroke"), Stroke.class));
+                        redo.clear();
+                        break;
+                    case UNDO:
+                        if (!replay.tail.isEmpty()) {
+                            redo.push(replay.tail.remove(replay.tail.size() - 1));
+                        } else if (!replay.cleared) {
+                            replay.removedFromSnapshot++;
+                            redo.push(SNAPSHOT_ENTRY);
+                        }
+                        break;
+                    case REDO:
+                        if (!redo.isEmpty()) {
+                            Stroke stroke = redo.pop();
+                            if (stroke == SNAPSHOT_ENTRY) {
+                                replay.removedFromSnapshot--;
+                            } else {
+                                replay.tail.add(stroke);
+                            }
+                        }
+                        break;
+                    case CLEAR:
+                        replay.cleared = true;
+                        replay.tail.clear();
+                        redo.clear();
+                        break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error reading journal " + journalFile, e);
+        }
+        return replay;
+    }
+
+    private static boolean matchesSnapshot(String baseLine, File snapshotFile) {
+        try {
+            JsonObject base = JsonParser.parseString(baseLine).getAsJsonObject();
+            return "base".equals(base.get("op").getAsString())
+                    && base.get("length").getAsLong() == snapshotFile.length()
+                    && base.get("mtime").getAsLong() == snapshotFile.lastModified();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
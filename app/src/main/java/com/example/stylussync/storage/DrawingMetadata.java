@@ -0,0 +1,64 @@
+package com.example.stylussync.storage;
+
+import java.util.Objects;
+
+/**
+ * 一个绘图文件的元数据，保存在持久化的元数据索引中，文件列表不需要打开绘图就能显示和排序。
+ * 不可变；size 与 lastModified 把快照和日志合在一起计算，用来判断索引是否过期。
+ * 包围盒是所有笔画包围盒的并集，撤销后不会收缩，下次完整保存或核对时重新计算；没有笔画时 left > right。
+ */
+public final class DrawingMetadata {
+
+    public final String name;
+    public final long size;
+    public final long lastModified;
+    public final int strokeCount;
+    public final float left, top, right, bottom;
+    // 最近一次在本应用中打开的时间，从未打开过为 0
+    public final long lastOpened;
+
+    public DrawingMetadata(String name, long size, long lastModified, int strokeCount,
+                           float left, float top, float right, float bottom, long lastOpened) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.strokeCount = strokeCount;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.lastOpened = lastOpened;
+    }
+
+    public boolean hasBounds() {
+        return left <= right && top <= bottom;
+    }
+
+    DrawingMetadata withFileStat(long size, long lastModified) {
+        return new DrawingMetadata(name, size, lastModified, strokeCount, left, top, right, bottom, lastOpened);
+    }
+
+    DrawingMetadata withStrokes(int strokeCount, float left, float top, float right, float bottom) {
+        return new DrawingMetadata(name, size, lastModified, strokeCount, left, top, right, bottom, lastOpened);
+    }
+
+    DrawingMetadata withLastOpened(long lastOpened) {
+        return new DrawingMetadata(name, size, lastModified, strokeCount, left, top, right, bottom, lastOpened);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DrawingMetadata)) return false;
+        DrawingMetadata that = (DrawingMetadata) o;
+        return size == that.size && lastModified == that.lastModified && strokeCount == that.strokeCount
+                && Float.compare(left, that.left) == 0 && Float.compare(top, that.top) == 0
+                && Float.compare(right, that.right) == 0 && Float.compare(bottom, that.bottom) == 0
+                && lastOpened == that.lastOpened && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, size, lastModified, strokeCount, left, top, right, bottom, lastOpened);
+    }
+}
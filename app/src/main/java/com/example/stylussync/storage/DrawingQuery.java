@@ -0,0 +1,42 @@
+package com.example.stylussync.storage;
+
+import java.util.List;
+
+/** 元数据索引的查询条件：排序、按文件名过滤、分页 */
+public final class DrawingQuery {
+
+    public enum Sort {
+        NAME, LAST_MODIFIED, LAST_OPENED, SIZE, STROKE_COUNT
+    }
+
+    public final Sort sort;
+    public final boolean descending;
+    // 文件名包含该字符串（不区分大小写），为 null 或空串时不过滤
+    public final String filter;
+    public final int offset;
+    public final int limit;
+
+    public DrawingQuery(Sort sort, boolean descending, String filter, int offset, int limit) {
+        this.sort = sort;
+        this.descending = descending;
+        this.filter = filter;
+        this.offset = Math.max(0, offset);
+        this.limit = Math.max(0, limit);
+    }
+
+    /** 查询结果的一页 */
+    public static final class Page {
+        public final List<DrawingMetadata> items;
+        // 满足过滤条件的总数，用来判断是否还有下一页
+        public final int totalCount;
+
+        Page(List<DrawingMetadata> items, int totalCount) {
+            this.items = items;
+            this.totalCount = totalCount;
+        }
+
+        public boolean hasMore(int loaded) {
+            return loaded < totalCount;
+        }
+    }
+}
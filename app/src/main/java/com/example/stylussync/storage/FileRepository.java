@@ -5,29 +5,136 @@ import android.os.Environment;
 import android.util.Log;
 
 import com.example.stylussync.AppExecutors;
+import com.example.stylussync.TaskPool;
 import com.example.stylussync.data.Stroke;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileRepository {
 
     private static final String TAG = "FileRepository";
+    // 日志累积到一定规模后在后台合并进快照
+    private static final int COMPACT_ENTRY_THRESHOLD = 500;
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    // 渐进加载：第一批尽量小，让第一笔尽快出现在屏幕上，之后按 chunkSize 分批
+    public static final int DEFAULT_LOAD_CHUNK_SIZE = 64;
+    private static final int FIRST_LOAD_CHUNK_SIZE = 8;
+    private static final String JSON_EXTENSION = ".json";
+    // 多页文档：第 0 页就是主文件，其余页面放在主文件旁的目录中，每页一个 .ssd 快照加自己的日志，
+    // 编辑一页只追加或重写这一页的文件
+    private static final String PAGES_SUFFIX = ".pages";
+    private static final String MANIFEST_FILE_NAME = "pages.json";
+    // 未保存文档被换出内存的页面暂存在这个子目录中；超过一天的暂存文档视为崩溃遗留，新建暂存时顺带清理
+    private static final String SCRATCH_DIR = ".unsaved";
+    private static final long SCRATCH_MAX_AGE_MS = 24L * 60 * 60 * 1000;
+
     private final Context context;
     private final Gson gson;
     private final AppExecutors executors;
+    // 已打开的日志，进程内共享（各 Activity 各有一个 FileRepository 实例）。
+    // 同一文件的所有读写都在 diskIO 中以文件名为 key 的串行队列上执行，所以每个日志同一时刻只有一个线程使用
+    private static final Map<String, DrawingJournal> journals = new ConcurrentHashMap<>();
+    // 正在编辑器中打开的文档（主文件名），迁移不碰它们；与迁移的提交点在 openDocuments 上互斥
+    private static final Set<String> openDocuments = new HashSet<>();
+    // 本进程中已迁移的文件：旧 .json 名 → 新 .ssd 名，打开旧名时转到新名
+    private static final Map<String, String> migratedNames = new HashMap<>();
+    // 日志追加失败（快照缺失或写入出错）的文件，下一次 sync 报告失败
+    private static final Set<String> failedAppends = ConcurrentHashMap.newKeySet();
+    // 元数据索引，进程内共享；不同文档的任务会并行访问，复合操作需在索引对象上加锁
+    private static final String INDEX_FILE_NAME = "drawing_index.json";
+    private static final Object INDEX_LOCK = new Object();
+    private static MetadataIndex metadataIndex;
+
+    // 指标：耗时为微秒，从任务开始执行算起（不含在 diskIO 中排队的时间，排队见 TaskPool 统计）
+    private static final Histogram SAVE_US = MetricsRegistry.getInstance().histogram("storage.save_us");
+    private static final Histogram SAVE_BYTES = MetricsRegistry.getInstance().histogram("storage.save_bytes");
+    private static final Histogram LOAD_US = MetricsRegistry.getInstance().histogram("storage.load_us");
+    private static final Histogram LOAD_BYTES = MetricsRegistry.getInstance().histogram("storage.load_bytes");
+    // 渐进加载：从发起到第一批笔画交给视图
+    private static final Histogram LOAD_FIRST_STROKE_US = MetricsRegistry.getInstance().histogram("storage.load_first_stroke_us");
+    private static final Histogram LIST_US = MetricsRegistry.getInstance().histogram("storage.list_us");
+    // 多页文档中单独读取一页（预取相邻页等），不含渐进加载
+    private static final Histogram PAGE_LOAD_US = MetricsRegistry.getInstance().histogram("storage.page_load_us");
+    private static final Counter ERRORS = MetricsRegistry.getInstance().counter("storage.errors");
 
     // 回调接口
     public interface RepositoryCallback<T> {
         void onComplete(T result);
     }
 
+    /** 渐进加载的回调，均在主线程执行；加载被取消后不会再有任何回调 */
+    public interface ProgressiveLoadCallback {
+        /** 按绘制顺序送达的一批笔画 */
+        void onStrokesLoaded(List<Stroke> strokes);
+
+        void onLoadFinished(LoadResult result);
+    }
+
+    /** 渐进加载的结果与耗时统计 */
+    public static final class LoadResult {
+        public final boolean success;
+        public final int strokeCount;
+        public final int chunkCount;
+        // 从发起加载到第一批笔画交给视图并处理完的耗时，没有笔画时为 -1
+        public final long timeToFirstStrokeMs;
+        public final long totalMs;
+
+        LoadResult(boolean success, int strokeCount, int chunkCount, long timeToFirstStrokeMs, long totalMs) {
+            this.success = success;
+            this.strokeCount = strokeCount;
+            this.chunkCount = chunkCount;
+            this.timeToFirstStrokeMs = timeToFirstStrokeMs;
+            this.totalMs = totalMs;
+        }
+
+        @Override
+        public String toString() {
+            return "LoadResult{success=" + success + ", strokes=" + strokeCount + ", chunks=" + chunkCount
+                    + ", firstStroke=" + timeToFirstStrokeMs + "ms, total=" + totalMs + "ms}";
+        }
+    }
+
+    /** 进行中的加载，可在任意线程取消 */
+    public static final class LoadHandle {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Future<?> future;
+
+        public void cancel() {
+            cancelled.set(true);
+            Future<?> f = future;
+            if (f != null) {
+                // 还在排队的加载直接出队；已经开始的在下一笔检查取消标志后退出
+                f.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
     public FileRepository(Context context) {
         this.context = context;
         this.gson = new Gson();
@@ -44,28 +151,81 @@ public class FileRepository {
         return dir;
     }
 
-    // 异步保存绘图
+    /** 保存时实际使用的文件名：已带 .json 或 .ssd 扩展名的保持原格式，否则默认使用二进制格式 */
+    public static String resolveFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(JSON_EXTENSION) || lower.endsWith(BinaryDrawingFile.EXTENSION)) {
+            return fileName;
+        }
+        return fileName + BinaryDrawingFile.EXTENSION;
+    }
+
+    File getDrawingFile(String fileName) {
+        return new File(getStorageDir(), fileName);
+    }
+
+    /** 多页文档中一页的文件名（相对存储目录）；第 0 页就是文档主文件 */
+    public static String pageFileName(String fileName, int pageId) {
+        if (pageId == 0) {
+            return fileName;
+        }
+        return fileName + PAGES_SUFFIX + "/" + pageId + BinaryDrawingFile.EXTENSION;
+    }
+
+    private static String pagesDirName(String fileName) {
+        return fileName + PAGES_SUFFIX;
+    }
+
+    private static String manifestFileName(String fileName) {
+        return pagesDirName(fileName) + "/" + MANIFEST_FILE_NAME;
+    }
+
+    /** 位于子目录中的页面文件和暂存文档不进入元数据索引，也没有缩略图 */
+    private static boolean isIndexed(String fileName) {
+        return fileName.indexOf('/') < 0;
+    }
+
+    /** 在调用线程上同步读取快照 + 日志回放后的笔画，不要在主线程调用 */
+    List<Stroke> readDrawingBlocking(String fileName) throws IOException {
+        return readCurrentState(getDrawingFile(fileName));
+    }
+
+    // 异步保存绘图：写出完整快照，并丢弃该文件已有的日志
     public void saveDrawing(List<Stroke> strokes, String fileName, RepositoryCallback<Boolean> callback) {
-        executors.diskIO().execute(() -> {
-            String finalFileName = fileName.toLowerCase().endsWith(".json") ? fileName : fileName + ".json";
-            File file = new File(getStorageDir(), finalFileName);
-            String json = gson.toJson(strokes);
+        String finalFileName = resolveFileName(fileName);
+        executors.diskIO().submit(finalFileName, () -> {
+            long start = System.nanoTime();
             boolean success = false;
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.write(json);
-                Log.d(TAG, "Drawing saved successfully to " + file.getAbsolutePath());
+            try {
+                writeDrawing(finalFileName, strokes);
                 success = true;
             } catch (IOException e) {
                 Log.e(TAG, "Error saving drawing", e);
+                ERRORS.increment();
             }
+            SAVE_US.recordSinceNanos(start);
             final boolean result = success;
             executors.mainThread().execute(() -> callback.onComplete(result));
-        });
+        }, TaskPool.Priority.HIGH);
+    }
+
+    /** 写出完整快照并丢弃日志；页面文件与暂存文档不更新索引和缩略图。须在该文件的串行队列上调用 */
+    private void writeDrawing(String fileName, List<Stroke> strokes) throws IOException {
+        File file = new File(getStorageDir(), fileName);
+        writeSnapshot(file, strokes);
+        SAVE_BYTES.record(file.length());
+        journalFor(fileName).discard();
+        if (isIndexed(fileName)) {
+            ThumbnailCache.onDrawingChanged(fileName);
+            updateMetadata(fileName, file, strokes);
+            persistIndex();
+        }
+        Log.d(TAG, "Drawing saved successfully to " + file.getAbsolutePath());
     }
 
-    // 异步加载绘图
+    // 异步加载绘图：读取快照并回放日志
     public void loadDrawing(String fileName, RepositoryCallback<List<Stroke>> callback) {
-        executors.diskIO().execute(() -> {
+        executors.diskIO().submit(fileName, () -> {
             File file = new File(getStorageDir(), fileName);
             if (!file.exists()) {
                 Log.e(TAG, "File not found: " + fileName);
@@ -73,36 +233,886 @@ public class FileRepository {
                 return;
             }
 
+            long start = System.nanoTime();
             List<Stroke> strokes = null;
-            try (FileReader reader = new FileReader(file)) {
-                Type strokeListType = new TypeToken<List<Stroke>>() {}.getType();
-                strokes = gson.fromJson(reader, strokeListType);
+            try {
+                LOAD_BYTES.record(statDrawing(file)[0]);
+                strokes = readCurrentState(file);
             } catch (Exception e) { // 捕获更广泛的异常，如JsonSyntaxException
                 Log.e(TAG, "Error loading or parsing drawing", e);
+                ERRORS.increment();
             }
+            LOAD_US.recordSinceNanos(start);
             final List<Stroke> result = strokes;
             executors.mainThread().execute(() -> callback.onComplete(result));
-        });
+        }, TaskPool.Priority.HIGH);
+    }
+
+    /**
+     * 流式渐进加载：JSON 快照用 JsonReader 逐笔解析，二进制快照按偏移表逐批解码，分批投递到主线程，
+     * 不需要等整个文件解析完。
+     * 日志先于快照读取（日志只改动快照顶部），所以快照可以边读边投递，最后再投递日志中新增的笔画。
+     */
+    public LoadHandle loadDrawingProgressive(String fileName, int chunkSize, ProgressiveLoadCallback callback) {
+        final LoadHandle handle = new LoadHandle();
+        final long start = System.nanoTime();
+        // 以下计数只在主线程访问
+        final long[] firstStrokeNanos = {-1};
+        final int[] delivered = new int[2]; // [0] 笔画数，[1] 批数
+        final int batchSize = Math.max(1, chunkSize);
+
+        handle.future = executors.diskIO().submit(fileName, () -> {
+            long taskStart = System.nanoTime();
+            ChunkSink sink = chunk -> executors.mainThread().execute(() -> {
+                if (handle.isCancelled()) {
+                    return;
+                }
+                callback.onStrokesLoaded(chunk);
+                if (firstStrokeNanos[0] < 0) {
+                    firstStrokeNanos[0] = System.nanoTime() - start;
+                    LOAD_FIRST_STROKE_US.record(firstStrokeNanos[0] / 1000);
+                }
+                delivered[0] += chunk.size();
+                delivered[1]++;
+            });
+
+            boolean success = false;
+            File file = new File(getStorageDir(), fileName);
+            if (!file.exists()) {
+                Log.e(TAG, "File not found: " + fileName);
+            } else {
+                try {
+                    LOAD_BYTES.record(statDrawing(file)[0]);
+                    success = streamCurrentState(file, batchSize, sink, handle);
+                } catch (Exception e) { // 捕获更广泛的异常，如JsonSyntaxException
+                    Log.e(TAG, "Error loading or parsing drawing", e);
+                    ERRORS.increment();
+                }
+                if (success) {
+                    // 被取消的加载提前结束，不计入
+                    LOAD_US.recordSinceNanos(taskStart);
+                }
+            }
+            final boolean result = success;
+            executors.mainThread().execute(() -> {
+                if (handle.isCancelled()) {
+                    Log.d(TAG, "Load of " + fileName + " cancelled");
+                    return;
+                }
+                LoadResult loadResult = new LoadResult(result, delivered[0], delivered[1],
+                        firstStrokeNanos[0] < 0 ? -1 : firstStrokeNanos[0] / 1_000_000,
+                        (System.nanoTime() - start) / 1_000_000);
+                Log.d(TAG, "Loaded " + fileName + ": " + loadResult);
+                callback.onLoadFinished(loadResult);
+            });
+        }, TaskPool.Priority.HIGH);
+        return handle;
     }
 
     // 异步列出所有已保存的绘图文件名
     public void listDrawingFiles(RepositoryCallback<String[]> callback) {
-        executors.diskIO().execute(() -> {
+        executors.diskIO().submit(() -> {
+            long start = System.nanoTime();
             File dir = getStorageDir();
-            String[] fileList = dir.list((d, name) -> name.toLowerCase().endsWith(".json"));
+            String[] fileList = dir.list((d, name) -> isDrawingFile(name));
+            LIST_US.recordSinceNanos(start);
             executors.mainThread().execute(() -> callback.onComplete(fileList));
-        });
+        }, TaskPool.Priority.NORMAL);
     }
 
     public void deleteDrawing(String fileName, RepositoryCallback<Boolean> callback) {
-        executors.diskIO().execute(() -> {
+        executors.diskIO().submit(fileName, () -> {
             File file = new File(getStorageDir(), fileName);
             boolean success = false;
             if (file.exists()) {
                 success = file.delete();
             }
+            journalFor(fileName).discard();
+            journals.remove(fileName);
+            deletePages(fileName, null);
+            ThumbnailCache.onDrawingDeleted(fileName);
+            indexFor().remove(fileName);
+            persistIndex();
+            final boolean result = success;
+            executors.mainThread().execute(() -> callback.onComplete(result));
+        }, TaskPool.Priority.NORMAL);
+    }
+
+    private static boolean isDrawingFile(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(JSON_EXTENSION) || lower.endsWith(BinaryDrawingFile.EXTENSION);
+    }
+
+    /**
+     * 在后台把 .json 绘图迁移为 .ssd 二进制格式：读出快照 + 日志回放后的当前状态，写出二进制快照并校验，
+     * 成功后再删除原文件及其日志。每个文件在自己的串行队列上迁移，不会与该文件的其他读写交错；
+     * 本进程中已经打开过日志的文件和正在编辑器中打开的文档（{@link #openDocument}）会被跳过，留到下次启动再迁移。
+     * @param callback 迁移成功的文件数，可为 null
+     */
+    public void migrateToBinary(RepositoryCallback<Integer> callback) {
+        executors.diskIO().submit(() -> {
+            File dir = getStorageDir();
+            String[] jsonFiles = dir.list((d, name) -> name.toLowerCase().endsWith(JSON_EXTENSION));
+            if (jsonFiles == null || jsonFiles.length == 0) {
+                if (callback != null) {
+                    executors.mainThread().execute(() -> callback.onComplete(0));
+                }
+                return;
+            }
+            AtomicInteger remaining = new AtomicInteger(jsonFiles.length);
+            AtomicInteger migrated = new AtomicInteger();
+            for (String name : jsonFiles) {
+                executors.diskIO().submit(name, () -> {
+                    if (migrateFile(dir, name)) {
+                        migrated.incrementAndGet();
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        persistIndex();
+                        final int result = migrated.get();
+                        if (callback != null) {
+                            executors.mainThread().execute(() -> callback.onComplete(result));
+                        }
+                    }
+                }, TaskPool.Priority.LOW);
+            }
+        }, TaskPool.Priority.LOW);
+    }
+
+    /**
+     * 编辑器打开一个文档：之后迁移会跳过它，直到 {@link #closeDocument}。
+     * @return 实际要使用的文件名；文档已被迁移为 .ssd 时是新的文件名
+     */
+    public String openDocument(String fileName) {
+        synchronized (openDocuments) {
+            String actual = migratedNames.containsKey(fileName) ? migratedNames.get(fileName) : fileName;
+            openDocuments.add(actual);
+            return actual;
+        }
+    }
+
+    public void closeDocument(String fileName) {
+        synchronized (openDocuments) {
+            openDocuments.remove(fileName);
+        }
+    }
+
+    private static boolean isOpen(String fileName) {
+        synchronized (openDocuments) {
+            return openDocuments.contains(fileName);
+        }
+    }
+
+    private boolean migrateFile(File dir, String name) {
+        if (journals.containsKey(name) || isOpen(name)) {
+            return false;
+        }
+        String binaryName = name.substring(0, name.length() - JSON_EXTENSION.length()) + BinaryDrawingFile.EXTENSION;
+        File source = new File(dir, name);
+        File target = new File(dir, binaryName);
+        if (!source.exists()) {
+            return false;
+        }
+        if (target.exists()) {
+            Log.w(TAG, "Skip migrating " + name + ", " + binaryName + " already exists");
+            return false;
+        }
+        File pagesDir = new File(dir, pagesDirName(name));
+        if (pagesDir.exists()) {
+            // 页面目录正在使用时留到下次
+            for (String key : journals.keySet()) {
+                if (key.startsWith(pagesDirName(name) + "/")) {
+                    return false;
+                }
+            }
+        }
+        try {
+            long start = System.nanoTime();
+            List<Stroke> strokes = readCurrentState(source);
+            writeSnapshot(target, strokes);
+            if (BinaryDrawingFile.open(target).getStrokeCount() != strokes.size()) {
+                throw new IOException("Verification failed for " + binaryName);
+            }
+            // 提交点：迁移期间被打开的文档放弃这次迁移；提交之后再打开旧名会转到新文件
+            synchronized (openDocuments) {
+                if (openDocuments.contains(name)) {
+                    Log.i(TAG, "Skip migrating " + name + ", opened during migration");
+                    target.delete();
+                    return false;
+                }
+                // 其它页面本来就是 .ssd，主文件校验通过后跟着改名；改名失败时原文件与页面都保持原样
+                if (pagesDir.exists() && !pagesDir.renameTo(new File(dir, pagesDirName(binaryName)))) {
+                    Log.w(TAG, "Skip migrating " + name + ", cannot move its pages");
+                    target.delete();
+                    return false;
+                }
+                migratedNames.put(name, binaryName);
+            }
+            journalFor(name).discard();
+            journals.remove(name);
+            ThumbnailCache.onDrawingDeleted(name);
+            long sourceLength = source.length();
+            if (!source.delete()) {
+                Log.w(TAG, "Failed to delete migrated " + name);
+            }
+            MetadataIndex index = indexFor();
+            synchronized (index) {
+                DrawingMetadata old = index.get(name);
+                index.remove(name);
+                updateMetadata(binaryName, target, strokes);
+                if (old != null) {
+                    index.put(index.get(binaryName).withLastOpened(old.lastOpened));
+                }
+            }
+            Log.d(TAG, "Migrated " + name + " (" + sourceLength + " -> " + target.length() + " bytes) in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error migrating " + name, e);
+            target.delete();
+            return false;
+        }
+    }
+
+    // --- 日志模式：每次提交笔画或撤销/重做/清空时只追加一条记录，保存成本与文档大小无关 ---
+
+    /** 追加一笔新完成的笔画；fileName 必须是已经保存过快照的文件 */
+    public void appendStroke(String fileName, Stroke stroke) {
+        appendToJournal(fileName, DrawingJournal.Op.ADD, stroke);
+    }
+
+    /**
+     * 撤销了一笔本地笔画。日志中的 undo 只弹出栈顶，其后到达的远端笔画 remoteAbove 仍要保留，
+     * 所以记为连同它们一起弹出，再按原顺序把它们加回。
+     * 重做用 {@link #appendStroke} 把笔画加到栈顶：远端笔画的 add 会清空回放时的重做栈，不能依赖 redo 记录。
+     */
+    public void appendUndo(String fileName, List<Stroke> remoteAbove) {
+        for (int i = 0; i <= remoteAbove.size(); i++) {
+            appendToJournal(fileName, DrawingJournal.Op.UNDO, null);
+        }
+        for (Stroke stroke : remoteAbove) {
+            appendToJournal(fileName, DrawingJournal.Op.ADD, stroke);
+        }
+    }
+
+    public void appendClear(String fileName) {
+        appendToJournal(fileName, DrawingJournal.Op.CLEAR, null);
+    }
+
+    private void appendToJournal(String fileName, DrawingJournal.Op op, Stroke stroke) {
+        executors.diskIO().submit(fileName, () -> {
+            File file = new File(getStorageDir(), fileName);
+            if (!file.exists()) {
+                // 日志没有快照作基础无法回放，这次修改会丢失；记下来让下一次 sync 报告保存失败
+                Log.e(TAG, "Journal append failed, snapshot missing: " + fileName);
+                ERRORS.increment();
+                failedAppends.add(fileName);
+                return;
+            }
+            DrawingJournal journal = journalFor(fileName);
+            try {
+                journal.append(op, stroke);
+            } catch (IOException e) {
+                Log.e(TAG, "Error appending to journal", e);
+                ERRORS.increment();
+                failedAppends.add(fileName);
+                return;
+            }
+            if (isIndexed(fileName)) {
+                ThumbnailCache.onDrawingChanged(fileName);
+                // 索引只在内存中更新，等到 sync、保存或核对时再写回
+                MetadataIndex index = indexFor();
+                synchronized (index) {
+                    index.applyOp(fileName, op, stroke);
+                    DrawingMetadata metadata = index.get(fileName);
+                    if (metadata != null) {
+                        long[] stat = statDrawing(file);
+                        index.put(metadata.withFileStat(stat[0], stat[1]));
+                    }
+                }
+            }
+            if (journal.getEntryCount() >= COMPACT_ENTRY_THRESHOLD
+                    || journal.getByteCount() >= Math.max(COMPACT_MIN_BYTES, file.length())) {
+                compact(fileName);
+            }
+        }, TaskPool.Priority.NORMAL);
+    }
+
+    /**
+     * 把已追加的日志刷到磁盘（fsync）。这就是日志模式下的“保存”，耗时与文档大小无关。
+     * 快照不存在，或上次 sync 之后有追加失败时报告失败。
+     */
+    public void syncJournal(String fileName, RepositoryCallback<Boolean> callback) {
+        executors.diskIO().submit(fileName, () -> {
+            boolean success = !failedAppends.remove(fileName);
+            if (!new File(getStorageDir(), fileName).exists()) {
+                Log.e(TAG, "Cannot sync journal, snapshot missing: " + fileName);
+                ERRORS.increment();
+                success = false;
+            }
+            DrawingJournal journal = journals.get(fileName);
+            if (journal != null) {
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error syncing journal", e);
+                    success = false;
+                }
+            }
+            persistIndex();
+            final boolean result = success;
+            if (callback != null) {
+                executors.mainThread().execute(() -> callback.onComplete(result));
+            }
+        }, TaskPool.Priority.NORMAL);
+    }
+
+    /** 在后台把日志合并进快照 */
+    public void compactDrawing(String fileName, RepositoryCallback<Boolean> callback) {
+        executors.diskIO().submit(fileName, () -> {
+            final boolean result = compact(fileName);
+            if (callback != null) {
+                executors.mainThread().execute(() -> callback.onComplete(result));
+            }
+        }, TaskPool.Priority.LOW);
+    }
+
+    private boolean compact(String fileName) {
+        File file = new File(getStorageDir(), fileName);
+        try {
+            long start = System.nanoTime();
+            List<Stroke> strokes = readCurrentState(file);
+            writeSnapshot(file, strokes);
+            // 快照已经替换：即使在这里崩溃，旧日志的 base 记录也不再匹配，不会被重复回放
+            journalFor(fileName).discard();
+            if (isIndexed(fileName)) {
+                updateMetadata(fileName, file, strokes);
+                persistIndex();
+            }
+            Log.d(TAG, "Compacted " + fileName + " (" + strokes.size() + " strokes) in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error compacting drawing", e);
+            return false;
+        }
+    }
+
+    // --- 多页文档：按页读写，编辑一页不读写其它页面 ---
+
+    /** 读取文档的页序；没有清单（单页文档）或清单损坏时返回只有主文件一页的清单 */
+    public void loadPageManifest(String fileName, RepositoryCallback<PageManifest> callback) {
+        executors.diskIO().submit(manifestFileName(fileName), () -> {
+            PageManifest manifest = readManifest(fileName);
+            executors.mainThread().execute(() -> callback.onComplete(manifest));
+        }, TaskPool.Priority.HIGH);
+    }
+
+    /** 写出页序清单（插页之后）；manifest 会被复制，调用后可以继续修改 */
+    public void savePageManifest(String fileName, PageManifest manifest, RepositoryCallback<Boolean> callback) {
+        PageManifest copy = new PageManifest(manifest);
+        executors.diskIO().submit(manifestFileName(fileName), () -> {
+            boolean success = false;
+            try {
+                writeManifest(fileName, copy);
+                success = true;
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing page manifest", e);
+                ERRORS.increment();
+            }
             final boolean result = success;
+            if (callback != null) {
+                executors.mainThread().execute(() -> callback.onComplete(result));
+            }
+        }, TaskPool.Priority.NORMAL);
+    }
+
+    /**
+     * 读出一页（快照加日志回放），排在此前提交给这一页的写入之后。页面文件还不存在时视为空白页。
+     * @param priority 用户正在等待的页面用 HIGH，预取相邻页用 LOW
+     * @param callback 失败时得到 null
+     */
+    public void loadPage(String fileName, int pageId, TaskPool.Priority priority, RepositoryCallback<List<Stroke>> callback) {
+        String pageName = pageFileName(fileName, pageId);
+        executors.diskIO().submit(pageName, () -> {
+            long start = System.nanoTime();
+            List<Stroke> strokes = null;
+            try {
+                File file = new File(getStorageDir(), pageName);
+                strokes = file.exists() ? readCurrentState(file) : new ArrayList<>();
+            } catch (Exception e) { // 捕获更广泛的异常，如JsonSyntaxException
+                Log.e(TAG, "Error loading page " + pageName, e);
+                ERRORS.increment();
+            }
+            PAGE_LOAD_US.recordSinceNanos(start);
+            final List<Stroke> result = strokes;
             executors.mainThread().execute(() -> callback.onComplete(result));
-        });
+        }, priority);
+    }
+
+    /** 只重写一页的快照并丢弃这一页的日志，文档的其它页面不读也不写 */
+    public void savePage(String fileName, int pageId, List<Stroke> strokes, RepositoryCallback<Boolean> callback) {
+        String pageName = pageFileName(fileName, pageId);
+        executors.diskIO().submit(pageName, () -> {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                writeDrawing(pageName, strokes);
+                success = true;
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving page " + pageName, e);
+                ERRORS.increment();
+            }
+            SAVE_US.recordSinceNanos(start);
+            final boolean result = success;
+            if (callback != null) {
+                executors.mainThread().execute(() -> callback.onComplete(result));
+            }
+        }, TaskPool.Priority.NORMAL);
+    }
+
+    /**
+     * 把整个多页文档另存为 fileName。内存中的页面直接写出，其余页面从 source 逐页读出再写出，
+     * 后台任一时刻只持有一页的笔画；每页的读取排在此前提交给 source 这一页的写入之后。
+     * 所有页面写完后写出页序清单，并删掉目标页面目录中不属于新清单的旧页面。
+     * @param source 页面的来源文档（可以是暂存文档）；为 null 时所有页面都必须在 resident 中
+     * @param resident 页面 id 到笔画，调用后不得再修改这些列表
+     */
+    public void saveDocumentAs(String source, PageManifest manifest, Map<Integer, List<Stroke>> resident,
+                               String fileName, RepositoryCallback<Boolean> callback) {
+        String target = resolveFileName(fileName);
+        PageManifest pages = new PageManifest(manifest);
+        AtomicInteger remaining = new AtomicInteger(pages.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        long start = System.nanoTime();
+        Runnable finish = () -> executors.diskIO().submit(manifestFileName(target), () -> {
+            boolean success = !failed.get();
+            if (success) {
+                try {
+                    writeManifest(target, pages);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error writing page manifest", e);
+                    ERRORS.increment();
+                    success = false;
+                }
+            }
+            SAVE_US.recordSinceNanos(start);
+            Log.d(TAG, "Saved " + pages.size() + " pages to " + target + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+            final boolean result = success;
+            executors.mainThread().execute(() -> callback.onComplete(result));
+        }, TaskPool.Priority.HIGH);
+
+        for (int i = 0; i < pages.size(); i++) {
+            int pageId = pages.pageId(i);
+            List<Stroke> strokes = resident.get(pageId);
+            String targetPage = pageFileName(target, pageId);
+            String sourcePage = strokes == null && source != null ? pageFileName(source, pageId) : null;
+            executors.diskIO().submit(sourcePage != null ? sourcePage : targetPage, () -> {
+                try {
+                    List<Stroke> content = strokes;
+                    if (content == null) {
+                        File sourceFile = sourcePage != null ? new File(getStorageDir(), sourcePage) : null;
+                        content = sourceFile != null && sourceFile.exists() ? readCurrentState(sourceFile) : new ArrayList<>();
+                    }
+                    writeDrawing(targetPage, content);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Error saving page " + targetPage, e);
+                    ERRORS.increment();
+                    failed.set(true);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    finish.run();
+                }
+            }, TaskPool.Priority.HIGH);
+        }
+    }
+
+    /** 为未保存的文档分配一个暂存文档，它被换出内存的页面写在这里；顺带清理崩溃遗留的旧暂存 */
+    public String createScratchDocument() {
+        executors.diskIO().submit(() -> {
+            File[] stale = new File(getStorageDir(), SCRATCH_DIR).listFiles();
+            if (stale == null) {
+                return;
+            }
+            long cutoff = System.currentTimeMillis() - SCRATCH_MAX_AGE_MS;
+            for (File file : stale) {
+                if (file.lastModified() < cutoff) {
+                    deleteRecursively(file);
+                }
+            }
+        }, TaskPool.Priority.LOW);
+        return SCRATCH_DIR + "/" + System.currentTimeMillis() + "_" + Long.toHexString(Stroke.newId())
+                + BinaryDrawingFile.EXTENSION;
+    }
+
+    /** 删除暂存文档的全部页面，排在已提交给它的清单写入之后 */
+    public void deleteScratchDocument(String fileName) {
+        executors.diskIO().submit(manifestFileName(fileName), () -> {
+            journals.remove(fileName);
+            deletePages(fileName, null);
+            File file = new File(getStorageDir(), fileName);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Failed to delete " + file);
+            }
+        }, TaskPool.Priority.LOW);
+    }
+
+    private PageManifest readManifest(String fileName) {
+        File file = new File(getStorageDir(), manifestFileName(fileName));
+        if (!file.exists()) {
+            return PageManifest.single();
+        }
+        try (FileReader reader = new FileReader(file)) {
+            PageManifest manifest = gson.fromJson(reader, PageManifest.class);
+            if (manifest != null && manifest.isValid()) {
+                return manifest;
+            }
+            Log.w(TAG, "Invalid page manifest " + file + ", showing the first page only");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error reading page manifest " + file, e);
+            ERRORS.increment();
+        }
+        return PageManifest.single();
+    }
+
+    /** 崩溃安全地写出清单（临时文件 + 重命名），再删掉不在清单中的页面；单页文档不需要页面目录 */
+    private void writeManifest(String fileName, PageManifest manifest) throws IOException {
+        if (manifest.isSinglePage()) {
+            deletePages(fileName, null);
+            return;
+        }
+        File file = new File(getStorageDir(), manifestFileName(fileName));
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(manifest, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+        deletePages(fileName, manifest);
+    }
+
+    /**
+     * 删除文档页面目录中不属于 keep 的页面文件及其日志；keep 为 null 时删除整个页面目录。
+     * 页面 id 不会复用，所以被删掉的页面不会再有任务访问。
+     */
+    private void deletePages(String fileName, PageManifest keep) {
+        File dir = new File(getStorageDir(), pagesDirName(fileName));
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (keep != null) {
+                if (name.equals(MANIFEST_FILE_NAME)) {
+                    continue;
+                }
+                int end = name.indexOf('.');
+                try {
+                    if (end > 0 && keep.indexOf(Integer.parseInt(name.substring(0, end))) >= 0) {
+                        continue;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // 不是页面文件，一并删除
+                }
+            }
+            DrawingJournal journal = journals.remove(pagesDirName(fileName) + "/" + name);
+            if (journal != null) {
+                journal.discard();
+            }
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete " + file);
+            }
+        }
+        if (keep == null && !dir.delete()) {
+            Log.w(TAG, "Failed to delete " + dir);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    // --- 元数据索引 ---
+
+    /** 按条件查询索引中的绘图，不扫描目录；索引可能落后于目录，需要时配合 {@link #reconcileIndex} 使用 */
+    public void queryDrawings(DrawingQuery query, RepositoryCallback<DrawingQuery.Page> callback) {
+        executors.diskIO().submit(() -> {
+            long start = System.nanoTime();
+            DrawingQuery.Page page = indexFor().query(query);
+            LIST_US.recordSinceNanos(start);
+            executors.mainThread().execute(() -> callback.onComplete(page));
+        }, TaskPool.Priority.HIGH);
+    }
+
+    /**
+     * 在后台把索引与目录核对：删掉已不存在的文件，大小或修改时间不一致的文件重新读取笔画数和包围盒。
+     * 不进入各文档的串行队列，读取时可能与写入并发：快照是原子替换的，日志末尾不完整的一行会被忽略，
+     * 读到的旧状态在下次核对时按大小和修改时间再次更新。
+     * @param callback 索引是否有变化，可为 null
+     */
+    public void reconcileIndex(RepositoryCallback<Boolean> callback) {
+        executors.diskIO().submit(() -> {
+            long start = System.nanoTime();
+            MetadataIndex index = indexFor();
+            File dir = getStorageDir();
+            String[] names = dir.list((d, name) -> isDrawingFile(name));
+            Map<String, Boolean> present = new HashMap<>();
+            int rescanned = 0;
+            if (names != null) {
+                for (String name : names) {
+                    present.put(name, Boolean.TRUE);
+                    File file = new File(dir, name);
+                    long[] stat = statDrawing(file);
+                    DrawingMetadata metadata = index.get(name);
+                    if (metadata != null && metadata.size == stat[0] && metadata.lastModified == stat[1]) {
+                        continue;
+                    }
+                    try {
+                        DrawingMetadata scanned = scanMetadata(name, file);
+                        synchronized (index) {
+                            DrawingMetadata current = index.get(name);
+                            index.put(current != null ? scanned.withLastOpened(current.lastOpened) : scanned);
+                        }
+                        rescanned++;
+                    } catch (IOException | RuntimeException e) {
+                        Log.w(TAG, "Cannot index " + name, e);
+                    }
+                }
+            }
+            synchronized (index) {
+                for (DrawingMetadata metadata : new ArrayList<>(index.all())) {
+                    if (!present.containsKey(metadata.name) && !getDrawingFile(metadata.name).exists()) {
+                        index.remove(metadata.name);
+                    }
+                }
+            }
+            final boolean changed = index.isDirty();
+            persistIndex();
+            Log.d(TAG, "Reconciled index: " + index.size() + " drawings, " + rescanned + " rescanned in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms");
+            if (callback != null) {
+                executors.mainThread().execute(() -> callback.onComplete(changed));
+            }
+        }, TaskPool.Priority.LOW);
+    }
+
+    /** 记录绘图被打开的时间，用于“最近打开”排序 */
+    public void markOpened(String fileName) {
+        executors.diskIO().submit(() -> {
+            MetadataIndex index = indexFor();
+            synchronized (index) {
+                DrawingMetadata metadata = index.get(fileName);
+                if (metadata != null) {
+                    index.put(metadata.withLastOpened(System.currentTimeMillis()));
+                }
+            }
+            persistIndex();
+        }, TaskPool.Priority.LOW);
+    }
+
+    private MetadataIndex indexFor() {
+        synchronized (INDEX_LOCK) {
+            if (metadataIndex == null) {
+                metadataIndex = new MetadataIndex(new File(context.getFilesDir(), INDEX_FILE_NAME), gson);
+                try {
+                    metadataIndex.load();
+                } catch (IOException e) {
+                    Log.w(TAG, "Metadata index unreadable, rebuilding", e);
+                }
+            }
+            return metadataIndex;
+        }
+    }
+
+    private void persistIndex() {
+        try {
+            indexFor().saveIfDirty();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing metadata index", e);
+        }
+    }
+
+    /** {大小, 修改时间}，快照与日志合并计算 */
+    private static long[] statDrawing(File file) {
+        File journal = DrawingJournal.journalFileFor(file);
+        return new long[]{file.length() + journal.length(), Math.max(file.lastModified(), journal.lastModified())};
+    }
+
+    private void updateMetadata(String name, File file, List<Stroke> strokes) {
+        DrawingMetadata metadata = metadataFromStrokes(name, file, strokes);
+        MetadataIndex index = indexFor();
+        synchronized (index) {
+            DrawingMetadata old = index.get(name);
+            index.put(old != null ? metadata.withLastOpened(old.lastOpened) : metadata);
+        }
+    }
+
+    private static DrawingMetadata metadataFromStrokes(String name, File file, List<Stroke> strokes) {
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (Stroke stroke : strokes) {
+            if (stroke.isEmpty()) {
+                continue;
+            }
+            left = Math.min(left, stroke.getLeft());
+            top = Math.min(top, stroke.getTop());
+            right = Math.max(right, stroke.getRight());
+            bottom = Math.max(bottom, stroke.getBottom());
+        }
+        long[] stat = statDrawing(file);
+        return new DrawingMetadata(name, stat[0], stat[1], strokes.size(), left, top, right, bottom, 0);
     }
-}
\ No newline at end of file
+
+    /** 读取一个文件的元数据；没有待回放日志的二进制文件只读文件头和偏移表 */
+    private DrawingMetadata scanMetadata(String name, File file) throws IOException {
+        if (BinaryDrawingFile.isBinary(file)) {
+            DrawingJournal.Replay replay = DrawingJournal.readReplay(file, gson);
+            if (replay == null || !replay.valid || replay.isEmpty()) {
+                BinaryDrawingFile binary = BinaryDrawingFile.open(file);
+                float[] bounds = binary.unionBounds();
+                long[] stat = statDrawing(file);
+                return new DrawingMetadata(name, stat[0], stat[1], binary.getStrokeCount(),
+                        bounds[0], bounds[1], bounds[2], bounds[3], 0);
+            }
+        }
+        return metadataFromStrokes(name, file, readCurrentState(file));
+    }
+
+    private DrawingJournal journalFor(String fileName) {
+        return journals.computeIfAbsent(fileName, name -> new DrawingJournal(new File(getStorageDir(), name), gson));
+    }
+
+    // --- 快照读写 ---
+
+    /** 快照 + 日志回放后的当前笔画列表 */
+    private List<Stroke> readCurrentState(File file) throws IOException {
+        List<Stroke> snapshot = readSnapshot(file);
+        DrawingJournal.Replay replay = DrawingJournal.readReplay(file, gson);
+        if (replay == null || !replay.valid || replay.isEmpty()) {
+            return snapshot;
+        }
+        List<Stroke> strokes = new ArrayList<>(snapshot.subList(0, replay.snapshotPrefix(snapshot.size())));
+        strokes.addAll(replay.tail);
+        return strokes;
+    }
+
+    /** 按文件头判断格式读出整个快照 */
+    private List<Stroke> readSnapshot(File file) throws IOException {
+        if (BinaryDrawingFile.isBinary(file)) {
+            BinaryDrawingFile binary = BinaryDrawingFile.open(file);
+            return binary.readStrokes(0, binary.getStrokeCount());
+        }
+        return JsonDrawingFile.read(file, gson);
+    }
+
+    private interface ChunkSink {
+        void accept(List<Stroke> chunk);
+    }
+
+    /**
+     * 边解析边投递“快照 + 日志回放”后的笔画。
+     * 被撤销掉的快照顶部笔画在读到文件末尾前无法确定，用一个长度为 removedFromSnapshot 的窗口暂扣，读完后丢弃。
+     * @return false 表示被取消
+     */
+    private boolean streamCurrentState(File file, int chunkSize, ChunkSink sink, LoadHandle handle) throws IOException {
+        DrawingJournal.Replay replay = DrawingJournal.readReplay(file, gson);
+        boolean useReplay = replay != null && replay.valid && !replay.isEmpty();
+        int holdBack = useReplay ? replay.removedFromSnapshot : 0;
+        ArrayDeque<Stroke> pending = new ArrayDeque<>();
+        List<Stroke> chunk = new ArrayList<>(FIRST_LOAD_CHUNK_SIZE);
+        int limit = Math.min(FIRST_LOAD_CHUNK_SIZE, chunkSize);
+
+        if (BinaryDrawingFile.isBinary(file)) {
+            // 二进制格式事先知道笔画数，直接按前缀长度分批解码
+            BinaryDrawingFile binary = BinaryDrawingFile.open(file);
+            int count = binary.getStrokeCount();
+            int prefix = useReplay ? replay.snapshotPrefix(count) : count;
+            int from = 0;
+            while (from < prefix) {
+                if (handle.isCancelled()) {
+                    return false;
+                }
+                int to = Math.min(prefix, from + limit);
+                chunk = binary.readStrokes(from, to);
+                from = to;
+                limit = chunkSize;
+                if (from < prefix) {
+                    sink.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        } else if (!(useReplay && replay.cleared) && file.length() > 0) {
+            try (JsonReader reader = JsonDrawingFile.openReader(file)) {
+                // 旧版本的文件从新到旧排列，只能整个读完倒过来再投递
+                List<Stroke> legacy = JsonDrawingFile.beginStrokes(reader) ? new ArrayList<>() : null;
+                if (legacy != null) {
+                    while (reader.hasNext()) {
+                        legacy.add(gson.fromJson(reader, Stroke.class));
+                    }
+                    Collections.reverse(legacy);
+                }
+                int next = 0;
+                while (legacy != null ? next < legacy.size() : reader.hasNext()) {
+                    if (handle.isCancelled()) {
+                        return false;
+                    }
+                    pending.addLast(legacy != null ? legacy.get(next++) : gson.fromJson(reader, Stroke.class));
+                    if (pending.size() > holdBack) {
+                        chunk.add(pending.removeFirst());
+                        if (chunk.size() >= limit) {
+                            sink.accept(chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                            limit = chunkSize;
+                        }
+                    }
+                }
+            }
+        }
+        if (useReplay) {
+            chunk.addAll(replay.tail);
+        }
+        if (!chunk.isEmpty()) {
+            sink.accept(chunk);
+        }
+        return !handle.isCancelled();
+    }
+
+    /**
+     * 崩溃安全地写出快照：逐笔流式写入临时文件，fsync 后原子重命名覆盖原文件。
+     * 不会在内存中拼出整个 JSON 字符串。
+     */
+    private void writeSnapshot(File file, List<Stroke> strokes) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        if (file.getName().toLowerCase().endsWith(BinaryDrawingFile.EXTENSION)) {
+            BinaryDrawingFile.write(temp, strokes);
+        } else {
+            JsonDrawingFile.write(temp, strokes, gson);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JSON 绘图格式（.json）：
+ * <pre>
+ * {"version":2,"strokes":[笔画, ...]}   笔画按绘制顺序，格式见 StrokeTypeAdapter
+ * [笔画, ...]                           旧版本：笔画按从新到旧排列
+ * </pre>
+ * 旧版本的撤销栈是从新到旧迭代的 Deque，直接按数组存了下来；读取时倒过来，撤销栈顶才是最后画的一笔。
+ */
+final class JsonDrawingFile {
+
+    static final int VERSION = 2;
+
+    private JsonDrawingFile() {
+    }
+
+    static JsonReader openReader(File file) throws IOException {
+        return new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 读到笔画数组中第一笔之前。
+     * @return true 表示是旧版本从新到旧排列的裸数组
+     */
+    static boolean beginStrokes(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            return true;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("strokes".equals(reader.nextName())) {
+                reader.beginArray();
+                return false;
+            }
+            reader.skipValue();
+        }
+        throw new IOException("Drawing has no strokes");
+    }
+
+    /** 读出全部笔画，按绘制顺序 */
+    static List<Stroke> read(File file, Gson gson) throws IOException {
+        List<Stroke> strokes = new ArrayList<>();
+        if (file.length() == 0) {
+            return strokes;
+        }
+        try (JsonReader reader = openReader(file)) {
+            boolean legacy = beginStrokes(reader);
+            while (reader.hasNext()) {
+                strokes.add(gson.fromJson(reader, Stroke.class));
+            }
+            if (legacy) {
+                Collections.reverse(strokes);
+            }
+        }
+        return strokes;
+    }
+
+    /** 逐笔流式写出并 fsync */
+    static void write(File file, List<Stroke> strokes, Gson gson) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            writer.beginObject();
+            writer.name("version").value(VERSION);
+            writer.name("strokes");
+            writer.beginArray();
+            for (Stroke stroke : strokes) {
+                gson.toJson(stroke, Stroke.class, writer);
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+}
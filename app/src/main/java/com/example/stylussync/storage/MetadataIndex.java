@@ -0,0 +1,179 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 持久化的绘图元数据索引，整体存成一个 JSON 文件。
+ * 保存、删除、追加日志时由 FileRepository 增量更新，只在内存中标记为脏，合适的时机再整体写回；
+ * 进程异常退出导致索引落后也没关系，与目录核对时按大小和修改时间发现并重新读取。
+ * 各方法线程安全（在索引对象上同步）；先读后写的复合操作由调用方在索引对象上加锁。
+ */
+class MetadataIndex {
+
+    private static final int VERSION = 1;
+
+    private static final class Stored {
+        int version;
+        List<DrawingMetadata> entries;
+    }
+
+    private final File file;
+    private final Gson gson;
+    private final Map<String, DrawingMetadata> entries = new HashMap<>();
+    private boolean dirty;
+
+    MetadataIndex(File file, Gson gson) {
+        this.file = file;
+        this.gson = gson;
+    }
+
+    /** 读取索引文件；文件不存在、版本不符或损坏时从空索引开始，由核对过程重建 */
+    synchronized void load() throws IOException {
+        entries.clear();
+        dirty = false;
+        if (!file.exists()) {
+            return;
+        }
+        Stored stored;
+        try (FileReader reader = new FileReader(file)) {
+            stored = gson.fromJson(reader, Stored.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Corrupt metadata index " + file, e);
+        }
+        if (stored == null || stored.version != VERSION || stored.entries == null) {
+            return;
+        }
+        for (DrawingMetadata metadata : stored.entries) {
+            if (metadata != null && metadata.name != null) {
+                entries.put(metadata.name, metadata);
+            }
+        }
+    }
+
+    synchronized void saveIfDirty() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Stored stored = new Stored();
+        stored.version = VERSION;
+        stored.entries = new ArrayList<>(entries.values());
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(stored, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+        dirty = false;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized DrawingMetadata get(String name) {
+        return entries.get(name);
+    }
+
+    synchronized Collection<DrawingMetadata> all() {
+        return new ArrayList<>(entries.values());
+    }
+
+    synchronized void put(DrawingMetadata metadata) {
+        if (!metadata.equals(entries.put(metadata.name, metadata))) {
+            dirty = true;
+        }
+    }
+
+    synchronized void remove(String name) {
+        if (entries.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    /** 按一条日志操作增量更新笔画数和包围盒；索引中没有该文件时忽略 */
+    synchronized void applyOp(String name, DrawingJournal.Op op, Stroke stroke) {
+        DrawingMetadata metadata = entries.get(name);
+        if (metadata == null) {
+            return;
+        }
+        switch (op) {
+            case ADD:
+                metadata = metadata.withStrokes(metadata.strokeCount + 1,
+                        Math.min(metadata.left, stroke.getLeft()), Math.min(metadata.top, stroke.getTop()),
+                        Math.max(metadata.right, stroke.getRight()), Math.max(metadata.bottom, stroke.getBottom()));
+                break;
+            case UNDO:
+                metadata = metadata.withStrokes(Math.max(0, metadata.strokeCount - 1),
+                        metadata.left, metadata.top, metadata.right, metadata.bottom);
+                break;
+            case REDO:
+                metadata = metadata.withStrokes(metadata.strokeCount + 1,
+                        metadata.left, metadata.top, metadata.right, metadata.bottom);
+                break;
+            case CLEAR:
+                metadata = metadata.withStrokes(0, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+                break;
+        }
+        put(metadata);
+    }
+
+    synchronized DrawingQuery.Page query(DrawingQuery query) {
+        String filter = query.filter == null ? "" : query.filter.trim().toLowerCase(Locale.ROOT);
+        List<DrawingMetadata> matched = new ArrayList<>();
+        for (DrawingMetadata metadata : entries.values()) {
+            if (filter.isEmpty() || metadata.name.toLowerCase(Locale.ROOT).contains(filter)) {
+                matched.add(metadata);
+            }
+        }
+        Comparator<DrawingMetadata> comparator = comparatorFor(query.sort);
+        if (query.descending) {
+            comparator = comparator.reversed();
+        }
+        // 名称作为次序键，保证结果稳定，分页时不会跳项
+        matched.sort(comparator.thenComparing(m -> m.name));
+        int from = Math.min(query.offset, matched.size());
+        int to = (int) Math.min((long) from + query.limit, matched.size());
+        return new DrawingQuery.Page(new ArrayList<>(matched.subList(from, to)), matched.size());
+    }
+
+    private static Comparator<DrawingMetadata> comparatorFor(DrawingQuery.Sort sort) {
+        switch (sort) {
+            case LAST_MODIFIED:
+                return Comparator.comparingLong(m -> m.lastModified);
+            case LAST_OPENED:
+                return Comparator.comparingLong(m -> m.lastOpened);
+            case SIZE:
+                return Comparator.comparingLong(m -> m.size);
+            case STROKE_COUNT:
+                return Comparator.comparingInt(m -> m.strokeCount);
+            default:
+                return Comparator.comparing(m -> m.name.toLowerCase(Locale.ROOT));
+        }
+    }
+}
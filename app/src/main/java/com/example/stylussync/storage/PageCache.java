@@ -0,0 +1,210 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 多页文档中非当前页面的内存缓存。当前页的笔画归视图所有，翻页时取出（take）、离开时交回（put）。
+ * 按估算的笔画内存做 LRU 淘汰：内容已在磁盘上的页面直接丢弃，尚未落盘的页面（未保存的文档）
+ * 先交给 Backend 写出再丢弃。钉住的页面（当前页的相邻页）不会被淘汰，预取它们让翻页不必等磁盘。
+ * 只在主线程使用。纯 Java。
+ */
+public class PageCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    // 每笔的固定开销估算：对象头、四个数组头与字段
+    private static final int STROKE_OVERHEAD_BYTES = 96;
+
+    /** 页面的读写，由持有文档的一方实现 */
+    public interface Backend {
+        /** 异步读出一页，完成后在主线程调用 callback，失败时传 null */
+        void loadPage(int pageId, LoadCallback callback);
+
+        /** 页面要被淘汰而内容尚未落盘：写出它，之后缓存就丢弃这份笔画 */
+        void spillPage(int pageId, List<Stroke> strokes);
+    }
+
+    public interface LoadCallback {
+        void onPageLoaded(List<Stroke> strokes);
+    }
+
+    /** 某一时刻的统计快照 */
+    public static final class Stats {
+        public int residentPages;
+        public long residentBytes;
+        public long maxBytes;
+        public long hits;         // 翻到的页面已在内存中
+        public long misses;       // 翻到的页面需要从磁盘读取
+        public long prefetches;
+        public long evictions;
+        public long spills;       // 淘汰时需要先写出的页面数
+
+        @Override
+        public String toString() {
+            return "PageCache{resident=" + residentPages + ", bytes=" + residentBytes + "/" + maxBytes
+                    + ", hits=" + hits + ", misses=" + misses + ", prefetches=" + prefetches
+                    + ", evictions=" + evictions + ", spills=" + spills + "}";
+        }
+    }
+
+    private static final class Entry {
+        final List<Stroke> strokes;
+        final long bytes;
+        // 内容只在内存中，淘汰前必须写出
+        boolean dirty;
+
+        Entry(List<Stroke> strokes, boolean dirty) {
+            this.strokes = strokes;
+            this.bytes = estimateBytes(strokes);
+            this.dirty = dirty;
+        }
+    }
+
+    private final Backend backend;
+    // access-order 的 LinkedHashMap 即为 LRU，迭代顺序从最久未使用开始
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // 正在预取的页面；页面被 take 或缓存被清空后从这里移除，晚到的读取结果直接丢弃
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<Integer> pinned = new HashSet<>();
+    private long maxBytes;
+    private long currentBytes;
+    private final Stats stats = new Stats();
+
+    public PageCache(Backend backend, long maxBytes) {
+        this.backend = backend;
+        this.maxBytes = maxBytes;
+    }
+
+    /** 一页笔画占用内存的估算，用于淘汰预算 */
+    public static long estimateBytes(List<Stroke> strokes) {
+        long bytes = 0;
+        for (Stroke stroke : strokes) {
+            int perPoint = stroke.hasTimestamps() ? 20 : 12;
+            bytes += STROKE_OVERHEAD_BYTES + (long) stroke.size() * perPoint;
+        }
+        return bytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize();
+    }
+
+    public boolean isResident(int pageId) {
+        return entries.containsKey(pageId);
+    }
+
+    /**
+     * 取出一页交给视图，之后它不再由缓存管理，直到 {@link #put} 交回。
+     * @return 页面的笔画；不在内存中时返回 null，调用方自行从磁盘加载
+     */
+    public List<Stroke> take(int pageId) {
+        loading.remove(pageId);
+        Entry entry = entries.remove(pageId);
+        if (entry == null) {
+            stats.misses++;
+            return null;
+        }
+        stats.hits++;
+        currentBytes -= entry.bytes;
+        return entry.strokes;
+    }
+
+    /**
+     * 交回一页（例如翻走的当前页）。交回后调用方不得再修改 strokes。
+     * @param dirty 内容是否只在内存中
+     */
+    public void put(int pageId, List<Stroke> strokes, boolean dirty) {
+        loading.remove(pageId);
+        Entry entry = new Entry(strokes, dirty);
+        Entry previous = entries.put(pageId, entry);
+        if (previous != null) {
+            currentBytes -= previous.bytes;
+        }
+        currentBytes += entry.bytes;
+        trimToSize();
+    }
+
+    /** 设置不可淘汰的页面，替换之前的设置 */
+    public void setPinned(Collection<Integer> pageIds) {
+        pinned.clear();
+        pinned.addAll(pageIds);
+        trimToSize();
+    }
+
+    /** 页面不在内存中且没有在读取时，在后台读入 */
+    public void prefetch(int pageId) {
+        if (entries.containsKey(pageId) || !loading.add(pageId)) {
+            return;
+        }
+        stats.prefetches++;
+        backend.loadPage(pageId, strokes -> {
+            if (!loading.remove(pageId) || strokes == null) {
+                return;
+            }
+            put(pageId, strokes, false);
+        });
+    }
+
+    /** 内存中的全部页面，供整体另存为使用；返回的列表不得修改 */
+    public Map<Integer, List<Stroke>> residentPages() {
+        Map<Integer, List<Stroke>> pages = new HashMap<>();
+        for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+            pages.put(entry.getKey(), entry.getValue().strokes);
+        }
+        return pages;
+    }
+
+    /** 所有页面都已写入文档（例如另存为成功后）：之后淘汰时不再需要写出 */
+    public void markAllClean() {
+        for (Entry entry : entries.values()) {
+            entry.dirty = false;
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        loading.clear();
+        pinned.clear();
+        currentBytes = 0;
+    }
+
+    public Stats getStats() {
+        Stats snapshot = new Stats();
+        snapshot.residentPages = entries.size();
+        snapshot.residentBytes = currentBytes;
+        snapshot.maxBytes = maxBytes;
+        snapshot.hits = stats.hits;
+        snapshot.misses = stats.misses;
+        snapshot.prefetches = stats.prefetches;
+        snapshot.evictions = stats.evictions;
+        snapshot.spills = stats.spills;
+        return snapshot;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Integer, Entry> eldest = it.next();
+            if (pinned.contains(eldest.getKey())) {
+                continue;
+            }
+            Entry entry = eldest.getValue();
+            it.remove();
+            currentBytes -= entry.bytes;
+            stats.evictions++;
+            if (entry.dirty) {
+                stats.spills++;
+                backend.spillPage(eldest.getKey(), entry.strokes);
+            }
+        }
+    }
+}
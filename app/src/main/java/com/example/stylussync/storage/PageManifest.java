@@ -0,0 +1,73 @@
+package com.example.stylussync.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多页文档的页序清单，保存在文档旁的页面目录中（Drawing.ssd.pages/pages.json）。
+ * 页面 id 一经分配不再改变，页面文件以 id 命名，插页只追加一页并重写这份清单，不动其它页面。
+ * id 为 0 的页面就是文档主文件本身，所以没有清单的文档就是只有这一页的单页文档。
+ * 只在主线程修改；交给后台写出时先复制一份。
+ */
+public final class PageManifest {
+
+    // 按显示顺序排列的页面 id
+    private List<Integer> pages;
+    private int nextId;
+
+    private PageManifest() {
+    }
+
+    public PageManifest(PageManifest other) {
+        this.pages = new ArrayList<>(other.pages);
+        this.nextId = other.nextId;
+    }
+
+    /** 单页文档：只有主文件这一页 */
+    public static PageManifest single() {
+        PageManifest manifest = new PageManifest();
+        manifest.pages = new ArrayList<>();
+        manifest.pages.add(0);
+        manifest.nextId = 1;
+        return manifest;
+    }
+
+    public int size() {
+        return pages.size();
+    }
+
+    public int pageId(int index) {
+        return pages.get(index);
+    }
+
+    public int indexOf(int pageId) {
+        return pages.indexOf(pageId);
+    }
+
+    public boolean isSinglePage() {
+        return pages.size() == 1 && pages.get(0) == 0;
+    }
+
+    /** 在 index 处插入一个新页面，返回它的 id */
+    public int insertPage(int index) {
+        int id = nextId++;
+        pages.add(index, id);
+        return id;
+    }
+
+    /** 反序列化得到的清单是否可用：包含主文件页、没有重复 id，且 nextId 大于所有已用 id */
+    boolean isValid() {
+        if (pages == null || pages.isEmpty() || !pages.contains(0)) {
+            return false;
+        }
+        Set<Integer> seen = new HashSet<>();
+        for (Integer id : pages) {
+            if (id == null || id < 0 || id >= nextId || !seen.add(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
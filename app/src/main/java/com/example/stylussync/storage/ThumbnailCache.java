@@ -0,0 +1,248 @@
+package com.example.stylussync.storage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.stylussync.AppExecutors;
+import com.example.stylussync.TaskPool;
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.view.ThumbnailRasterizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 文件列表的缩略图缓存，两级：
+ * 内存中按字节数淘汰的 LRU，key 为文件名 + 尺寸，文件被本进程修改或删除时由 FileRepository 通知失效；
+ * 磁盘缓存放在 cacheDir/thumbnails，文件名包含绘图的修改时间和大小（快照 + 日志），内容变化后自然不再命中。
+ * 未命中时在 cpu 线程池上解码笔画并渲染；滑出屏幕的条目会取消请求，排队中的任务直接出队。
+ */
+public class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+    private static final String DIR_NAME = "thumbnails";
+    private static final long DISK_CACHE_MAX_BYTES = 20L * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    private static volatile ThumbnailCache sInstance;
+
+    /** 缩略图就绪，在主线程回调 */
+    public interface Callback {
+        void onThumbnailReady(Bitmap bitmap);
+    }
+
+    /** 一次缩略图请求；ViewHolder 被复用或回收时取消 */
+    public static final class Request {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Future<?> future;
+
+        public void cancel() {
+            cancelled.set(true);
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    private final FileRepository repository;
+    private final File diskDir;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final AppExecutors executors;
+
+    private ThumbnailCache(Context context) {
+        this.repository = new FileRepository(context);
+        this.diskDir = new File(context.getCacheDir(), DIR_NAME);
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+        this.memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        this.executors = AppExecutors.getInstance();
+    }
+
+    public static ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new ThumbnailCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /** 绘图内容被修改：丢弃内存中的缩略图，磁盘缓存的 key 已随修改时间变化 */
+    static void onDrawingChanged(String fileName) {
+        ThumbnailCache cache = sInstance;
+        if (cache != null) {
+            cache.removeFromMemory(fileName);
+        }
+    }
+
+    /** 绘图被删除：内存与磁盘中的缩略图都删掉 */
+    static void onDrawingDeleted(String fileName) {
+        ThumbnailCache cache = sInstance;
+        if (cache != null) {
+            cache.removeFromMemory(fileName);
+            cache.deleteDiskEntries(diskPrefix(fileName));
+        }
+    }
+
+    /**
+     * 请求缩略图，必须在主线程调用。内存命中时同步回调并返回 null，否则在后台生成后回调。
+     * @return 可取消的请求；同步命中时为 null
+     */
+    public Request load(String fileName, int width, int height, Callback callback) {
+        String memoryKey = memoryKey(fileName, width, height);
+        Bitmap cached = memoryCache.get(memoryKey);
+        if (cached != null) {
+            callback.onThumbnailReady(cached);
+            return null;
+        }
+        Request request = new Request();
+        request.future = executors.cpu().submit(() -> {
+            if (request.isCancelled()) {
+                return;
+            }
+            Bitmap bitmap = loadOrRender(fileName, width, height, request);
+            if (bitmap == null) {
+                return;
+            }
+            memoryCache.put(memoryKey, bitmap);
+            executors.mainThread().execute(() -> {
+                if (!request.isCancelled()) {
+                    callback.onThumbnailReady(bitmap);
+                }
+            });
+        }, TaskPool.Priority.NORMAL);
+        return request;
+    }
+
+    private Bitmap loadOrRender(String fileName, int width, int height, Request request) {
+        File drawing = repository.getDrawingFile(fileName);
+        if (!drawing.exists()) {
+            return null;
+        }
+        File journal = DrawingJournal.journalFileFor(drawing);
+        long mtime = Math.max(drawing.lastModified(), journal.lastModified());
+        long size = drawing.length() + journal.length();
+        String prefix = diskPrefix(fileName);
+        File diskFile = new File(diskDir, prefix + width + "x" + height + "-" + mtime + "-" + size + ".png");
+
+        if (diskFile.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+            if (bitmap != null) {
+                // 刷新修改时间，磁盘淘汰按最近使用排序
+                diskFile.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+        if (request.isCancelled()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        List<Stroke> strokes;
+        try {
+            strokes = repository.readDrawingBlocking(fileName);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot decode " + fileName + " for thumbnail", e);
+            return null;
+        }
+        if (request.isCancelled()) {
+            return null;
+        }
+        Bitmap bitmap = ThumbnailRasterizer.render(strokes, width, height);
+        Log.d(TAG, "Rendered thumbnail for " + fileName + " (" + strokes.size() + " strokes) in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+        writeToDisk(prefix, diskFile, bitmap);
+        return bitmap;
+    }
+
+    private void writeToDisk(String prefix, File diskFile, Bitmap bitmap) {
+        if (!diskDir.exists() && !diskDir.mkdirs()) {
+            return;
+        }
+        // 同一文件的旧版本缩略图不会再被命中
+        deleteDiskEntries(prefix);
+        File temp = new File(diskDir, diskFile.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing thumbnail", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(diskFile)) {
+            temp.delete();
+            return;
+        }
+        trimDiskCache();
+    }
+
+    private void trimDiskCache() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_MAX_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= DISK_CACHE_MAX_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private void deleteDiskEntries(String prefix) {
+        File[] stale = diskDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    private void removeFromMemory(String fileName) {
+        String prefix = fileName + "@";
+        for (String key : memoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memoryCache.remove(key);
+            }
+        }
+    }
+
+    private static String memoryKey(String fileName, int width, int height) {
+        return fileName + "@" + width + "x" + height;
+    }
+
+    /** 磁盘缓存文件名前缀：文件名哈希 + 去掉特殊字符的文件名，后面接尺寸、修改时间和大小 */
+    private static String diskPrefix(String fileName) {
+        return Integer.toHexString(fileName.hashCode()) + "_" + fileName.replaceAll("[^A-Za-z0-9._]", "_") + "-";
+    }
+}
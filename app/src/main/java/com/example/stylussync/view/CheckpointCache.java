@@ -0,0 +1,147 @@
+package com.example.stylussync.view;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分块位图的检查点缓存。
+ * key 为（分块, 历史深度 depth）：该检查点的位图恰好是撤销栈中前 depth 笔在这一分块上的绘制结果。
+ * 按字节数做 LRU 淘汰，被淘汰或失效的位图会立即 recycle。只在 UI 线程访问。
+ */
+class CheckpointCache {
+
+    private static final class Key {
+        final long tile;
+        final int depth;
+
+        Key(long tile, int depth) {
+            this.tile = tile;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tile == other.tile && depth == other.depth;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(tile) * 31 + depth;
+        }
+    }
+
+    // access-order 的 LinkedHashMap 即为 LRU，迭代顺序从最久未使用开始
+    private final LinkedHashMap<Key, Bitmap> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxBytes;
+    private long mCurrentBytes;
+
+    CheckpointCache(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    void setMaxBytes(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    long getCurrentBytes() {
+        return mCurrentBytes;
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /** 保存分块 tile 在深度 depth 的检查点，bitmap 的所有权转移给缓存 */
+    void put(long tile, int depth, Bitmap bitmap) {
+        Bitmap previous = mEntries.put(new Key(tile, depth), bitmap);
+        if (previous != null) {
+            mCurrentBytes -= previous.getAllocationByteCount();
+            previous.recycle();
+        }
+        mCurrentBytes += bitmap.getAllocationByteCount();
+        trimToSize();
+    }
+
+    /** 找到分块 tile 深度不超过 depth 的最近检查点，没有则返回 -1 */
+    int floorDepth(long tile, int depth) {
+        int best = -1;
+        for (Key key : mEntries.keySet()) {
+            if (key.tile == tile && key.depth <= depth && key.depth > best) {
+                best = key.depth;
+            }
+        }
+        return best;
+    }
+
+    /** 所有分块中深度不超过 depth 的最近检查点，没有则返回 -1 */
+    int floorDepth(int depth) {
+        int best = -1;
+        for (Key key : mEntries.keySet()) {
+            if (key.depth <= depth && key.depth > best) {
+                best = key.depth;
+            }
+        }
+        return best;
+    }
+
+    /** 取出检查点位图并刷新其 LRU 顺序；位图仍归缓存所有，调用方不得 recycle */
+    Bitmap get(long tile, int depth) {
+        return mEntries.get(new Key(tile, depth));
+    }
+
+    /** 历史在 depth 之后被改写（例如撤销后画了新笔画），深度更大的检查点全部失效 */
+    void invalidateAbove(int depth) {
+        Iterator<Map.Entry<Key, Bitmap>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Bitmap> entry = it.next();
+            if (entry.getKey().depth > depth) {
+                mCurrentBytes -= entry.getValue().getAllocationByteCount();
+                entry.getValue().recycle();
+                it.remove();
+            }
+        }
+    }
+
+    /** 分块被淘汰或丢弃，它的检查点也不再有用 */
+    void removeTile(long tile) {
+        Iterator<Map.Entry<Key, Bitmap>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Bitmap> entry = it.next();
+            if (entry.getKey().tile == tile) {
+                mCurrentBytes -= entry.getValue().getAllocationByteCount();
+                entry.getValue().recycle();
+                it.remove();
+            }
+        }
+    }
+
+    void clear() {
+        for (Bitmap bitmap : mEntries.values()) {
+            bitmap.recycle();
+        }
+        mEntries.clear();
+        mCurrentBytes = 0;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Key, Bitmap>> it = mEntries.entrySet().iterator();
+        while (mCurrentBytes > mMaxBytes && it.hasNext()) {
+            Map.Entry<Key, Bitmap> eldest = it.next();
+            mCurrentBytes -= eldest.getValue().getAllocationByteCount();
+            eldest.getValue().recycle();
+            it.remove();
+        }
+    }
+}
@@ -7,49 +7,231 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import androidx.annotation.NonNull;
 
-import com.example.stylussync.data.Point;
+import com.example.stylussync.data.EraserCompactor;
 import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeIndex;
+import com.example.stylussync.data.StrokeSimplifier;
+import com.example.stylussync.metrics.Counter;
+import com.example.stylussync.metrics.Gauge;
+import com.example.stylussync.metrics.Histogram;
+import com.example.stylussync.metrics.MetricsRegistry;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Callback, Runnable {
+public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Callback, Choreographer.FrameCallback {
+
+    private static final String TAG = "DrawingSurfaceView";
+    // 抗锯齿会向笔画外多画一点，脏区需要留出余量
+    private static final int DIRTY_MARGIN = 2;
 
     private SurfaceHolder mHolder;
-    private Thread mDrawThread;
-    private boolean mIsDrawing = false;
 
-    // --- 画布与画笔 ---
-    private Bitmap mBitmap;
-    private Canvas mBitmapCanvas;
+    // --- 渲染线程：只有画面变脏时才在下一个 vsync 绘制一帧，空闲时线程休眠 ---
+    private HandlerThread mRenderThread;
+    private Handler mRenderHandler;
+    private Choreographer mChoreographer;
+    private final Object mRenderLock = new Object();
+    private final Rect mDirtyRect = new Rect();     // 待绘制区域的并集，受 mRenderLock 保护
+    private final Rect mFrameRect = new Rect();     // 渲染线程本帧实际锁定的区域
+    private boolean mSurfaceReady = false;
+    private boolean mFrameScheduled = false;
+    private final RenderStats mRenderStats = new RenderStats();
+
+    // --- 常开的指标，汇总到 MetricsRegistry ---
+    // 输入事件的时间戳到这批点画进位图为止；MotionEvent 的时间与 System.nanoTime 同为开机以来的单调时钟
+    private final Histogram mInputToCommitUs = MetricsRegistry.getInstance().histogram("render.input_to_commit_us");
+    private final Histogram mSamplesPerEvent = MetricsRegistry.getInstance().histogram("render.samples_per_event");
+    private final Histogram mFrameUs = MetricsRegistry.getInstance().histogram("render.frame_us");
+    private final Counter mFrames = MetricsRegistry.getInstance().counter("render.frames");
+    // 帧回调到来时已经没有要画的区域（例如 surface 正在销毁）
+    private final Counter mIdleFrames = MetricsRegistry.getInstance().counter("render.idle_frames");
+    private final Histogram mUndoUs = MetricsRegistry.getInstance().histogram("render.undo_us");
+    private final Histogram mTileRasterUs = MetricsRegistry.getInstance().histogram("render.tile_raster_us");
+    // 合成时视口内有分块还没画好、用其它级别顶替的帧
+    private final Counter mTileMissFrames = MetricsRegistry.getInstance().counter("render.tile_miss_frames");
+    private final Gauge mTileBytes = MetricsRegistry.getInstance().gauge("render.tile_bytes");
+
+    /** 渲染统计，用于确认空闲时 CPU 占用是否下降 */
+    public static final class RenderStats {
+        public long framesRendered;
+        public long idleNanos;          // 两帧之间没有任何重绘请求的累计时长
+        public long totalFrameNanos;    // lockCanvas 到 unlockCanvasAndPost 的累计耗时
+        public long dirtyPixels;        // 累计锁定的像素数
+        // 输入与绘制调用
+        public long inputEvents;        // 处理的 ACTION_MOVE 事件数
+        public long inputSamples;       // 采集的采样点总数（含历史采样）
+        public int maxSamplesPerEvent;
+        public long bitmapDrawCalls;    // 向离屏位图提交的绘制调用总数
+        public int maxDrawCallsPerFrame;
+        public long outlineCacheHits;   // 重放时整笔轮廓的缓存命中
+        public long outlineCacheMisses;
+        // 光栅分块
+        public long tilesRasterized;
+        public long totalTileRasterNanos;
+        public long framesWithMissingTiles;
+        // 撤销
+        public long undoCount;
+        public long totalUndoNanos;
+        public long maxUndoNanos;
+        public int lastUndoReplayedStrokes;
+        int drawCallsThisFrame;
+        long idleSinceNanos;
+
+        RenderStats copy() {
+            RenderStats copy = new RenderStats();
+            copy.framesRendered = framesRendered;
+            copy.idleNanos = idleNanos;
+            copy.totalFrameNanos = totalFrameNanos;
+            copy.dirtyPixels = dirtyPixels;
+            copy.inputEvents = inputEvents;
+            copy.inputSamples = inputSamples;
+            copy.maxSamplesPerEvent = maxSamplesPerEvent;
+            copy.bitmapDrawCalls = bitmapDrawCalls;
+            copy.maxDrawCallsPerFrame = maxDrawCallsPerFrame;
+            copy.outlineCacheHits = outlineCacheHits;
+            copy.outlineCacheMisses = outlineCacheMisses;
+            copy.tilesRasterized = tilesRasterized;
+            copy.totalTileRasterNanos = totalTileRasterNanos;
+            copy.framesWithMissingTiles = framesWithMissingTiles;
+            copy.undoCount = undoCount;
+            copy.totalUndoNanos = totalUndoNanos;
+            copy.maxUndoNanos = maxUndoNanos;
+            copy.lastUndoReplayedStrokes = lastUndoReplayedStrokes;
+            return copy;
+        }
+    }
+
+    // --- 视口与光栅分块：笔画按文档坐标存储，文档平面可以比屏幕大得多；已完成的笔画画在分块位图上，
+    // 只有视口附近的分块常驻，其余按需从笔画重新光栅化 ---
+    public static final long DEFAULT_TILE_MEMORY_BYTES = 48L * 1024 * 1024;
+    // 平移缩放时在主线程补画缺失分块的时间预算，超出后让出主线程，下一轮继续；期间缺的块用其它级别的块顶替
+    private static final long TILE_RASTER_BUDGET_NANOS = 6_000_000L;
+    // 视口四周多预备一圈分块，平移时不露白
+    private static final int TILE_PREFETCH_MARGIN = 1;
+    private final Viewport mViewport = new Viewport();          // 主线程
+    private final Viewport mFrameViewport = new Viewport();     // 受 mRenderLock 保护，主线程改完视口后同步过来
+    private final Viewport mRenderViewport = new Viewport();    // 渲染线程本帧使用的副本
+    private final TileCache mTiles = new TileCache(DEFAULT_TILE_MEMORY_BYTES);
+    private final List<TileCache.Tile> mTileScratch = new ArrayList<>();    // 主线程
+    private final List<TileCache.Tile> mFrameTiles = new ArrayList<>();     // 渲染线程
+    private final List<TileCache.Tile> mFallbackTiles = new ArrayList<>();  // 渲染线程
+    private final RectF mTileDst = new RectF();                              // 渲染线程
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean mRasterScheduled;                           // 受 mRenderLock 保护
+    private final Runnable mRasterTask = () -> {
+        synchronized (mRenderLock) {
+            mRasterScheduled = false;
+        }
+        rasterizeVisibleTiles(TILE_RASTER_BUDGET_NANOS);
+    };
+    // --- 手指导航：单指平移，双指捏合缩放；触控笔只用来书写 ---
+    private ScaleGestureDetector mScaleDetector;
+    private float mLastFocusX, mLastFocusY;
+
+    // --- 画笔 ---
     private final Paint mPaint;
     private final Paint mEraserPaint;
     private final Paint mHoverPaint; // 【新增】用于绘制悬停预览光标的画笔
+    private final Path mBatchPath = new Path();
+    private final StrokeRenderer mStrokeRenderer = new StrokeRenderer(StrokeRenderer.DEFAULT_CACHE_POINTS);
+    private final RectF mScratchRectF = new RectF();
+
+    // --- 输入批处理：一个 MotionEvent 中的历史采样点先收集到这里，再一次性追加到笔画 ---
+    private float[] mBatchX = new float[16];
+    private float[] mBatchY = new float[16];
+    private float[] mBatchPressure = new float[16];
+    private long[] mBatchTime = new long[16];
+
+    // --- 笔迹预测：在已画出的笔迹末端接一段外推的尾迹，只画在屏幕上，不进位图也不进笔画 ---
+    public static final long DEFAULT_PREDICTION_HORIZON_MS = 16;
+    // 尾迹由最后一个真实点加上这么多个预测点组成
+    private static final int PREDICTION_POINTS = 4;
+    private MotionPredictor mPredictor;
+    private long mPredictionHorizonMs = DEFAULT_PREDICTION_HORIZON_MS;
+    private final PredictionStats mPredictionStats = new PredictionStats();
+    private final float[] mPredictionX = new float[PREDICTION_POINTS + 1];
+    private final float[] mPredictionY = new float[PREDICTION_POINTS + 1];
+    private final float[] mPredictionPressure = new float[PREDICTION_POINTS + 1];
+    private final Path mPredictionPath = new Path();        // 受 mRenderLock 保护，渲染线程在位图之上绘制
+    private final Paint mPredictionPaint;                   // 受 mRenderLock 保护
+    private final RectF mPredictionBounds = new RectF();    // 当前尾迹的范围，替换时连同旧范围一起重绘
 
     // --- 笔画数据与历史记录 ---
-    private final Deque<Stroke> mUndoStack = new ArrayDeque<>();
+    // 撤销栈按绘制顺序存放，栈顶在列表末尾；下标 i 处的笔画是第 i+1 笔
+    private final List<Stroke> mUndoStack = new ArrayList<>();
     private final Deque<Stroke> mRedoStack = new ArrayDeque<>();
     private Stroke mCurrentStroke;
+    // 撤销栈中所有笔画的空间索引，用于局部重绘和命中测试
+    private final StrokeIndex mStrokeIndex = new StrokeIndex();
+    private final List<Stroke> mRegionStrokes = new ArrayList<>();
+    // 其他设备正在画、还没完成的笔画：id → 已收到的点。不在历史中，画在分块上作为预览，完成后整笔提交
+    private final Map<Long, Stroke> mRemoteLive = new HashMap<>();
+    // 撤销栈中其他设备提交的笔画：按绘制顺序和本地笔画排在一起，但本地撤销/重做跳过它们
+    private final Set<Stroke> mRemoteStrokes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // --- 撤销检查点：每隔若干笔或估算重放耗时超过预算时，给当前级别上画过新内容的分块各存一份位图，
+    // 撤销时这些分块只重放检查点之后的笔画 ---
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 50;
+    public static final long DEFAULT_CHECKPOINT_REPLAY_BUDGET_MS = 30;
+    public static final long DEFAULT_CHECKPOINT_MEMORY_BYTES = 64L * 1024 * 1024;
+    private final CheckpointCache mCheckpoints = new CheckpointCache(DEFAULT_CHECKPOINT_MEMORY_BYTES);
+    private int mCheckpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private long mCheckpointReplayBudgetNanos = DEFAULT_CHECKPOINT_REPLAY_BUDGET_MS * 1_000_000L;
+    // 根据实际重放耗时估算的每个点的重放成本（指数滑动平均）
+    private float mReplayNanosPerPoint = 1000f;
+
+    // --- 橡皮擦压缩：撤销栈底部超出撤销窗口的部分可以把橡皮擦落实为几何编辑（见 EraserCompactor），不再能撤销 ---
+    public static final int DEFAULT_UNDO_WINDOW = 200;
+    private int mUndoWindow = DEFAULT_UNDO_WINDOW;
+    // 撤销栈中低于这个深度的笔画不能撤销；只在开始压缩时抬高，清空或重新载入时归零
+    private int mUndoFloor;
+    // [0, mCompactedDepth) 中的橡皮擦都已处理过，剩下的必须保留
+    private int mCompactedDepth;
+    // 清空或重新载入时加一，过期的压缩结果不再应用
+    private int mHistoryGeneration;
+    private CompactionTask mPendingCompaction;
 
     // --- 状态 ---
     private int mCurrentColor = Color.BLACK;
     private float mCurrentBaseStrokeWidth = 10f;
     private boolean mIsEraserMode = false;
+    private boolean mInputEnabled = true;
+    // 抬笔提交时对笔画做的精简；提交后的笔画进入撤销栈、日志和文件，绘制中的原始点只用于实时显示
+    private StrokeSimplifier.Config mCommitSimplification = StrokeSimplifier.Config.NONE;
     private boolean mIsHovering = false; // 【新增】标记触摸笔是否正在悬停
     private float mHoverX, mHoverY;      // 【新增】悬停的坐标
 
     // --- 回调 ---
     public interface DrawingCallback {
+        // 落笔：笔画已创建并包含第一个点
+        void onStrokeStarted(Stroke stroke);
+        // 绘制中：笔画追加了新的点
+        void onStrokePointsAdded(Stroke stroke);
+        // 抬笔：笔画已完成并进入撤销栈
         void onNewStroke(Stroke stroke);
         void onHistoryChanged(boolean canUndo, boolean canRedo);
     }
@@ -59,19 +241,19 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
         super(context, attrs);
         init();
 
+        // 笔画由 StrokeRenderer 生成变宽的填充轮廓，画笔只负责颜色和混合模式
         mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaint.setStyle(Paint.Style.STROKE);
-        mPaint.setStrokeCap(Paint.Cap.ROUND);
-        mPaint.setStrokeJoin(Paint.Join.ROUND);
+        mPaint.setStyle(Paint.Style.FILL);
 
         mEraserPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mEraserPaint.setStyle(Paint.Style.STROKE);
-        mEraserPaint.setStrokeCap(Paint.Cap.ROUND);
-        mEraserPaint.setStrokeJoin(Paint.Join.ROUND);
+        mEraserPaint.setStyle(Paint.Style.FILL);
         mEraserPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
 
         // 【新增】初始化悬停光标的画笔
         mHoverPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mPredictionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPredictionPaint.setStyle(Paint.Style.FILL);
     }
 
     private void init() {
@@ -79,6 +261,15 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
         mHolder.addCallback(this);
         setFocusable(true);
         setFocusableInTouchMode(true);
+        mTiles.setEvictionListener(tile -> mCheckpoints.removeTile(tile.key));
+        mScaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                // 只改视口，随后的 ACTION_MOVE 统一刷新
+                mViewport.zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
     }
 
     /**
@@ -94,11 +285,14 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
         switch (event.getAction()) {
             case MotionEvent.ACTION_HOVER_ENTER:
             case MotionEvent.ACTION_HOVER_MOVE:
+                invalidateHover();
                 mIsHovering = true;
                 mHoverX = event.getX();
                 mHoverY = event.getY();
+                invalidateHover();
                 break;
             case MotionEvent.ACTION_HOVER_EXIT:
+                invalidateHover();
                 mIsHovering = false;
                 break;
         }
@@ -109,38 +303,69 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         if (event.getToolType(0) != MotionEvent.TOOL_TYPE_STYLUS) {
-            return super.onTouchEvent(event);
+            return handleNavigation(event);
+        }
+        // 渐进加载期间不接受书写，否则新笔画会夹在尚未送达的笔画之间
+        if (!mInputEnabled && mCurrentStroke == null) {
+            return true;
         }
 
         // 当触摸笔接触屏幕时，应隐藏悬停光标
-        mIsHovering = false;
+        if (mIsHovering) {
+            invalidateHover();
+            mIsHovering = false;
+        }
 
-        float x = event.getX();
-        float y = event.getY();
+        float x = mViewport.toDocX(event.getX());
+        float y = mViewport.toDocY(event.getY());
         float pressure = event.getPressure();
 
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
                 mCurrentStroke = new Stroke(mCurrentColor, mCurrentBaseStrokeWidth, mIsEraserMode);
-                mCurrentStroke.addPoint(new Point(x, y, pressure));
+                mCurrentStroke.addPoint(x, y, pressure, event.getEventTime());
+                if (mPredictor != null) {
+                    mPredictor.reset();
+                    mPredictionStats.reset();
+                    feedPredictor(mCurrentStroke.size() - 1, mCurrentStroke.size());
+                }
                 mRedoStack.clear();
+                // 撤销之后又画了新笔画，比当前深度更深的检查点已经不再对应任何历史状态
+                mCheckpoints.invalidateAbove(mUndoStack.size());
                 updateHistoryState();
+                if (mCallback != null) {
+                    mCallback.onStrokeStarted(mCurrentStroke);
+                }
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                if (mCurrentStroke != null && !mCurrentStroke.points.isEmpty()) {
-                    Point lastPoint = mCurrentStroke.points.get(mCurrentStroke.points.size() - 1);
-                    Point newPoint = new Point(x, y, pressure);
-                    drawSegment(lastPoint, newPoint, mCurrentStroke);
-                    mCurrentStroke.addPoint(newPoint);
+                if (mCurrentStroke != null && !mCurrentStroke.isEmpty()) {
+                    int start = mCurrentStroke.size();
+                    int count = collectSamples(event);
+                    mCurrentStroke.addPoints(mBatchX, mBatchY, mBatchPressure, mBatchTime, count);
+                    drawBatch(mCurrentStroke, start - 1, mCurrentStroke.size());
+                    mInputToCommitUs.record(System.nanoTime() / 1000 - event.getEventTime() * 1000);
+                    if (mPredictor != null) {
+                        feedPredictor(start, mCurrentStroke.size());
+                        updatePrediction(mCurrentStroke);
+                    }
+                    if (mCallback != null) {
+                        mCallback.onStrokePointsAdded(mCurrentStroke);
+                    }
                 }
                 break;
 
             case MotionEvent.ACTION_UP:
+                clearPrediction();
                 if (mCurrentStroke != null) {
-                    mUndoStack.push(mCurrentStroke);
+                    // 精简后得到新的笔画对象（id 不变），正在流式发送的原始笔画不受影响
+                    Stroke committed = StrokeSimplifier.simplify(mCurrentStroke, mCommitSimplification);
+                    committed.trimToSize();
+                    mUndoStack.add(committed);
+                    mStrokeIndex.insert(committed);
+                    maybeTakeCheckpoint();
                     if (mCallback != null) {
-                        mCallback.onNewStroke(mCurrentStroke);
+                        mCallback.onNewStroke(committed);
                     }
                     updateHistoryState();
                 }
@@ -150,145 +375,1083 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
         return true;
     }
 
+    /** 手指：单指平移，双指捏合缩放，同时跟随手指中点平移 */
+    private boolean handleNavigation(MotionEvent event) {
+        mScaleDetector.onTouchEvent(event);
+        int action = event.getActionMasked();
+        // 仍按在屏幕上的手指的中点，抬起的那根不算
+        int lifted = action == MotionEvent.ACTION_POINTER_UP ? event.getActionIndex() : -1;
+        float sumX = 0, sumY = 0;
+        int count = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != lifted) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return true;
+        }
+        float focusX = sumX / count;
+        float focusY = sumY / count;
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                // 手指数变化时中点会跳，重新记起点
+                mLastFocusX = focusX;
+                mLastFocusY = focusY;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                mViewport.panBy(focusX - mLastFocusX, focusY - mLastFocusY);
+                mLastFocusX = focusX;
+                mLastFocusY = focusY;
+                onViewportChanged();
+                break;
+        }
+        return true;
+    }
+
+    private void onViewportChanged() {
+        synchronized (mRenderLock) {
+            mFrameViewport.set(mViewport);
+        }
+        rasterizeVisibleTiles(TILE_RASTER_BUDGET_NANOS);
+        invalidateAll();
+    }
+
+    // --- 渲染调度 ---
+
+    /** 标记一块区域需要重绘，并在下一个 vsync 安排一帧；可在任意线程调用 */
+    private void invalidateRegion(float left, float top, float right, float bottom) {
+        synchronized (mRenderLock) {
+            mDirtyRect.union((int) Math.floor(left) - DIRTY_MARGIN, (int) Math.floor(top) - DIRTY_MARGIN,
+                    (int) Math.ceil(right) + DIRTY_MARGIN, (int) Math.ceil(bottom) + DIRTY_MARGIN);
+            scheduleFrameLocked();
+        }
+    }
+
+    /** 文档坐标的区域，换算到屏幕后标记重绘；只在主线程调用 */
+    private void invalidateDocRegion(float left, float top, float right, float bottom) {
+        invalidateRegion(mViewport.toScreenX(left), mViewport.toScreenY(top),
+                mViewport.toScreenX(right), mViewport.toScreenY(bottom));
+    }
+
+    private void invalidateAll() {
+        synchronized (mRenderLock) {
+            mDirtyRect.set(0, 0, getWidth(), getHeight());
+            scheduleFrameLocked();
+        }
+    }
+
+    private void invalidateHover() {
+        if (!mIsHovering) {
+            return;
+        }
+        float radius = mCurrentBaseStrokeWidth * mViewport.getScale() / 2;
+        invalidateRegion(mHoverX - radius, mHoverY - radius, mHoverX + radius, mHoverY + radius);
+    }
+
+    private void scheduleFrameLocked() {
+        if (!mSurfaceReady || mFrameScheduled || mChoreographer == null) {
+            return;
+        }
+        mFrameScheduled = true;
+        long now = System.nanoTime();
+        if (mRenderStats.idleSinceNanos != 0) {
+            mRenderStats.idleNanos += now - mRenderStats.idleSinceNanos;
+            mRenderStats.idleSinceNanos = 0;
+        }
+        mChoreographer.postFrameCallback(this);
+    }
+
     @Override
-    public void run() {
-        while (mIsDrawing) {
-            Canvas canvas = null;
-            try {
-                canvas = mHolder.lockCanvas();
-                if (canvas != null) {
-                    // 1. 绘制背景和已完成的笔画
-                    canvas.drawColor(Color.WHITE);
-                    if (mBitmap != null) {
-                        canvas.drawBitmap(mBitmap, 0, 0, null);
-                    }
-                    // 2. 【核心修改】如果正在悬停，则绘制预览光标
-                    if (mIsHovering) {
-                        drawHoverPreview(canvas);
+    public void doFrame(long frameTimeNanos) {
+        synchronized (mRenderLock) {
+            mFrameScheduled = false;
+            if (!mSurfaceReady || mDirtyRect.isEmpty()) {
+                mIdleFrames.increment();
+                return;
+            }
+            mFrameRect.set(mDirtyRect);
+            mDirtyRect.setEmpty();
+            mRenderViewport.set(mFrameViewport);
+            mRenderStats.maxDrawCallsPerFrame = Math.max(mRenderStats.maxDrawCallsPerFrame, mRenderStats.drawCallsThisFrame);
+            mRenderStats.drawCallsThisFrame = 0;
+        }
+
+        long start = System.nanoTime();
+        Canvas canvas = null;
+        try {
+            // lockCanvas 可能会扩大 mFrameRect（例如首帧），返回的画布已裁剪到该区域
+            canvas = mHolder.lockCanvas(mFrameRect);
+            if (canvas != null) {
+                // 1. 绘制背景和已完成的笔画
+                canvas.drawColor(Color.WHITE);
+                drawTiles(canvas, mRenderViewport);
+                // 预测的尾迹只画在屏幕上，下一帧随真实笔迹一起被替换；路径是文档坐标
+                synchronized (mRenderLock) {
+                    if (!mPredictionPath.isEmpty()) {
+                        float scale = mRenderViewport.getScale();
+                        canvas.save();
+                        canvas.scale(scale, scale);
+                        canvas.translate(-mRenderViewport.getPanX(), -mRenderViewport.getPanY());
+                        canvas.drawPath(mPredictionPath, mPredictionPaint);
+                        canvas.restore();
                     }
                 }
-            } finally {
-                if (canvas != null) {
-                    mHolder.unlockCanvasAndPost(canvas);
+                // 2. 【核心修改】如果正在悬停，则绘制预览光标
+                if (mIsHovering) {
+                    drawHoverPreview(canvas, mRenderViewport.getScale());
                 }
             }
+        } catch (IllegalArgumentException e) {
+            // Surface 正在销毁
+            canvas = null;
+        } finally {
+            if (canvas != null) {
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+        }
+
+        long end = System.nanoTime();
+        if (canvas != null) {
+            mFrames.increment();
+            mFrameUs.record((end - start) / 1000);
+        }
+        synchronized (mRenderLock) {
+            if (canvas != null) {
+                mRenderStats.framesRendered++;
+                mRenderStats.totalFrameNanos += end - start;
+                mRenderStats.dirtyPixels += (long) mFrameRect.width() * mFrameRect.height();
+            }
+            if (!mFrameScheduled) {
+                mRenderStats.idleSinceNanos = end;
+            }
+        }
+    }
+
+    /**
+     * 在渲染线程合成视口内的分块。当前级别缺块时先铺上其它级别的块（缩放后略模糊），
+     * 再请主线程补画，补好后会再次标记重绘。
+     */
+    private void drawTiles(Canvas canvas, Viewport viewport) {
+        if (viewport.getWidth() <= 0 || viewport.getHeight() <= 0) {
+            return;
+        }
+        int level = viewport.getLevel();
+        float left = viewport.getDocLeft(), top = viewport.getDocTop();
+        float right = viewport.getDocRight(), bottom = viewport.getDocBottom();
+        int col0 = TileCache.index(left, level), col1 = TileCache.index(right, level);
+        int row0 = TileCache.index(top, level), row1 = TileCache.index(bottom, level);
+        mFrameTiles.clear();
+        boolean missing = false;
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                TileCache.Tile tile = mTiles.get(TileCache.key(level, col, row));
+                if (tile != null) {
+                    mFrameTiles.add(tile);
+                } else {
+                    missing = true;
+                }
+            }
+        }
+        if (missing) {
+            // 顶替的块先画，当前级别已有的块盖在上面
+            mTiles.collectFallback(level, left, top, right, bottom, mFallbackTiles);
+            for (TileCache.Tile tile : mFallbackTiles) {
+                drawTile(canvas, viewport, tile);
+            }
+            mFallbackTiles.clear();
+        }
+        for (TileCache.Tile tile : mFrameTiles) {
+            drawTile(canvas, viewport, tile);
+        }
+        mFrameTiles.clear();
+        if (missing) {
+            mTileMissFrames.increment();
+            synchronized (mRenderLock) {
+                mRenderStats.framesWithMissingTiles++;
+            }
+            requestRaster();
+        }
+    }
+
+    private void drawTile(Canvas canvas, Viewport viewport, TileCache.Tile tile) {
+        // 取整后相邻分块的边完全重合，缩放时不会露缝
+        mTileDst.set(Math.round(viewport.toScreenX(tile.left)), Math.round(viewport.toScreenY(tile.top)),
+                Math.round(viewport.toScreenX(tile.right)), Math.round(viewport.toScreenY(tile.bottom)));
+        canvas.drawBitmap(tile.bitmap, null, mTileDst, mTilePaint);
+    }
+
+    /** 请主线程补画缺失的分块；可在任意线程调用，已有一轮在排队时不重复安排 */
+    private void requestRaster() {
+        synchronized (mRenderLock) {
+            if (mRasterScheduled) {
+                return;
+            }
+            mRasterScheduled = true;
+        }
+        post(mRasterTask);
+    }
+
+    /**
+     * 在主线程补画视口内缺失的分块，然后是四周预备的几圈；超出时间预算时安排下一轮继续。
+     * @return 是否已全部补齐
+     */
+    private boolean rasterizeVisibleTiles(long budgetNanos) {
+        if (mViewport.getWidth() <= 0 || mViewport.getHeight() <= 0) {
+            return true;
+        }
+        long start = System.nanoTime();
+        int level = mViewport.getLevel();
+        int col0 = TileCache.index(mViewport.getDocLeft(), level), col1 = TileCache.index(mViewport.getDocRight(), level);
+        int row0 = TileCache.index(mViewport.getDocTop(), level), row1 = TileCache.index(mViewport.getDocBottom(), level);
+        for (int margin = 0; margin <= TILE_PREFETCH_MARGIN; margin++) {
+            for (int row = row0 - margin; row <= row1 + margin; row++) {
+                for (int col = col0 - margin; col <= col1 + margin; col++) {
+                    boolean ring = margin == 0 || row == row0 - margin || row == row1 + margin
+                            || col == col0 - margin || col == col1 + margin;
+                    if (!ring || mTiles.get(TileCache.key(level, col, row)) != null) {
+                        continue;
+                    }
+                    if (System.nanoTime() - start >= budgetNanos) {
+                        requestRaster();
+                        return false;
+                    }
+                    rasterizeTile(level, col, row);
+                }
+            }
+        }
+        return true;
+    }
+
+    /** 从笔画模型光栅化一个分块：按绘制顺序画出与之相交的笔画，以及正在书写的笔画 */
+    private TileCache.Tile rasterizeTile(int level, int col, int row) {
+        long start = System.nanoTime();
+        TileCache.Tile tile = new TileCache.Tile(level, col, row);
+        mRegionStrokes.clear();
+        mStrokeIndex.query(tile.left, tile.top, tile.right, tile.bottom, mRegionStrokes);
+        for (Stroke stroke : mRegionStrokes) {
+            drawStrokeToTile(tile, stroke);
+        }
+        mRegionStrokes.clear();
+        if (mCurrentStroke != null && mCurrentStroke.size() >= 2) {
+            StrokeRenderer.buildOutline(mCurrentStroke, 0, mCurrentStroke.size(), mCurrentBaseStrokeWidth, mBatchPath);
+            tile.canvas.drawPath(mBatchPath, paintFor(mCurrentStroke));
+        }
+        drawRemoteLive(tile, tile.left, tile.top, tile.right, tile.bottom);
+        tile.changedSinceCheckpoint = false;
+        mTiles.put(tile);
+        mTileBytes.set(mTiles.getCurrentBytes());
+        long elapsed = System.nanoTime() - start;
+        mTileRasterUs.record(elapsed / 1000);
+        synchronized (mRenderLock) {
+            mRenderStats.tilesRasterized++;
+            mRenderStats.totalTileRasterNanos += elapsed;
+        }
+        invalidateDocRegion(tile.left, tile.top, tile.right, tile.bottom);
+        return tile;
+    }
+
+    /** 丢掉一个分块及其检查点，之后需要时重新光栅化 */
+    private void dropTile(TileCache.Tile tile) {
+        mTiles.remove(tile);
+        mCheckpoints.removeTile(tile.key);
+    }
+
+    /** 笔画整体替换（加载、清空）后丢掉所有分块和检查点，视口内的分块立即重画 */
+    private void resetTiles() {
+        mTiles.clear();
+        mCheckpoints.clear();
+        rasterizeVisibleTiles(Long.MAX_VALUE);
+        mTileBytes.set(mTiles.getCurrentBytes());
+        invalidateAll();
+    }
+
+    public RenderStats getRenderStats() {
+        synchronized (mRenderLock) {
+            RenderStats snapshot = mRenderStats.copy();
+            if (mRenderStats.idleSinceNanos != 0) {
+                snapshot.idleNanos += System.nanoTime() - mRenderStats.idleSinceNanos;
+            }
+            snapshot.outlineCacheHits = mStrokeRenderer.getHits();
+            snapshot.outlineCacheMisses = mStrokeRenderer.getMisses();
+            return snapshot;
         }
     }
 
     /**
      * 【核心新增】根据当前模式（画笔/橡皮擦）绘制不同的悬停预览光标
      */
-    private void drawHoverPreview(Canvas canvas) {
+    private void drawHoverPreview(Canvas canvas, float scale) {
         if (mIsEraserMode) {
             // 橡皮擦模式：绘制一个半透明的灰色圆圈，代表擦除区域
-            float radius = mCurrentBaseStrokeWidth / 2;
+            float radius = mCurrentBaseStrokeWidth * scale / 2;
             mHoverPaint.setColor(0x80888888); // 半透明灰色
             mHoverPaint.setStyle(Paint.Style.FILL);
             canvas.drawCircle(mHoverX, mHoverY, radius, mHoverPaint);
         } else {
             // 画笔模式：绘制一个与笔画颜色和大小一致的实心圆点
-            float radius = mCurrentBaseStrokeWidth / 2;
+            float radius = mCurrentBaseStrokeWidth * scale / 2;
             mHoverPaint.setColor(mCurrentColor);
             mHoverPaint.setStyle(Paint.Style.FILL);
             canvas.drawCircle(mHoverX, mHoverY, radius, mHoverPaint);
         }
     }
 
-    private void drawSegment(Point p1, Point p2, Stroke stroke) {
-        if (mBitmapCanvas == null) return;
+    /**
+     * 把事件中的历史采样和当前采样依次拷贝到批处理缓冲区（换算为文档坐标），返回采样数。
+     * 高采样率的触控笔在两帧之间会产生多个采样，只读 getX/getY 会丢掉它们。
+     */
+    private int collectSamples(MotionEvent event) {
+        int historySize = event.getHistorySize();
+        int count = historySize + 1;
+        ensureBatchCapacity(count);
+        for (int h = 0; h < historySize; h++) {
+            mBatchX[h] = mViewport.toDocX(event.getHistoricalX(h));
+            mBatchY[h] = mViewport.toDocY(event.getHistoricalY(h));
+            mBatchPressure[h] = event.getHistoricalPressure(h);
+            mBatchTime[h] = event.getHistoricalEventTime(h);
+        }
+        mBatchX[historySize] = mViewport.toDocX(event.getX());
+        mBatchY[historySize] = mViewport.toDocY(event.getY());
+        mBatchPressure[historySize] = event.getPressure();
+        mBatchTime[historySize] = event.getEventTime();
 
-        Paint paintToUse = stroke.isEraser ? mEraserPaint : mPaint;
-        if (!stroke.isEraser) {
-            paintToUse.setColor(stroke.color);
+        synchronized (mRenderLock) {
+            mRenderStats.inputEvents++;
+            mRenderStats.inputSamples += count;
+            mRenderStats.maxSamplesPerEvent = Math.max(mRenderStats.maxSamplesPerEvent, count);
         }
+        mSamplesPerEvent.record(count);
+        return count;
+    }
 
-        // 【核心修复】判断当前是在实时绘制还是在重绘
-        float baseWidth;
-        if (stroke == mCurrentStroke) {
-            // 如果是正在绘制的当前笔画，直接使用最新的宽度值
-            baseWidth = this.mCurrentBaseStrokeWidth;
-        } else {
-            // 如果是重绘（来自撤销栈），使用该笔画被保存时的宽度
-            baseWidth = stroke.baseStrokeWidth;
+    private void ensureBatchCapacity(int count) {
+        if (mBatchX.length < count) {
+            int capacity = Math.max(count, mBatchX.length * 2);
+            mBatchX = new float[capacity];
+            mBatchY = new float[capacity];
+            mBatchPressure = new float[capacity];
+            mBatchTime = new long[capacity];
+        }
+    }
+
+    /**
+     * 绘制中的笔画：把 [from, to) 的变宽轮廓作为一条 Path 画到与之相交的每个常驻分块上（各级别都画，保持一致）。
+     * from 是上一批的最后一个点，两批在这个点的圆头处衔接。
+     */
+    private void drawBatch(Stroke stroke, int from, int to) {
+        if (to - from < 2) return;
+
+        float baseWidth = stroke == mCurrentStroke ? this.mCurrentBaseStrokeWidth : stroke.baseStrokeWidth;
+        StrokeRenderer.buildOutline(stroke, from, to, baseWidth, mBatchPath);
+
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        float minX = xs[from], maxX = xs[from], minY = ys[from], maxY = ys[from];
+        float maxPressure = pressures[from];
+        for (int i = from + 1; i < to; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+            maxPressure = Math.max(maxPressure, pressures[i]);
         }
 
-        float avgPressure = (p1.pressure + p2.pressure) / 2;
-        // 使用正确的 baseWidth 来计算最终宽度
-        float strokeWidth = Math.max(1, avgPressure * baseWidth);
-        paintToUse.setStrokeWidth(strokeWidth);
+        float half = StrokeRenderer.radius(maxPressure, baseWidth);
+        Paint paint = paintFor(stroke);
+        mTileScratch.clear();
+        mTiles.collect(Integer.MIN_VALUE, minX - half, minY - half, maxX + half, maxY + half, mTileScratch);
+        for (TileCache.Tile tile : mTileScratch) {
+            tile.canvas.drawPath(mBatchPath, paint);
+            tile.changedSinceCheckpoint = true;
+            countDrawCall();
+        }
+        mTileScratch.clear();
 
-        mBitmapCanvas.drawLine(p1.x, p1.y, p2.x, p2.y, paintToUse);
+        invalidateDocRegion(minX - half, minY - half, maxX + half, maxY + half);
+    }
+
+    /** 把笔画中 [from, to) 的真实采样交给预测器，并用来评估之前的预测 */
+    private void feedPredictor(int from, int to) {
+        float[] xs = mCurrentStroke.xArray();
+        float[] ys = mCurrentStroke.yArray();
+        float[] pressures = mCurrentStroke.pressureArray();
+        long[] timestamps = mCurrentStroke.timestampArray();
+        for (int i = from; i < to; i++) {
+            mPredictor.addSample(xs[i], ys[i], pressures[i], timestamps[i]);
+            mPredictionStats.onSample(xs[i], ys[i], timestamps[i]);
+        }
     }
 
-    private void commitStrokeToBitmap(Stroke stroke) {
-        if (mBitmapCanvas == null || stroke == null || stroke.points == null || stroke.points.size() < 2) {
+    /**
+     * 用最新的预测替换屏幕上的尾迹：尾迹从笔画最后一个真实点出发，按与笔画相同的线宽规则生成轮廓。
+     * 橡皮擦不预测，擦除无法只画在屏幕上。
+     */
+    private void updatePrediction(Stroke stroke) {
+        int count = stroke.isEraser ? 0 : mPredictor.predict(mPredictionHorizonMs, PREDICTION_POINTS,
+                mPredictionX, mPredictionY, mPredictionPressure);
+        if (count == 0) {
+            clearPrediction();
             return;
         }
-        List<Point> points = stroke.points;
-        for (int i = 1; i < points.size(); i++) {
-            drawSegment(points.get(i - 1), points.get(i), stroke);
+        // 预测点从下标 1 开始写，下标 0 放最后一个真实点
+        System.arraycopy(mPredictionX, 0, mPredictionX, 1, count);
+        System.arraycopy(mPredictionY, 0, mPredictionY, 1, count);
+        System.arraycopy(mPredictionPressure, 0, mPredictionPressure, 1, count);
+        int last = stroke.size() - 1;
+        mPredictionX[0] = stroke.getX(last);
+        mPredictionY[0] = stroke.getY(last);
+        mPredictionPressure[0] = stroke.getPressure(last);
+        mPredictionStats.onPrediction(mPredictionX[count], mPredictionY[count], mPredictionHorizonMs);
+
+        float minX = mPredictionX[0], maxX = minX, minY = mPredictionY[0], maxY = minY;
+        float maxPressure = mPredictionPressure[0];
+        for (int i = 1; i <= count; i++) {
+            minX = Math.min(minX, mPredictionX[i]);
+            maxX = Math.max(maxX, mPredictionX[i]);
+            minY = Math.min(minY, mPredictionY[i]);
+            maxY = Math.max(maxY, mPredictionY[i]);
+            maxPressure = Math.max(maxPressure, mPredictionPressure[i]);
+        }
+        float half = StrokeRenderer.radius(maxPressure, mCurrentBaseStrokeWidth);
+        synchronized (mRenderLock) {
+            invalidatePredictionLocked();
+            StrokeRenderer.buildOutline(mPredictionX, mPredictionY, mPredictionPressure, 0, count + 1,
+                    mCurrentBaseStrokeWidth, mPredictionPath);
+            mPredictionPaint.setColor(stroke.color);
+            mPredictionBounds.set(minX - half, minY - half, maxX + half, maxY + half);
+            invalidatePredictionLocked();
         }
     }
 
-    private void redrawAllStrokes() {
-        if (mBitmapCanvas != null) {
-            mBitmapCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-            for (Stroke stroke : new ArrayList<>(mUndoStack)) {
-                commitStrokeToBitmap(stroke);
+    private void clearPrediction() {
+        synchronized (mRenderLock) {
+            if (mPredictionPath.isEmpty()) {
+                return;
             }
+            invalidatePredictionLocked();
+            mPredictionPath.rewind();
+            mPredictionBounds.setEmpty();
+        }
+    }
+
+    private void invalidatePredictionLocked() {
+        if (!mPredictionBounds.isEmpty()) {
+            invalidateDocRegion(mPredictionBounds.left, mPredictionBounds.top, mPredictionBounds.right, mPredictionBounds.bottom);
+        }
+    }
+
+    private Paint paintFor(Stroke stroke) {
+        if (stroke.isEraser) {
+            return mEraserPaint;
+        }
+        mPaint.setColor(stroke.color);
+        return mPaint;
+    }
+
+    private void countDrawCall() {
+        synchronized (mRenderLock) {
+            mRenderStats.bitmapDrawCalls++;
+            mRenderStats.drawCallsThisFrame++;
+        }
+    }
+
+    /** 已完成的笔画：取缓存的整笔轮廓，画到与之相交的每个常驻分块上 */
+    private void commitStroke(Stroke stroke) {
+        if (stroke == null || stroke.size() < 2) {
+            return;
+        }
+        mTileScratch.clear();
+        mTiles.collect(Integer.MIN_VALUE, stroke.getLeft(), stroke.getTop(), stroke.getRight(), stroke.getBottom(), mTileScratch);
+        for (TileCache.Tile tile : mTileScratch) {
+            drawStrokeToTile(tile, stroke);
+        }
+        mTileScratch.clear();
+        invalidateDocRegion(stroke.getLeft(), stroke.getTop(), stroke.getRight(), stroke.getBottom());
+    }
+
+    /** 一次 drawPath，画布的变换已把文档坐标映射到分块像素；与分块不相交时什么也不做 */
+    private void drawStrokeToTile(TileCache.Tile tile, Stroke stroke) {
+        if (stroke.size() < 2 || !stroke.intersects(tile.left, tile.top, tile.right, tile.bottom)) {
+            return;
+        }
+        tile.canvas.drawPath(mStrokeRenderer.getOutline(stroke), paintFor(stroke));
+        tile.changedSinceCheckpoint = true;
+        countDrawCall();
+    }
+
+    /**
+     * 局部重绘：在与区域（文档坐标）相交的每个常驻分块上清空这块区域，只按绘制顺序重放与之相交的笔画，并裁剪到该区域。
+     * @return 重放的笔画数
+     */
+    public int redrawRegion(RectF region) {
+        if (region.isEmpty()) {
+            return 0;
+        }
+        mTileScratch.clear();
+        mTiles.collect(Integer.MIN_VALUE, region.left, region.top, region.right, region.bottom, mTileScratch);
+        List<TileCache.Tile> tiles = new ArrayList<>(mTileScratch);
+        mTileScratch.clear();
+        mRegionStrokes.clear();
+        mStrokeIndex.query(region.left, region.top, region.right, region.bottom, mRegionStrokes);
+        for (TileCache.Tile tile : tiles) {
+            redrawTileRegion(tile, region, mRegionStrokes);
         }
+        invalidateDocRegion(region.left, region.top, region.right, region.bottom);
+        int replayed = mRegionStrokes.size();
+        mRegionStrokes.clear();
+        return replayed;
+    }
+
+    private void redrawTileRegion(TileCache.Tile tile, RectF region, List<Stroke> strokes) {
+        tile.canvas.save();
+        tile.canvas.clipRect(region);
+        tile.canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        for (Stroke stroke : strokes) {
+            drawStrokeToTile(tile, stroke);
+        }
+        drawRemoteLive(tile, region.left, region.top, region.right, region.bottom);
+        tile.canvas.restore();
+    }
+
+    /** 远端未完成笔画的预览画在历史之上，只画与区域相交的；它们还在变长，轮廓不进缓存 */
+    private void drawRemoteLive(TileCache.Tile tile, float left, float top, float right, float bottom) {
+        for (Stroke stroke : mRemoteLive.values()) {
+            if (stroke.size() >= 2 && stroke.intersects(left, top, right, bottom)) {
+                StrokeRenderer.buildOutline(stroke, 0, stroke.size(), stroke.baseStrokeWidth, mBatchPath);
+                tile.canvas.drawPath(mBatchPath, paintFor(stroke));
+                countDrawCall();
+            }
+        }
+    }
+
+    /** 范围查询：返回包围盒与区域（文档坐标）相交的笔画，按绘制顺序排列 */
+    public List<Stroke> queryStrokes(RectF region) {
+        return mStrokeIndex.query(region.left, region.top, region.right, region.bottom, new ArrayList<>());
+    }
+
+    /** 命中测试：返回文档坐标 (x, y) 处最上层的笔画，没有则返回 null */
+    public Stroke hitTest(float x, float y, float tolerance) {
+        return mStrokeIndex.hitTest(x, y, tolerance);
+    }
+
+    /** 按绘制顺序把撤销栈中 [from, to) 的笔画画到一个分块上，返回重放的点数 */
+    private long replayStrokes(TileCache.Tile tile, int from, int to) {
+        long points = 0;
+        long start = System.nanoTime();
+        for (int i = from; i < to; i++) {
+            Stroke stroke = mUndoStack.get(i);
+            if (stroke.intersects(tile.left, tile.top, tile.right, tile.bottom)) {
+                drawStrokeToTile(tile, stroke);
+                points += stroke.size();
+            }
+        }
+        if (points > 0) {
+            float sample = (float) (System.nanoTime() - start) / points;
+            mReplayNanosPerPoint = mReplayNanosPerPoint * 0.8f + sample * 0.2f;
+        }
+        return points;
+    }
+
+    /**
+     * 把一个分块恢复为撤销栈当前状态：从这一块不超过当前深度的最近检查点开始，只重放其后与之相交的笔画；
+     * 没有检查点时按索引重放与之相交的全部笔画。
+     * @return 重放的笔画数（含不相交而跳过的）
+     */
+    private int restoreTile(TileCache.Tile tile) {
+        int depth = mUndoStack.size();
+        int checkpointDepth = mCheckpoints.floorDepth(tile.key, depth);
+        tile.canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        if (checkpointDepth > 0) {
+            mScratchRectF.set(tile.left, tile.top, tile.right, tile.bottom);
+            tile.canvas.drawBitmap(mCheckpoints.get(tile.key, checkpointDepth), null, mScratchRectF, null);
+            replayStrokes(tile, checkpointDepth, depth);
+            return depth - checkpointDepth;
+        }
+        mRegionStrokes.clear();
+        mStrokeIndex.query(tile.left, tile.top, tile.right, tile.bottom, mRegionStrokes);
+        for (Stroke stroke : mRegionStrokes) {
+            drawStrokeToTile(tile, stroke);
+        }
+        int replayed = mRegionStrokes.size();
+        mRegionStrokes.clear();
+        return replayed;
+    }
+
+    /**
+     * 撤销后的重绘，逐个分块决定：被撤销笔画覆盖的区域内需要重放的笔画比该块检查点之后的笔画少时，只重绘该区域，
+     * 否则从检查点恢复整块。视口外的常驻分块直接丢掉，需要时再光栅化。
+     * @return 重放的笔画数
+     */
+    private int undoRedraw(Stroke undone) {
+        if (undone.isEmpty()) {
+            return 0;
+        }
+        // 抗锯齿的余量按分辨率最低的级别算成文档单位，任何级别都够用
+        float margin = DIRTY_MARGIN / Viewport.resolution(Viewport.MIN_LEVEL);
+        float left = undone.getLeft() - margin, top = undone.getTop() - margin;
+        float right = undone.getRight() + margin, bottom = undone.getBottom() + margin;
+        mTileScratch.clear();
+        mTiles.collect(Integer.MIN_VALUE, left, top, right, bottom, mTileScratch);
+        List<TileCache.Tile> tiles = new ArrayList<>(mTileScratch);
+        mTileScratch.clear();
+
+        int depth = mUndoStack.size();
+        int level = mViewport.getLevel();
+        int replayed = 0;
+        RectF region = new RectF();
+        for (TileCache.Tile tile : tiles) {
+            if (tile.level != level || !tile.intersects(mViewport.getDocLeft(), mViewport.getDocTop(),
+                    mViewport.getDocRight(), mViewport.getDocBottom())) {
+                dropTile(tile);
+                continue;
+            }
+            region.set(Math.max(left, tile.left), Math.max(top, tile.top), Math.min(right, tile.right), Math.min(bottom, tile.bottom));
+            int regionStrokes = mStrokeIndex.count(region.left, region.top, region.right, region.bottom);
+            int checkpointStrokes = depth - Math.max(0, mCheckpoints.floorDepth(tile.key, depth));
+            if (regionStrokes <= checkpointStrokes) {
+                mRegionStrokes.clear();
+                mStrokeIndex.query(region.left, region.top, region.right, region.bottom, mRegionStrokes);
+                redrawTileRegion(tile, region, mRegionStrokes);
+                replayed += mRegionStrokes.size();
+                mRegionStrokes.clear();
+            } else {
+                replayed += restoreTile(tile);
+            }
+        }
+        mTileBytes.set(mTiles.getCurrentBytes());
+        invalidateDocRegion(left, top, right, bottom);
+        return replayed;
+    }
+
+    /**
+     * 距上一个检查点的笔画数或估算重放耗时超过阈值时，给当前级别、视口内自上次以来画过新内容的分块各存一份检查点。
+     * 没画过的分块沿用更早的检查点，撤销时多重放几笔，结果相同。
+     */
+    private void maybeTakeCheckpoint() {
+        // 远端预览不属于历史，画面上有预览时不留检查点，推迟到之后的提交
+        if (mCheckpoints.getMaxBytes() <= 0 || !mRemoteLive.isEmpty()) {
+            return;
+        }
+        int depth = mUndoStack.size();
+        int lastDepth = Math.max(0, mCheckpoints.floorDepth(depth));
+        if (lastDepth == depth) {
+            return;
+        }
+        long points = 0;
+        for (int i = lastDepth; i < depth; i++) {
+            points += mUndoStack.get(i).size();
+        }
+        boolean intervalReached = depth - lastDepth >= mCheckpointInterval;
+        boolean budgetReached = points * mReplayNanosPerPoint >= mCheckpointReplayBudgetNanos;
+        if (intervalReached || budgetReached) {
+            mTileScratch.clear();
+            mTiles.collect(mViewport.getLevel(), mViewport.getDocLeft(), mViewport.getDocTop(),
+                    mViewport.getDocRight(), mViewport.getDocBottom(), mTileScratch);
+            for (TileCache.Tile tile : mTileScratch) {
+                if (tile.changedSinceCheckpoint) {
+                    mCheckpoints.put(tile.key, depth, tile.bitmap.copy(Bitmap.Config.ARGB_8888, false));
+                    tile.changedSinceCheckpoint = false;
+                }
+            }
+            mTileScratch.clear();
+        }
+    }
+
+    /**
+     * 设置检查点策略。
+     * @param interval        每隔多少笔至少保存一个检查点
+     * @param replayBudgetMs  检查点之后的笔画估算重放耗时超过该值时也会保存检查点
+     */
+    public void setCheckpointPolicy(int interval, long replayBudgetMs) {
+        this.mCheckpointInterval = Math.max(1, interval);
+        this.mCheckpointReplayBudgetNanos = Math.max(0, replayBudgetMs) * 1_000_000L;
+    }
+
+    /** 检查点可占用的最大内存（字节），设为 0 关闭检查点 */
+    public void setCheckpointMemoryBudget(long maxBytes) {
+        mCheckpoints.setMaxBytes(Math.max(0, maxBytes));
+    }
+
+    /** 光栅分块可占用的最大内存（字节），不少于视口及四周预备分块所需 */
+    public void setTileMemoryBudget(long maxBytes) {
+        mTiles.setMaxBytes(Math.max(0, maxBytes));
+        mTileBytes.set(mTiles.getCurrentBytes());
+    }
+
+    /** 当前视口的副本 */
+    public Viewport getViewport() {
+        Viewport copy = new Viewport();
+        copy.set(mViewport);
+        return copy;
+    }
+
+    /**
+     * 设置缩放和平移：屏幕坐标 = (文档坐标 - pan) * scale，scale 限制在 [{@link Viewport#MIN_SCALE}, {@link Viewport#MAX_SCALE}]。
+     */
+    public void setViewport(float scale, float panX, float panY) {
+        mViewport.set(scale, panX, panY);
+        onViewportChanged();
     }
 
     // --- 撤销/重做/历史记录管理 ---
-    public void undo() {
-        if (!mUndoStack.isEmpty()) {
-            mRedoStack.push(mUndoStack.pop());
-            redrawAllStrokes();
+
+    /** 一次撤销：被撤销的本地笔画，以及绘制顺序在它之后、仍然保留的远端笔画 */
+    public static final class UndoResult {
+        public final Stroke stroke;
+        public final List<Stroke> remoteAbove;
+
+        UndoResult(Stroke stroke, List<Stroke> remoteAbove) {
+            this.stroke = stroke;
+            this.remoteAbove = remoteAbove;
+        }
+    }
+
+    /**
+     * 撤销最近一笔本地笔画。之后到达的远端笔画不受影响，仍留在原来的位置。
+     * @return 撤销的结果；没有可撤销的本地笔画时返回 null
+     */
+    public UndoResult undo() {
+        int index = newestLocalStroke();
+        if (index >= 0) {
+            long start = System.nanoTime();
+            List<Stroke> remoteAbove = new ArrayList<>(mUndoStack.subList(index + 1, mUndoStack.size()));
+            Stroke undone = mUndoStack.remove(index);
+            if (!remoteAbove.isEmpty()) {
+                // 更深的检查点里都画着这一笔
+                mCheckpoints.invalidateAbove(index);
+            }
+            mRedoStack.push(undone);
+            mStrokeIndex.remove(undone);
+            int replayed = undoRedraw(undone);
+            long elapsed = System.nanoTime() - start;
+            mUndoUs.record(elapsed / 1000);
+            synchronized (mRenderLock) {
+                mRenderStats.undoCount++;
+                mRenderStats.totalUndoNanos += elapsed;
+                mRenderStats.maxUndoNanos = Math.max(mRenderStats.maxUndoNanos, elapsed);
+                mRenderStats.lastUndoReplayedStrokes = replayed;
+            }
             updateHistoryState();
+            return new UndoResult(undone, remoteAbove);
         }
+        return null;
     }
 
-    public void redo() {
+    /** 重做的笔画加到撤销栈顶，即排在撤销之后到达的远端笔画之上；@return 重做的笔画，没有时返回 null */
+    public Stroke redo() {
         if (!mRedoStack.isEmpty()) {
             Stroke redoneStroke = mRedoStack.pop();
-            mUndoStack.push(redoneStroke);
-            commitStrokeToBitmap(redoneStroke);
+            mUndoStack.add(redoneStroke);
+            mStrokeIndex.insert(redoneStroke);
+            commitStroke(redoneStroke);
+            maybeTakeCheckpoint();
             updateHistoryState();
+            return redoneStroke;
+        }
+        return null;
+    }
+
+    /** 把一笔已完成的笔画加入历史并画到位图上，不会触发 onNewStroke 回调 */
+    public void addStroke(Stroke stroke) {
+        mRedoStack.clear();
+        mCheckpoints.invalidateAbove(mUndoStack.size());
+        mUndoStack.add(stroke);
+        mStrokeIndex.insert(stroke);
+        commitStroke(stroke);
+        maybeTakeCheckpoint();
+        updateHistoryState();
+    }
+
+    /**
+     * 把刚提交的一笔换成同 id 的另一份内容（例如实际发给服务器的精简版本），只在 onNewStroke 回调里调用。
+     * 位图上已经是书写时的笔迹，不重绘；之后的撤销、重绘和保存都用新的内容。
+     */
+    public void replaceNewestStroke(Stroke stroke) {
+        int top = mUndoStack.size() - 1;
+        if (top < mUndoFloor || mUndoStack.get(top).id != stroke.id) {
+            throw new IllegalStateException("Stroke " + stroke.id + " is not the newest stroke");
+        }
+        mStrokeIndex.remove(mUndoStack.get(top));
+        mUndoStack.set(top, stroke);
+        mStrokeIndex.insert(stroke);
+    }
+
+    /**
+     * 远端未完成笔画的一段新点：追加到它的预览，只把新的一段画到相交的分块上。
+     * @param segment 紧接在已收到的点之后的点，带笔画的 id 与样式
+     */
+    public void updateRemoteStroke(Stroke segment) {
+        Stroke live = mRemoteLive.get(segment.id);
+        if (live == null) {
+            live = new Stroke(segment.color, segment.baseStrokeWidth, segment.isEraser, Math.max(64, segment.size()));
+            live.id = segment.id;
+            mRemoteLive.put(live.id, live);
+        }
+        int start = live.size();
+        live.addPoints(segment.xArray(), segment.yArray(), segment.pressureArray(), segment.timestampArray(), segment.size());
+        drawBatch(live, Math.max(0, start - 1), live.size());
+    }
+
+    /**
+     * 远端笔画已完成：替换掉它的预览，按到达顺序加到撤销栈顶，不会触发 onNewStroke 回调。
+     * 它不属于本地历史：本地撤销会跳过它，本地的重做栈也保留。
+     * 本地正在书写时不留检查点，避免把书写中的笔迹存进去。
+     */
+    public void commitRemoteStroke(Stroke stroke) {
+        mRemoteLive.remove(stroke.id);
+        mCheckpoints.invalidateAbove(mUndoStack.size());
+        mRemoteStrokes.add(stroke);
+        mUndoStack.add(stroke);
+        mStrokeIndex.insert(stroke);
+        commitStroke(stroke);
+        if (mCurrentStroke == null) {
+            maybeTakeCheckpoint();
+        }
+        updateHistoryState();
+    }
+
+    /** 远端笔画被放弃：去掉预览，只重绘它覆盖的区域 */
+    public void discardRemoteStroke(long id) {
+        Stroke live = mRemoteLive.remove(id);
+        if (live != null && !live.isEmpty()) {
+            redrawRegion(new RectF(live.getLeft(), live.getTop(), live.getRight(), live.getBottom()));
+        }
+    }
+
+    /** 本地是否正在书写（笔已落下还没抬起） */
+    public boolean isWriting() {
+        return mCurrentStroke != null;
+    }
+
+    /**
+     * 把一批已完成的笔画按顺序追加到历史末尾并画到位图上，用于渐进加载；不会触发 onNewStroke 回调。
+     * 只对新画的部分申请重绘，每批之后按检查点策略决定是否留检查点。
+     */
+    public void appendStrokes(List<Stroke> strokes) {
+        if (strokes.isEmpty()) {
+            return;
+        }
+        mRedoStack.clear();
+        mCheckpoints.invalidateAbove(mUndoStack.size());
+        for (Stroke stroke : strokes) {
+            mUndoStack.add(stroke);
+            mStrokeIndex.insert(stroke);
+            commitStroke(stroke);
+        }
+        maybeTakeCheckpoint();
+        updateHistoryState();
+    }
+
+    /** 撤销下限以上最近一笔本地笔画的下标，没有时返回 -1 */
+    private int newestLocalStroke() {
+        for (int i = mUndoStack.size() - 1; i >= mUndoFloor; i--) {
+            if (!mRemoteStrokes.contains(mUndoStack.get(i))) {
+                return i;
+            }
         }
+        return -1;
     }
 
     private void updateHistoryState() {
         if (mCallback != null) {
-            mCallback.onHistoryChanged(!mUndoStack.isEmpty(), !mRedoStack.isEmpty());
+            mCallback.onHistoryChanged(newestLocalStroke() >= 0, !mRedoStack.isEmpty());
+        }
+    }
+
+    /** 一次橡皮擦压缩：撤销栈底部的一段前缀，在后台交给 {@link EraserCompactor} 处理后用 {@link #applyCompaction} 换回 */
+    public static final class CompactionTask {
+        public final List<Stroke> strokes;
+        public final int firstEraser;
+        private final int generation;
+
+        CompactionTask(List<Stroke> strokes, int firstEraser, int generation) {
+            this.strokes = strokes;
+            this.firstEraser = firstEraser;
+            this.generation = generation;
+        }
+    }
+
+    /** 撤销窗口（最近多少笔始终可以撤销），更早的笔画可以被压缩 */
+    public void setUndoWindow(int strokes) {
+        this.mUndoWindow = Math.max(0, strokes);
+    }
+
+    /** 撤销窗口以下、尚未处理的橡皮擦笔画数 */
+    public int getPendingEraserCount() {
+        int count = 0;
+        for (int i = mCompactedDepth; i < mUndoStack.size() - mUndoWindow; i++) {
+            if (mUndoStack.get(i).isEraser) {
+                count++;
+            }
         }
+        return count;
+    }
+
+    /**
+     * 开始压缩撤销窗口以下的笔画，从此这部分不能再撤销。只在主线程调用。
+     * @return 要在后台处理的前缀；没有需要处理的橡皮擦或已有压缩在进行时返回 null
+     */
+    public CompactionTask beginCompaction() {
+        int end = mUndoStack.size() - mUndoWindow;
+        if (mPendingCompaction != null || end <= mCompactedDepth) {
+            return null;
+        }
+        boolean hasEraser = false;
+        for (int i = mCompactedDepth; i < end && !hasEraser; i++) {
+            hasEraser = mUndoStack.get(i).isEraser;
+        }
+        if (!hasEraser) {
+            mCompactedDepth = end;
+            return null;
+        }
+        mUndoFloor = Math.max(mUndoFloor, end);
+        mPendingCompaction = new CompactionTask(new ArrayList<>(mUndoStack.subList(0, end)), mCompactedDepth, mHistoryGeneration);
+        updateHistoryState();
+        return mPendingCompaction;
+    }
+
+    /**
+     * 用压缩结果替换撤销栈底部的前缀。分块已经是这些笔画的样子，不需要重画；
+     * 前缀长度变化后检查点对应的深度都不对了，全部作废，再按当前分块补一份。只在主线程调用。
+     * @return 是否替换了笔画；task 已过期（期间清空或重新载入过）或没有变化时返回 false
+     */
+    public boolean applyCompaction(CompactionTask task, EraserCompactor.Result result) {
+        if (task != mPendingCompaction) {
+            return false;
+        }
+        mPendingCompaction = null;
+        if (task.generation != mHistoryGeneration) {
+            return false;
+        }
+        int before = task.strokes.size();
+        if (!result.changed()) {
+            mCompactedDepth = Math.max(mCompactedDepth, before);
+            return false;
+        }
+        Set<Stroke> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(result.strokes);
+        for (Stroke stroke : task.strokes) {
+            if (!kept.contains(stroke)) {
+                mStrokeRenderer.remove(stroke);
+            }
+        }
+        mUndoStack.subList(0, before).clear();
+        mUndoStack.addAll(0, result.strokes);
+        // 压缩的前缀都在撤销下限以下，不再需要区分来源
+        mRemoteStrokes.removeAll(task.strokes);
+        int after = result.strokes.size();
+        mUndoFloor += after - before;
+        mCompactedDepth = after;
+        mStrokeIndex.rebuild(mUndoStack);
+        mCheckpoints.clear();
+        mTiles.markAllChanged();
+        maybeTakeCheckpoint();
+        Log.i(TAG, "History compacted: strokes " + result.strokesBefore + " -> " + result.strokesAfter
+                + ", points " + result.pointsBefore + " -> " + result.pointsAfter
+                + ", erasers removed " + result.erasersRemoved + "/" + result.erasersApplied
+                + ", estimated replay " + String.format("%.1f", result.pointsBefore * mReplayNanosPerPoint / 1e6)
+                + "ms -> " + String.format("%.1f", result.pointsAfter * mReplayNanosPerPoint / 1e6) + "ms");
+        updateHistoryState();
+        return true;
+    }
+
+    private void resetHistoryFloor() {
+        mRemoteStrokes.clear();
+        mUndoFloor = 0;
+        mCompactedDepth = 0;
+        mHistoryGeneration++;
+        mPendingCompaction = null;
     }
 
     // --- SurfaceView 生命周期方法 ---
     @Override
     public void surfaceCreated(@NonNull SurfaceHolder holder) {
-        mIsDrawing = true;
-        mDrawThread = new Thread(this);
-        mDrawThread.start();
+        mRenderThread = new HandlerThread("DrawingRender");
+        mRenderThread.start();
+        mRenderHandler = new Handler(mRenderThread.getLooper());
+        // Choreographer 与线程绑定，必须在渲染线程上获取，帧回调也会在该线程执行
+        mRenderHandler.post(() -> {
+            synchronized (mRenderLock) {
+                mChoreographer = Choreographer.getInstance();
+                mSurfaceReady = true;
+                mRenderStats.idleSinceNanos = System.nanoTime();
+            }
+            invalidateAll();
+        });
     }
 
     @Override
     public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
-        if (mBitmap != null) {
-            mBitmap.recycle();
+        // 分块按文档坐标划分，尺寸变化只改变视口，已有的分块和检查点仍然有效；新露出的分块立即补齐
+        mViewport.setSize(width, height);
+        synchronized (mRenderLock) {
+            mFrameViewport.set(mViewport);
         }
-        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        mBitmapCanvas = new Canvas(mBitmap);
-        redrawAllStrokes();
+        rasterizeVisibleTiles(Long.MAX_VALUE);
+        invalidateAll();
     }
 
     @Override
     public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
-        mIsDrawing = false;
+        synchronized (mRenderLock) {
+            mSurfaceReady = false;
+            mDirtyRect.setEmpty();
+        }
+        // 在渲染线程上移除尚未执行的帧回调，然后退出线程
+        final Choreographer.FrameCallback frameCallback = this;
+        mRenderHandler.post(() -> {
+            if (mChoreographer != null) {
+                mChoreographer.removeFrameCallback(frameCallback);
+            }
+        });
+        mRenderThread.quitSafely();
         try {
-            mDrawThread.join();
+            mRenderThread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        synchronized (mRenderLock) {
+            mChoreographer = null;
+            mFrameScheduled = false;
+        }
+        mRenderThread = null;
+        mRenderHandler = null;
+
+        RenderStats stats = getRenderStats();
+        Log.d(TAG, "Render stats: frames=" + stats.framesRendered
+                + ", idleMs=" + stats.idleNanos / 1_000_000
+                + ", avgFrameUs=" + (stats.framesRendered > 0 ? stats.totalFrameNanos / stats.framesRendered / 1000 : 0)
+                + ", dirtyPixels=" + stats.dirtyPixels
+                + ", samplesPerEvent=" + (stats.inputEvents > 0 ? (float) stats.inputSamples / stats.inputEvents : 0)
+                + ", maxSamplesPerEvent=" + stats.maxSamplesPerEvent
+                + ", drawCallsPerFrame=" + (stats.framesRendered > 0 ? (float) stats.bitmapDrawCalls / stats.framesRendered : 0)
+                + ", maxDrawCallsPerFrame=" + stats.maxDrawCallsPerFrame
+                + ", outlineCache(hit/miss)=" + stats.outlineCacheHits + "/" + stats.outlineCacheMisses
+                + ", undos=" + stats.undoCount
+                + ", avgUndoUs=" + (stats.undoCount > 0 ? stats.totalUndoNanos / stats.undoCount / 1000 : 0)
+                + ", maxUndoUs=" + stats.maxUndoNanos / 1000
+                + ", checkpoints=" + mCheckpoints.size() + " (" + mCheckpoints.getCurrentBytes() / 1024 + " KiB)"
+                + ", tiles=" + mTiles.size() + " (" + mTiles.getCurrentBytes() / 1024 + " KiB)"
+                + ", tilesRasterized=" + stats.tilesRasterized
+                + ", avgTileRasterUs=" + (stats.tilesRasterized > 0 ? stats.totalTileRasterNanos / stats.tilesRasterized / 1000 : 0)
+                + ", framesWithMissingTiles=" + stats.framesWithMissingTiles);
+        if (mPredictor != null) {
+            PredictionStats prediction = getPredictionStats();
+            Log.d(TAG, "Prediction stats: " + mPredictor.getClass().getSimpleName()
+                    + ", horizonMs=" + mPredictionHorizonMs
+                    + ", predictions=" + prediction.predictions
+                    + ", scored=" + prediction.scored
+                    + ", meanErrorPx=" + String.format("%.2f", prediction.getMeanErrorPx())
+                    + ", maxErrorPx=" + String.format("%.2f", prediction.maxErrorPx)
+                    + ", meanLagWithoutPredictionPx=" + String.format("%.2f", prediction.getMeanBaselineErrorPx())
+                    + ", meanLatencySavedMs=" + String.format("%.2f", prediction.getMeanLatencySavedMs()));
+        }
     }
 
     // --- 公共控制方法 ---
@@ -297,25 +1460,55 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
     }
 
     public void clearCanvas() {
+        resetHistoryFloor();
         mUndoStack.clear();
         mRedoStack.clear();
-        if (mBitmapCanvas != null) {
-            mBitmapCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-        }
+        mStrokeIndex.clear();
+        mStrokeRenderer.clear();
+        mRemoteLive.clear();
+        resetTiles();
         updateHistoryState();
     }
 
     public void setPenColor(int color) {
         this.mCurrentColor = color;
         this.mIsEraserMode = false;
+        invalidateHover();
     }
 
     public void setStrokeWidth(float width) {
+        invalidateHover();
         this.mCurrentBaseStrokeWidth = width;
+        invalidateHover();
+    }
+
+    public void setInputEnabled(boolean enabled) {
+        this.mInputEnabled = enabled;
+    }
+
+    /**
+     * 设置笔迹预测器，null 关闭预测。
+     * @param horizonMs 向前预测多久，一般取输入到显示的延迟中希望掩盖的部分
+     */
+    public void setMotionPredictor(MotionPredictor predictor, long horizonMs) {
+        clearPrediction();
+        this.mPredictor = predictor;
+        this.mPredictionHorizonMs = Math.max(1, horizonMs);
+    }
+
+    /** 预测误差与估算节省的延迟，只在主线程调用 */
+    public PredictionStats getPredictionStats() {
+        return mPredictionStats.copy();
+    }
+
+    /** 设置抬笔提交时的精简参数，只影响之后提交的笔画 */
+    public void setCommitSimplification(StrokeSimplifier.Config config) {
+        this.mCommitSimplification = config;
     }
 
     public void setEraserMode(boolean isEraser) {
         this.mIsEraserMode = isEraser;
+        invalidateHover();
     }
 
     public List<Stroke> getStrokes() {
@@ -323,12 +1516,16 @@ public class DrawingSurfaceView extends SurfaceView implements SurfaceHolder.Cal
     }
 
     public void setStrokes(List<Stroke> strokes) {
+        resetHistoryFloor();
         mUndoStack.clear();
         mRedoStack.clear();
+        mStrokeRenderer.clear();
+        mRemoteLive.clear();
         if (strokes != null) {
             mUndoStack.addAll(strokes);
         }
-        redrawAllStrokes();
+        mStrokeIndex.rebuild(mUndoStack);
+        resetTiles();
         updateHistoryState();
     }
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+package com.example.stylussync.view;
+
+import java.util.Arrays;
+
+/**
+ * 卡尔曼滤波外推：x、y 两个方向各用一个匀加速模型（状态为位置、速度、加速度），
+ * 过程噪声按加加速度为白噪声建模，采样间隔不均匀时也能正确推进。
+ * 相比线性外推，滤波后的速度对采样抖动不敏感，转弯时能借助加速度沿曲线外推。
+ * 加速度项只按一定比例计入外推，完全计入时在笔画突然转向处会过冲。
+ */
+public class KalmanMotionPredictor implements MotionPredictor {
+
+    // 加加速度的功率谱密度（像素²/毫秒⁵），越大越相信新采样、越快跟上速度变化
+    private static final double DEFAULT_JERK_NOISE = 2e-4;
+    // 采样位置的噪声方差（像素²）
+    private static final double DEFAULT_MEASUREMENT_NOISE = 0.25;
+    // 初始速度、加速度的方差：第一笔样本之前对运动状态一无所知
+    private static final double INITIAL_VELOCITY_VARIANCE = 4.0;
+    private static final double INITIAL_ACCELERATION_VARIANCE = 0.01;
+    // 外推时加速度项的权重
+    private static final double ACCELERATION_WEIGHT = 0.5;
+    // 滤波收敛前的样本数，少于这个数不预测
+    private static final int MIN_SAMPLES = 3;
+
+    private final double jerkNoise;
+    private final double measurementNoise;
+    private final Axis axisX = new Axis();
+    private final Axis axisY = new Axis();
+    private float lastPressure;
+    private long lastTime;
+    private int samples;
+
+    public KalmanMotionPredictor() {
+        this(DEFAULT_JERK_NOISE, DEFAULT_MEASUREMENT_NOISE);
+    }
+
+    public KalmanMotionPredictor(double jerkNoise, double measurementNoise) {
+        this.jerkNoise = jerkNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    @Override
+    public void reset() {
+        samples = 0;
+    }
+
+    @Override
+    public void addSample(float x, float y, float pressure, long timeMs) {
+        long dt = timeMs - lastTime;
+        if (samples == 0 || dt > LinearMotionPredictor.MAX_SAMPLE_GAP_MS) {
+            axisX.init(x, measurementNoise);
+            axisY.init(y, measurementNoise);
+            samples = 1;
+        } else {
+            if (dt > 0) {
+                axisX.propagate(dt, jerkNoise);
+                axisY.propagate(dt, jerkNoise);
+            }
+            axisX.correct(x, measurementNoise);
+            axisY.correct(y, measurementNoise);
+            samples++;
+        }
+        lastPressure = pressure;
+        lastTime = timeMs;
+    }
+
+    @Override
+    public int predict(long horizonMs, int count, float[] xs, float[] ys, float[] pressures) {
+        if (samples < MIN_SAMPLES || count <= 0 || horizonMs <= 0) {
+            return 0;
+        }
+        if (Math.hypot(axisX.state[1], axisY.state[1]) < LinearMotionPredictor.MIN_SPEED) {
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            double t = (double) horizonMs * (i + 1) / count;
+            xs[i] = (float) axisX.extrapolate(t);
+            ys[i] = (float) axisY.extrapolate(t);
+            pressures[i] = lastPressure;
+        }
+        return count;
+    }
+
+    /** 一个方向上的滤波状态：state = [位置, 速度, 加速度]，cov 为 3x3 协方差（行优先） */
+    private static final class Axis {
+        final double[] state = new double[3];
+        final double[] cov = new double[9];
+        private final double[] f = new double[9];
+        private final double[] fp = new double[9];
+
+        void init(double position, double measurementNoise) {
+            state[0] = position;
+            state[1] = 0;
+            state[2] = 0;
+            Arrays.fill(cov, 0);
+            cov[0] = measurementNoise;
+            cov[4] = INITIAL_VELOCITY_VARIANCE;
+            cov[8] = INITIAL_ACCELERATION_VARIANCE;
+        }
+
+        /** 状态推进 dt 毫秒：x = F x，P = F P Fᵀ + Q */
+        void propagate(double dt, double jerkNoise) {
+            double half = dt * dt / 2;
+            state[0] += state[1] * dt + state[2] * half;
+            state[1] += state[2] * dt;
+
+            f[0] = 1; f[1] = dt; f[2] = half;
+            f[3] = 0; f[4] = 1; f[5] = dt;
+            f[6] = 0; f[7] = 0; f[8] = 1;
+            multiply(f, cov, fp);
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    // (F P) Fᵀ 的第 (r, c) 项 = F P 的第 r 行点乘 F 的第 c 行
+                    cov[r * 3 + c] = fp[r * 3] * f[c * 3] + fp[r * 3 + 1] * f[c * 3 + 1] + fp[r * 3 + 2] * f[c * 3 + 2];
+                }
+            }
+            double dt2 = dt * dt, dt3 = dt2 * dt, dt4 = dt3 * dt, dt5 = dt4 * dt;
+            cov[0] += jerkNoise * dt5 / 20;
+            cov[1] += jerkNoise * dt4 / 8;
+            cov[2] += jerkNoise * dt3 / 6;
+            cov[3] += jerkNoise * dt4 / 8;
+            cov[4] += jerkNoise * dt3 / 3;
+            cov[5] += jerkNoise * dt2 / 2;
+            cov[6] += jerkNoise * dt3 / 6;
+            cov[7] += jerkNoise * dt2 / 2;
+            cov[8] += jerkNoise * dt;
+        }
+
+        /** 用位置观测 z 更新：H = [1, 0, 0] */
+        void correct(double z, double measurementNoise) {
+            double s = cov[0] + measurementNoise;
+            double k0 = cov[0] / s, k1 = cov[3] / s, k2 = cov[6] / s;
+            double innovation = z - state[0];
+            state[0] += k0 * innovation;
+            state[1] += k1 * innovation;
+            state[2] += k2 * innovation;
+            // P = (I - K H) P：第 r 行减去 K[r] 乘以第 0 行
+            double p0 = cov[0], p1 = cov[1], p2 = cov[2];
+            for (int r = 0; r < 3; r++) {
+                double k = r == 0 ? k0 : r == 1 ? k1 : k2;
+                cov[r * 3] -= k * p0;
+                cov[r * 3 + 1] -= k * p1;
+                cov[r * 3 + 2] -= k * p2;
+            }
+        }
+
+        double extrapolate(double t) {
+            return state[0] + state[1] * t + ACCELERATION_WEIGHT * state[2] * t * t / 2;
+        }
+
+        private static void multiply(double[] a, double[] b, double[] out) {
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    out[r * 3 + c] = a[r * 3] * b[c] + a[r * 3 + 1] * b[3 + c] + a[r * 3 + 2] * b[6 + c];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.stylussync.view;
+
+/**
+ * 线性外推：对最近几个采样按时间做最小二乘，得到速度，沿速度方向匀速外推。
+ * 压感保持最后一个采样的值。简单、稳定，转弯处会沿切线方向冲出去一点。
+ */
+public class LinearMotionPredictor implements MotionPredictor {
+
+    // 参与拟合的采样数
+    private static final int WINDOW = 4;
+    // 相邻两个采样间隔超过这么久说明笔尖停过，之前的速度不再可信
+    static final long MAX_SAMPLE_GAP_MS = 50;
+    // 速度低于这个值（像素/毫秒）时认为笔尖停住，不预测
+    static final float MIN_SPEED = 0.02f;
+
+    private final float[] xs = new float[WINDOW];
+    private final float[] ys = new float[WINDOW];
+    private final long[] times = new long[WINDOW];
+    private float lastPressure;
+    private int count;  // 累计采样数，环形缓冲区写入位置为 count % WINDOW
+
+    @Override
+    public void reset() {
+        count = 0;
+    }
+
+    @Override
+    public void addSample(float x, float y, float pressure, long timeMs) {
+        if (count > 0 && timeMs - times[(count - 1) % WINDOW] > MAX_SAMPLE_GAP_MS) {
+            count = 0;
+        }
+        int slot = count % WINDOW;
+        xs[slot] = x;
+        ys[slot] = y;
+        times[slot] = timeMs;
+        lastPressure = pressure;
+        count++;
+    }
+
+    @Override
+    public int predict(long horizonMs, int count, float[] outX, float[] outY, float[] outPressure) {
+        int n = Math.min(this.count, WINDOW);
+        if (n < 2 || count <= 0 || horizonMs <= 0) {
+            return 0;
+        }
+        int last = (this.count - 1) % WINDOW;
+        long t0 = times[last];
+        // 以最后一个采样为原点拟合 x = x0 + vx * t，时间取相对值避免精度损失
+        double sumT = 0, sumTT = 0, sumX = 0, sumY = 0, sumTX = 0, sumTY = 0;
+        for (int k = 0; k < n; k++) {
+            int i = (this.count - 1 - k) % WINDOW;
+            double t = times[i] - t0;
+            sumT += t;
+            sumTT += t * t;
+            sumX += xs[i];
+            sumY += ys[i];
+            sumTX += t * xs[i];
+            sumTY += t * ys[i];
+        }
+        double denominator = n * sumTT - sumT * sumT;
+        if (denominator <= 0) {
+            return 0;
+        }
+        double vx = (n * sumTX - sumT * sumX) / denominator;
+        double vy = (n * sumTY - sumT * sumY) / denominator;
+        if (Math.hypot(vx, vy) < MIN_SPEED) {
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            double t = (double) horizonMs * (i + 1) / count;
+            outX[i] = (float) (xs[last] + vx * t);
+            outY[i] = (float) (ys[last] + vy * t);
+            outPressure[i] = lastPressure;
+        }
+        return count;
+    }
+}
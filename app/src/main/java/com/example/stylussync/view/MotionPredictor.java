@@ -0,0 +1,23 @@
+package com.example.stylussync.view;
+
+/**
+ * 笔迹预测：根据最近的真实采样外推出笔尖接下来一小段时间的位置。
+ * 预测结果只用于在屏幕上画一段临时的尾迹，掩盖输入到显示的延迟；
+ * 下一批真实采样到达时尾迹整体被替换，预测点永远不会写进 {@link com.example.stylussync.data.Stroke}。
+ * 纯 Java，不依赖 Android，可以直接用录制的采样序列做单元测试。只在一个线程上使用。
+ */
+public interface MotionPredictor {
+
+    /** 新的一笔开始，丢弃之前的状态 */
+    void reset();
+
+    /** 追加一个真实采样，时间单位毫秒，必须单调不减 */
+    void addSample(float x, float y, float pressure, long timeMs);
+
+    /**
+     * 把最后一个真实采样之后 horizonMs 毫秒内的轨迹等分成 count 个点写入输出数组，
+     * 第 i 个点（从 0 开始）对应 lastTime + horizonMs * (i + 1) / count。
+     * @return 写入的点数；样本不足或笔尖已经停住时返回 0
+     */
+    int predict(long horizonMs, int count, float[] xs, float[] ys, float[] pressures);
+}
@@ -0,0 +1,114 @@
+package com.example.stylussync.view;
+
+/**
+ * 预测效果统计。每次画出预测尾迹时记下尾迹末端及其对应的时间点（按先后排队，最多保留
+ * {@value #MAX_PENDING} 个），之后真实采样越过这个时间点时，在前后两个真实采样之间插值出笔尖当时的真实位置，与预测位置比较。
+ * 同时记录"不预测"的误差（真实位置与做预测时最后一个真实采样的距离）作为对照：
+ * 不预测时屏幕上的笔迹正好落后这么多。
+ * 节省的延迟按每次预测的前瞻时长乘以误差减少的比例估算：预测完全准确时省下整个前瞻时长，
+ * 不比不预测更好时记为 0。纯 Java，只在输入线程上更新，快照用 {@link #copy()}。
+ */
+public class PredictionStats {
+
+    static final int MAX_PENDING = 32;
+
+    public long predictions;            // 画出的预测尾迹次数
+    public long scored;                 // 等到了真实采样、计算过误差的次数
+    public double totalErrorPx;         // 预测末端与真实位置的距离之和
+    public double maxErrorPx;
+    public double totalBaselineErrorPx; // 不预测时的距离之和
+    public double totalHorizonMs;       // 已评估预测的前瞻时长之和
+    public double totalLatencySavedMs;  // 估算节省的延迟之和
+
+    // 还没等到真实采样的预测，环形队列 [head, head + pending)
+    private final long[] pendingTime = new long[MAX_PENDING];
+    private final long[] pendingHorizonMs = new long[MAX_PENDING];
+    private final float[] pendingX = new float[MAX_PENDING];
+    private final float[] pendingY = new float[MAX_PENDING];
+    private final float[] originX = new float[MAX_PENDING];
+    private final float[] originY = new float[MAX_PENDING];
+    private int head;
+    private int pending;
+    // 最近一个真实采样
+    private boolean hasLast;
+    private long lastTime;
+    private float lastX, lastY;
+
+    /** 新的一笔开始：未评估的预测作废 */
+    public void reset() {
+        pending = 0;
+        hasLast = false;
+    }
+
+    /** 一个真实采样到达 */
+    public void onSample(float x, float y, long timeMs) {
+        while (pending > 0 && hasLast && timeMs >= pendingTime[head]) {
+            long span = timeMs - lastTime;
+            float t = span > 0 ? (float) Math.max(0, pendingTime[head] - lastTime) / span : 1f;
+            float actualX = lastX + (x - lastX) * t;
+            float actualY = lastY + (y - lastY) * t;
+            double error = Math.hypot(pendingX[head] - actualX, pendingY[head] - actualY);
+            double baseline = Math.hypot(originX[head] - actualX, originY[head] - actualY);
+            long horizonMs = pendingHorizonMs[head];
+            scored++;
+            totalErrorPx += error;
+            maxErrorPx = Math.max(maxErrorPx, error);
+            totalBaselineErrorPx += baseline;
+            totalHorizonMs += horizonMs;
+            if (baseline > 0 && error < baseline) {
+                totalLatencySavedMs += horizonMs * (1 - error / baseline);
+            }
+            head = (head + 1) % MAX_PENDING;
+            pending--;
+        }
+        hasLast = true;
+        lastTime = timeMs;
+        lastX = x;
+        lastY = y;
+    }
+
+    /** 画出了一段预测尾迹，末端 (x, y) 对应最后一个真实采样之后 horizonMs 毫秒 */
+    public void onPrediction(float x, float y, long horizonMs) {
+        if (!hasLast) {
+            return;
+        }
+        predictions++;
+        if (pending == MAX_PENDING) {
+            // 队列满时丢掉最旧的一个，不计入误差
+            head = (head + 1) % MAX_PENDING;
+            pending--;
+        }
+        int slot = (head + pending) % MAX_PENDING;
+        pendingTime[slot] = lastTime + horizonMs;
+        pendingHorizonMs[slot] = horizonMs;
+        pendingX[slot] = x;
+        pendingY[slot] = y;
+        originX[slot] = lastX;
+        originY[slot] = lastY;
+        pending++;
+    }
+
+    public double getMeanErrorPx() {
+        return scored > 0 ? totalErrorPx / scored : 0;
+    }
+
+    public double getMeanBaselineErrorPx() {
+        return scored > 0 ? totalBaselineErrorPx / scored : 0;
+    }
+
+    public double getMeanLatencySavedMs() {
+        return scored > 0 ? totalLatencySavedMs / scored : 0;
+    }
+
+    public PredictionStats copy() {
+        PredictionStats copy = new PredictionStats();
+        copy.predictions = predictions;
+        copy.scored = scored;
+        copy.totalErrorPx = totalErrorPx;
+        copy.maxErrorPx = maxErrorPx;
+        copy.totalBaselineErrorPx = totalBaselineErrorPx;
+        copy.totalHorizonMs = totalHorizonMs;
+        copy.totalLatencySavedMs = totalLatencySavedMs;
+        return copy;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.stylussync.view;
+
+import android.graphics.Path;
+import android.util.LruCache;
+
+import com.example.stylussync.data.Stroke;
+
+/**
+ * 把一笔生成变宽的填充轮廓，整笔一次 drawPath。
+ * 每个点的线宽仍是 max(1, pressure * baseStrokeWidth)，相邻两点之间线宽线性过渡：
+ * 每段是一个两端宽度不同的梯形，首尾和转角处补一个圆（相当于原来的圆头和圆角连接）。
+ * 所有子轮廓方向一致，按 WINDING 填充时重叠部分取并集，不会出现洞，一条 Path 内也不会重复混合半透明的边缘。
+ * 已完成的笔画不再变化，生成的 Path 按笔画对象缓存，LRU 按点数淘汰。只在主线程使用。
+ */
+final class StrokeRenderer {
+
+    static final int DEFAULT_CACHE_POINTS = 200_000;
+
+    // 转角处圆弧与两段梯形之间的缺口小于这个值（像素）时不补圆，几乎共线的密集点不需要
+    private static final float JOIN_GAP_TOLERANCE = 0.05f;
+    // 比这更短的段当作重合点跳过
+    private static final float MIN_SEGMENT_LENGTH = 1e-3f;
+
+    private final LruCache<Stroke, Path> cache;
+    private long hits;
+    private long misses;
+
+    StrokeRenderer(int maxCachedPoints) {
+        cache = new LruCache<Stroke, Path>(Math.max(1, maxCachedPoints)) {
+            @Override
+            protected int sizeOf(Stroke key, Path value) {
+                return Math.max(1, key.size());
+            }
+        };
+    }
+
+    /** 已完成笔画的整笔轮廓，未命中时生成并缓存 */
+    Path getOutline(Stroke stroke) {
+        Path path = cache.get(stroke);
+        if (path != null) {
+            hits++;
+            return path;
+        }
+        misses++;
+        path = new Path();
+        buildOutline(stroke, 0, stroke.size(), stroke.baseStrokeWidth, path);
+        cache.put(stroke, path);
+        return path;
+    }
+
+    void remove(Stroke stroke) {
+        cache.remove(stroke);
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 生成 [from, to) 的轮廓写入 out（先清空）。绘制中的笔画按批调用，baseWidth 可与笔画保存的不同。
+     * 少于两个点时 out 为空。
+     */
+    static void buildOutline(Stroke stroke, int from, int to, float baseWidth, Path out) {
+        buildOutline(stroke.xArray(), stroke.yArray(), stroke.pressureArray(), from, to, baseWidth, out);
+    }
+
+    /** 同上，点直接来自数组（例如预测出的尾迹，它们不属于任何笔画） */
+    static void buildOutline(float[] xs, float[] ys, float[] pressures, int from, int to, float baseWidth, Path out) {
+        out.rewind();
+        out.setFillType(Path.FillType.WINDING);
+        if (to - from < 2) {
+            return;
+        }
+
+        float prevUx = 0f, prevUy = 0f;
+        boolean hasPrev = false;
+        int a = from;
+        float ra = radius(pressures[a], baseWidth);
+        // 起点圆头
+        out.addCircle(xs[a], ys[a], ra, Path.Direction.CW);
+        for (int b = from + 1; b < to; b++) {
+            float dx = xs[b] - xs[a], dy = ys[b] - ys[a];
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            if (length < MIN_SEGMENT_LENGTH) {
+                continue;
+            }
+            float ux = dx / length, uy = dy / length;
+            float rb = radius(pressures[b], baseWidth);
+            if (hasPrev && needsJoin(prevUx, prevUy, ux, uy, ra)) {
+                out.addCircle(xs[a], ys[a], ra, Path.Direction.CW);
+            }
+            // 法线 n = (-uy, ux)；按 a-n, b-n, b+n, a+n 的顺序与 CW 圆同向
+            float nx = -uy, ny = ux;
+            out.moveTo(xs[a] - nx * ra, ys[a] - ny * ra);
+            out.lineTo(xs[b] - nx * rb, ys[b] - ny * rb);
+            out.lineTo(xs[b] + nx * rb, ys[b] + ny * rb);
+            out.lineTo(xs[a] + nx * ra, ys[a] + ny * ra);
+            out.close();
+            prevUx = ux;
+            prevUy = uy;
+            hasPrev = true;
+            a = b;
+            ra = rb;
+        }
+        // 终点圆头
+        int last = to - 1;
+        out.addCircle(xs[last], ys[last], radius(pressures[last], baseWidth), Path.Direction.CW);
+    }
+
+    /** 与原来逐段 drawLine 相同的线宽规则 */
+    static float radius(float pressure, float baseWidth) {
+        return Math.max(1f, pressure * baseWidth) / 2;
+    }
+
+    /** 两段方向夹角为 θ 时，外侧缺口深度约为 r * (1 - cos(θ / 2)) */
+    private static boolean needsJoin(float ux1, float uy1, float ux2, float uy2, float radius) {
+        float cos = ux1 * ux2 + uy1 * uy2;
+        float cosHalf = (float) Math.sqrt(Math.max(0f, (1f + cos) / 2f));
+        return radius * (1f - cosHalf) > JOIN_GAP_TOLERANCE;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.stylussync.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import com.example.stylussync.data.Stroke;
+
+import java.util.List;
+
+/**
+ * 把笔画按低分辨率画成缩略图，供文件列表预览使用。可以在任意后台线程调用。
+ * 整幅画按所有笔画的包围盒等比缩放居中；每笔只画一条 Path，相距不足一个缩略图像素的点直接跳过，
+ * 线宽取该笔的平均压感，不逐段变化。
+ */
+public final class ThumbnailRasterizer {
+
+    // 画面四周留白（缩略图像素）
+    private static final float PADDING = 4f;
+    // 缩放后线宽的下限，避免细线在缩略图里消失
+    private static final float MIN_STROKE_WIDTH = 1f;
+
+    private ThumbnailRasterizer() {
+    }
+
+    /** @return 透明背景的 ARGB_8888 位图；没有笔画时也返回空白位图 */
+    public static Bitmap render(List<Stroke> strokes, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+        if (strokes.isEmpty()) {
+            return bitmap;
+        }
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (Stroke stroke : strokes) {
+            if (stroke.isEmpty() || stroke.isEraser) {
+                continue;
+            }
+            left = Math.min(left, stroke.getLeft());
+            top = Math.min(top, stroke.getTop());
+            right = Math.max(right, stroke.getRight());
+            bottom = Math.max(bottom, stroke.getBottom());
+        }
+        if (left > right) {
+            return bitmap;
+        }
+        float scale = Math.min((bitmap.getWidth() - 2 * PADDING) / Math.max(1f, right - left),
+                (bitmap.getHeight() - 2 * PADDING) / Math.max(1f, bottom - top));
+        scale = Math.min(scale, 1f);
+        float offsetX = (bitmap.getWidth() - (right - left) * scale) / 2 - left * scale;
+        float offsetY = (bitmap.getHeight() - (bottom - top) * scale) / 2 - top * scale;
+
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        Paint eraserPaint = new Paint(paint);
+        eraserPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+        Path path = new Path();
+        // 在缩放后的坐标系里，距离平方小于 1 像素的点不再单独连线
+        float minDistanceSquared = 1f / (scale * scale);
+
+        for (Stroke stroke : strokes) {
+            int size = stroke.size();
+            if (size == 0) {
+                continue;
+            }
+            float[] xs = stroke.xArray();
+            float[] ys = stroke.yArray();
+            float[] pressures = stroke.pressureArray();
+            path.rewind();
+            path.moveTo(xs[0] * scale + offsetX, ys[0] * scale + offsetY);
+            float lastX = xs[0], lastY = ys[0];
+            float pressureSum = pressures[0];
+            for (int i = 1; i < size; i++) {
+                pressureSum += pressures[i];
+                float dx = xs[i] - lastX, dy = ys[i] - lastY;
+                if (dx * dx + dy * dy < minDistanceSquared && i < size - 1) {
+                    continue;
+                }
+                path.lineTo(xs[i] * scale + offsetX, ys[i] * scale + offsetY);
+                lastX = xs[i];
+                lastY = ys[i];
+            }
+            if (size == 1) {
+                // 单点笔画画成一个点
+                path.lineTo(xs[0] * scale + offsetX + 0.01f, ys[0] * scale + offsetY);
+            }
+            Paint target = stroke.isEraser ? eraserPaint : paint;
+            target.setColor(stroke.color);
+            target.setStrokeWidth(Math.max(MIN_STROKE_WIDTH, stroke.baseStrokeWidth * pressureSum / size * scale));
+            canvas.drawPath(path, target);
+        }
+        return bitmap;
+    }
+}
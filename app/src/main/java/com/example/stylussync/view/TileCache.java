@@ -0,0 +1,184 @@
+package com.example.stylussync.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 光栅分块缓存。文档平面按细节级别切成固定像素大小（{@value #TILE_SIZE}）的方块，
+ * 每块一张透明背景的 ARGB_8888 位图，画布已设置好从文档坐标到该块像素的变换，直接用文档坐标的 Path 绘制。
+ * 按字节数做 LRU 淘汰。渲染线程在合成时还可能拿着刚被淘汰的块，所以淘汰时不 recycle，交给 GC 回收。
+ * 方法都加锁，主线程（绘制、补画、淘汰）和渲染线程（合成）都可以调用；位图内容只由主线程修改。
+ */
+class TileCache {
+
+    static final int TILE_SIZE = 256;
+
+    /** 一个分块：级别 level 下第 col 列、第 row 行 */
+    static final class Tile {
+        final int level;
+        final int col;
+        final int row;
+        final long key;
+        // 覆盖的文档区域
+        final float left;
+        final float top;
+        final float right;
+        final float bottom;
+        final Bitmap bitmap;
+        final Canvas canvas;
+        // 上次留检查点之后画过新内容
+        boolean changedSinceCheckpoint;
+
+        Tile(int level, int col, int row) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+            this.key = key(level, col, row);
+            float size = docSize(level);
+            this.left = col * size;
+            this.top = row * size;
+            this.right = left + size;
+            this.bottom = top + size;
+            this.bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+            this.canvas = new Canvas(bitmap);
+            float resolution = Viewport.resolution(level);
+            canvas.scale(resolution, resolution);
+            canvas.translate(-left, -top);
+        }
+
+        boolean intersects(float l, float t, float r, float b) {
+            return l < right && r > left && t < bottom && b > top;
+        }
+
+        int byteCount() {
+            return bitmap.getAllocationByteCount();
+        }
+    }
+
+    /** 分块被淘汰时通知，用来丢掉它的检查点 */
+    interface EvictionListener {
+        void onTileEvicted(Tile tile);
+    }
+
+    // access-order 的 LinkedHashMap 即为 LRU，迭代顺序从最久未使用开始
+    private final LinkedHashMap<Long, Tile> mEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private long mMaxBytes;
+    private long mCurrentBytes;
+    private EvictionListener mListener;
+
+    TileCache(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    /** 级别 level 下一个分块覆盖的文档边长 */
+    static float docSize(int level) {
+        return TILE_SIZE / Viewport.resolution(level);
+    }
+
+    /** 文档坐标所在的列（或行），可以为负 */
+    static int index(float coordinate, int level) {
+        return (int) Math.floor(coordinate / docSize(level));
+    }
+
+    static long key(int level, int col, int row) {
+        return ((long) (level & 0xFF) << 56) | ((long) (col & 0xFFFFFFF) << 28) | (row & 0xFFFFFFF);
+    }
+
+    synchronized void setEvictionListener(EvictionListener listener) {
+        this.mListener = listener;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    synchronized long getCurrentBytes() {
+        return mCurrentBytes;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /** 取出分块并刷新其 LRU 顺序，不存在时返回 null */
+    synchronized Tile get(long key) {
+        return mEntries.get(key);
+    }
+
+    /** 加入分块，超出预算时淘汰最久未使用的块（可能包括刚加入的这块之外的任何块） */
+    synchronized void put(Tile tile) {
+        Tile previous = mEntries.put(tile.key, tile);
+        if (previous != null) {
+            mCurrentBytes -= previous.byteCount();
+        }
+        mCurrentBytes += tile.byteCount();
+        trimToSize();
+    }
+
+    synchronized void remove(Tile tile) {
+        if (mEntries.get(tile.key) == tile) {
+            mEntries.remove(tile.key);
+            mCurrentBytes -= tile.byteCount();
+        }
+    }
+
+    /** 检查点全部作废后调用：所有分块都需要重新留检查点 */
+    synchronized void markAllChanged() {
+        for (Tile tile : mEntries.values()) {
+            tile.changedSinceCheckpoint = true;
+        }
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+        mCurrentBytes = 0;
+    }
+
+    /**
+     * 把与文档区域相交的分块追加到 out，不刷新 LRU 顺序。
+     * @param level 只取这一级别；传 {@link Integer#MIN_VALUE} 取所有级别
+     */
+    synchronized void collect(int level, float left, float top, float right, float bottom, List<Tile> out) {
+        for (Tile tile : mEntries.values()) {
+            if ((level == Integer.MIN_VALUE || tile.level == level) && tile.intersects(left, top, right, bottom)) {
+                out.add(tile);
+            }
+        }
+    }
+
+    /**
+     * 当前级别缺块时用来顶替的其它级别分块：与区域相交且不是 level 级的，按分辨率从低到高追加到 out，
+     * 依次画出时分辨率高的盖在上面。
+     */
+    synchronized void collectFallback(int level, float left, float top, float right, float bottom, List<Tile> out) {
+        int start = out.size();
+        for (Tile tile : mEntries.values()) {
+            if (tile.level != level && tile.intersects(left, top, right, bottom)) {
+                out.add(tile);
+            }
+        }
+        out.subList(start, out.size()).sort((a, b) -> Integer.compare(a.level, b.level));
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Long, Tile>> it = mEntries.entrySet().iterator();
+        while (mCurrentBytes > mMaxBytes && it.hasNext()) {
+            Tile eldest = it.next().getValue();
+            mCurrentBytes -= eldest.byteCount();
+            it.remove();
+            if (mListener != null) {
+                mListener.onTileEvicted(eldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.stylussync.view;
+
+/**
+ * 文档坐标与屏幕坐标之间的变换：屏幕坐标 = (文档坐标 - pan) * scale。
+ * 笔画始终按文档坐标存储，缩放和平移只改变这里的三个数。
+ * 同时决定光栅分块的细节级别：级别 L 的分块每个文档单位对应 2^L 个像素，
+ * 取不低于当前缩放的最小级别，这样分块只会被缩小显示，不会模糊。纯 Java。
+ */
+public class Viewport {
+
+    public static final float MIN_SCALE = 0.25f;
+    public static final float MAX_SCALE = 8f;
+    static final int MIN_LEVEL = -2;
+    static final int MAX_LEVEL = 3;
+
+    private float scale = 1f;
+    private float panX, panY;
+    private int width, height;
+
+    public float getScale() {
+        return scale;
+    }
+
+    public float getPanX() {
+        return panX;
+    }
+
+    public float getPanY() {
+        return panY;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public void set(float scale, float panX, float panY) {
+        this.scale = clampScale(scale);
+        this.panX = panX;
+        this.panY = panY;
+    }
+
+    public void set(Viewport other) {
+        this.scale = other.scale;
+        this.panX = other.panX;
+        this.panY = other.panY;
+        this.width = other.width;
+        this.height = other.height;
+    }
+
+    /** 屏幕上平移 (dx, dy) 像素，内容跟着手指走 */
+    public void panBy(float dx, float dy) {
+        panX -= dx / scale;
+        panY -= dy / scale;
+    }
+
+    /** 以屏幕上的 (focusX, focusY) 为中心缩放，该点下的文档内容保持不动 */
+    public void zoomBy(float factor, float focusX, float focusY) {
+        float docX = toDocX(focusX);
+        float docY = toDocY(focusY);
+        scale = clampScale(scale * factor);
+        panX = docX - focusX / scale;
+        panY = docY - focusY / scale;
+    }
+
+    public float toDocX(float screenX) {
+        return screenX / scale + panX;
+    }
+
+    public float toDocY(float screenY) {
+        return screenY / scale + panY;
+    }
+
+    public float toScreenX(float docX) {
+        return (docX - panX) * scale;
+    }
+
+    public float toScreenY(float docY) {
+        return (docY - panY) * scale;
+    }
+
+    public float getDocLeft() {
+        return panX;
+    }
+
+    public float getDocTop() {
+        return panY;
+    }
+
+    public float getDocRight() {
+        return panX + width / scale;
+    }
+
+    public float getDocBottom() {
+        return panY + height / scale;
+    }
+
+    /** 当前缩放应使用的分块级别 */
+    public int getLevel() {
+        return levelFor(scale);
+    }
+
+    static int levelFor(float scale) {
+        int level = (int) Math.ceil(Math.log(scale) / Math.log(2) - 1e-4);
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    /** 级别 level 下每个文档单位对应的像素数 */
+    static float resolution(int level) {
+        return level >= 0 ? (float) (1 << level) : 1f / (1 << -level);
+    }
+
+    private static float clampScale(float scale) {
+        return Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.stylussync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TaskPoolTest {
+
+    @Test
+    public void sameKeyRunsInOrderWhileKeysRunInParallel() throws Exception {
+        TaskPool pool = new TaskPool("test", 4, Thread.NORM_PRIORITY);
+        List<Integer> orderA = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch bStarted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(51);
+
+        // a 的第一个任务一直等到 b 开始执行，证明不同 key 是并行的
+        pool.submit("a", () -> {
+            try {
+                assertTrue(bStarted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            orderA.add(0);
+            done.countDown();
+        }, TaskPool.Priority.NORMAL);
+        for (int i = 1; i < 50; i++) {
+            int value = i;
+            pool.submit("a", () -> {
+                orderA.add(value);
+                done.countDown();
+            }, i % 2 == 0 ? TaskPool.Priority.LOW : TaskPool.Priority.HIGH);
+        }
+        pool.submit("b", () -> {
+            bStarted.countDown();
+            done.countDown();
+        }, TaskPool.Priority.NORMAL);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) orderA.get(i));
+        }
+    }
+
+    @Test
+    public void higherPriorityRunsFirstAndCancelledTasksAreSkipped() throws Exception {
+        TaskPool pool = new TaskPool("test", 1, Thread.NORM_PRIORITY);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        pool.submit(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, TaskPool.Priority.NORMAL);
+        pool.submit(() -> order.add("low"), TaskPool.Priority.LOW);
+        Future<?> cancelled = pool.submit(() -> order.add("cancelled"), TaskPool.Priority.HIGH);
+        pool.submit(() -> order.add("normal"), TaskPool.Priority.NORMAL);
+        pool.submit(() -> order.add("high"), TaskPool.Priority.HIGH);
+        assertTrue(cancelled.cancel(false));
+        assertTrue(pool.getStats().queueDepth >= 4);
+
+        CountDownLatch last = new CountDownLatch(1);
+        pool.submit(last::countDown, TaskPool.Priority.LOW);
+        release.countDown();
+        assertTrue(last.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("high", "normal", "low"), order);
+        TaskPool.Stats stats = pool.getStats();
+        assertEquals(6, stats.submitted);
+        assertEquals(1, stats.cancelled);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.stylussync.metrics;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void bucketsCoverWholeRangeWithBoundedError() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(index >= 0 && index < Histogram.BUCKET_COUNT);
+            long lower = Histogram.bucketLowerBound(index);
+            long upper = Histogram.bucketLowerBound(index + 1);
+            assertTrue(value + " in [" + lower + ", " + upper + ")", value >= lower && (value < upper || upper == Long.MAX_VALUE));
+            assertTrue(upper - lower <= Math.max(1, lower / Histogram.SUB_BUCKETS));
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        Histogram histogram = new MetricsRegistry().histogram("test_us");
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // 1～10000 均匀分布
+            histogram.record(1 + random.nextInt(10_000));
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.count);
+        assertEquals(1, snapshot.min);
+        assertEquals(10_000, snapshot.max);
+        assertEquals(5000, snapshot.p50, 5000 * 0.08);
+        assertEquals(9900, snapshot.p99, 9900 * 0.08);
+        assertEquals(5000.5, snapshot.mean, 50);
+    }
+
+    @Test
+    public void jsonDumpContainsAllMetrics() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("net.messages_sent").add(3);
+        assertSame(registry.counter("net.messages_sent"), registry.counter("net.messages_sent"));
+        registry.gauge("net.queue_depth").set(42);
+        registry.histogram("storage.save_us").record(1500);
+        registry.histogram("storage.load_us");
+
+        JsonObject json = JsonParser.parseString(registry.toJson()).getAsJsonObject();
+        assertEquals(3, json.getAsJsonObject("counters").get("net.messages_sent").getAsLong());
+        assertEquals(42, json.getAsJsonObject("gauges").get("net.queue_depth").getAsLong());
+        JsonObject save = json.getAsJsonObject("histograms").getAsJsonObject("storage.save_us");
+        assertEquals(1, save.get("count").getAsLong());
+        assertEquals(1500, save.get("p99").getAsLong());
+        assertEquals(0, json.getAsJsonObject("histograms").getAsJsonObject("storage.load_us").get("count").getAsLong());
+
+        registry.reset();
+        assertEquals(0, registry.counter("net.messages_sent").get());
+        assertEquals(42, registry.gauge("net.queue_depth").get());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.stylussync.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlowControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void escalatesOnSlowDrainAndRecoversWithHysteresis() {
+        FlowController flow = new FlowController();
+        long now = 0;
+        flow.update(now, 0, 0);
+
+        // 每 100ms 发出 20KB，链路只能排空 10KB：缓冲区越积越多
+        long queued = 0;
+        for (int i = 0; i < 10; i++) {
+            flow.onSent(20_000);
+            queued += 20_000 - 10_000;
+            now += 100 * MS;
+            flow.update(now, queued, 0);
+        }
+        assertEquals(FlowController.Level.SEVERE, flow.getLevel());
+        assertTrue(flow.getDrainBytesPerSecond() > 50_000 && flow.getDrainBytesPerSecond() < 150_000);
+
+        // 停止发送，缓冲区逐渐排空；估计延迟降到 200ms 以下先退到 CONGESTED，再降到 60ms 以下才恢复 NORMAL
+        boolean sawCongested = false;
+        while (queued > 0) {
+            queued = Math.max(0, queued - 10_000);
+            now += 100 * MS;
+            FlowController.Level level = flow.update(now, queued, 0);
+            sawCongested |= level == FlowController.Level.CONGESTED;
+        }
+        assertTrue(sawCongested);
+        assertEquals(FlowController.Level.NORMAL, flow.getLevel());
+    }
+
+    @Test
+    public void unacknowledgedAgeRaisesLevelEvenWithEmptyBuffer() {
+        FlowController flow = new FlowController();
+        flow.update(0, 0, 0);
+        assertEquals(FlowController.Level.CONGESTED, flow.update(100 * MS, 0, 300));
+        assertEquals(FlowController.Level.SEVERE, flow.update(200 * MS, 0, 800));
+        assertEquals(FlowController.Level.CONGESTED, flow.update(300 * MS, 0, 100));
+        assertEquals(FlowController.Level.NORMAL, flow.update(400 * MS, 0, 10));
+    }
+}
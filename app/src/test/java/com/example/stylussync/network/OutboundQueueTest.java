@@ -0,0 +1,112 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 测试中磁盘任务直接在调用线程上执行，顺序与串行队列一致
+    private static final Executor DIRECT = Runnable::run;
+
+    private static Stroke stroke(int points) {
+        Stroke stroke = new Stroke(0xFF000000, 4f, false);
+        for (int i = 0; i < points; i++) {
+            stroke.addPoint(10f + i, 20f + i, 0.5f);
+        }
+        return stroke;
+    }
+
+    @Test
+    public void replaysUnacknowledgedAfterReconnectAndDropsOldestWhenFull() {
+        OutboundQueue queue = new OutboundQueue(3);
+        long first = queue.enqueue(WireMessage.control("a"));
+        long second = queue.enqueue(WireMessage.control("b"));
+        queue.enqueue(WireMessage.control("c"));
+        assertTrue(second > first);
+
+        assertEquals(3, queue.takeUntransmitted().size());
+        assertTrue(queue.takeUntransmitted().isEmpty());
+        queue.acknowledge(first);
+
+        // 断线重连：剩下的两条按顺序重放
+        queue.resetTransmitted();
+        List<OutboundQueue.Entry> replay = queue.takeUntransmitted();
+        assertEquals(2, replay.size());
+        assertEquals("b", replay.get(0).message.event);
+        assertEquals("c", replay.get(1).message.event);
+
+        queue.enqueue(WireMessage.control("d"));
+        queue.enqueue(WireMessage.control("e"));
+        OutboundQueue.Stats stats = queue.getStats();
+        assertEquals(3, stats.depth);
+        assertEquals(1, stats.dropped);
+        assertEquals(1, stats.acknowledged);
+        assertEquals(2, stats.retransmitted);
+    }
+
+    @Test
+    public void disconnectInsideHelloWindowDoesNotResendToSilentServer() {
+        // 不回复 hello 的旧服务器：超时后按 JSON 发出两条，迟到窗口内连接断开，断开时又有一条没来得及发出
+        OutboundQueue queue = new OutboundQueue(16);
+        queue.enqueue(WireMessage.control("a"));
+        queue.enqueue(WireMessage.control("b"));
+        assertEquals(2, queue.takeUntransmitted().size());
+        long unsent = queue.enqueue(WireMessage.control("c"));
+        queue.takeUntransmitted();
+        queue.markUntransmitted(unsent);
+
+        // WebSocketClient 断开时的处理：已发出的按已送达出队，其余重发
+        queue.acknowledgeTransmitted();
+        queue.resetTransmitted();
+
+        List<OutboundQueue.Entry> replay = queue.takeUntransmitted();
+        assertEquals(1, replay.size());
+        assertEquals("c", replay.get(0).message.event);
+        assertEquals(0, queue.getStats().retransmitted);
+        assertEquals(2, queue.getStats().acknowledged);
+    }
+
+    @Test
+    public void restoresUnacknowledgedMessagesFromDisk() throws Exception {
+        File file = new File(folder.getRoot(), "queue.bin");
+        OutboundQueue queue = new OutboundQueue(16, file, DIRECT);
+        Stroke stroke = stroke(30);
+        long begin = queue.enqueue(WireMessage.strokeBegin(stroke));
+        long points = queue.enqueue(WireMessage.strokePoints(stroke, 0, 0, 30));
+        queue.enqueue(WireMessage.strokeEnd(stroke, 30));
+        queue.acknowledge(begin);
+        String session = queue.getSession();
+
+        OutboundQueue restored = new OutboundQueue(16, file, DIRECT);
+        assertTrue(restored.isLoaded());
+        assertEquals(session, restored.getSession());
+        List<OutboundQueue.Entry> entries = restored.takeUntransmitted();
+        assertEquals(2, entries.size());
+        assertEquals(points, entries.get(0).seq);
+        WireMessage message = entries.get(0).message;
+        assertEquals(WireMessage.Type.STROKE_POINTS, message.type);
+        assertEquals(stroke.id, message.stroke.id);
+        assertEquals(30, message.pointsInMessage());
+        assertEquals(stroke.getX(29), message.stroke.getX(29), 0.5f / BinaryWireCodec.COORD_SCALE);
+        assertEquals(WireMessage.Type.STROKE_END, entries.get(1).message.type);
+
+        // 新消息排在恢复的消息之后
+        long next = restored.enqueue(WireMessage.control("after"));
+        assertTrue(next > entries.get(1).seq);
+
+        restored.acknowledge(next);
+        assertEquals(0, new OutboundQueue(16, file, DIRECT).size());
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.RecordedStrokes;
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeSimplifier;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流量控制的效果：用虚拟时钟驱动真实的 {@link StrokeStreamer}，把消息交给一条限速的模拟链路，
+ * 统计每条消息从入队到收到服务器确认的延迟，按 5 秒一段打印，对比有无流量控制。
+ * 拥塞时点会先留在笔画里合并成大批次，入队前就已经等了一段时间，所以另外统计每批第一个点从采样到被确认的延迟。
+ * <ul>
+ * <li>有流量控制：与 WebSocketClient 相同的规则，OkHttp 缓冲区达到 {@link FlowController#MAX_SOCKET_BUFFER_BYTES}
+ *     后消息留在队列里，每 100ms 采样一次喂给 {@link FlowController}，StrokeStreamer 按拥塞等级合并批次、降采样</li>
+ * <li>无流量控制：消息全部直接塞进缓冲区，等级始终为 NORMAL（加流量控制之前的行为）</li>
+ * </ul>
+ * 不是正确性测试，默认跳过；在普通 JVM 上运行并打印结果：
+ *   ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*StreamingLagBenchmark'
+ */
+public class StreamingLagBenchmark {
+
+    private static final long MS = 1_000_000L;
+    // 240Hz 的笔，每 4ms 一个点；每笔 1.2 秒，笔画之间抬笔 200ms
+    private static final long TICK_MS = 4;
+    private static final int STROKE_POINTS = 300;
+    private static final long PEN_UP_MS = 200;
+    private static final long DURATION_MS = 60_000;
+    private static final long SAMPLE_INTERVAL_MS = 100;
+    private static final long REPORT_INTERVAL_MS = 5_000;
+    // 链路：前 20 秒 32KB/s，中间 20 秒限速到 1KB/s（低于正常书写的码率），最后 20 秒恢复；确认在整条消息写出后一个往返到达
+    private static final long FAST_BYTES_PER_SECOND = 32 * 1024;
+    private static final long SLOW_BYTES_PER_SECOND = 1024;
+    private static final long SLOW_FROM_MS = 20_000;
+    private static final long SLOW_UNTIL_MS = 40_000;
+    private static final long RTT_MS = 80;
+
+    @Test
+    public void compareLag() {
+        Assume.assumeTrue(Boolean.getBoolean("stylussync.benchmark"));
+        main(new String[0]);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("link " + FAST_BYTES_PER_SECOND / 1024 + "KB/s, " + SLOW_BYTES_PER_SECOND / 1024
+                + "KB/s during " + SLOW_FROM_MS / 1000 + "-" + SLOW_UNTIL_MS / 1000 + "s, rtt " + RTT_MS
+                + "ms; enqueue -> ack lag per " + REPORT_INTERVAL_MS / 1000 + "s window");
+        for (boolean flowControl : new boolean[] {false, true}) {
+            System.out.println(flowControl ? "with flow control" : "without flow control");
+            System.out.println(String.format("%-10s %8s %14s %14s %10s %9s %10s",
+                    "window", "acked", "lag p50/max", "point p50/max", "KB sent", "points", "level"));
+            new SimulatedLink(flowControl).run();
+        }
+    }
+
+    /** 模拟链路兼客户端：接收 StrokeStreamer 发出的消息，按虚拟时钟排空和确认 */
+    private static final class SimulatedLink extends WebSocketClient {
+
+        private static final class Message {
+            final long enqueuedMs;
+            final long firstPointMs; // 这批第一个点的采样时间，不带点的消息为入队时间
+            final int bytes;
+            final int points;
+            int remaining;
+            long handedOffMs;
+            long ackedMs;
+
+            Message(long enqueuedMs, long firstPointMs, int bytes, int points) {
+                this.enqueuedMs = enqueuedMs;
+                this.firstPointMs = firstPointMs;
+                this.bytes = bytes;
+                this.points = points;
+                this.remaining = bytes;
+            }
+        }
+
+        private final boolean flowControl;
+        private final FlowController flow = new FlowController();
+        private final BinaryWireCodec codec = new BinaryWireCodec();
+        private final ArrayDeque<Message> queued = new ArrayDeque<>();   // 还在发送队列里
+        private final ArrayDeque<Message> buffered = new ArrayDeque<>(); // 已交给 OkHttp、还没写到网络上
+        private final ArrayDeque<Message> acks = new ArrayDeque<>();     // 已写出、确认还在路上，按确认到达时间排序
+        private final ArrayDeque<Message> unacked = new ArrayDeque<>();
+        private long bufferedBytes;
+        private long seq;
+        private long nowMs;
+
+        // 当前统计窗口
+        private final List<Long> windowLags = new ArrayList<>();
+        private final List<Long> windowPointLags = new ArrayList<>();
+        private long windowBytes;
+        private long windowPoints;
+        private final int[] windowLevels = new int[FlowController.Level.values().length];
+
+        SimulatedLink(boolean flowControl) {
+            this.flowControl = flowControl;
+        }
+
+        void run() {
+            StrokeStreamer streamer = new StrokeStreamer(this, () -> nowMs * MS);
+            streamer.setSimplification(StrokeSimplifier.Config.NETWORK);
+            flow.update(0, 0, 0);
+            Stroke recorded = null;
+            Stroke active = null;
+            long penUpUntil = 0;
+            int strokes = 0;
+            for (nowMs = 0; nowMs < DURATION_MS; nowMs += TICK_MS) {
+                if (active == null && nowMs >= penUpUntil) {
+                    recorded = RecordedStrokes.handwriting(strokes++, STROKE_POINTS);
+                    active = new Stroke(recorded.color, recorded.baseStrokeWidth, false, STROKE_POINTS);
+                    active.addPoint(recorded.getX(0), recorded.getY(0), recorded.getPressure(0), nowMs);
+                    streamer.beginStroke(active);
+                } else if (active != null) {
+                    int i = active.size();
+                    active.addPoint(recorded.getX(i), recorded.getY(i), recorded.getPressure(i), nowMs);
+                    streamer.onPointsAdded();
+                    if (active.size() == STROKE_POINTS) {
+                        streamer.endStroke();
+                        active = null;
+                        penUpUntil = nowMs + PEN_UP_MS;
+                    }
+                }
+                drain(TICK_MS);
+                if (nowMs % SAMPLE_INTERVAL_MS == 0) {
+                    sample();
+                }
+                windowLevels[getCongestionLevel().ordinal()]++;
+                if ((nowMs + TICK_MS) % REPORT_INTERVAL_MS == 0) {
+                    report();
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean send(WireMessage message) {
+            int bytes = codec.encode(message, ++seq).length;
+            boolean hasPoints = message.type == WireMessage.Type.STROKE_POINTS;
+            long firstPointMs = hasPoints ? message.stroke.getTimestamp(message.from) : nowMs;
+            queued.addLast(new Message(nowMs, firstPointMs, bytes, hasPoints ? message.pointsInMessage() : 0));
+            flush();
+            return true;
+        }
+
+        @Override
+        public synchronized FlowController.Level getCongestionLevel() {
+            return flowControl ? flow.getLevel() : FlowController.Level.NORMAL;
+        }
+
+        /** WebSocketClient.flushLocked：缓冲区满时剩下的留在队列里 */
+        private void flush() {
+            while (!queued.isEmpty()) {
+                if (flowControl && bufferedBytes >= FlowController.MAX_SOCKET_BUFFER_BYTES) {
+                    return;
+                }
+                Message message = queued.removeFirst();
+                message.handedOffMs = nowMs;
+                buffered.addLast(message);
+                unacked.addLast(message);
+                bufferedBytes += message.bytes;
+                flow.onSent(message.bytes);
+                windowBytes += message.bytes;
+            }
+        }
+
+        /** WebSocketClient.sampleFlow：更新拥塞等级，缓冲区有空间时补发 */
+        private void sample() {
+            Message oldest = unacked.peekFirst();
+            flow.update(nowMs * MS, bufferedBytes, oldest != null ? nowMs - oldest.handedOffMs : 0);
+            flush();
+        }
+
+        private void drain(long elapsedMs) {
+            boolean slow = nowMs >= SLOW_FROM_MS && nowMs < SLOW_UNTIL_MS;
+            long budget = (slow ? SLOW_BYTES_PER_SECOND : FAST_BYTES_PER_SECOND) * elapsedMs / 1000;
+            while (budget > 0 && !buffered.isEmpty()) {
+                Message head = buffered.peekFirst();
+                int written = (int) Math.min(budget, head.remaining);
+                head.remaining -= written;
+                bufferedBytes -= written;
+                budget -= written;
+                if (head.remaining == 0) {
+                    buffered.removeFirst();
+                    head.ackedMs = nowMs + RTT_MS;
+                    acks.addLast(head);
+                }
+            }
+            while (!acks.isEmpty() && acks.peekFirst().ackedMs <= nowMs) {
+                Message acked = acks.removeFirst();
+                unacked.removeFirst();
+                windowLags.add(acked.ackedMs - acked.enqueuedMs);
+                if (acked.points > 0) {
+                    windowPointLags.add(acked.ackedMs - acked.firstPointMs);
+                }
+                windowPoints += acked.points;
+            }
+        }
+
+        private void report() {
+            long windowStart = nowMs + TICK_MS - REPORT_INTERVAL_MS;
+            int dominant = 0;
+            for (int i = 1; i < windowLevels.length; i++) {
+                if (windowLevels[i] > windowLevels[dominant]) {
+                    dominant = i;
+                }
+            }
+            System.out.println(String.format("%3d-%-3ds   %8d %14s %14s %10.1f %9d %10s",
+                    windowStart / 1000, (nowMs + TICK_MS) / 1000, windowLags.size(), percentiles(windowLags),
+                    percentiles(windowPointLags), windowBytes / 1024.0, windowPoints,
+                    FlowController.Level.values()[dominant]));
+            windowLags.clear();
+            windowPointLags.clear();
+            windowBytes = 0;
+            windowPoints = 0;
+            Arrays.fill(windowLevels, 0);
+        }
+
+        private static String percentiles(List<Long> lags) {
+            if (lags.isEmpty()) {
+                return "-";
+            }
+            lags.sort(null);
+            return lags.get(lags.size() / 2) + "/" + lags.get(lags.size() - 1) + "ms";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BinaryDrawingFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Stroke stroke(float x0, float y0, int points, boolean timestamps, boolean eraser) {
+        Stroke stroke = new Stroke(0xFF000000 | (int) (x0 * 7), 4f + x0 / 100f, eraser);
+        for (int i = 0; i < points; i++) {
+            float x = x0 + i * 1.5f;
+            float y = y0 + (float) Math.sin(i / 5.0) * 10f;
+            float pressure = 0.2f + (i % 10) / 20f;
+            if (timestamps) {
+                stroke.addPoint(x, y, pressure, 1_000L + i);
+            } else {
+                stroke.addPoint(x, y, pressure);
+            }
+        }
+        return stroke;
+    }
+
+    @Test
+    public void roundTripIsLossless() throws Exception {
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(10, 10, 50, true, false));
+        strokes.add(stroke(500, 300, 1, false, true));
+        strokes.add(stroke(900, 700, 120, false, false));
+        File file = folder.newFile("a.ssd");
+
+        BinaryDrawingFile.write(file, strokes);
+        assertTrue(BinaryDrawingFile.isBinary(file));
+        BinaryDrawingFile binary = BinaryDrawingFile.open(file);
+
+        assertEquals(strokes.size(), binary.getStrokeCount());
+        for (int s = 0; s < strokes.size(); s++) {
+            Stroke expected = strokes.get(s);
+            Stroke read = binary.readStroke(s);
+            assertEquals(expected.id, read.id);
+            assertEquals(expected.color, read.color);
+            assertEquals(expected.baseStrokeWidth, read.baseStrokeWidth, 0f);
+            assertEquals(expected.isEraser, read.isEraser);
+            assertEquals(expected.hasTimestamps(), read.hasTimestamps());
+            assertEquals(expected.size(), binary.getPointCount(s));
+            assertEquals(expected.size(), read.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getX(i), read.getX(i), 0f);
+                assertEquals(expected.getY(i), read.getY(i), 0f);
+                assertEquals(expected.getPressure(i), read.getPressure(i), 0f);
+                assertEquals(expected.getTimestamp(i), read.getTimestamp(i));
+            }
+        }
+    }
+
+    @Test
+    public void regionReadDecodesOnlyIntersectingStrokes() throws Exception {
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(10, 10, 20, false, false));
+        strokes.add(stroke(1000, 1000, 20, false, false));
+        strokes.add(stroke(20, 15, 20, false, false));
+        File file = folder.newFile("b.ssd");
+        BinaryDrawingFile.write(file, strokes);
+
+        List<Stroke> hits = BinaryDrawingFile.open(file).readStrokesIn(0, 0, 100, 100);
+
+        assertEquals(2, hits.size());
+        assertEquals(strokes.get(0).id, hits.get(0).id);
+        assertEquals(strokes.get(2).id, hits.get(1).id);
+    }
+
+    @Test
+    public void jsonFileIsNotDetectedAsBinary() throws Exception {
+        File file = folder.newFile("c.json");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("[]");
+        }
+        assertFalse(BinaryDrawingFile.isBinary(file));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * JSON（.json）与二进制索引格式（.ssd）的对比：文件大小、整份读取、按区域读取的耗时。
+ * 不是正确性测试，默认跳过；在普通 JVM 上运行并打印结果：
+ *   ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*DrawingFormatBenchmark'
+ */
+public class DrawingFormatBenchmark {
+
+    private static final int[] STROKE_COUNTS = {500, 2000, 5000};
+    private static final int POINTS_PER_STROKE = 100;
+    private static final float PAGE_SIZE = 4000f;
+    private static final float REGION_SIZE = 256f;
+    private static final int RUNS = 8;
+    private static final long SEED = 10;
+
+    @Test
+    public void compareFormats() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("stylussync.benchmark"));
+        main(new String[0]);
+    }
+
+    /** 每笔 100 个带时间戳的点，随机散布在 4000px 见方的页面上 */
+    static List<Stroke> document(int strokes, long seed) {
+        Random random = new Random(seed);
+        List<Stroke> document = new ArrayList<>(strokes);
+        for (int s = 0; s < strokes; s++) {
+            Stroke stroke = new Stroke(0xFF000000 | random.nextInt(0xFFFFFF), 2f + random.nextFloat() * 6f, false,
+                    POINTS_PER_STROKE);
+            float x = random.nextFloat() * PAGE_SIZE, y = random.nextFloat() * PAGE_SIZE;
+            double heading = random.nextDouble() * Math.PI * 2;
+            long t = 1_000_000L + s * 1_000L;
+            for (int i = 0; i < POINTS_PER_STROKE; i++) {
+                heading += (random.nextDouble() - 0.5) * 0.4;
+                x += (float) Math.cos(heading) * 1.5f;
+                y += (float) Math.sin(heading) * 1.5f;
+                stroke.addPoint(x, y, 0.3f + random.nextFloat() * 0.5f, t + i * 4L);
+            }
+            document.add(stroke);
+        }
+        return document;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Gson gson = new Gson();
+        File dir = Files.createTempDirectory("drawing-format").toFile();
+        float left = (PAGE_SIZE - REGION_SIZE) / 2, top = (PAGE_SIZE - REGION_SIZE) / 2;
+        System.out.println(POINTS_PER_STROKE + " points/stroke with timestamps, best of " + RUNS
+                + ", region " + (int) REGION_SIZE + "px at the page centre");
+        System.out.println(String.format("%-8s %10s %10s %11s %11s %12s %8s",
+                "strokes", "json", "binary", "json load", "ssd load", "ssd region", "hits"));
+        try {
+            for (int count : STROKE_COUNTS) {
+                List<Stroke> strokes = document(count, SEED);
+                File json = new File(dir, count + ".json");
+                File binary = new File(dir, count + BinaryDrawingFile.EXTENSION);
+                JsonDrawingFile.write(json, strokes, gson);
+                BinaryDrawingFile.write(binary, strokes);
+
+                long jsonLoad = Long.MAX_VALUE, binaryLoad = Long.MAX_VALUE, regionLoad = Long.MAX_VALUE;
+                int hits = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    if (JsonDrawingFile.read(json, gson).size() != count) {
+                        throw new IllegalStateException("JSON load lost strokes");
+                    }
+                    jsonLoad = Math.min(jsonLoad, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    BinaryDrawingFile file = BinaryDrawingFile.open(binary);
+                    if (file.readStrokes(0, file.getStrokeCount()).size() != count) {
+                        throw new IllegalStateException("Binary load lost strokes");
+                    }
+                    binaryLoad = Math.min(binaryLoad, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    hits = BinaryDrawingFile.open(binary)
+                            .readStrokesIn(left, top, left + REGION_SIZE, top + REGION_SIZE).size();
+                    regionLoad = Math.min(regionLoad, System.nanoTime() - start);
+                }
+                System.out.println(String.format("%-8d %8dKB %8dKB %9.1fms %9.1fms %10.2fms %8d",
+                        count, json.length() / 1024, binary.length() / 1024,
+                        jsonLoad / 1e6, binaryLoad / 1e6, regionLoad / 1e6, hits));
+                json.delete();
+                binary.delete();
+            }
+        } finally {
+            dir.delete();
+        }
+    }
+}
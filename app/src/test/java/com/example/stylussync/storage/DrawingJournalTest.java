@@ -0,0 +1,82 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DrawingJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Stroke stroke(float x0) {
+        Stroke stroke = new Stroke(0xFF000000, 4f, false);
+        for (int i = 0; i < 10; i++) {
+            stroke.addPoint(x0 + i, 50f, 0.5f, 1_000L + i);
+        }
+        return stroke;
+    }
+
+    @Test
+    public void appendAfterTornTailIsReplayed() throws Exception {
+        Gson gson = new Gson();
+        File snapshot = folder.newFile("a.json");
+        DrawingJournal journal = new DrawingJournal(snapshot, gson);
+        journal.append(DrawingJournal.Op.ADD, stroke(0f));
+        journal.close();
+        // 崩溃时写了一半的最后一行
+        try (FileOutputStream out = new FileOutputStream(DrawingJournal.journalFileFor(snapshot), true)) {
+            out.write("{\"op\":\"add\",\"stroke\":{\"id\":".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(1, DrawingJournal.readReplay(snapshot, gson).tail.size());
+
+        DrawingJournal reopened = new DrawingJournal(snapshot, gson);
+        Stroke second = stroke(100f);
+        reopened.append(DrawingJournal.Op.ADD, second);
+        reopened.append(DrawingJournal.Op.UNDO, null);
+        reopened.append(DrawingJournal.Op.REDO, null);
+        reopened.close();
+
+        DrawingJournal.Replay replay = DrawingJournal.readReplay(snapshot, gson);
+        assertTrue(replay.valid);
+        assertEquals(4, replay.entryCount);
+        assertEquals(2, replay.tail.size());
+        assertEquals(second.id, replay.tail.get(1).id);
+        assertEquals(reopened.getByteCount(), DrawingJournal.journalFileFor(snapshot).length());
+    }
+
+    @Test
+    public void undoBelowRemoteStrokesKeepsThem() throws Exception {
+        Gson gson = new Gson();
+        File snapshot = folder.newFile("b.json");
+        DrawingJournal journal = new DrawingJournal(snapshot, gson);
+        Stroke local = stroke(0f);
+        Stroke remote = stroke(100f);
+        journal.append(DrawingJournal.Op.ADD, local);
+        journal.append(DrawingJournal.Op.ADD, remote);
+        // FileRepository.appendUndo：本地笔画之上有一笔远端笔画，连同它一起弹出再加回
+        journal.append(DrawingJournal.Op.UNDO, null);
+        journal.append(DrawingJournal.Op.UNDO, null);
+        journal.append(DrawingJournal.Op.ADD, remote);
+        DrawingJournal.Replay replay = DrawingJournal.readReplay(snapshot, gson);
+        assertEquals(1, replay.tail.size());
+        assertEquals(remote.id, replay.tail.get(0).id);
+
+        // 重做记为 add，排在远端笔画之后
+        journal.append(DrawingJournal.Op.ADD, local);
+        journal.close();
+        replay = DrawingJournal.readReplay(snapshot, gson);
+        assertEquals(2, replay.tail.size());
+        assertEquals(remote.id, replay.tail.get(0).id);
+        assertEquals(local.id, replay.tail.get(1).id);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonDrawingFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Stroke stroke(float x0, boolean eraser) {
+        Stroke stroke = new Stroke(0xFF000000, eraser ? 20f : 4f, eraser);
+        for (int i = 0; i < 5; i++) {
+            stroke.addPoint(x0 + i, 10f, 0.5f);
+        }
+        return stroke;
+    }
+
+    @Test
+    public void undoAfterLegacyLoadRemovesTheNewestStroke() throws Exception {
+        Gson gson = new Gson();
+        Stroke oldest = stroke(0f, false);
+        Stroke middle = stroke(10f, false);
+        Stroke eraser = stroke(0f, true);
+        List<Stroke> drawn = Arrays.asList(oldest, middle, eraser);
+        // 旧版本把撤销栈从新到旧写成裸数组
+        List<Stroke> newestFirst = new ArrayList<>(drawn);
+        Collections.reverse(newestFirst);
+        File file = folder.newFile("legacy.json");
+        try (FileWriter writer = new FileWriter(file)) {
+            gson.toJson(newestFirst, writer);
+        }
+
+        List<Stroke> undoStack = JsonDrawingFile.read(file, gson);
+        assertEquals(3, undoStack.size());
+        assertEquals(oldest.id, undoStack.get(0).id);
+        // 橡皮擦在它擦的笔画之后重放
+        assertTrue(undoStack.get(2).isEraser);
+
+        // 撤销移除栈顶，也就是最后画的一笔
+        Stroke undone = undoStack.remove(undoStack.size() - 1);
+        assertEquals(eraser.id, undone.id);
+        assertEquals(middle.id, undoStack.get(undoStack.size() - 1).id);
+
+        // 重新保存后是新格式，再读出仍是绘制顺序
+        JsonDrawingFile.write(file, undoStack, gson);
+        List<Stroke> reloaded = JsonDrawingFile.read(file, gson);
+        assertEquals(2, reloaded.size());
+        assertEquals(oldest.id, reloaded.get(0).id);
+        assertEquals(middle.id, reloaded.get(1).id);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class MetadataIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DrawingMetadata metadata(String name, long size, long modified, int strokes) {
+        return new DrawingMetadata(name, size, modified, strokes, 0, 0, 100, 100, 0);
+    }
+
+    @Test
+    public void querySortsFiltersAndPages() throws Exception {
+        MetadataIndex index = new MetadataIndex(folder.newFile("index.json"), new Gson());
+        for (int i = 0; i < 10; i++) {
+            index.put(metadata("Drawing_" + i + ".ssd", 100 * i, 1000 + i, i));
+        }
+        index.put(metadata("Sketch.ssd", 5, 5000, 1));
+
+        DrawingQuery.Page page = index.query(new DrawingQuery(DrawingQuery.Sort.LAST_MODIFIED, true, null, 0, 3));
+        assertEquals(11, page.totalCount);
+        assertEquals("Sketch.ssd", page.items.get(0).name);
+        assertEquals("Drawing_9.ssd", page.items.get(1).name);
+        assertTrue(page.hasMore(page.items.size()));
+
+        page = index.query(new DrawingQuery(DrawingQuery.Sort.NAME, false, "drawing", 8, 5));
+        assertEquals(10, page.totalCount);
+        assertEquals(2, page.items.size());
+        assertEquals("Drawing_8.ssd", page.items.get(0).name);
+        assertFalse(page.hasMore(10));
+    }
+
+    @Test
+    public void journalOpsUpdateCountAndBounds() throws Exception {
+        MetadataIndex index = new MetadataIndex(folder.newFile("index.json"), new Gson());
+        index.put(metadata("a.ssd", 1, 1, 2));
+        Stroke stroke = new Stroke(0, 2f, false);
+        stroke.addPoint(300, 400, 1f);
+
+        index.applyOp("a.ssd", DrawingJournal.Op.ADD, stroke);
+        assertEquals(3, index.get("a.ssd").strokeCount);
+        assertEquals(401f, index.get("a.ssd").bottom, 0.01f);
+
+        index.applyOp("a.ssd", DrawingJournal.Op.UNDO, null);
+        index.applyOp("a.ssd", DrawingJournal.Op.UNDO, null);
+        assertEquals(1, index.get("a.ssd").strokeCount);
+
+        index.applyOp("a.ssd", DrawingJournal.Op.CLEAR, null);
+        assertEquals(0, index.get("a.ssd").strokeCount);
+        assertFalse(index.get("a.ssd").hasBounds());
+    }
+
+    @Test
+    public void persistsAcrossReload() throws Exception {
+        File file = new File(folder.getRoot(), "index.json");
+        MetadataIndex index = new MetadataIndex(file, new Gson());
+        index.put(metadata("a.ssd", 10, 20, 3).withLastOpened(99));
+        index.saveIfDirty();
+        assertFalse(index.isDirty());
+
+        MetadataIndex reloaded = new MetadataIndex(file, new Gson());
+        reloaded.load();
+        assertEquals(index.get("a.ssd"), reloaded.get("a.ssd"));
+    }
+}
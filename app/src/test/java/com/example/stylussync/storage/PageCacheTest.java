@@ -0,0 +1,90 @@
+package com.example.stylussync.storage;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PageCacheTest {
+
+    /** 读取请求挂起，由测试决定何时完成，模拟后台读盘 */
+    private static final class FakeBackend implements PageCache.Backend {
+        final Map<Integer, PageCache.LoadCallback> pendingLoads = new HashMap<>();
+        final List<Integer> spilled = new ArrayList<>();
+
+        @Override
+        public void loadPage(int pageId, PageCache.LoadCallback callback) {
+            pendingLoads.put(pageId, callback);
+        }
+
+        @Override
+        public void spillPage(int pageId, List<Stroke> strokes) {
+            spilled.add(pageId);
+        }
+    }
+
+    private static List<Stroke> page(int points) {
+        Stroke stroke = new Stroke(0xFF000000, 4f, false);
+        for (int i = 0; i < points; i++) {
+            stroke.addPoint(i, i, 0.5f);
+        }
+        return new ArrayList<>(Collections.singletonList(stroke));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnpinnedPagesAndSpillsDirtyOnes() {
+        FakeBackend backend = new FakeBackend();
+        long pageBytes = PageCache.estimateBytes(page(100));
+        PageCache cache = new PageCache(backend, pageBytes * 2);
+        cache.setPinned(Collections.singletonList(1));
+
+        cache.put(1, page(100), false);
+        cache.put(2, page(100), true);
+        cache.put(3, page(100), false);
+
+        // 页面 1 最久未用但被钉住，淘汰的是页面 2；它只在内存中，先写出
+        assertTrue(cache.isResident(1));
+        assertFalse(cache.isResident(2));
+        assertTrue(cache.isResident(3));
+        assertEquals(Collections.singletonList(2), backend.spilled);
+
+        cache.put(4, page(100), false);
+        // 页面 3 内容已在磁盘上，直接丢弃
+        assertFalse(cache.isResident(3));
+        assertEquals(Collections.singletonList(2), backend.spilled);
+        assertEquals(2, cache.getStats().evictions);
+        assertEquals(2 * pageBytes, cache.getStats().residentBytes);
+    }
+
+    @Test
+    public void prefetchFillsCacheUnlessPageWasTakenMeanwhile() {
+        FakeBackend backend = new FakeBackend();
+        PageCache cache = new PageCache(backend, PageCache.DEFAULT_MAX_BYTES);
+
+        cache.prefetch(5);
+        cache.prefetch(5);
+        assertEquals(1, cache.getStats().prefetches);
+        backend.pendingLoads.remove(5).onPageLoaded(page(10));
+        assertTrue(cache.isResident(5));
+        assertNotNull(cache.take(5));
+        assertFalse(cache.isResident(5));
+
+        // 预取还没完成时页面就被翻到：由调用方自行加载，晚到的结果不能覆盖它之后交回的内容
+        cache.prefetch(6);
+        assertNull(cache.take(6));
+        List<Stroke> edited = page(20);
+        cache.put(6, edited, true);
+        backend.pendingLoads.remove(6).onPageLoaded(page(10));
+        assertSame(edited, cache.take(6));
+
+        assertEquals(Arrays.asList(2L, 1L), Arrays.asList(cache.getStats().hits, cache.getStats().misses));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.stylussync.view;
+
+import com.example.stylussync.data.RecordedStrokes;
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionPredictorTest {
+
+    private static final long HORIZON_MS = 16;
+
+    /** 像输入线程那样逐个喂采样，每个采样之后预测一次，返回统计 */
+    private static PredictionStats replay(MotionPredictor predictor, Stroke input) {
+        PredictionStats stats = new PredictionStats();
+        float[] xs = new float[4], ys = new float[4], ps = new float[4];
+        predictor.reset();
+        for (int i = 0; i < input.size(); i++) {
+            long time = input.getTimestamp(i);
+            predictor.addSample(input.getX(i), input.getY(i), input.getPressure(i), time);
+            stats.onSample(input.getX(i), input.getY(i), time);
+            int n = predictor.predict(HORIZON_MS, 4, xs, ys, ps);
+            if (n > 0) {
+                stats.onPrediction(xs[n - 1], ys[n - 1], HORIZON_MS);
+            }
+        }
+        return stats;
+    }
+
+    @Test
+    public void predictionBeatsNoPredictionOnRecordedInput() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Stroke input = RecordedStrokes.handwriting(seed, 500);
+            for (MotionPredictor predictor : new MotionPredictor[]{new LinearMotionPredictor(), new KalmanMotionPredictor()}) {
+                PredictionStats stats = replay(predictor, input);
+                assertTrue(stats.scored > 450);
+                // 不预测时落后约 16ms 的距离；预测后误差至少减少到一半以下
+                assertTrue(predictor.getClass().getSimpleName() + " " + stats.getMeanErrorPx() + " vs " + stats.getMeanBaselineErrorPx(),
+                        stats.getMeanErrorPx() < stats.getMeanBaselineErrorPx() / 2);
+                assertTrue(stats.getMeanLatencySavedMs() > HORIZON_MS / 2.0);
+                assertTrue(stats.getMeanLatencySavedMs() <= HORIZON_MS);
+            }
+        }
+    }
+
+    @Test
+    public void noPredictionWhenPenStopsOrAfterGap() {
+        float[] xs = new float[4], ys = new float[4], ps = new float[4];
+        for (MotionPredictor predictor : new MotionPredictor[]{new LinearMotionPredictor(), new KalmanMotionPredictor()}) {
+            predictor.reset();
+            assertEquals(0, predictor.predict(HORIZON_MS, 4, xs, ys, ps));
+            for (int i = 0; i < 20; i++) {
+                predictor.addSample(100f, 100f, 0.5f, 1000 + i * 4);
+            }
+            assertEquals(0, predictor.predict(HORIZON_MS, 4, xs, ys, ps));
+
+            // 匀速向右移动，预测点依次向右排开，末端约在 16ms 之后的位置
+            predictor.reset();
+            for (int i = 0; i < 20; i++) {
+                predictor.addSample(100f + i * 2f, 100f, 0.5f, 1000 + i * 4);
+            }
+            assertEquals(4, predictor.predict(HORIZON_MS, 4, xs, ys, ps));
+            assertEquals(138f + 8f, xs[3], 0.5f);
+            assertTrue(xs[0] < xs[1] && xs[1] < xs[2] && xs[2] < xs[3]);
+            assertEquals(0.5f, ps[3], 0f);
+
+            // 停顿很久之后的第一个采样：之前的速度作废
+            predictor.addSample(300f, 100f, 0.5f, 2000);
+            assertEquals(0, predictor.predict(HORIZON_MS, 4, xs, ys, ps));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.stylussync.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ViewportTest {
+
+    @Test
+    public void zoomKeepsFocusPointFixed() {
+        Viewport viewport = new Viewport();
+        viewport.setSize(1920, 1200);
+        viewport.set(1f, 100f, 50f);
+        float docX = viewport.toDocX(800f);
+        float docY = viewport.toDocY(300f);
+
+        viewport.zoomBy(2.5f, 800f, 300f);
+        assertEquals(2.5f, viewport.getScale(), 0f);
+        assertEquals(800f, viewport.toScreenX(docX), 1e-3f);
+        assertEquals(300f, viewport.toScreenY(docY), 1e-3f);
+
+        // 平移后内容跟着手指走
+        viewport.panBy(-40f, 25f);
+        assertEquals(760f, viewport.toScreenX(docX), 1e-3f);
+        assertEquals(325f, viewport.toScreenY(docY), 1e-3f);
+
+        viewport.zoomBy(100f, 0f, 0f);
+        assertEquals(Viewport.MAX_SCALE, viewport.getScale(), 0f);
+    }
+
+    @Test
+    public void levelNeverUndersamplesTheScreen() {
+        assertEquals(0, Viewport.levelFor(1f));
+        assertEquals(1, Viewport.levelFor(1.3f));
+        assertEquals(1, Viewport.levelFor(2f));
+        assertEquals(-1, Viewport.levelFor(0.5f));
+        assertEquals(0, Viewport.levelFor(0.6f));
+        assertEquals(Viewport.MAX_LEVEL, Viewport.levelFor(Viewport.MAX_SCALE));
+        for (float scale = Viewport.MIN_SCALE; scale <= Viewport.MAX_SCALE; scale *= 1.1f) {
+            assertTrue(Viewport.resolution(Viewport.levelFor(scale)) >= scale * 0.999f);
+        }
+    }
+}
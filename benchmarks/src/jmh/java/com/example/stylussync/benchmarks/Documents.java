@@ -0,0 +1,107 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.Stroke;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** 基准测试用的合成数据：固定种子，每次运行生成的文档完全相同 */
+final class Documents {
+
+    // 一笔的平均点数，约为 240Hz 采样下 0.6 秒的书写
+    static final int POINTS_PER_STROKE = 150;
+
+    private Documents() {
+    }
+
+    /** 随机转向的曲线，点间距约 2.5 像素，带时间戳 */
+    static Stroke stroke(Random random, int points) {
+        Stroke stroke = new Stroke(0xFF000000 | random.nextInt(0xFFFFFF), 4f + random.nextInt(12), false, points);
+        float x = 100f + random.nextFloat() * 1800f;
+        float y = 100f + random.nextFloat() * 1000f;
+        float angle = random.nextFloat() * 6.28f;
+        float pressure = 0.5f;
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < points; i++) {
+            angle += (random.nextFloat() - 0.5f) * 0.3f;
+            x += (float) Math.cos(angle) * 2.5f;
+            y += (float) Math.sin(angle) * 2.5f;
+            pressure = Math.max(0.1f, Math.min(1f, pressure + (random.nextFloat() - 0.5f) * 0.05f));
+            stroke.addPoint(x, y, pressure, time + i * 4L);
+        }
+        return stroke;
+    }
+
+    /**
+     * 240Hz 采样的手写笔画：速度随笔画变化，中段有一次几乎停住的停顿（采样点堆在一起），
+     * 坐标带传感器抖动，压力缓慢漂移。用来衡量精简的效果
+     */
+    static Stroke handwriting(Random random, int points) {
+        Stroke stroke = new Stroke(0xFF000000, 4f + random.nextInt(8), false, points);
+        float x = 100f + random.nextFloat() * 1800f;
+        float y = 100f + random.nextFloat() * 1000f;
+        float angle = random.nextFloat() * 6.28f;
+        float pressure = 0.3f + random.nextFloat() * 0.4f;
+        float speed = 1.5f + random.nextFloat() * 2f;
+        int pauseFrom = points / 3 + random.nextInt(Math.max(1, points / 6));
+        int pauseTo = pauseFrom + points / 8;
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < points; i++) {
+            float step = i >= pauseFrom && i < pauseTo ? 0.05f : speed;
+            angle += (random.nextFloat() - 0.5f) * 0.25f;
+            x += (float) Math.cos(angle) * step + (random.nextFloat() - 0.5f) * 0.1f;
+            y += (float) Math.sin(angle) * step + (random.nextFloat() - 0.5f) * 0.1f;
+            pressure = Math.max(0.1f, Math.min(1f, pressure + (random.nextFloat() - 0.5f) * 0.02f));
+            stroke.addPoint(x, y, pressure, time + i * 4L);
+        }
+        return stroke;
+    }
+
+    static List<Stroke> handwritingDocument(int strokes, long seed) {
+        Random random = new Random(seed);
+        List<Stroke> document = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes; i++) {
+            document.add(handwriting(random, POINTS_PER_STROKE + random.nextInt(POINTS_PER_STROKE)));
+        }
+        return document;
+    }
+
+    /**
+     * 在一块 A4 大小的区域内来回涂写的密集笔画，其中 eraserPercent% 是宽 eraserWidth 的橡皮擦，
+     * 橡皮擦只擦它之前画的内容。用来衡量橡皮擦压缩的效果
+     */
+    static List<Stroke> scribbles(int strokes, int eraserPercent, float eraserWidth, long seed) {
+        Random random = new Random(seed);
+        List<Stroke> document = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes; i++) {
+            boolean eraser = random.nextInt(100) < eraserPercent;
+            Stroke stroke = eraser
+                    ? new Stroke(0, eraserWidth, true, 60)
+                    : new Stroke(0xFF000000 | random.nextInt(0xFFFFFF), 3f + random.nextInt(6), false, 100);
+            float x = 100f + random.nextFloat() * 1000f;
+            float y = 100f + random.nextFloat() * 1400f;
+            float angle = random.nextFloat() * 6.28f;
+            int points = eraser ? 30 + random.nextInt(60) : 60 + random.nextInt(80);
+            long time = 1_700_000_000_000L + i * 1_000L;
+            for (int p = 0; p < points; p++) {
+                // 来回涂写：方向周期性折返
+                angle += (random.nextFloat() - 0.5f) * 0.4f + (p % 20 == 19 ? 2.8f : 0f);
+                x += (float) Math.cos(angle) * 3f;
+                y += (float) Math.sin(angle) * 3f;
+                stroke.addPoint(x, y, 0.5f, time + p * 4L);
+            }
+            document.add(stroke);
+        }
+        return document;
+    }
+
+    static List<Stroke> document(int strokes, long seed) {
+        Random random = new Random(seed);
+        List<Stroke> document = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes; i++) {
+            document.add(stroke(random, POINTS_PER_STROKE / 2 + random.nextInt(POINTS_PER_STROKE)));
+        }
+        return document;
+    }
+}
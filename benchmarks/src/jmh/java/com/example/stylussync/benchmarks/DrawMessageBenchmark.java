@@ -0,0 +1,72 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeSimplifier;
+import com.example.stylussync.network.BinaryWireCodec;
+import com.example.stylussync.network.JsonWireCodec;
+import com.example.stylussync.network.WireMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络消息的构造与编码。sendDraw* 与 DrawingActivity.sendDrawMessage 加上 WebSocketClient 发送时的编码相同：
+ * 先按 NETWORK 参数精简，再构造 draw 消息并编码；streamBatch* 对应绘制中 StrokeStreamer 发出的一批点。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DrawMessageBenchmark {
+
+    // 流式发送一批的点数，约为 StrokeStreamer 的默认批大小
+    private static final int STREAM_BATCH_POINTS = 16;
+
+    @Param({"50", "500", "5000"})
+    public int points;
+
+    private final JsonWireCodec jsonCodec = new JsonWireCodec();
+    private final BinaryWireCodec binaryCodec = new BinaryWireCodec();
+    private Stroke stroke;
+
+    @Setup
+    public void setUp() {
+        stroke = Documents.stroke(new Random(11), points);
+    }
+
+    @Benchmark
+    public String sendDrawJson() {
+        return jsonCodec.encode(WireMessage.draw(StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.NETWORK)));
+    }
+
+    @Benchmark
+    public byte[] sendDrawBinary() {
+        return binaryCodec.encode(WireMessage.draw(StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.NETWORK)));
+    }
+
+    /** 不精简，直接编码整笔 */
+    @Benchmark
+    public String drawJsonUnsimplified() {
+        return jsonCodec.encode(WireMessage.draw(stroke));
+    }
+
+    @Benchmark
+    public String streamBatchJson() {
+        int from = Math.max(0, points - STREAM_BATCH_POINTS);
+        return jsonCodec.encode(WireMessage.strokePoints(stroke, 1, from, points));
+    }
+
+    @Benchmark
+    public byte[] streamBatchBinary() {
+        int from = Math.max(0, points - STREAM_BATCH_POINTS);
+        return binaryCodec.encode(WireMessage.strokePoints(stroke, 1, from, points));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.EraserCompactor;
+import com.example.stylussync.data.Stroke;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压缩整段历史中的橡皮擦：2000 笔密集涂写，橡皮擦宽 40 像素，占比见 erasers。
+ * JMH 测一次压缩的耗时；压缩前后的笔画数、点数（重绘成本与点数成正比）和删掉的橡皮擦由 {@link #main} 打印：
+ *   ./gradlew :benchmarks:report -Preport=EraserCompactorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EraserCompactorBenchmark {
+
+    private static final int STROKES = 2000;
+    private static final float ERASER_WIDTH = 40f;
+    private static final long SEED = 21;
+
+    @Param({"10", "30", "50"})
+    public int erasers;
+
+    private List<Stroke> document;
+
+    @Setup
+    public void setUp() {
+        document = Documents.scribbles(STROKES, erasers, ERASER_WIDTH, SEED);
+    }
+
+    /** compact 不修改输入，每次都从同一份历史开始 */
+    @Benchmark
+    public EraserCompactor.Result compactHistory() {
+        return EraserCompactor.compact(document);
+    }
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%-8s %-14s %-18s %-16s %8s",
+                "erasers", "strokes", "points", "erasers removed", "ms"));
+        for (int percent : new int[] {10, 30, 50}) {
+            List<Stroke> document = Documents.scribbles(STROKES, percent, ERASER_WIDTH, SEED);
+            // 先跑几次预热，报告最后一次
+            EraserCompactor.Result result = null;
+            long nanos = 0;
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                result = EraserCompactor.compact(document);
+                nanos = System.nanoTime() - start;
+            }
+            System.out.println(String.format("%-8s %-14s %-18s %-16s %8.0f",
+                    percent + "%",
+                    result.strokesBefore + " -> " + result.strokesAfter,
+                    result.pointsBefore + " -> " + result.pointsAfter,
+                    result.erasersRemoved + "/" + result.erasersApplied,
+                    nanos / 1e6));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.Point;
+import com.example.stylussync.data.Stroke;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 书写时每个点的开销。每次调用从空笔画开始追加 {@value #POINTS} 个点（包含数组扩容），
+ * 按点数归一化，配合 gc 分析器的 gc.alloc.rate.norm 即每个点分配的字节数。
+ * legacyPointList 是改为列存储之前的 List&lt;Point&gt; 模型，作为对照。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PointAllocationBenchmark {
+
+    private static final int POINTS = 1000;
+    // 一个 MotionEvent 平均带的采样数（含历史采样）
+    private static final int SAMPLES_PER_EVENT = 4;
+
+    private final float[] xs = new float[POINTS];
+    private final float[] ys = new float[POINTS];
+    private final float[] pressures = new float[POINTS];
+    private final long[] times = new long[POINTS];
+
+    @Setup
+    public void setUp() {
+        Stroke source = Documents.stroke(new Random(7), POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = source.getX(i);
+            ys[i] = source.getY(i);
+            pressures[i] = source.getPressure(i);
+            times[i] = 1_700_000_000_000L + i * 4L;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public Stroke addPoint() {
+        Stroke stroke = new Stroke(0xFF000000, 8f, false);
+        for (int i = 0; i < POINTS; i++) {
+            stroke.addPoint(xs[i], ys[i], pressures[i], times[i]);
+        }
+        return stroke;
+    }
+
+    /** 与 DrawingSurfaceView 的 ACTION_MOVE 相同：每个事件的采样一批追加 */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public Stroke addPointsBatched() {
+        Stroke stroke = new Stroke(0xFF000000, 8f, false);
+        float[] batchX = new float[SAMPLES_PER_EVENT];
+        float[] batchY = new float[SAMPLES_PER_EVENT];
+        float[] batchPressure = new float[SAMPLES_PER_EVENT];
+        long[] batchTime = new long[SAMPLES_PER_EVENT];
+        for (int i = 0; i < POINTS; i += SAMPLES_PER_EVENT) {
+            int count = Math.min(SAMPLES_PER_EVENT, POINTS - i);
+            System.arraycopy(xs, i, batchX, 0, count);
+            System.arraycopy(ys, i, batchY, 0, count);
+            System.arraycopy(pressures, i, batchPressure, 0, count);
+            System.arraycopy(times, i, batchTime, 0, count);
+            stroke.addPoints(batchX, batchY, batchPressure, batchTime, count);
+        }
+        return stroke;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public List<Point> legacyPointList() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < POINTS; i++) {
+            points.add(new Point(xs[i], ys[i], pressures[i]));
+        }
+        return points;
+    }
+}
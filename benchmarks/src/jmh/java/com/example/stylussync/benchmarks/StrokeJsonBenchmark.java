@@ -0,0 +1,88 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.Stroke;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 整个文档的 Gson 编解码，对应 FileRepository 读写 .json 快照的两条路径：
+ * 一次性 toJson/fromJson（loadDrawing），以及 JsonWriter/JsonReader 逐笔流式读写（保存与渐进加载）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StrokeJsonBenchmark {
+
+    private static final Type STROKE_LIST_TYPE = new TypeToken<List<Stroke>>() {}.getType();
+
+    @Param({"10", "100", "1000"})
+    public int strokes;
+
+    private final Gson gson = new Gson();
+    private List<Stroke> document;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        document = Documents.document(strokes, 42);
+        json = gson.toJson(document, STROKE_LIST_TYPE);
+    }
+
+    @Benchmark
+    public String encode() {
+        return gson.toJson(document, STROKE_LIST_TYPE);
+    }
+
+    /** 与 FileRepository.writeSnapshot 相同：逐笔写入 JsonWriter，输出丢弃，只计编码本身 */
+    @Benchmark
+    public void encodeStreaming(Blackhole blackhole) throws IOException {
+        JsonWriter writer = new JsonWriter(Writer.nullWriter());
+        writer.beginArray();
+        for (Stroke stroke : document) {
+            gson.toJson(stroke, Stroke.class, writer);
+        }
+        writer.endArray();
+        writer.flush();
+        blackhole.consume(writer);
+    }
+
+    @Benchmark
+    public List<Stroke> decode() {
+        return gson.fromJson(json, STROKE_LIST_TYPE);
+    }
+
+    /** 与渐进加载相同：JsonReader 逐笔解析 */
+    @Benchmark
+    public List<Stroke> decodeStreaming() throws IOException {
+        List<Stroke> result = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.peek() != JsonToken.END_ARRAY) {
+                result.add(gson.fromJson(reader, Stroke.class));
+            }
+            reader.endArray();
+        }
+        return result;
+    }
+}
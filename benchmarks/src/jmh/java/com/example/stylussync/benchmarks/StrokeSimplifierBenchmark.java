@@ -0,0 +1,121 @@
+package com.example.stylussync.benchmarks;
+
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeSimplifier;
+import com.example.stylussync.network.BinaryWireCodec;
+import com.example.stylussync.network.JsonWireCodec;
+import com.example.stylussync.network.WireMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔画精简。JMH 只测每笔的耗时；精简的效果（保留的点数、编码后的大小、与原笔画的偏差）不是耗时，
+ * 由 {@link #main} 在同一批手写笔画上算出并打印：
+ *   ./gradlew :benchmarks:report -Preport=StrokeSimplifierBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StrokeSimplifierBenchmark {
+
+    private static final int STROKES = 2000;
+    private static final long SEED = 16;
+
+    @Param({"SAVE", "NETWORK", "NETWORK_SEVERE"})
+    public String config;
+
+    private StrokeSimplifier.Config simplifierConfig;
+    private List<Stroke> strokes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        simplifierConfig = config(config);
+        strokes = Documents.handwritingDocument(STROKES, SEED);
+    }
+
+    @Benchmark
+    public Stroke simplify() {
+        Stroke stroke = strokes.get(next);
+        next = (next + 1) % strokes.size();
+        return StrokeSimplifier.simplify(stroke, simplifierConfig);
+    }
+
+    static StrokeSimplifier.Config config(String name) {
+        switch (name) {
+            case "SAVE":
+                return StrokeSimplifier.Config.SAVE;
+            case "NETWORK":
+                return StrokeSimplifier.Config.NETWORK;
+            case "NETWORK_SEVERE":
+                return StrokeSimplifier.Config.NETWORK_SEVERE;
+            default:
+                throw new IllegalArgumentException("Unknown config: " + name);
+        }
+    }
+
+    /** 各配置保留的比例（点数、binary-v1 与 JSON 编码大小）和偏差：每个原始点到精简后折线的距离 */
+    public static void main(String[] args) {
+        List<Stroke> strokes = Documents.handwritingDocument(STROKES, SEED);
+        BinaryWireCodec binaryCodec = new BinaryWireCodec();
+        JsonWireCodec jsonCodec = new JsonWireCodec();
+        long points = 0, binaryBytes = 0, jsonBytes = 0;
+        for (Stroke stroke : strokes) {
+            points += stroke.size();
+            binaryBytes += binaryCodec.encode(WireMessage.draw(stroke)).length;
+            jsonBytes += jsonCodec.encode(WireMessage.draw(stroke)).length();
+        }
+        System.out.println(strokes.size() + " strokes, " + points + " points, binary " + binaryBytes
+                + " bytes, json " + jsonBytes + " bytes");
+        System.out.println(String.format("%-16s %8s %8s %8s %16s %12s",
+                "config", "points", "binary", "json", "err mean/max", "us/stroke"));
+        for (String name : new String[] {"SAVE", "NETWORK", "NETWORK_SEVERE"}) {
+            StrokeSimplifier.Config config = config(name);
+            long keptPoints = 0, keptBinary = 0, keptJson = 0, simplifyNanos = 0;
+            double errorSum = 0;
+            float errorMax = 0f;
+            for (Stroke stroke : strokes) {
+                long start = System.nanoTime();
+                Stroke simplified = StrokeSimplifier.simplify(stroke, config);
+                simplifyNanos += System.nanoTime() - start;
+                keptPoints += simplified.size();
+                keptBinary += binaryCodec.encode(WireMessage.draw(simplified)).length;
+                keptJson += jsonCodec.encode(WireMessage.draw(simplified)).length();
+                for (int i = 0; i < stroke.size(); i++) {
+                    float error = distanceToPolyline(stroke.getX(i), stroke.getY(i), simplified);
+                    errorSum += error;
+                    errorMax = Math.max(errorMax, error);
+                }
+            }
+            System.out.println(String.format("%-16s %7.1f%% %7.1f%% %7.1f%% %8.2f/%.2f px %12.1f",
+                    name, 100.0 * keptPoints / points, 100.0 * keptBinary / binaryBytes, 100.0 * keptJson / jsonBytes,
+                    errorSum / points, errorMax, simplifyNanos / 1000.0 / strokes.size()));
+        }
+    }
+
+    private static float distanceToPolyline(float px, float py, Stroke polyline) {
+        if (polyline.size() == 1) {
+            return (float) Math.hypot(px - polyline.getX(0), py - polyline.getY(0));
+        }
+        float best = Float.MAX_VALUE;
+        for (int j = 1; j < polyline.size(); j++) {
+            float ax = polyline.getX(j - 1), ay = polyline.getY(j - 1);
+            float dx = polyline.getX(j) - ax, dy = polyline.getY(j) - ay;
+            float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared > 0 ? Math.max(0f, Math.min(1f, ((px - ax) * dx + (py - ay) * dy) / lengthSquared)) : 0f;
+            float ex = ax + t * dx - px, ey = ay + t * dy - py;
+            best = Math.min(best, ex * ex + ey * ey);
+        }
+        return (float) Math.sqrt(best);
+    }
+}
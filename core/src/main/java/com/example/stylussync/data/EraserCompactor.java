@@ -0,0 +1,395 @@
+package com.example.stylussync.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把橡皮擦笔画落实为几何编辑：橡皮擦下方（绘制顺序更早）的笔画中被擦掉的部分直接删去，
+ * 笔画被擦断时拆成几段，整笔都被擦掉时删除，之后橡皮擦本身不再需要重放。
+ * <p>
+ * 沿笔画每隔 {@value #SAMPLE_STEP} 像素取样，按样本处的圆（半径为该处线宽的一半）与橡皮擦覆盖区域的关系分三类：
+ * 完全在外、部分重叠、完全被覆盖。一段连续的重叠样本中只要有完全被覆盖的，就整段删掉，
+ * 切口取在笔画圆刚好碰不到橡皮擦的位置，于是剩下的部分与橡皮擦不再重叠，
+ * 差别只在切口形状：原来被橡皮擦的圆弧切开，现在是笔画自己的圆头，最多相差半个线宽。
+ * 只是擦边（整段重叠都没有完全被覆盖）的部分保留原样，这时橡皮擦也保留，照旧重放。
+ * <p>
+ * 线宽规则与绘制相同：max(1, pressure * baseStrokeWidth)；少于两个点的笔画（包括橡皮擦）不绘制任何内容。
+ * 纯 Java，不修改输入的笔画；未受影响的笔画原样放回结果。
+ */
+public final class EraserCompactor {
+
+    // 沿笔画取样的间隔（像素）
+    static final float SAMPLE_STEP = 0.5f;
+    // 切口位置二分到这个精度（像素）
+    private static final float BOUNDARY_TOLERANCE = 0.05f;
+    // 离橡皮擦超过这个距离（像素）时不再精确计算，只用来跳过后面的样本
+    private static final float SKIP_LIMIT = 16f;
+
+    private static final int CLEAN = 0;
+    private static final int PARTIAL = 1;
+    private static final int COVERED = 2;
+
+    /** 压缩结果与统计 */
+    public static final class Result {
+        public final List<Stroke> strokes;
+        public int strokesBefore;
+        public int strokesAfter;
+        public long pointsBefore;
+        public long pointsAfter;
+        public int erasersApplied;   // 处理过的橡皮擦
+        public int erasersRemoved;   // 处理后不再需要、已删除的橡皮擦
+        public int strokesRemoved;   // 整笔被擦掉的笔画
+        public int strokesSplit;     // 被擦成多段的笔画
+        public int strokesTrimmed;   // 被擦掉一部分、仍是一段的笔画
+
+        Result(List<Stroke> strokes) {
+            this.strokes = strokes;
+        }
+
+        /** 有没有任何变化；没有时 strokes 与输入逐个相同 */
+        public boolean changed() {
+            return erasersRemoved > 0 || strokesRemoved > 0 || strokesSplit > 0 || strokesTrimmed > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "EraserCompactor.Result{strokes=" + strokesBefore + "->" + strokesAfter
+                    + ", points=" + pointsBefore + "->" + pointsAfter
+                    + ", erasers(applied/removed)=" + erasersApplied + "/" + erasersRemoved
+                    + ", removed=" + strokesRemoved + ", split=" + strokesSplit + ", trimmed=" + strokesTrimmed + "}";
+        }
+    }
+
+    private EraserCompactor() {
+    }
+
+    public static Result compact(List<Stroke> strokes) {
+        return compact(strokes, 0);
+    }
+
+    /**
+     * 按绘制顺序处理 strokes 中下标不小于 firstEraser 的橡皮擦。更早的橡皮擦视为已经处理过（或必须保留），原样保留。
+     * @return 新的笔画列表，相对顺序不变
+     */
+    public static Result compact(List<Stroke> strokes, int firstEraser) {
+        List<Stroke> out = new ArrayList<>(strokes.size());
+        Result result = new Result(out);
+        result.strokesBefore = strokes.size();
+        List<Stroke> pieces = new ArrayList<>();
+        for (int index = 0; index < strokes.size(); index++) {
+            Stroke stroke = strokes.get(index);
+            result.pointsBefore += stroke.size();
+            if (!stroke.isEraser || index < firstEraser) {
+                out.add(stroke);
+                continue;
+            }
+            result.erasersApplied++;
+            boolean eraserNeeded = false;
+            if (stroke.size() >= 2) {
+                // 在 out 上原地替换，之后的橡皮擦看到的是已经擦过的结果
+                for (int i = 0; i < out.size(); i++) {
+                    Stroke target = out.get(i);
+                    if (target.isEraser || !overlapsBounds(target, stroke)) {
+                        continue;
+                    }
+                    pieces.clear();
+                    int outcome = erase(target, stroke, pieces);
+                    if (outcome == UNCHANGED) {
+                        continue;
+                    }
+                    if (outcome == GRAZED) {
+                        eraserNeeded = true;
+                    }
+                    if (pieces.size() == 1 && pieces.get(0) == target) {
+                        continue;
+                    }
+                    if (pieces.isEmpty()) {
+                        result.strokesRemoved++;
+                    } else if (pieces.size() > 1) {
+                        result.strokesSplit++;
+                    } else {
+                        result.strokesTrimmed++;
+                    }
+                    out.remove(i);
+                    out.addAll(i, pieces);
+                    i += pieces.size() - 1;
+                }
+            }
+            if (eraserNeeded) {
+                out.add(stroke);
+            } else {
+                result.erasersRemoved++;
+            }
+        }
+        result.strokesAfter = out.size();
+        for (Stroke stroke : out) {
+            result.pointsAfter += stroke.size();
+        }
+        return result;
+    }
+
+    // erase 的返回值
+    private static final int UNCHANGED = 0; // 与橡皮擦不重叠，pieces 为空
+    private static final int EDITED = 1;    // pieces 为擦除后剩下的各段（可能为空，也可能只有原笔画）
+    private static final int GRAZED = 2;    // 同 EDITED，但剩下的部分仍与橡皮擦部分重叠，橡皮擦需要保留
+
+    /** 用 eraser 擦 target，剩下的各段按顺序写入 pieces */
+    private static int erase(Stroke target, Stroke eraser, List<Stroke> pieces) {
+        float[] xs = target.xArray();
+        float[] ys = target.yArray();
+        float[] pressures = target.pressureArray();
+        int size = target.size();
+        float base = target.baseStrokeWidth;
+
+        if (size < 2) {
+            // 不绘制任何内容，整笔被覆盖时顺手删掉，否则不动
+            if (size == 1 && classify(eraser, xs[0], ys[0], radius(pressures[0], base)) == COVERED) {
+                return EDITED;
+            }
+            return UNCHANGED;
+        }
+
+        // 取样：位置用参数 s 表示，s = 段号 + 段内比例，整数 s 就是原始点
+        int segments = size - 1;
+        int sampleCount = 1;
+        int[] perSegment = new int[segments];
+        float[] lengths = new float[segments];
+        for (int i = 0; i < segments; i++) {
+            lengths[i] = (float) Math.hypot(xs[i + 1] - xs[i], ys[i + 1] - ys[i]);
+            perSegment[i] = Math.max(1, (int) Math.ceil(lengths[i] / SAMPLE_STEP));
+            sampleCount += perSegment[i];
+        }
+        double[] positions = new double[sampleCount];
+        int[] classes = new int[sampleCount];
+        float[] point = new float[3];
+        boolean any = false;
+        int n = 0;
+        for (int i = 0; i < segments; i++) {
+            // 离橡皮擦还有 margin 的余量时，沿本段再走 margin / (1 + 半径变化率) 都不会碰到，这些样本不用再算
+            float radiusRate = Math.abs(pressures[i + 1] - pressures[i]) * base / 2 / Math.max(lengths[i], 1e-3f);
+            float step = lengths[i] / perSegment[i];
+            float skip = 0;
+            for (int k = i == 0 ? 0 : 1; k <= perSegment[i]; k++) {
+                double s = i + (double) k / perSegment[i];
+                positions[n] = s;
+                if (skip >= step) {
+                    skip -= step;
+                    classes[n++] = CLEAN;
+                    continue;
+                }
+                interpolate(target, s, point);
+                float r = radius(point[2], base);
+                float clearance = clearanceBound(eraser, point[0], point[1], r + SKIP_LIMIT);
+                if (clearance >= r) {
+                    classes[n] = CLEAN;
+                    skip = (clearance - r) / (1 + radiusRate);
+                } else {
+                    classes[n] = clearance <= -r ? COVERED : PARTIAL;
+                    any = true;
+                    skip = 0;
+                }
+                n++;
+            }
+        }
+        if (!any) {
+            return UNCHANGED;
+        }
+
+        // 找出连续的非 CLEAN 样本段：含 COVERED 的删掉，只含 PARTIAL 的保留
+        boolean grazed = false;
+        boolean cut = false;
+        double keepFrom = 0;        // 当前保留段的起点
+        boolean keeping = true;
+        int j = 0;
+        while (j < sampleCount) {
+            if (classes[j] == CLEAN) {
+                j++;
+                continue;
+            }
+            int runStart = j;
+            boolean covered = false;
+            while (j < sampleCount && classes[j] != CLEAN) {
+                covered |= classes[j] == COVERED;
+                j++;
+            }
+            int runEnd = j; // 不含
+            if (!covered) {
+                grazed = true;
+                continue;
+            }
+            cut = true;
+            // 切口：上一个 CLEAN 样本与本段第一个样本之间、本段最后一个样本与下一个 CLEAN 样本之间
+            if (keeping && runStart > 0) {
+                double end = boundary(target, eraser, positions[runStart - 1], positions[runStart]);
+                addPiece(target, keepFrom, end, pieces);
+            }
+            if (runEnd < sampleCount) {
+                keepFrom = boundary(target, eraser, positions[runEnd], positions[runEnd - 1]);
+                keeping = true;
+            } else {
+                keeping = false;
+            }
+        }
+        if (!cut) {
+            pieces.add(target);
+            return GRAZED;
+        }
+        if (keeping) {
+            addPiece(target, keepFrom, segments, pieces);
+        }
+        // 第一段沿用原笔画的 id，其余各段用新 id
+        for (int p = 1; p < pieces.size(); p++) {
+            pieces.get(p).id = Stroke.newId();
+        }
+        return grazed ? GRAZED : EDITED;
+    }
+
+    /**
+     * 在 [clean, other] 之间二分出笔画圆刚好碰到橡皮擦的位置，返回仍在 CLEAN 一侧的参数。
+     * clean 处样本为 CLEAN，other 处不是。
+     */
+    private static double boundary(Stroke target, Stroke eraser, double clean, double other) {
+        float[] point = new float[3];
+        interpolate(target, clean, point);
+        float x0 = point[0], y0 = point[1];
+        interpolate(target, other, point);
+        double length = Math.hypot(point[0] - x0, point[1] - y0);
+        double a = clean, b = other;
+        while (length * Math.abs(b - a) > BOUNDARY_TOLERANCE) {
+            double middle = (a + b) / 2;
+            interpolate(target, middle, point);
+            if (classify(eraser, point[0], point[1], radius(point[2], target.baseStrokeWidth)) == CLEAN) {
+                a = middle;
+            } else {
+                b = middle;
+            }
+        }
+        return a;
+    }
+
+    /** 把 [from, to] 这一段（包含其间的原始点）拷贝成新笔画；不足两个点时不绘制，丢掉 */
+    private static void addPiece(Stroke target, double from, double to, List<Stroke> pieces) {
+        if (to <= from) {
+            return;
+        }
+        int first = (int) Math.floor(from) + 1;
+        int last = (int) Math.ceil(to) - 1;
+        Stroke piece = new Stroke(target.color, target.baseStrokeWidth, false, Math.max(2, last - first + 3));
+        piece.id = target.id;
+        appendInterpolated(target, from, piece);
+        for (int i = Math.max(first, 0); i <= last && i < target.size(); i++) {
+            appendVertex(target, i, piece);
+        }
+        appendInterpolated(target, to, piece);
+        if (piece.size() < 2) {
+            return;
+        }
+        piece.trimToSize();
+        pieces.add(piece);
+    }
+
+    private static void appendVertex(Stroke target, int index, Stroke piece) {
+        if (target.hasTimestamps()) {
+            piece.addPoint(target.getX(index), target.getY(index), target.getPressure(index), target.getTimestamp(index));
+        } else {
+            piece.addPoint(target.getX(index), target.getY(index), target.getPressure(index));
+        }
+    }
+
+    private static void appendInterpolated(Stroke target, double s, Stroke piece) {
+        int i = (int) Math.floor(s);
+        if (i >= target.size() - 1 || s == i) {
+            appendVertex(target, Math.min(i, target.size() - 1), piece);
+            return;
+        }
+        float t = (float) (s - i);
+        float x = target.getX(i) + (target.getX(i + 1) - target.getX(i)) * t;
+        float y = target.getY(i) + (target.getY(i + 1) - target.getY(i)) * t;
+        float pressure = target.getPressure(i) + (target.getPressure(i + 1) - target.getPressure(i)) * t;
+        if (target.hasTimestamps()) {
+            long time = target.getTimestamp(i) + Math.round((target.getTimestamp(i + 1) - target.getTimestamp(i)) * (double) t);
+            piece.addPoint(x, y, pressure, time);
+        } else {
+            piece.addPoint(x, y, pressure);
+        }
+    }
+
+    /** 参数 s 处的 x、y、pressure */
+    private static void interpolate(Stroke stroke, double s, float[] out) {
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        int i = (int) Math.floor(s);
+        if (i >= stroke.size() - 1) {
+            int last = stroke.size() - 1;
+            out[0] = xs[last];
+            out[1] = ys[last];
+            out[2] = pressures[last];
+            return;
+        }
+        float t = (float) (s - i);
+        out[0] = xs[i] + (xs[i + 1] - xs[i]) * t;
+        out[1] = ys[i] + (ys[i + 1] - ys[i]) * t;
+        out[2] = pressures[i] + (pressures[i + 1] - pressures[i]) * t;
+    }
+
+    /** 以 (x, y) 为圆心、半径 r 的圆与橡皮擦覆盖区域的关系 */
+    private static int classify(Stroke eraser, float x, float y, float r) {
+        float clearance = clearanceBound(eraser, x, y, r);
+        if (clearance >= r) {
+            return CLEAN;
+        }
+        return clearance <= -r ? COVERED : PARTIAL;
+    }
+
+    /** 小于 limit 时与 {@link #clearance} 相同，否则只保证返回值不小于 limit 且不超过真实值 */
+    private static float clearanceBound(Stroke eraser, float x, float y, float limit) {
+        // 橡皮擦的包围盒已含最大半径，到包围盒的距离是下界
+        float dx = Math.max(0f, Math.max(eraser.getLeft() - x, x - eraser.getRight()));
+        float dy = Math.max(0f, Math.max(eraser.getTop() - y, y - eraser.getBottom()));
+        float outside = (float) Math.hypot(dx, dy);
+        if (outside >= limit) {
+            return outside;
+        }
+        return Math.min(clearance(eraser, x, y, limit), limit);
+    }
+
+    /**
+     * 点到橡皮擦覆盖区域边界的有向距离：各段上最近点的距离减去该处橡皮擦半径，取最小值；负数表示在区域内。
+     * 超过 limit 之后的精确值不需要，遇到不可能更近的段直接跳过。
+     */
+    private static float clearance(Stroke eraser, float px, float py, float limit) {
+        float[] xs = eraser.xArray();
+        float[] ys = eraser.yArray();
+        float[] pressures = eraser.pressureArray();
+        float base = eraser.baseStrokeWidth;
+        float best = Float.MAX_VALUE;
+        float maxRadius = eraser.boundsPadding();
+        for (int i = 1; i < eraser.size(); i++) {
+            float ax = xs[i - 1], ay = ys[i - 1];
+            float dx = xs[i] - ax, dy = ys[i] - ay;
+            // 粗略剔除：点到线段包围盒的距离已经超过 limit + 最大半径
+            float reach = limit + maxRadius;
+            if (px < Math.min(ax, xs[i]) - reach || px > Math.max(ax, xs[i]) + reach
+                    || py < Math.min(ay, ys[i]) - reach || py > Math.max(ay, ys[i]) + reach) {
+                continue;
+            }
+            float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0f;
+            t = Math.max(0f, Math.min(1f, t));
+            float distance = (float) Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+            float eraserRadius = radius(pressures[i - 1] + (pressures[i] - pressures[i - 1]) * t, base);
+            best = Math.min(best, distance - eraserRadius);
+        }
+        return best;
+    }
+
+    private static boolean overlapsBounds(Stroke a, Stroke b) {
+        return a.intersects(b.getLeft(), b.getTop(), b.getRight(), b.getBottom());
+    }
+
+    /** 与绘制相同的线宽规则，返回半个线宽 */
+    static float radius(float pressure, float baseWidth) {
+        return Math.max(1f, pressure * baseWidth) / 2;
+    }
+}
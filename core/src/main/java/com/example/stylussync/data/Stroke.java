@@ -0,0 +1,253 @@
+package com.example.stylussync.data;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一笔笔画。
+ * 点数据按列存放在可增长的 float 数组中（x / y / pressure，外加可选的时间戳列），
+ * 追加点时不产生任何对象分配；渲染、序列化、网络发送可直接遍历底层数组。
+ * JSON 格式与旧版 {@code List<Point>} 完全兼容，见 {@link StrokeTypeAdapter}。
+ */
+@JsonAdapter(StrokeTypeAdapter.class)
+public class Stroke {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    // id 限制在 53 位以内，接收端若是 JavaScript 也能用 Number 精确表示
+    private static final long MAX_ID = 1L << 53;
+
+    // --- 点数据（列存储），有效范围为 [0, size) ---
+    private float[] xs;
+    private float[] ys;
+    private float[] pressures;
+    // 时间戳列只有在第一次写入时间戳时才分配
+    private long[] timestamps;
+    private int size;
+
+    // --- 缓存的包围盒（只含点坐标），随追加增量更新 ---
+    private float minX = Float.POSITIVE_INFINITY;
+    private float minY = Float.POSITIVE_INFINITY;
+    private float maxX = Float.NEGATIVE_INFINITY;
+    private float maxY = Float.NEGATIVE_INFINITY;
+    private float maxPressure;
+
+    // 笔画的稳定 id，流式发送时接收端靠它把分批的点重新拼成一笔
+    public long id;
+    public int color;
+    public float baseStrokeWidth;
+    // 可选：增加一个字段判断是否为橡皮擦笔画
+    public boolean isEraser;
+
+    public Stroke(int color, float baseStrokeWidth, boolean isEraser) {
+        this(color, baseStrokeWidth, isEraser, DEFAULT_CAPACITY);
+    }
+
+    public Stroke(int color, float baseStrokeWidth, boolean isEraser, int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.pressures = new float[capacity];
+        this.id = newId();
+        this.color = color;
+        this.baseStrokeWidth = baseStrokeWidth;
+        this.isEraser = isEraser;
+    }
+
+    public static long newId() {
+        return ThreadLocalRandom.current().nextLong(1, MAX_ID);
+    }
+
+    // --- 追加 ---
+
+    public void addPoint(float x, float y, float pressure) {
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        pressures[size] = pressure;
+        if (timestamps != null) {
+            timestamps[size] = 0L;
+        }
+        size++;
+        includeInBounds(x, y, pressure);
+    }
+
+    public void addPoint(float x, float y, float pressure, long timestamp) {
+        ensureCapacity(size + 1);
+        if (timestamps == null) {
+            timestamps = new long[xs.length];
+        }
+        xs[size] = x;
+        ys[size] = y;
+        pressures[size] = pressure;
+        timestamps[size] = timestamp;
+        size++;
+        includeInBounds(x, y, pressure);
+    }
+
+    /**
+     * 批量追加 count 个点，只做一次扩容检查和数组拷贝。
+     * @param newTimestamps 可为 null，此时新点的时间戳记为 0（如果已有时间戳列）
+     */
+    public void addPoints(float[] newXs, float[] newYs, float[] newPressures, long[] newTimestamps, int count) {
+        if (count <= 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        if (newTimestamps != null && timestamps == null) {
+            timestamps = new long[xs.length];
+        }
+        System.arraycopy(newXs, 0, xs, size, count);
+        System.arraycopy(newYs, 0, ys, size, count);
+        System.arraycopy(newPressures, 0, pressures, size, count);
+        if (timestamps != null) {
+            if (newTimestamps != null) {
+                System.arraycopy(newTimestamps, 0, timestamps, size, count);
+            } else {
+                Arrays.fill(timestamps, size, size + count, 0L);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            includeInBounds(newXs[i], newYs[i], newPressures[i]);
+        }
+        size += count;
+    }
+
+    private void includeInBounds(float x, float y, float pressure) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        if (pressure > maxPressure) maxPressure = pressure;
+    }
+
+    // 兼容旧代码的写法，新代码请直接传入坐标
+    public void addPoint(Point point) {
+        addPoint(point.x, point.y, point.pressure);
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= xs.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, xs.length + (xs.length >> 1));
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        pressures = Arrays.copyOf(pressures, newCapacity);
+        if (timestamps != null) {
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+        }
+    }
+
+    /** 笔画结束后调用，释放多余的容量 */
+    public void trimToSize() {
+        if (size < xs.length) {
+            int capacity = Math.max(1, size);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            pressures = Arrays.copyOf(pressures, capacity);
+            if (timestamps != null) {
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+        }
+    }
+
+    // --- 读取 ---
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float getX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    public float getPressure(int index) {
+        checkIndex(index);
+        return pressures[index];
+    }
+
+    /** 没有时间戳列时返回 0 */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps != null ? timestamps[index] : 0L;
+    }
+
+    public boolean hasTimestamps() {
+        return timestamps != null;
+    }
+
+    // --- 包围盒：点坐标的范围向外扩展半个最大线宽，空笔画的包围盒为空 ---
+
+    /** 绘制时线宽为 max(1, pressure * baseStrokeWidth)，包围盒按最大压力外扩半个线宽 */
+    public float boundsPadding() {
+        return Math.max(1f, maxPressure * baseStrokeWidth) / 2;
+    }
+
+    public float getLeft() {
+        return minX - boundsPadding();
+    }
+
+    public float getTop() {
+        return minY - boundsPadding();
+    }
+
+    public float getRight() {
+        return maxX + boundsPadding();
+    }
+
+    public float getBottom() {
+        return maxY + boundsPadding();
+    }
+
+    public boolean intersects(float left, float top, float right, float bottom) {
+        if (size == 0) {
+            return false;
+        }
+        float padding = boundsPadding();
+        return minX - padding < right && maxX + padding > left
+                && minY - padding < bottom && maxY + padding > top;
+    }
+
+    // 会分配新对象，只用于非热点路径
+    public Point getPoint(int index) {
+        checkIndex(index);
+        return new Point(xs[index], ys[index], pressures[index]);
+    }
+
+    // --- 零拷贝访问：返回底层数组，只有 [0, size()) 范围内的数据有效，调用方不得修改 ---
+
+    public float[] xArray() {
+        return xs;
+    }
+
+    public float[] yArray() {
+        return ys;
+    }
+
+    public float[] pressureArray() {
+        return pressures;
+    }
+
+    /** 没有时间戳列时返回 null */
+    public long[] timestampArray() {
+        return timestamps;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.stylussync.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 笔画的均匀网格空间索引。
+ * 每笔按包围盒登记到覆盖的所有网格中；查询结果按插入顺序（即绘制顺序）返回，
+ * 因此可以直接用于局部重放。插入只发生在历史栈顶（新笔画、重做），所以插入顺序与绘制顺序一致。
+ * 非线程安全，由调用方保证在同一线程访问。
+ */
+public class StrokeIndex {
+
+    public static final float DEFAULT_CELL_SIZE = 256f;
+
+    private static final class Entry {
+        final Stroke stroke;
+        final long order;
+        int minCellX, minCellY, maxCellX, maxCellY;
+        // 本次查询是否已收集过，避免跨多个网格的笔画被重复返回
+        long queryStamp;
+
+        Entry(Stroke stroke, long order) {
+            this.stroke = stroke;
+            this.order = order;
+        }
+    }
+
+    private final float cellSize;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<Stroke, Entry> entries = new IdentityHashMap<>();
+    private long nextOrder;
+    private long queryStamp;
+
+    public StrokeIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public StrokeIndex(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(Stroke stroke) {
+        return entries.containsKey(stroke);
+    }
+
+    /** 把笔画加在绘制顺序的最上层 */
+    public void insert(Stroke stroke) {
+        if (stroke.isEmpty() || entries.containsKey(stroke)) {
+            return;
+        }
+        Entry entry = new Entry(stroke, nextOrder++);
+        entry.minCellX = cell(stroke.getLeft());
+        entry.minCellY = cell(stroke.getTop());
+        entry.maxCellX = cell(stroke.getRight());
+        entry.maxCellY = cell(stroke.getBottom());
+        for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                List<Entry> list = cells.get(key(cx, cy));
+                if (list == null) {
+                    list = new ArrayList<>(4);
+                    cells.put(key(cx, cy), list);
+                }
+                list.add(entry);
+            }
+        }
+        entries.put(stroke, entry);
+    }
+
+    public void remove(Stroke stroke) {
+        Entry entry = entries.remove(stroke);
+        if (entry == null) {
+            return;
+        }
+        for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                long key = key(cx, cy);
+                List<Entry> list = cells.get(key);
+                if (list != null) {
+                    list.remove(entry);
+                    if (list.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    /** 按绘制顺序重建索引 */
+    public void rebuild(List<Stroke> strokesInDrawingOrder) {
+        clear();
+        for (Stroke stroke : strokesInDrawingOrder) {
+            insert(stroke);
+        }
+    }
+
+    /**
+     * 范围查询：返回包围盒与矩形相交的所有笔画，按绘制顺序排列。
+     * @param out 结果追加到该列表，返回值即为 out
+     */
+    public List<Stroke> query(float left, float top, float right, float bottom, List<Stroke> out) {
+        List<Entry> hits = collect(left, top, right, bottom);
+        for (Entry entry : hits) {
+            out.add(entry.stroke);
+        }
+        return out;
+    }
+
+    /** 与矩形相交的笔画数，不排序 */
+    public int count(float left, float top, float right, float bottom) {
+        return collect(left, top, right, bottom).size();
+    }
+
+    /**
+     * 命中测试：返回最上层的、中心线距 (x, y) 不超过 tolerance + 半个线宽的非橡皮擦笔画，没有则返回 null。
+     */
+    public Stroke hitTest(float x, float y, float tolerance) {
+        List<Entry> hits = collect(x - tolerance, y - tolerance, x + tolerance, y + tolerance);
+        for (int i = hits.size() - 1; i >= 0; i--) {
+            Stroke stroke = hits.get(i).stroke;
+            if (!stroke.isEraser && distanceToStroke(stroke, x, y) <= tolerance + stroke.boundsPadding()) {
+                return stroke;
+            }
+        }
+        return null;
+    }
+
+    private List<Entry> collect(float left, float top, float right, float bottom) {
+        List<Entry> hits = new ArrayList<>();
+        if (entries.isEmpty() || right <= left || bottom <= top) {
+            return hits;
+        }
+        long stamp = ++queryStamp;
+        int minCellX = cell(left), maxCellX = cell(right);
+        int minCellY = cell(top), maxCellY = cell(bottom);
+        // 查询范围比已有网格还多时，直接遍历全部笔画更快
+        if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > cells.size()) {
+            for (Entry entry : entries.values()) {
+                if (entry.stroke.intersects(left, top, right, bottom)) {
+                    hits.add(entry);
+                }
+            }
+        } else {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                for (int cy = minCellY; cy <= maxCellY; cy++) {
+                    List<Entry> list = cells.get(key(cx, cy));
+                    if (list == null) {
+                        continue;
+                    }
+                    for (Entry entry : list) {
+                        if (entry.queryStamp != stamp) {
+                            entry.queryStamp = stamp;
+                            if (entry.stroke.intersects(left, top, right, bottom)) {
+                                hits.add(entry);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(hits, (a, b) -> Long.compare(a.order, b.order));
+        return hits;
+    }
+
+    static float distanceToStroke(Stroke stroke, float px, float py) {
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        int size = stroke.size();
+        if (size == 1) {
+            return (float) Math.hypot(px - xs[0], py - ys[0]);
+        }
+        float best = Float.MAX_VALUE;
+        for (int i = 1; i < size; i++) {
+            best = Math.min(best, distanceToSegment(px, py, xs[i - 1], ys[i - 1], xs[i], ys[i]));
+        }
+        return best;
+    }
+
+    static float distanceToSegment(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        return (float) Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
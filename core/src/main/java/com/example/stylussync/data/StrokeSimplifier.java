@@ -0,0 +1,186 @@
+package com.example.stylussync.data;
+
+/**
+ * 笔画点的精简，两步：
+ * 1. 过滤：与上一个保留点距离小于 minDistancePx、或间隔短于 minIntervalMs 的点丢掉，
+ *    但压感变化引起的线宽变化超过容差时保留；
+ * 2. Ramer–Douglas–Peucker：点到简化后线段的距离在容差以内就去掉。误差同时考虑位置和压感：
+ *    线宽为 pressure * baseStrokeWidth，压感与线段上插值的偏差换算成半个线宽的像素差，取两者较大者。
+ * 被过滤掉的点不再参与第二步，所以总误差上限约为 minDistancePx + tolerancePx。首尾两点始终保留。
+ * 可以整笔精简（{@link #simplify}），也可以在绘制过程中逐批精简（{@link #simplifyBatch}）。
+ * 纯 Java，可在任意线程调用；不修改输入的笔画。
+ */
+public final class StrokeSimplifier {
+
+    /** 精简参数，保存和网络发送各用一份 */
+    public static final class Config {
+        /** 不精简 */
+        public static final Config NONE = new Config(0f, 0, 0f);
+        /** 保存：偏差不到一个像素，看不出差别 */
+        public static final Config SAVE = new Config(0.5f, 0, 0.35f);
+        /** 实时发送：接收端只用于显示，允许一个像素以内的误差 */
+        public static final Config NETWORK = new Config(1f, 4, 0.75f);
+        /** 链路严重拥塞时的发送 */
+        public static final Config NETWORK_SEVERE = new Config(4f, 8, 2f);
+
+        public final float minDistancePx;
+        public final long minIntervalMs;
+        public final float tolerancePx;
+
+        public Config(float minDistancePx, long minIntervalMs, float tolerancePx) {
+            this.minDistancePx = Math.max(0f, minDistancePx);
+            this.minIntervalMs = Math.max(0, minIntervalMs);
+            this.tolerancePx = Math.max(0f, tolerancePx);
+        }
+
+        public boolean isEnabled() {
+            return minDistancePx > 0 || minIntervalMs > 0 || tolerancePx > 0;
+        }
+    }
+
+    private StrokeSimplifier() {
+    }
+
+    /**
+     * 整笔精简。
+     * @return 新的笔画，id 与样式不变；没有点可去掉时直接返回原笔画
+     */
+    public static Stroke simplify(Stroke stroke, Config config) {
+        int size = stroke.size();
+        if (!config.isEnabled() || size <= 2) {
+            return stroke;
+        }
+        int[] kept = new int[size];
+        int count = select(stroke, -1, 0, size, config, kept);
+        if (count == size) {
+            return stroke;
+        }
+        return copyPoints(stroke, kept, count);
+    }
+
+    /**
+     * 精简正在绘制的笔画中的一批点 [from, to)，结果拷贝成一批新的点。
+     * 上一批最后发出的点 anchor 作为固定起点参与误差计算但不输出，本批最后一个点总是保留，
+     * 因此逐批精简的结果首尾相接。
+     * @param anchor 上一批最后输出的点在 stroke 中的下标，第一批传 -1
+     */
+    public static Stroke simplifyBatch(Stroke stroke, int anchor, int from, int to, Config config) {
+        int[] kept = new int[Math.max(1, to - from)];
+        int count = select(stroke, anchor, from, to, config, kept);
+        return copyPoints(stroke, kept, count);
+    }
+
+    /**
+     * 选出 [from, to) 中要保留的点，下标按顺序写入 out。
+     * @return 保留的点数
+     */
+    static int select(Stroke stroke, int anchor, int from, int to, Config config, int[] out) {
+        if (to <= from) {
+            return 0;
+        }
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        long[] timestamps = stroke.timestampArray();
+        // 压感差换算成线宽一侧的像素差
+        float halfWidth = stroke.baseStrokeWidth / 2;
+
+        // --- 第一步：按距离与时间过滤，候选点（含 anchor）放在 candidates 中 ---
+        int[] candidates = new int[to - from + 1];
+        int n = 0;
+        if (anchor >= 0) {
+            candidates[n++] = anchor;
+        }
+        float minDistanceSquared = config.minDistancePx * config.minDistancePx;
+        for (int i = from; i < to; i++) {
+            if (n > 0 && i < to - 1) {
+                int last = candidates[n - 1];
+                float dx = xs[i] - xs[last], dy = ys[i] - ys[last];
+                boolean pressureChanged = Math.abs(pressures[i] - pressures[last]) * halfWidth > config.tolerancePx;
+                boolean tooClose = dx * dx + dy * dy < minDistanceSquared;
+                boolean tooSoon = timestamps != null && config.minIntervalMs > 0
+                        && timestamps[i] - timestamps[last] < config.minIntervalMs;
+                if ((tooClose || tooSoon) && !pressureChanged) {
+                    continue;
+                }
+            }
+            candidates[n++] = i;
+        }
+
+        // --- 第二步：RDP，用显式栈代替递归，长笔画不会栈溢出 ---
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        if (config.tolerancePx > 0 && n > 2) {
+            int[] stack = new int[2 * n];
+            int top = 0;
+            stack[top++] = 0;
+            stack[top++] = n - 1;
+            while (top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                float maxError = config.tolerancePx;
+                int split = -1;
+                for (int k = start + 1; k < end; k++) {
+                    float error = error(xs, ys, pressures, halfWidth,
+                            candidates[start], candidates[end], candidates[k]);
+                    if (error > maxError) {
+                        maxError = error;
+                        split = k;
+                    }
+                }
+                if (split >= 0) {
+                    keep[split] = true;
+                    stack[top++] = start;
+                    stack[top++] = split;
+                    stack[top++] = split;
+                    stack[top++] = end;
+                }
+            }
+        } else {
+            for (int k = 0; k < n; k++) {
+                keep[k] = true;
+            }
+        }
+
+        int count = 0;
+        for (int k = anchor >= 0 ? 1 : 0; k < n; k++) {
+            if (keep[k]) {
+                out[count++] = candidates[k];
+            }
+        }
+        return count;
+    }
+
+    /** 点 k 相对线段 a-b 的误差（像素）：到线段的距离与压感插值偏差换算的线宽差，取较大者 */
+    private static float error(float[] xs, float[] ys, float[] pressures, float halfWidth, int a, int b, int k) {
+        float ax = xs[a], ay = ys[a];
+        float dx = xs[b] - ax, dy = ys[b] - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? ((xs[k] - ax) * dx + (ys[k] - ay) * dy) / lengthSquared : 0f;
+        t = Math.max(0f, Math.min(1f, t));
+        float ex = ax + t * dx - xs[k];
+        float ey = ay + t * dy - ys[k];
+        float distance = (float) Math.sqrt(ex * ex + ey * ey);
+        float pressure = pressures[a] + t * (pressures[b] - pressures[a]);
+        return Math.max(distance, Math.abs(pressures[k] - pressure) * halfWidth);
+    }
+
+    private static Stroke copyPoints(Stroke stroke, int[] indices, int count) {
+        Stroke result = new Stroke(stroke.color, stroke.baseStrokeWidth, stroke.isEraser, Math.max(1, count));
+        result.id = stroke.id;
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        long[] timestamps = stroke.timestampArray();
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            if (timestamps != null) {
+                result.addPoint(xs[index], ys[index], pressures[index], timestamps[index]);
+            } else {
+                result.addPoint(xs[index], ys[index], pressures[index]);
+            }
+        }
+        return result;
+    }
+}
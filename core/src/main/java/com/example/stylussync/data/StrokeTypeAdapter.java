@@ -0,0 +1,132 @@
+package com.example.stylussync.data;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Stroke 的 Gson 适配器，直接在列数组和 JSON 流之间读写，不经过反射也不创建 Point 对象。
+ * 输出格式与旧版保持一致：
+ * {"points":[{"x":..,"y":..,"pressure":..}],"color":..,"baseStrokeWidth":..,"isEraser":..}
+ * 有时间戳列时，每个点额外带一个 "t" 字段；笔画额外带一个 "id" 字段，旧的读取方会忽略它们。
+ * 读取没有 "id" 的旧文件时，笔画保留构造时生成的新 id。
+ */
+public class StrokeTypeAdapter extends TypeAdapter<Stroke> {
+
+    @Override
+    public void write(JsonWriter out, Stroke stroke) throws IOException {
+        if (stroke == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("points");
+        writePoints(out, stroke, 0, stroke.size());
+        out.name("color").value(stroke.color);
+        out.name("baseStrokeWidth").value(stroke.baseStrokeWidth);
+        out.name("isEraser").value(stroke.isEraser);
+        out.name("id").value(stroke.id);
+        out.endObject();
+    }
+
+    /** 写出 [from, to) 范围内的点数组，供需要只发送部分点的调用方复用 */
+    public static void writePoints(JsonWriter out, Stroke stroke, int from, int to) throws IOException {
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        long[] timestamps = stroke.timestampArray();
+        out.beginArray();
+        for (int i = from; i < to; i++) {
+            out.beginObject();
+            out.name("x").value(xs[i]);
+            out.name("y").value(ys[i]);
+            out.name("pressure").value(pressures[i]);
+            if (timestamps != null) {
+                out.name("t").value(timestamps[i]);
+            }
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    @Override
+    public Stroke read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        // 颜色等字段可能出现在 points 之后，先建好笔画再回填
+        Stroke stroke = new Stroke(0, 0f, false);
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "points":
+                    readPoints(in, stroke);
+                    break;
+                case "color":
+                    stroke.color = in.nextInt();
+                    break;
+                case "baseStrokeWidth":
+                    stroke.baseStrokeWidth = (float) in.nextDouble();
+                    break;
+                case "isEraser":
+                    stroke.isEraser = in.nextBoolean();
+                    break;
+                case "id":
+                    stroke.id = in.nextLong();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        stroke.trimToSize();
+        return stroke;
+    }
+
+    /** 读取点数组并追加到 stroke，与 {@link #writePoints} 互逆 */
+    public static void readPoints(JsonReader in, Stroke stroke) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            float x = 0f, y = 0f, pressure = 0f;
+            long t = 0L;
+            boolean hasTimestamp = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "x":
+                        x = (float) in.nextDouble();
+                        break;
+                    case "y":
+                        y = (float) in.nextDouble();
+                        break;
+                    case "pressure":
+                        pressure = (float) in.nextDouble();
+                        break;
+                    case "t":
+                        t = in.nextLong();
+                        hasTimestamp = true;
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            if (hasTimestamp) {
+                stroke.addPoint(x, y, pressure, t);
+            } else {
+                stroke.addPoint(x, y, pressure);
+            }
+        }
+        in.endArray();
+    }
+}
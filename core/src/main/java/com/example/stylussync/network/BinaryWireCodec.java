@@ -0,0 +1,343 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 二进制协议 binary-v1，通过 WebSocket 二进制帧发送。
+ *
+ * 帧头：version(1 字节) | type(1 字节) | flags(1 字节)，flags 含 FLAG_MESSAGE_SEQ 时紧跟一个 varint 消息序号，
+ * 之后按类型依次写入字段：
+ * <pre>
+ *   DRAW          id, color, width, pointCount, points
+ *   STROKE_BEGIN  id, color, width
+ *   STROKE_POINTS id, seq, offset, pointCount, points
+ *   STROKE_END    id, pointCount
+ *   CONTROL       UTF-8 事件名（varint 长度 + 字节）
+ * </pre>
+ * id / seq / offset / 点数为无符号 varint；color 为 4 字节大端；width 量化到 1/16 像素后写成 varint。
+ * 点数据：x、y 量化到 1/8 像素，pressure 量化到 1/1024，均与上一个点做差分后 zigzag + varint 编码；
+ * flags 含 FLAG_TIMESTAMPS 时每个点再追加一个毫秒时间戳差分。每批的第一个点与 0 做差分，因此每批都可独立解码。
+ */
+public class BinaryWireCodec {
+
+    public static final String PROTOCOL_NAME = "binary-v1";
+    public static final int VERSION = 1;
+
+    static final int TYPE_DRAW = 1;
+    static final int TYPE_STROKE_BEGIN = 2;
+    static final int TYPE_STROKE_POINTS = 3;
+    static final int TYPE_STROKE_END = 4;
+    static final int TYPE_CONTROL = 5;
+
+    static final int FLAG_ERASER = 1;
+    static final int FLAG_TIMESTAMPS = 1 << 1;
+    static final int FLAG_MESSAGE_SEQ = 1 << 2;
+
+    // 一个点至少占 x、y、pressure 三个单字节 varint
+    static final int MIN_POINT_BYTES = 3;
+
+    public static final float COORD_SCALE = 8f;
+    static final float PRESSURE_SCALE = 1024f;
+    static final float WIDTH_SCALE = 16f;
+
+    // 编码缓冲区复用，编码只在发送线程上进行
+    private final ByteWriter writer = new ByteWriter(256);
+
+    public byte[] encode(WireMessage message) {
+        return encode(message, -1);
+    }
+
+    /** @param messageSeq 连接层的消息序号，服务器据此确认与去重；小于 0 时不写 */
+    public byte[] encode(WireMessage message, long messageSeq) {
+        ByteWriter out = writer;
+        out.reset();
+        Stroke stroke = message.stroke;
+        int flags = 0;
+        if (stroke != null && stroke.isEraser) {
+            flags |= FLAG_ERASER;
+        }
+        boolean withPoints = message.type == WireMessage.Type.DRAW || message.type == WireMessage.Type.STROKE_POINTS;
+        if (withPoints && stroke.hasTimestamps()) {
+            flags |= FLAG_TIMESTAMPS;
+        }
+        if (messageSeq >= 0) {
+            flags |= FLAG_MESSAGE_SEQ;
+        }
+        out.writeByte(VERSION);
+        out.writeByte(typeCode(message.type));
+        out.writeByte(flags);
+        if (messageSeq >= 0) {
+            out.writeVarLong(messageSeq);
+        }
+
+        switch (message.type) {
+            case DRAW:
+                out.writeVarLong(stroke.id);
+                writeStyle(out, stroke);
+                out.writeVarLong(message.pointsInMessage());
+                writePoints(out, stroke, message.from, message.to);
+                break;
+            case STROKE_BEGIN:
+                out.writeVarLong(stroke.id);
+                writeStyle(out, stroke);
+                break;
+            case STROKE_POINTS:
+                out.writeVarLong(stroke.id);
+                out.writeVarLong(message.seq);
+                out.writeVarLong(message.offset);
+                out.writeVarLong(message.pointsInMessage());
+                writePoints(out, stroke, message.from, message.to);
+                break;
+            case STROKE_END:
+                out.writeVarLong(stroke.id);
+                out.writeVarLong(message.pointCount);
+                break;
+            case CONTROL:
+                byte[] name = message.event.getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(name.length);
+                out.writeBytes(name);
+                break;
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeStyle(ByteWriter out, Stroke stroke) {
+        out.writeInt(stroke.color);
+        out.writeVarLong(Math.round(stroke.baseStrokeWidth * WIDTH_SCALE));
+    }
+
+    private static void writePoints(ByteWriter out, Stroke stroke, int from, int to) {
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        long[] timestamps = stroke.timestampArray();
+        out.ensureCapacity((to - from) * (timestamps != null ? 10 : 8));
+        int lastX = 0, lastY = 0, lastP = 0;
+        long lastT = 0;
+        for (int i = from; i < to; i++) {
+            int qx = Math.round(xs[i] * COORD_SCALE);
+            int qy = Math.round(ys[i] * COORD_SCALE);
+            int qp = Math.round(pressures[i] * PRESSURE_SCALE);
+            out.writeZigZag(qx - lastX);
+            out.writeZigZag(qy - lastY);
+            out.writeZigZag(qp - lastP);
+            lastX = qx;
+            lastY = qy;
+            lastP = qp;
+            if (timestamps != null) {
+                out.writeZigZag(timestamps[i] - lastT);
+                lastT = timestamps[i];
+            }
+        }
+    }
+
+    private static int typeCode(WireMessage.Type type) {
+        switch (type) {
+            case DRAW:
+                return TYPE_DRAW;
+            case STROKE_BEGIN:
+                return TYPE_STROKE_BEGIN;
+            case STROKE_POINTS:
+                return TYPE_STROKE_POINTS;
+            case STROKE_END:
+                return TYPE_STROKE_END;
+            default:
+                return TYPE_CONTROL;
+        }
+    }
+
+    // --- 解码，与 encode 互逆；坐标精度为量化后的精度 ---
+
+    public WireMessage decode(byte[] frame) {
+        ByteReader in = new ByteReader(frame);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary protocol version: " + version);
+        }
+        int type = in.readByte();
+        int flags = in.readByte();
+        boolean isEraser = (flags & FLAG_ERASER) != 0;
+        boolean withTimestamps = (flags & FLAG_TIMESTAMPS) != 0;
+        if ((flags & FLAG_MESSAGE_SEQ) != 0) {
+            in.readVarLong(); // 消息序号只用于传输层确认，不属于消息内容
+        }
+
+        switch (type) {
+            case TYPE_DRAW: {
+                long id = in.readVarLong();
+                Stroke stroke = readStyle(in, id, isEraser, 0);
+                int count = in.readCount(MIN_POINT_BYTES);
+                stroke.ensureCapacity(count);
+                readPoints(in, stroke, count, withTimestamps);
+                return WireMessage.draw(stroke);
+            }
+            case TYPE_STROKE_BEGIN: {
+                long id = in.readVarLong();
+                return WireMessage.strokeBegin(readStyle(in, id, isEraser, 1));
+            }
+            case TYPE_STROKE_POINTS: {
+                long id = in.readVarLong();
+                int seq = (int) in.readVarLong();
+                int offset = (int) in.readVarLong();
+                int count = in.readCount(MIN_POINT_BYTES);
+                Stroke batch = new Stroke(0, 0f, isEraser, count);
+                batch.id = id;
+                readPoints(in, batch, count, withTimestamps);
+                return WireMessage.decodedPoints(batch, seq, offset);
+            }
+            case TYPE_STROKE_END: {
+                Stroke stroke = new Stroke(0, 0f, isEraser, 1);
+                stroke.id = in.readVarLong();
+                return WireMessage.strokeEnd(stroke, (int) in.readVarLong());
+            }
+            case TYPE_CONTROL: {
+                int length = (int) in.readVarLong();
+                return WireMessage.control(new String(in.readBytes(length), StandardCharsets.UTF_8));
+            }
+            default:
+                throw new IllegalArgumentException("Unknown binary message type: " + type);
+        }
+    }
+
+    private static Stroke readStyle(ByteReader in, long id, boolean isEraser, int capacity) {
+        int color = in.readInt();
+        float width = in.readVarLong() / WIDTH_SCALE;
+        Stroke stroke = new Stroke(color, width, isEraser, capacity);
+        stroke.id = id;
+        return stroke;
+    }
+
+    private static void readPoints(ByteReader in, Stroke stroke, int count, boolean withTimestamps) {
+        int x = 0, y = 0, p = 0;
+        long t = 0;
+        for (int i = 0; i < count; i++) {
+            x += (int) in.readZigZag();
+            y += (int) in.readZigZag();
+            p += (int) in.readZigZag();
+            if (withTimestamps) {
+                t += in.readZigZag();
+                stroke.addPoint(x / COORD_SCALE, y / COORD_SCALE, p / PRESSURE_SCALE, t);
+            } else {
+                stroke.addPoint(x / COORD_SCALE, y / COORD_SCALE, p / PRESSURE_SCALE);
+            }
+        }
+    }
+
+    // --- 字节读写 ---
+
+    static final class ByteWriter {
+        private byte[] buffer;
+        private int position;
+
+        ByteWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void reset() {
+            position = 0;
+        }
+
+        void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(position + extra, buffer.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    static final class ByteReader {
+        private final byte[] buffer;
+        private int position;
+
+        ByteReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int readInt() {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /**
+         * 读出一个元素个数，并按每个元素至少 minBytesPerItem 字节校验剩余数据放得下，
+         * 以免按对方给的个数预先分配内存。
+         */
+        int readCount(int minBytesPerItem) {
+            long count = readVarLong();
+            if (count < 0 || count > (buffer.length - position) / minBytesPerItem) {
+                throw new IllegalArgumentException("Count " + count + " exceeds message length");
+            }
+            return (int) count;
+        }
+
+        long readZigZag() {
+            long raw = readVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || position + length > buffer.length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+import com.example.stylussync.data.StrokeTypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Collection;
+
+/**
+ * 文本协议（旧服务器唯一支持的协议）。
+ * 直接用 JsonWriter 流式写出，不走 Gson 反射，格式与之前 Gson 生成的完全一致。
+ */
+public class JsonWireCodec {
+
+    public static final String PROTOCOL_NAME = "json";
+    private static final StrokeTypeAdapter STROKE_ADAPTER = new StrokeTypeAdapter();
+
+    public String encode(WireMessage message) {
+        return encode(message, -1);
+    }
+
+    /** @param messageSeq 连接层的消息序号，写成 "mseq" 字段；小于 0 时不写，旧服务器会忽略未知字段 */
+    public String encode(WireMessage message, long messageSeq) {
+        StringWriter buffer = new StringWriter(64 + message.pointsInMessage() * 48);
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.beginObject();
+            switch (message.type) {
+                case DRAW:
+                    out.name("type").value("draw");
+                    out.name("data");
+                    writeStroke(out, message.stroke, message.from, message.to);
+                    break;
+                case STROKE_BEGIN:
+                    out.name("type").value("stroke_begin");
+                    out.name("id").value(message.stroke.id);
+                    out.name("color").value(message.stroke.color);
+                    out.name("baseStrokeWidth").value(message.stroke.baseStrokeWidth);
+                    out.name("isEraser").value(message.stroke.isEraser);
+                    break;
+                case STROKE_POINTS:
+                    out.name("type").value("stroke_points");
+                    out.name("id").value(message.stroke.id);
+                    out.name("seq").value(message.seq);
+                    out.name("offset").value(message.offset);
+                    out.name("points");
+                    StrokeTypeAdapter.writePoints(out, message.stroke, message.from, message.to);
+                    break;
+                case STROKE_END:
+                    out.name("type").value("stroke_end");
+                    out.name("id").value(message.stroke.id);
+                    out.name("pointCount").value(message.pointCount);
+                    break;
+                case CONTROL:
+                    out.name("type").value("control");
+                    out.name("event_name").value(message.event);
+                    break;
+            }
+            if (messageSeq >= 0) {
+                out.name("mseq").value(messageSeq);
+            }
+            out.endObject();
+        } catch (IOException e) {
+            // StringWriter 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 解码服务器转发的绘制与控制消息，与 {@link #encode} 互逆；字段顺序任意，未知字段忽略。
+     * @return 不是这几类消息（例如 ack、hello_ack）时返回 null
+     * @throws IllegalArgumentException 消息格式错误
+     */
+    public WireMessage decode(String text) {
+        String type = null;
+        long id = 0;
+        int color = 0, seq = 0, offset = 0, pointCount = 0;
+        float width = 0f;
+        boolean isEraser = false;
+        String event = null;
+        Stroke data = null;
+        Stroke points = null;
+        try (JsonReader in = new JsonReader(new StringReader(text))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type":
+                        type = in.nextString();
+                        break;
+                    case "data":
+                        data = STROKE_ADAPTER.read(in);
+                        break;
+                    case "points":
+                        points = new Stroke(0, 0f, false);
+                        StrokeTypeAdapter.readPoints(in, points);
+                        break;
+                    case "id":
+                        id = in.nextLong();
+                        break;
+                    case "color":
+                        color = in.nextInt();
+                        break;
+                    case "baseStrokeWidth":
+                        width = (float) in.nextDouble();
+                        break;
+                    case "isEraser":
+                        isEraser = in.nextBoolean();
+                        break;
+                    case "seq":
+                        seq = in.nextInt();
+                        break;
+                    case "offset":
+                        offset = in.nextInt();
+                        break;
+                    case "pointCount":
+                        pointCount = in.nextInt();
+                        break;
+                    case "event_name":
+                        event = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed JSON message", e);
+        }
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case "draw":
+                if (data == null) {
+                    throw new IllegalArgumentException("draw without data");
+                }
+                return WireMessage.draw(data);
+            case "stroke_begin": {
+                Stroke stroke = new Stroke(color, width, isEraser, 1);
+                stroke.id = id;
+                return WireMessage.strokeBegin(stroke);
+            }
+            case "stroke_points": {
+                Stroke batch = points != null ? points : new Stroke(0, 0f, false, 1);
+                batch.id = id;
+                return WireMessage.decodedPoints(batch, seq, offset);
+            }
+            case "stroke_end": {
+                Stroke stroke = new Stroke(0, 0f, false, 1);
+                stroke.id = id;
+                return WireMessage.strokeEnd(stroke, pointCount);
+            }
+            case "control":
+                return WireMessage.control(event);
+            default:
+                return null;
+        }
+    }
+
+    public String encodeHello(String... protocols) {
+        return encodeHello(null, -1, protocols);
+    }
+
+    /**
+     * @param session 客户端会话 id，非空时同时声明支持消息确认（"features": ["ack"]），
+     *                服务器按 (session, mseq) 对重连后重放的消息去重
+     * @param lastAckedSeq 本会话已被确认的最大消息序号，没有时为 -1
+     */
+    public String encodeHello(String session, long lastAckedSeq, String... protocols) {
+        StringWriter buffer = new StringWriter(64);
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.beginObject();
+            out.name("type").value("hello");
+            out.name("protocols").beginArray();
+            for (String protocol : protocols) {
+                out.value(protocol);
+            }
+            out.endArray();
+            if (session != null) {
+                out.name("features").beginArray().value("ack").endArray();
+                out.name("session").value(session);
+                out.name("last_acked").value(lastAckedSeq);
+            }
+            out.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 快照同步的清单：{"type":"sync_manifest","sync":…,"doc":…,"count":…,"root":"十六进制","manifest":"base64"}，
+     * manifest 是 {@link SyncManifest#pack} 的结果。服务器回复 sync_need，见 {@link #encodeSyncNeed}。
+     */
+    public String encodeSyncManifest(long syncId, String document, SyncManifest manifest) {
+        StringWriter buffer = new StringWriter(128 + manifest.size() * 16);
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.beginObject();
+            out.name("type").value("sync_manifest");
+            out.name("sync").value(syncId);
+            out.name("doc").value(document);
+            out.name("count").value(manifest.size());
+            out.name("root").value(Long.toHexString(manifest.root()));
+            out.name("manifest").value(Base64.getEncoder().encodeToString(manifest.pack()));
+            out.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 服务器对清单的回复：{"type":"sync_need","sync":…,"all":true} 表示全部都要，
+     * 否则 "missing" 是 {@link SyncManifest#packIds} 打包的缺少的 id，空列表表示已是最新。
+     * 客户端只解码，这里的编码供测试与服务器端实现参考。
+     */
+    public String encodeSyncNeed(long syncId, boolean all, Collection<Long> missing) {
+        StringWriter buffer = new StringWriter(64 + missing.size() * 4);
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.beginObject();
+            out.name("type").value("sync_need");
+            out.name("sync").value(syncId);
+            if (all) {
+                out.name("all").value(true);
+            } else {
+                out.name("missing").value(Base64.getEncoder().encodeToString(SyncManifest.packIds(missing)));
+            }
+            out.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 快照同步的一块：{"type":"sync_chunk","sync":…,"index":…,"strokes":…,"sent":…,"total":…,"data":"base64"}，
+     * data 是 {@link SyncChunkCodec#pack} 的结果，sent/total 是含这一块在内已发送的笔画数与要发送的总数。
+     */
+    public String encodeSyncChunk(long syncId, int index, int strokeCount, int sent, int total, byte[] chunk) {
+        StringWriter buffer = new StringWriter(128 + chunk.length * 4 / 3);
+        try (JsonWriter out = new JsonWriter(buffer)) {
+            out.beginObject();
+            out.name("type").value("sync_chunk");
+            out.name("sync").value(syncId);
+            out.name("index").value(index);
+            out.name("strokes").value(strokeCount);
+            out.name("sent").value(sent);
+            out.name("total").value(total);
+            out.name("data").value(Base64.getEncoder().encodeToString(chunk));
+            out.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    private static void writeStroke(JsonWriter out, Stroke stroke, int from, int to) throws IOException {
+        out.beginObject();
+        out.name("points");
+        StrokeTypeAdapter.writePoints(out, stroke, from, to);
+        out.name("color").value(stroke.color);
+        out.name("baseStrokeWidth").value(stroke.baseStrokeWidth);
+        out.name("isEraser").value(stroke.isEraser);
+        out.name("id").value(stroke.id);
+        out.endObject();
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 把收到的绘制消息按笔画 id 合并成笔画，产出交给界面按顺序应用的操作。
+ * - 已完成或本地已有的笔画（服务器回显、重连后的重放）整笔丢弃；
+ * - stroke_points 按 offset 拼接：已收到的点跳过，提前到达的批次以及早于 stroke_begin 到达的点先暂存，
+ *   前面的点补齐后再接上；stroke_end 声明的点数收齐之前笔画不算完成；
+ * - 长时间没有新消息的未完成笔画被放弃，已经画出的进度由界面擦掉。
+ * 一次 {@link #process} 处理一批消息，同一笔在这一批中的多个批次只产出一次进度，
+ * 消息越密集批次越大，界面要做的事反而越少。
+ * 不是线程安全的，只在一个串行执行器上使用。纯 Java。
+ */
+public class RemoteStrokeAssembler {
+
+    public static final long DEFAULT_STALE_TIMEOUT_NANOS = 10_000_000_000L;
+
+    /** 交给界面应用的一步操作 */
+    public static final class Op {
+
+        public enum Kind {
+            PROGRESS,   // 未完成笔画的新点：stroke 是这一笔 [offset, offset + size) 的点的副本，带笔画的 id 与样式
+            COMPLETE,   // 笔画已完成：stroke 是整笔，之后不再被修改
+            ABANDON,    // 未完成笔画被放弃，之前画出的进度要去掉
+            CONTROL     // 控制事件
+        }
+
+        public final Kind kind;
+        public final long id;
+        public final Stroke stroke;
+        public final int offset;
+        public final String event;
+
+        private Op(Kind kind, long id, Stroke stroke, int offset, String event) {
+            this.kind = kind;
+            this.id = id;
+            this.stroke = stroke;
+            this.offset = offset;
+            this.event = event;
+        }
+    }
+
+    private static final class Pending {
+        final long id;
+        // stroke_begin 到达后创建，只含从 0 开始连续的点
+        Stroke stroke;
+        // 还接不上的批次：offset → 点
+        final TreeMap<Integer, Stroke> early = new TreeMap<>();
+        // stroke_end 声明的点数，未收到时为 -1
+        int expectedCount = -1;
+        // 已经作为进度交出的点数
+        int reported;
+        long lastActivityNanos;
+
+        Pending(long id) {
+            this.id = id;
+        }
+    }
+
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+    private final Set<Long> known = new HashSet<>();
+    private long staleTimeoutNanos = DEFAULT_STALE_TIMEOUT_NANOS;
+    private long duplicates;
+
+    public void setStaleTimeoutNanos(long staleTimeoutNanos) {
+        this.staleTimeoutNanos = staleTimeoutNanos;
+    }
+
+    /** 这一笔已在本地（本地画的或已应用的），之后收到它的消息都丢弃 */
+    public void markKnown(long id) {
+        known.add(id);
+        pending.remove(id);
+    }
+
+    /** 换了一页：已知笔画换成这一页的笔画，未完成的远端笔画继续拼接 */
+    public void resetKnown(Collection<Long> ids) {
+        known.clear();
+        known.addAll(ids);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /** 因重复而丢弃的消息累计数 */
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    /**
+     * 没有新消息时也要定期调用：发送方在 stroke_end 之前断开后再也不会有消息来触发过期检查。
+     * @return 被放弃笔画的 ABANDON 操作
+     */
+    public List<Op> expire(long nowNanos) {
+        return process(Collections.emptyList(), nowNanos);
+    }
+
+    /**
+     * 处理一批按收到顺序排列的消息。
+     * @return 按顺序应用的操作；控制事件与笔画完成的相对顺序与消息一致
+     */
+    public List<Op> process(List<WireMessage> messages, long nowNanos) {
+        List<Op> ops = new ArrayList<>();
+        // 本批中有新点的未完成笔画，在控制事件之前和本批结束时交出进度
+        Set<Pending> touched = new LinkedHashSet<>();
+        for (WireMessage message : messages) {
+            if (message.type == WireMessage.Type.CONTROL) {
+                flushProgress(touched, ops);
+                ops.add(new Op(Op.Kind.CONTROL, 0, null, 0, message.event));
+                continue;
+            }
+            long id = message.stroke.id;
+            if (known.contains(id)) {
+                duplicates++;
+                continue;
+            }
+            switch (message.type) {
+                case DRAW: {
+                    Pending previous = pending.remove(id);
+                    if (previous != null) {
+                        touched.remove(previous);
+                    }
+                    known.add(id);
+                    ops.add(new Op(Op.Kind.COMPLETE, id, message.stroke, 0, null));
+                    break;
+                }
+                case STROKE_BEGIN: {
+                    Pending p = pendingFor(id, nowNanos);
+                    if (p.stroke != null) {
+                        duplicates++;
+                        break;
+                    }
+                    Stroke style = message.stroke;
+                    p.stroke = new Stroke(style.color, style.baseStrokeWidth, style.isEraser);
+                    p.stroke.id = id;
+                    drainEarly(p);
+                    touched.add(p);
+                    tryComplete(p, touched, ops);
+                    break;
+                }
+                case STROKE_POINTS: {
+                    Pending p = pendingFor(id, nowNanos);
+                    addBatch(p, message.stroke, message.from, message.to, message.offset);
+                    drainEarly(p);
+                    touched.add(p);
+                    tryComplete(p, touched, ops);
+                    break;
+                }
+                case STROKE_END: {
+                    Pending p = pendingFor(id, nowNanos);
+                    p.expectedCount = message.pointCount;
+                    tryComplete(p, touched, ops);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        expireStale(nowNanos, touched, ops);
+        flushProgress(touched, ops);
+        return ops;
+    }
+
+    private Pending pendingFor(long id, long nowNanos) {
+        Pending p = pending.get(id);
+        if (p == null) {
+            p = new Pending(id);
+            pending.put(id, p);
+        }
+        p.lastActivityNanos = nowNanos;
+        return p;
+    }
+
+    private void addBatch(Pending p, Stroke batch, int from, int to, int offset) {
+        if (p.stroke != null && offset <= p.stroke.size()) {
+            append(p.stroke, batch, from, to, offset);
+            return;
+        }
+        Stroke queued = p.early.get(offset);
+        if (queued != null && queued.size() >= to - from) {
+            duplicates++;
+            return;
+        }
+        p.early.put(offset, copyRange(batch, from, to));
+    }
+
+    /** 把暂存的批次中已经能接上的依次接上 */
+    private void drainEarly(Pending p) {
+        if (p.stroke == null) {
+            return;
+        }
+        while (!p.early.isEmpty() && p.early.firstKey() <= p.stroke.size()) {
+            Map.Entry<Integer, Stroke> first = p.early.pollFirstEntry();
+            append(p.stroke, first.getValue(), 0, first.getValue().size(), first.getKey());
+        }
+    }
+
+    /** 批次 [from, to) 的第一个点是这一笔的第 offset 个点，且 offset 不超过已有点数；已有的点跳过 */
+    private void append(Stroke target, Stroke batch, int from, int to, int offset) {
+        int skip = target.size() - offset;
+        if (skip >= to - from) {
+            duplicates++;
+            return;
+        }
+        boolean timed = batch.hasTimestamps();
+        for (int i = from + skip; i < to; i++) {
+            if (timed) {
+                target.addPoint(batch.getX(i), batch.getY(i), batch.getPressure(i), batch.getTimestamp(i));
+            } else {
+                target.addPoint(batch.getX(i), batch.getY(i), batch.getPressure(i));
+            }
+        }
+    }
+
+    private void tryComplete(Pending p, Set<Pending> touched, List<Op> ops) {
+        if (p.stroke == null || p.expectedCount < 0 || p.stroke.size() < p.expectedCount) {
+            return;
+        }
+        pending.remove(p.id);
+        touched.remove(p);
+        known.add(p.id);
+        if (p.stroke.isEmpty()) {
+            if (p.reported > 0) {
+                ops.add(new Op(Op.Kind.ABANDON, p.id, null, 0, null));
+            }
+            return;
+        }
+        p.stroke.trimToSize();
+        ops.add(new Op(Op.Kind.COMPLETE, p.id, p.stroke, 0, null));
+    }
+
+    private void flushProgress(Set<Pending> touched, List<Op> ops) {
+        for (Pending p : touched) {
+            if (p.stroke == null || p.stroke.size() <= p.reported) {
+                continue;
+            }
+            Stroke segment = copyRange(p.stroke, p.reported, p.stroke.size());
+            segment.color = p.stroke.color;
+            segment.baseStrokeWidth = p.stroke.baseStrokeWidth;
+            segment.isEraser = p.stroke.isEraser;
+            ops.add(new Op(Op.Kind.PROGRESS, p.id, segment, p.reported, null));
+            p.reported = p.stroke.size();
+        }
+        touched.clear();
+    }
+
+    /** 放弃长时间没有动静的笔画；它们没有记为已知，之后重发仍可完成 */
+    private void expireStale(long nowNanos, Set<Pending> touched, List<Op> ops) {
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            if (nowNanos - p.lastActivityNanos <= staleTimeoutNanos) {
+                continue;
+            }
+            it.remove();
+            touched.remove(p);
+            if (p.reported > 0) {
+                ops.add(new Op(Op.Kind.ABANDON, p.id, null, 0, null));
+            }
+        }
+    }
+
+    private static Stroke copyRange(Stroke source, int from, int to) {
+        Stroke copy = new Stroke(0, 0f, source.isEraser, Math.max(1, to - from));
+        copy.id = source.id;
+        boolean timed = source.hasTimestamps();
+        for (int i = from; i < to; i++) {
+            if (timed) {
+                copy.addPoint(source.getX(i), source.getY(i), source.getPressure(i), source.getTimestamp(i));
+            } else {
+                copy.addPoint(source.getX(i), source.getY(i), source.getPressure(i));
+            }
+        }
+        return copy;
+    }
+}
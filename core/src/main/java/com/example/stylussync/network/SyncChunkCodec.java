@@ -0,0 +1,101 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 快照同步的数据块：一批完整笔画，每笔是一个 binary-v1 的 DRAW 帧（见 {@link BinaryWireCodec}），
+ * 打包成 [笔画数][每笔：帧长度 varint | 帧] 后用 deflate 压缩。每块可独立解码，
+ * 服务器收到一块就可以保存其中的笔画，断线后重新比对清单即从没收到的笔画继续。
+ * 不是线程安全的（复用编码缓冲区），每个使用方各持一个实例。纯 Java。
+ */
+public class SyncChunkCodec {
+
+    // 一块打包前的大致上限，压缩后通常只有几 KB，在 OkHttp 缓冲区里排不了多久
+    public static final int DEFAULT_CHUNK_BYTES = 32 * 1024;
+
+    private final BinaryWireCodec codec = new BinaryWireCodec();
+    private final BinaryWireCodec.ByteWriter out = new BinaryWireCodec.ByteWriter(DEFAULT_CHUNK_BYTES + 1024);
+
+    /**
+     * 从 strokes[from] 开始打包一块，直到打包前的大小达到 maxBytes（至少一笔）。
+     * @param end 输出：end[0] 为这一块之后的下一笔下标
+     * @return 压缩后的块
+     */
+    public byte[] pack(List<Stroke> strokes, int from, int maxBytes, int[] end) {
+        List<byte[]> frames = new ArrayList<>();
+        int bytes = 0;
+        int i = from;
+        while (i < strokes.size() && (frames.isEmpty() || bytes < maxBytes)) {
+            byte[] frame = codec.encode(WireMessage.draw(strokes.get(i)));
+            frames.add(frame);
+            bytes += frame.length;
+            i++;
+        }
+        out.reset();
+        out.writeVarLong(frames.size());
+        for (byte[] frame : frames) {
+            out.writeVarLong(frame.length);
+            out.writeBytes(frame);
+        }
+        end[0] = i;
+        return deflate(out.toByteArray());
+    }
+
+    /** 解出一块中的笔画，坐标精度为量化后的精度 */
+    public List<Stroke> unpack(byte[] chunk) {
+        BinaryWireCodec.ByteReader in = new BinaryWireCodec.ByteReader(inflate(chunk));
+        // 每笔至少一个长度字节加一个帧头
+        int count = in.readCount(4);
+        List<Stroke> strokes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = (int) in.readVarLong();
+            strokes.add(codec.decode(in.readBytes(length)).stroke);
+        }
+        return strokes;
+    }
+
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated sync payload");
+                }
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed sync payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 快照同步的文档清单：按绘制顺序排列的笔画 id 与内容哈希。
+ * 服务器与自己已有的 (id, 哈希) 比对，只索要缺少的或内容变了的笔画（例如被橡皮擦压缩改写过的）。
+ * 清单打包成 [条目数][每条：id varint | 8 字节大端哈希] 后用 deflate 压缩；
+ * root 是所有条目按顺序的哈希，两边一致时整份文档无需传输。纯 Java。
+ */
+public final class SyncManifest {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] ids;
+    private final long[] hashes;
+    private final long root;
+
+    private SyncManifest(long[] ids, long[] hashes) {
+        this.ids = ids;
+        this.hashes = hashes;
+        long h = FNV_OFFSET;
+        for (int i = 0; i < ids.length; i++) {
+            h = mix(mix(h, ids[i]), hashes[i]);
+        }
+        this.root = h;
+    }
+
+    /** 为笔画列表建清单；笔画在此期间不能被修改 */
+    public static SyncManifest of(List<Stroke> strokes) {
+        long[] ids = new long[strokes.size()];
+        long[] hashes = new long[strokes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Stroke stroke = strokes.get(i);
+            ids[i] = stroke.id;
+            hashes[i] = contentHash(stroke);
+        }
+        return new SyncManifest(ids, hashes);
+    }
+
+    /**
+     * 笔画内容的 64 位 FNV-1a 哈希：样式与全部点（含时间戳），同样的内容在各设备上得到同样的值。
+     * 宽度、坐标和压力按 binary-v1 的精度（见 {@link BinaryWireCodec}）量化后再哈希，
+     * 服务器对解码出的笔画重新计算得到的值与发送端一致。
+     */
+    public static long contentHash(Stroke stroke) {
+        long h = FNV_OFFSET;
+        h = mix(h, stroke.id);
+        h = mix(h, stroke.color);
+        h = mix(h, Math.round(stroke.baseStrokeWidth * BinaryWireCodec.WIDTH_SCALE));
+        h = mix(h, stroke.isEraser ? 1 : 0);
+        h = mix(h, stroke.size());
+        float[] xs = stroke.xArray();
+        float[] ys = stroke.yArray();
+        float[] pressures = stroke.pressureArray();
+        long[] timestamps = stroke.timestampArray();
+        for (int i = 0; i < stroke.size(); i++) {
+            long qx = Math.round(xs[i] * BinaryWireCodec.COORD_SCALE);
+            long qy = Math.round(ys[i] * BinaryWireCodec.COORD_SCALE);
+            h = mix(h, (qx << 32) | (qy & 0xFFFFFFFFL));
+            h = mix(h, Math.round(pressures[i] * BinaryWireCodec.PRESSURE_SCALE));
+            if (timestamps != null) {
+                h = mix(h, timestamps[i]);
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h ^= (value >>> (i * 8)) & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long id(int index) {
+        return ids[index];
+    }
+
+    public long hash(int index) {
+        return hashes[index];
+    }
+
+    public long root() {
+        return root;
+    }
+
+    /** 压缩后的清单 */
+    public byte[] pack() {
+        BinaryWireCodec.ByteWriter out = new BinaryWireCodec.ByteWriter(16 + ids.length * 12);
+        out.writeVarLong(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeVarLong(ids[i]);
+            out.writeInt((int) (hashes[i] >>> 32));
+            out.writeInt((int) hashes[i]);
+        }
+        return SyncChunkCodec.deflate(out.toByteArray());
+    }
+
+    public static SyncManifest unpack(byte[] packed) {
+        BinaryWireCodec.ByteReader in = new BinaryWireCodec.ByteReader(SyncChunkCodec.inflate(packed));
+        // 每条至少 1 字节 id + 8 字节哈希
+        int count = in.readCount(9);
+        long[] ids = new long[count];
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.readVarLong();
+            hashes[i] = ((long) in.readInt() << 32) | (in.readInt() & 0xFFFFFFFFL);
+        }
+        return new SyncManifest(ids, hashes);
+    }
+
+    /** 压缩后的 id 列表（服务器在 sync_need 中回复缺少的笔画用） */
+    public static byte[] packIds(Collection<Long> ids) {
+        BinaryWireCodec.ByteWriter out = new BinaryWireCodec.ByteWriter(8 + ids.size() * 8);
+        out.writeVarLong(ids.size());
+        for (long id : ids) {
+            out.writeVarLong(id);
+        }
+        return SyncChunkCodec.deflate(out.toByteArray());
+    }
+
+    public static Set<Long> unpackIds(byte[] packed) {
+        BinaryWireCodec.ByteReader in = new BinaryWireCodec.ByteReader(SyncChunkCodec.inflate(packed));
+        int count = in.readCount(1);
+        Set<Long> ids = new HashSet<>((int) Math.min(1 << 30, count * 4L / 3 + 1));
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readVarLong());
+        }
+        return ids;
+    }
+
+    /** 相对 known（例如服务器已有的笔画）缺少或内容不同的笔画 id，按清单顺序；即服务器端的比对规则 */
+    public List<Long> missingFrom(SyncManifest known) {
+        Map<Long, Long> have = new HashMap<>(known.size() * 2);
+        for (int i = 0; i < known.size(); i++) {
+            have.put(known.id(i), known.hash(i));
+        }
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            Long hash = have.get(ids[i]);
+            if (hash == null || hash != hashes[i]) {
+                missing.add(ids[i]);
+            }
+        }
+        return missing;
+    }
+}
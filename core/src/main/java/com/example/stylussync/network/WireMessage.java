@@ -0,0 +1,76 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+/**
+ * 与编码无关的一条发送消息，由 {@link JsonWireCodec} 或 {@link BinaryWireCodec} 编码后发出。
+ * 点数据不做拷贝，直接引用笔画中 [from, to) 范围内的点。
+ */
+public final class WireMessage {
+
+    public enum Type {
+        DRAW,            // 整笔发送（非流式模式）
+        STROKE_BEGIN,
+        STROKE_POINTS,
+        STROKE_END,
+        CONTROL
+    }
+
+    public final Type type;
+    public final Stroke stroke;
+    // STROKE_POINTS：批次序号
+    public final int seq;
+    // STROKE_POINTS / DRAW：本消息携带的点在 stroke 中的范围
+    public final int from;
+    public final int to;
+    // STROKE_POINTS：stroke[from] 在接收端这一笔中的下标。不降采样时等于 from，降采样后是接收端已收到的点数，
+    // 解码得到的消息中是发送方的偏移
+    public final int offset;
+    // STROKE_END：整笔的点数
+    public final int pointCount;
+    // CONTROL：事件名
+    public final String event;
+
+    private WireMessage(Type type, Stroke stroke, int seq, int from, int to, int offset, int pointCount, String event) {
+        this.type = type;
+        this.stroke = stroke;
+        this.seq = seq;
+        this.from = from;
+        this.to = to;
+        this.offset = offset;
+        this.pointCount = pointCount;
+        this.event = event;
+    }
+
+    public static WireMessage draw(Stroke stroke) {
+        return new WireMessage(Type.DRAW, stroke, 0, 0, stroke.size(), 0, stroke.size(), null);
+    }
+
+    public static WireMessage strokeBegin(Stroke stroke) {
+        return new WireMessage(Type.STROKE_BEGIN, stroke, 0, 0, 0, 0, 0, null);
+    }
+
+    public static WireMessage strokePoints(Stroke stroke, int seq, int from, int to) {
+        return strokePoints(stroke, seq, from, to, from);
+    }
+
+    public static WireMessage strokePoints(Stroke stroke, int seq, int from, int to, int offset) {
+        return new WireMessage(Type.STROKE_POINTS, stroke, seq, from, to, offset, 0, null);
+    }
+
+    static WireMessage decodedPoints(Stroke batch, int seq, int offset) {
+        return new WireMessage(Type.STROKE_POINTS, batch, seq, 0, batch.size(), offset, 0, null);
+    }
+
+    public static WireMessage strokeEnd(Stroke stroke, int pointCount) {
+        return new WireMessage(Type.STROKE_END, stroke, 0, 0, 0, 0, pointCount, null);
+    }
+
+    public static WireMessage control(String event) {
+        return new WireMessage(Type.CONTROL, null, 0, 0, 0, 0, 0, event);
+    }
+
+    public int pointsInMessage() {
+        return to - from;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.stylussync.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EraserCompactorTest {
+
+    /** 水平线 y = 100，x 从 0 到 200，线宽 4 */
+    private static Stroke horizontalLine() {
+        Stroke stroke = new Stroke(0xFF000000, 8f, false);
+        for (int i = 0; i <= 20; i++) {
+            stroke.addPoint(i * 10f, 100f, 0.5f, 1000L + i * 10L);
+        }
+        return stroke;
+    }
+
+    private static Stroke eraser(float x0, float y0, float x1, float y1, float width) {
+        Stroke eraser = new Stroke(0, width, true);
+        eraser.addPoint(x0, y0, 1f);
+        eraser.addPoint(x1, y1, 1f);
+        return eraser;
+    }
+
+    @Test
+    public void eraserAcrossLineSplitsItAndIsDropped() {
+        Stroke line = horizontalLine();
+        // 竖直擦过 x = 100，半径 10；线的半径 2，切口应在 x = 100 ± 12 附近
+        List<Stroke> strokes = Arrays.asList(line, eraser(100f, 50f, 100f, 150f, 20f));
+        EraserCompactor.Result result = EraserCompactor.compact(strokes);
+
+        assertEquals(2, result.strokes.size());
+        assertEquals(1, result.strokesSplit);
+        assertEquals(1, result.erasersRemoved);
+        Stroke left = result.strokes.get(0);
+        Stroke right = result.strokes.get(1);
+        assertEquals(line.id, left.id);
+        assertNotEquals(line.id, right.id);
+        assertFalse(left.isEraser || right.isEraser);
+        assertEquals(0f, left.getX(0), 0f);
+        assertEquals(88f, left.getX(left.size() - 1), 0.1f);
+        assertEquals(112f, right.getX(0), 0.1f);
+        assertEquals(200f, right.getX(right.size() - 1), 0f);
+        // 切口处的时间戳按位置插值
+        assertEquals(1088L, left.getTimestamp(left.size() - 1), 1L);
+        assertEquals(result.pointsAfter, left.size() + right.size());
+    }
+
+    @Test
+    public void fullyErasedStrokeIsRemoved() {
+        List<Stroke> strokes = Arrays.asList(horizontalLine(), eraser(-20f, 100f, 220f, 100f, 30f));
+        EraserCompactor.Result result = EraserCompactor.compact(strokes);
+        assertTrue(result.strokes.isEmpty());
+        assertEquals(1, result.strokesRemoved);
+        assertEquals(0, result.pointsAfter);
+    }
+
+    @Test
+    public void grazingEraserKeepsStrokeAndEraser() {
+        Stroke line = horizontalLine();
+        // 擦边：覆盖了线的一侧边缘，但没有哪一处整个线宽都被覆盖
+        Stroke eraser = eraser(50f, 111f, 150f, 111f, 20f);
+        EraserCompactor.Result result = EraserCompactor.compact(Arrays.asList(line, eraser));
+        assertFalse(result.changed());
+        assertSame(line, result.strokes.get(0));
+        assertSame(eraser, result.strokes.get(1));
+    }
+
+    @Test
+    public void onlyEarlierStrokesAndLaterErasersAreTouched() {
+        Stroke before = horizontalLine();
+        Stroke first = eraser(100f, 50f, 100f, 150f, 20f);
+        Stroke after = horizontalLine();
+        Stroke second = eraser(30f, 50f, 30f, 150f, 20f);
+        List<Stroke> strokes = new ArrayList<>(Arrays.asList(before, first, after, second));
+
+        // 第一个橡皮擦已经处理过：只应用第二个
+        EraserCompactor.Result result = EraserCompactor.compact(strokes, 2);
+        assertEquals(1, result.erasersApplied);
+        assertEquals(2, result.strokesSplit);
+        assertSame(first, result.strokes.get(2));
+        assertEquals(5, result.strokes.size());
+
+        // 全部处理：第二个橡皮擦作用在第一个擦过的结果上，画在第一个之后的笔画只被第二个擦
+        result = EraserCompactor.compact(strokes);
+        assertEquals(2, result.erasersRemoved);
+        assertEquals(5, result.strokes.size());
+        for (Stroke stroke : result.strokes) {
+            assertFalse(stroke.isEraser);
+        }
+        assertEquals(18f, result.strokes.get(0).getX(result.strokes.get(0).size() - 1), 0.1f);
+        assertEquals(112f, result.strokes.get(2).getX(0), 0.1f);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.stylussync.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StrokeIndexTest {
+
+    private static Stroke line(float x0, float y0, float x1, float y1) {
+        Stroke stroke = new Stroke(0xFF000000, 4f, false);
+        stroke.addPoint(x0, y0, 1f);
+        stroke.addPoint(x1, y1, 1f);
+        return stroke;
+    }
+
+    @Test
+    public void queryReturnsIntersectingStrokesInDrawingOrder() {
+        Stroke a = line(10, 10, 100, 10);
+        Stroke b = line(2000, 2000, 2100, 2100);
+        Stroke c = line(50, 0, 50, 600);
+        StrokeIndex index = new StrokeIndex();
+        index.rebuild(Arrays.asList(a, b, c));
+
+        List<Stroke> hits = index.query(0, 0, 120, 40, new ArrayList<>());
+
+        assertEquals(Arrays.asList(a, c), hits);
+        assertEquals(1, index.count(1900, 1900, 2200, 2200));
+    }
+
+    @Test
+    public void removedStrokesAreNotReturned() {
+        Stroke a = line(10, 10, 1000, 1000);
+        StrokeIndex index = new StrokeIndex();
+        index.insert(a);
+        index.remove(a);
+
+        assertEquals(0, index.size());
+        assertTrue(index.query(0, 0, 2000, 2000, new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void hitTestPicksTopmostStrokeNearPoint() {
+        Stroke bottom = line(0, 100, 400, 100);
+        Stroke top = line(200, 0, 200, 400);
+        StrokeIndex index = new StrokeIndex();
+        index.rebuild(Arrays.asList(bottom, top));
+
+        assertSame(top, index.hitTest(201, 101, 2));
+        assertSame(bottom, index.hitTest(50, 103, 2));
+        assertNull(index.hitTest(50, 150, 2));
+    }
+
+    @Test
+    public void boundsIncludeHalfStrokeWidth() {
+        Stroke stroke = line(100, 100, 200, 100);
+
+        assertEquals(98f, stroke.getTop(), 0f);
+        assertEquals(202f, stroke.getRight(), 0f);
+        assertTrue(stroke.intersects(0, 0, 99, 99));
+        assertFalse(stroke.intersects(0, 0, 97, 97));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.stylussync.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrokeSimplifierTest {
+
+    /** 原始点到精简后折线的最大距离 */
+    private static float maxDistance(Stroke original, Stroke simplified) {
+        float max = 0f;
+        for (int i = 0; i < original.size(); i++) {
+            float best = Float.MAX_VALUE;
+            for (int j = 1; j < simplified.size(); j++) {
+                best = Math.min(best, segmentDistance(original.getX(i), original.getY(i),
+                        simplified.getX(j - 1), simplified.getY(j - 1), simplified.getX(j), simplified.getY(j)));
+            }
+            max = Math.max(max, best);
+        }
+        return max;
+    }
+
+    private static float segmentDistance(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax, dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? Math.max(0f, Math.min(1f, ((px - ax) * dx + (py - ay) * dy) / lengthSquared)) : 0f;
+        float ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return (float) Math.sqrt(ex * ex + ey * ey);
+    }
+
+    @Test
+    public void straightLineCollapsesToEndpoints() {
+        Stroke stroke = new Stroke(0xFF000000, 6f, false);
+        for (int i = 0; i <= 100; i++) {
+            stroke.addPoint(i * 1.5f, i * 0.75f, 0.5f);
+        }
+        Stroke simplified = StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.SAVE);
+        assertEquals(2, simplified.size());
+        assertEquals(stroke.id, simplified.id);
+        assertEquals(150f, simplified.getX(1), 0f);
+        assertSame(stroke, StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.NONE));
+    }
+
+    @Test
+    public void keepsPressureChangesOnStraightLine() {
+        Stroke stroke = new Stroke(0xFF000000, 20f, false);
+        for (int i = 0; i <= 100; i++) {
+            // 中点压感从 0.3 突增到 0.9，线宽变化 12px
+            stroke.addPoint(i * 2f, 0f, i == 50 ? 0.9f : 0.3f);
+        }
+        Stroke simplified = StrokeSimplifier.simplify(stroke, StrokeSimplifier.Config.SAVE);
+        boolean keptPeak = false;
+        for (int i = 0; i < simplified.size(); i++) {
+            keptPeak |= simplified.getPressure(i) == 0.9f;
+        }
+        assertTrue(keptPeak);
+    }
+
+    @Test
+    public void errorStaysWithinToleranceForWholeStrokeAndBatches() {
+        StrokeSimplifier.Config config = StrokeSimplifier.Config.NETWORK;
+        float bound = Math.max(config.tolerancePx, config.minDistancePx) + 1e-3f;
+        for (long seed = 1; seed <= 5; seed++) {
+            Stroke stroke = RecordedStrokes.handwriting(seed, 600);
+            Stroke simplified = StrokeSimplifier.simplify(stroke, config);
+            assertTrue(simplified.size() < stroke.size() / 2);
+            assertTrue(maxDistance(stroke, simplified) <= bound);
+
+            // 逐批精简后拼起来，误差同样有界，且每批的最后一个点都保留
+            Stroke joined = new Stroke(stroke.color, stroke.baseStrokeWidth, false);
+            int anchor = -1;
+            for (int from = 0; from < stroke.size(); from += 16) {
+                int to = Math.min(stroke.size(), from + 16);
+                Stroke batch = StrokeSimplifier.simplifyBatch(stroke, anchor, from, to, config);
+                assertEquals(stroke.getX(to - 1), batch.getX(batch.size() - 1), 0f);
+                for (int i = 0; i < batch.size(); i++) {
+                    joined.addPoint(batch.getX(i), batch.getY(i), batch.getPressure(i));
+                }
+                anchor = to - 1;
+            }
+            assertEquals(stroke.getX(0), joined.getX(0), 0f);
+            assertTrue(maxDistance(stroke, joined) <= bound);
+        }
+    }
+}
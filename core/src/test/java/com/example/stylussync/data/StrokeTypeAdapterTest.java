@@ -0,0 +1,57 @@
+package com.example.stylussync.data;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StrokeTypeAdapterTest {
+
+    private static final Type STROKE_LIST_TYPE = new TypeToken<List<Stroke>>() {}.getType();
+
+    @Test
+    public void readsLegacyJson() {
+        String legacy = "[{\"points\":[{\"x\":1.5,\"y\":2.0,\"pressure\":0.5},{\"x\":3.0,\"y\":4.0,\"pressure\":1.0}],"
+                + "\"color\":-16777216,\"baseStrokeWidth\":10.0,\"isEraser\":false}]";
+        List<Stroke> strokes = new Gson().fromJson(legacy, STROKE_LIST_TYPE);
+
+        assertEquals(1, strokes.size());
+        Stroke stroke = strokes.get(0);
+        assertEquals(2, stroke.size());
+        assertEquals(1.5f, stroke.getX(0), 0f);
+        assertEquals(4.0f, stroke.getY(1), 0f);
+        assertEquals(0.5f, stroke.getPressure(0), 0f);
+        assertEquals(-16777216, stroke.color);
+        assertEquals(10f, stroke.baseStrokeWidth, 0f);
+        assertFalse(stroke.isEraser);
+        assertFalse(stroke.hasTimestamps());
+    }
+
+    @Test
+    public void roundTripKeepsAllColumns() {
+        Stroke stroke = new Stroke(0xFFFF0000, 4f, true, 1);
+        for (int i = 0; i < 100; i++) {
+            stroke.addPoint(i * 0.25f, -i, i / 100f, 1000L + i);
+        }
+        Gson gson = new Gson();
+        List<Stroke> copy = gson.fromJson(gson.toJson(Collections.singletonList(stroke)), STROKE_LIST_TYPE);
+
+        Stroke read = copy.get(0);
+        assertEquals(stroke.size(), read.size());
+        assertTrue(read.hasTimestamps());
+        for (int i = 0; i < stroke.size(); i++) {
+            assertEquals(stroke.getX(i), read.getX(i), 0f);
+            assertEquals(stroke.getY(i), read.getY(i), 0f);
+            assertEquals(stroke.getPressure(i), read.getPressure(i), 0f);
+            assertEquals(stroke.getTimestamp(i), read.getTimestamp(i));
+        }
+        assertEquals(stroke.color, read.color);
+        assertTrue(read.isEraser);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BinaryWireCodecTest {
+
+    private static Stroke sampleStroke() {
+        Stroke stroke = new Stroke(0xFF2196F3, 7.5f, false);
+        for (int i = 0; i < 200; i++) {
+            float x = 300f + i * 2.37f;
+            float y = 400f + (float) Math.sin(i / 10.0) * 80f;
+            float pressure = 0.4f + 0.3f * (float) Math.cos(i / 25.0);
+            stroke.addPoint(x, y, pressure, 10_000L + i * 4L);
+        }
+        return stroke;
+    }
+
+    @Test
+    public void drawRoundTripWithinQuantization() {
+        Stroke stroke = sampleStroke();
+        BinaryWireCodec codec = new BinaryWireCodec();
+
+        WireMessage decoded = codec.decode(codec.encode(WireMessage.draw(stroke)));
+
+        assertEquals(WireMessage.Type.DRAW, decoded.type);
+        Stroke read = decoded.stroke;
+        assertEquals(stroke.id, read.id);
+        assertEquals(stroke.color, read.color);
+        assertEquals(stroke.baseStrokeWidth, read.baseStrokeWidth, 1f / BinaryWireCodec.WIDTH_SCALE);
+        assertEquals(stroke.size(), read.size());
+        for (int i = 0; i < stroke.size(); i++) {
+            assertEquals(stroke.getX(i), read.getX(i), 0.5f / BinaryWireCodec.COORD_SCALE);
+            assertEquals(stroke.getY(i), read.getY(i), 0.5f / BinaryWireCodec.COORD_SCALE);
+            assertEquals(stroke.getPressure(i), read.getPressure(i), 0.5f / BinaryWireCodec.PRESSURE_SCALE);
+            assertEquals(stroke.getTimestamp(i), read.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void pointBatchIsSelfContained() {
+        Stroke stroke = sampleStroke();
+        BinaryWireCodec codec = new BinaryWireCodec();
+
+        WireMessage decoded = codec.decode(codec.encode(WireMessage.strokePoints(stroke, 3, 48, 64)));
+
+        assertEquals(WireMessage.Type.STROKE_POINTS, decoded.type);
+        assertEquals(stroke.id, decoded.stroke.id);
+        assertEquals(3, decoded.seq);
+        assertEquals(48, decoded.offset);
+        assertEquals(16, decoded.pointsInMessage());
+        assertEquals(stroke.getX(48), decoded.stroke.getX(0), 0.5f / BinaryWireCodec.COORD_SCALE);
+        assertEquals(stroke.getTimestamp(63), decoded.stroke.getTimestamp(15));
+    }
+
+    @Test
+    public void oversizedPointCountIsRejectedBeforeAllocating() {
+        BinaryWireCodec codec = new BinaryWireCodec();
+        BinaryWireCodec.ByteWriter draw = new BinaryWireCodec.ByteWriter(32);
+        draw.writeByte(BinaryWireCodec.VERSION);
+        draw.writeByte(BinaryWireCodec.TYPE_DRAW);
+        draw.writeByte(0);
+        draw.writeVarLong(42);
+        draw.writeInt(0xFF000000);
+        draw.writeVarLong(64);
+        draw.writeVarLong(Integer.MAX_VALUE);
+        draw.writeBytes(new byte[] {2, 2, 2});
+        try {
+            codec.decode(draw.toByteArray());
+            fail("expected the point count to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        BinaryWireCodec.ByteWriter points = new BinaryWireCodec.ByteWriter(32);
+        points.writeByte(BinaryWireCodec.VERSION);
+        points.writeByte(BinaryWireCodec.TYPE_STROKE_POINTS);
+        points.writeByte(0);
+        points.writeVarLong(42);
+        points.writeVarLong(1);
+        points.writeVarLong(0);
+        points.writeVarLong(0xFFFFFFFFL);
+        try {
+            codec.decode(points.toByteArray());
+            fail("expected the point count to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void binaryIsMuchSmallerThanJson() {
+        Stroke stroke = sampleStroke();
+        int binaryBytes = new BinaryWireCodec().encode(WireMessage.draw(stroke)).length;
+        int jsonBytes = new JsonWireCodec().encode(WireMessage.draw(stroke)).length();
+
+        assertTrue("binary=" + binaryBytes + " json=" + jsonBytes, binaryBytes * 5 < jsonBytes);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RemoteStrokeAssemblerTest {
+
+    private static Stroke sampleStroke(int points) {
+        Stroke stroke = new Stroke(0xFF4CAF50, 5f, false);
+        for (int i = 0; i < points; i++) {
+            stroke.addPoint(i * 3f, 100f + i, 0.5f, 1_000L + i);
+        }
+        return stroke;
+    }
+
+    @Test
+    public void reordersBatchesAndBuffersPointsThatArriveBeforeBegin() {
+        Stroke stroke = sampleStroke(30);
+        RemoteStrokeAssembler assembler = new RemoteStrokeAssembler();
+
+        List<RemoteStrokeAssembler.Op> ops = assembler.process(Arrays.asList(
+                WireMessage.strokePoints(stroke, 1, 10, 20),
+                WireMessage.strokeBegin(stroke),
+                WireMessage.strokePoints(stroke, 0, 0, 10),
+                // 重发的批次与已收到的点完全重叠
+                WireMessage.strokePoints(stroke, 0, 0, 10)), 0L);
+
+        // 同一批内的多个批次合并成一次进度
+        assertEquals(1, ops.size());
+        assertEquals(RemoteStrokeAssembler.Op.Kind.PROGRESS, ops.get(0).kind);
+        assertEquals(0, ops.get(0).offset);
+        assertEquals(20, ops.get(0).stroke.size());
+        assertEquals(stroke.color, ops.get(0).stroke.color);
+        assertEquals(1, assembler.getDuplicateCount());
+
+        ops = assembler.process(Arrays.asList(
+                WireMessage.strokeEnd(stroke, 30),
+                WireMessage.strokePoints(stroke, 2, 20, 30)), 0L);
+
+        assertEquals(1, ops.size());
+        RemoteStrokeAssembler.Op complete = ops.get(0);
+        assertEquals(RemoteStrokeAssembler.Op.Kind.COMPLETE, complete.kind);
+        assertEquals(stroke.id, complete.stroke.id);
+        assertEquals(30, complete.stroke.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(stroke.getX(i), complete.stroke.getX(i), 0f);
+            assertEquals(stroke.getTimestamp(i), complete.stroke.getTimestamp(i));
+        }
+        assertEquals(0, assembler.getPendingCount());
+    }
+
+    @Test
+    public void dropsKnownStrokesKeepsControlOrderAndAbandonsStaleOnes() {
+        Stroke local = sampleStroke(5);
+        Stroke first = sampleStroke(5);
+        Stroke stalled = sampleStroke(10);
+        RemoteStrokeAssembler assembler = new RemoteStrokeAssembler();
+        assembler.setStaleTimeoutNanos(100L);
+        assembler.resetKnown(Collections.singletonList(local.id));
+
+        List<RemoteStrokeAssembler.Op> ops = assembler.process(Arrays.asList(
+                WireMessage.draw(local),
+                WireMessage.draw(first),
+                WireMessage.control("clear_canvas"),
+                WireMessage.draw(first),
+                WireMessage.strokeBegin(stalled),
+                WireMessage.strokePoints(stalled, 0, 0, 4)), 0L);
+
+        assertEquals(3, ops.size());
+        assertEquals(RemoteStrokeAssembler.Op.Kind.COMPLETE, ops.get(0).kind);
+        assertEquals(first.id, ops.get(0).id);
+        assertEquals(RemoteStrokeAssembler.Op.Kind.CONTROL, ops.get(1).kind);
+        assertEquals("clear_canvas", ops.get(1).event);
+        assertEquals(RemoteStrokeAssembler.Op.Kind.PROGRESS, ops.get(2).kind);
+        assertEquals(2, assembler.getDuplicateCount());
+
+        ops = assembler.process(Collections.emptyList(), 1_000L);
+
+        assertEquals(1, ops.size());
+        assertEquals(RemoteStrokeAssembler.Op.Kind.ABANDON, ops.get(0).kind);
+        assertEquals(stalled.id, ops.get(0).id);
+        assertEquals(0, assembler.getPendingCount());
+    }
+
+    @Test
+    public void senderThatVanishesMidStrokeExpiresWithoutFurtherMessages() {
+        Stroke stroke = sampleStroke(20);
+        RemoteStrokeAssembler assembler = new RemoteStrokeAssembler();
+
+        List<RemoteStrokeAssembler.Op> ops = assembler.process(Arrays.asList(
+                WireMessage.strokeBegin(stroke),
+                WireMessage.strokePoints(stroke, 0, 0, 8)), 0L);
+        assertEquals(1, ops.size());
+        assertEquals(1, assembler.getPendingCount());
+
+        // 发送方断开，之后没有任何消息，只有时钟在走
+        assertTrue(assembler.expire(RemoteStrokeAssembler.DEFAULT_STALE_TIMEOUT_NANOS / 2).isEmpty());
+        assertEquals(1, assembler.getPendingCount());
+
+        ops = assembler.expire(RemoteStrokeAssembler.DEFAULT_STALE_TIMEOUT_NANOS + 1);
+        assertEquals(1, ops.size());
+        assertEquals(RemoteStrokeAssembler.Op.Kind.ABANDON, ops.get(0).kind);
+        assertEquals(stroke.id, ops.get(0).id);
+        assertEquals(0, assembler.getPendingCount());
+    }
+
+    @Test
+    public void jsonMessagesAssembleIntoTheSentStroke() {
+        Stroke stroke = sampleStroke(12);
+        JsonWireCodec codec = new JsonWireCodec();
+        RemoteStrokeAssembler assembler = new RemoteStrokeAssembler();
+
+        List<RemoteStrokeAssembler.Op> ops = assembler.process(Arrays.asList(
+                codec.decode(codec.encode(WireMessage.strokeBegin(stroke), 7)),
+                codec.decode(codec.encode(WireMessage.strokePoints(stroke, 0, 0, 12))),
+                codec.decode(codec.encode(WireMessage.strokeEnd(stroke, 12)))), 0L);
+
+        assertNull(codec.decode("{\"type\":\"ack\",\"mseq\":7}"));
+        assertEquals(1, ops.size());
+        Stroke read = ops.get(0).stroke;
+        assertEquals(stroke.id, read.id);
+        assertEquals(stroke.color, read.color);
+        assertEquals(stroke.baseStrokeWidth, read.baseStrokeWidth, 0f);
+        assertEquals(12, read.size());
+        assertEquals(stroke.getY(11), read.getY(11), 0f);
+        assertEquals(stroke.getTimestamp(11), read.getTimestamp(11));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.stylussync.network;
+
+import com.example.stylussync.data.Stroke;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SyncManifestTest {
+
+    private static List<Stroke> document(int strokes) {
+        List<Stroke> document = new ArrayList<>();
+        for (int s = 0; s < strokes; s++) {
+            Stroke stroke = new Stroke(0xFF000000 | s, 4f + s % 3, s % 7 == 0);
+            for (int i = 0; i < 40; i++) {
+                stroke.addPoint(s * 10f + i, 200f + (float) Math.sin(i / 6.0) * 30f, 0.5f + i / 100f, 5_000L + i * 8L);
+            }
+            document.add(stroke);
+        }
+        return document;
+    }
+
+    /** 服务器收到的笔画：按同步分块编码再解码，即 binary-v1 精度 */
+    private static List<Stroke> transfer(List<Stroke> strokes) {
+        SyncChunkCodec codec = new SyncChunkCodec();
+        List<Stroke> received = new ArrayList<>();
+        int[] end = new int[1];
+        for (int from = 0; from < strokes.size(); from = end[0]) {
+            received.addAll(codec.unpack(codec.pack(strokes, from, 4 * 1024, end)));
+        }
+        return received;
+    }
+
+    @Test
+    public void reconnectAfterPartialTransferOnlyNeedsTheRest() {
+        List<Stroke> document = document(200);
+        SyncManifest manifest = SyncManifest.unpack(SyncManifest.of(document).pack());
+        assertEquals(SyncManifest.of(document).root(), manifest.root());
+
+        // 服务器在断开前收到了前 95%，另有一笔之后被改写（例如橡皮擦压缩）
+        SyncManifest server = SyncManifest.of(transfer(document.subList(0, 190)));
+        Stroke rewritten = document.get(3);
+        rewritten.addPoint(1f, 1f, 0.5f, 9_999L);
+        List<Long> missing = SyncManifest.of(document).missingFrom(server);
+
+        assertEquals(11, missing.size());
+        assertEquals(rewritten.id, (long) missing.get(0));
+        assertEquals(document.get(190).id, (long) missing.get(1));
+        Set<Long> roundTrip = SyncManifest.unpackIds(SyncManifest.packIds(missing));
+        assertEquals(11, roundTrip.size());
+        assertTrue(roundTrip.containsAll(missing));
+        assertTrue(SyncManifest.of(document).missingFrom(SyncManifest.of(transfer(document))).isEmpty());
+    }
+
+    @Test
+    public void liveStrokesMatchWhatTheServerDecoded() {
+        // 实时发送的笔画：服务器按 binary-v1 解码出分批的点，发送端提交的是同一份点的 float 原值
+        BinaryWireCodec wire = new BinaryWireCodec();
+        List<Stroke> document = document(20);
+        List<Stroke> decoded = new ArrayList<>();
+        for (Stroke stroke : document) {
+            WireMessage begin = wire.decode(wire.encode(WireMessage.strokeBegin(stroke)));
+            Stroke received = new Stroke(begin.stroke.color, begin.stroke.baseStrokeWidth, begin.stroke.isEraser);
+            received.id = begin.stroke.id;
+            for (int from = 0; from < stroke.size(); from += 16) {
+                int to = Math.min(stroke.size(), from + 16);
+                Stroke batch = wire.decode(wire.encode(WireMessage.strokePoints(stroke, from / 16, from, to, from))).stroke;
+                received.addPoints(batch.xArray(), batch.yArray(), batch.pressureArray(), batch.timestampArray(), batch.size());
+            }
+            decoded.add(received);
+        }
+        assertTrue(SyncManifest.of(document).missingFrom(SyncManifest.of(decoded)).isEmpty());
+        assertEquals(SyncManifest.of(document).root(), SyncManifest.of(transfer(decoded)).root());
+    }
+
+    private static byte[] packedCount(long count) {
+        BinaryWireCodec.ByteWriter out = new BinaryWireCodec.ByteWriter(32);
+        out.writeVarLong(count);
+        out.writeBytes(new byte[12]);
+        return SyncChunkCodec.deflate(out.toByteArray());
+    }
+
+    @Test
+    public void oversizedCountsAreRejectedBeforeAllocating() {
+        byte[] packed = packedCount(Integer.MAX_VALUE);
+        try {
+            SyncManifest.unpack(packed);
+            fail("expected the manifest count to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            SyncManifest.unpackIds(packed);
+            fail("expected the id count to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SyncChunkCodec().unpack(packed);
+            fail("expected the stroke count to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void chunksCoverEveryStrokeOnceAndAreCompressed() {
+        List<Stroke> document = document(300);
+        SyncChunkCodec codec = new SyncChunkCodec();
+        JsonWireCodec json = new JsonWireCodec();
+        int jsonBytes = 0;
+        for (Stroke stroke : document) {
+            jsonBytes += json.encode(WireMessage.draw(stroke)).length();
+        }
+
+        List<Stroke> received = new ArrayList<>();
+        int packedBytes = 0;
+        int chunks = 0;
+        int[] end = new int[1];
+        for (int from = 0; from < document.size(); from = end[0]) {
+            byte[] chunk = codec.pack(document, from, 4 * 1024, end);
+            assertTrue(end[0] > from);
+            packedBytes += chunk.length;
+            chunks++;
+            received.addAll(codec.unpack(chunk));
+        }
+
+        assertTrue(chunks > 1);
+        assertEquals(document.size(), received.size());
+        for (int i = 0; i < document.size(); i++) {
+            Stroke sent = document.get(i);
+            Stroke got = received.get(i);
+            assertEquals(sent.id, got.id);
+            assertEquals(sent.isEraser, got.isEraser);
+            assertEquals(sent.size(), got.size());
+            assertEquals(sent.getX(39), got.getX(39), 0.5f / BinaryWireCodec.COORD_SCALE);
+        }
+        assertTrue("packed " + packedBytes + " vs json " + jsonBytes, packedBytes * 5 < jsonBytes);
+    }
+}
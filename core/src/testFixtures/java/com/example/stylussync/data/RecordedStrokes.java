@@ -0,0 +1,30 @@
+package com.example.stylussync.data;
+
+import java.util.Random;
+
+/** 测试用的手写输入，固定种子，每次生成的笔画完全相同 */
+public final class RecordedStrokes {
+
+    private RecordedStrokes() {
+    }
+
+    /**
+     * 模拟 240Hz 的手写轨迹：几个正弦叠加出连续的圈和转折，速度约 0.3～1.5 像素/毫秒，
+     * 中间三分之一到一半处几乎停住；位置带 ±0.2 像素的采样抖动，压力缓慢起伏，时间戳从 1000ms 开始每 4ms 一个。
+     */
+    public static Stroke handwriting(long seed, int points) {
+        Random random = new Random(seed);
+        Stroke stroke = new Stroke(0xFF000000, 8f, false, points);
+        double phase = random.nextDouble() * Math.PI;
+        double t = 0;
+        for (int i = 0; i < points; i++) {
+            // 轨迹参数 t 按秒推进，停顿期间只走正常速度的 2%
+            t += (i > points / 3 && i < points / 2 ? 0.02 : 1.0) * 4.0 / 1000;
+            float x = (float) (400 + 150 * t + 60 * Math.sin(9 * t + phase) + (random.nextFloat() - 0.5f) * 0.4f);
+            float y = (float) (300 + 80 * Math.cos(7 * t) + 30 * Math.sin(17 * t + phase) + (random.nextFloat() - 0.5f) * 0.4f);
+            float pressure = (float) (0.5 + 0.2 * Math.sin(3 * t));
+            stroke.addPoint(x, y, pressure, 1000L + i * 4L);
+        }
+        return stroke;
+    }
+}